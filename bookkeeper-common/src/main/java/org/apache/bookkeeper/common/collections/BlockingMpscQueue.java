@@ -21,25 +21,58 @@ package org.apache.bookkeeper.common.collections;
 import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.jctools.queues.MpscArrayQueue;
 
 /**
  * Blocking queue optimized for multiple producers and single consumer.
+ *
+ * <p>The producers never take a lock. With busy-wait, the consumer spins when the queue is empty
+ * and the producers spin when it is full. Otherwise, the consumer spins briefly then parks until a
+ * producer adds an item, and the producers back off by parking for short periods.
+ *
+ * <p>{@link #takeAll(Object[])} and {@link #pollAll(Object[], long, TimeUnit)} let the consumer
+ * drain the queue in batches.
  */
 public class BlockingMpscQueue<T> extends MpscArrayQueue<T> implements BlockingQueue<T> {
 
+    private static final int CONSUMER_SPIN_TRIES = 100;
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final boolean busyWait;
+
+    // the consumer thread parked waiting for items, if any
+    private volatile Thread waitingConsumer = null;
+
     public BlockingMpscQueue(int size) {
+        this(size, true);
+    }
+
+    public BlockingMpscQueue(int size, boolean busyWait) {
         super(size);
+        this.busyWait = busyWait;
+    }
+
+    @Override
+    public boolean offer(T e) {
+        if (!super.offer(e)) {
+            return false;
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
     }
 
     @Override
     public void put(T e) throws InterruptedException {
-        while (!this.relaxedOffer(e)) {
-            // Do busy-spin loop
+        while (!offer(e)) {
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
+            backOff(PRODUCER_PARK_NANOS);
         }
     }
 
@@ -47,62 +80,120 @@ public class BlockingMpscQueue<T> extends MpscArrayQueue<T> implements BlockingQ
     public boolean offer(T e, long timeout, TimeUnit unit) throws InterruptedException {
         long absoluteEndTime = System.nanoTime() + unit.toNanos(timeout);
 
-        while (!this.relaxedOffer(e)) {
-            // Do busy-spin loop
-
-            if (System.nanoTime() > absoluteEndTime) {
+        while (!offer(e)) {
+            long remaining = absoluteEndTime - System.nanoTime();
+            if (remaining < 0) {
                 return false;
             }
 
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
+            backOff(Math.min(remaining, PRODUCER_PARK_NANOS));
         }
 
         return true;
     }
 
+    private void backOff(long parkNanos) {
+        if (busyWait) {
+            BusyWait.onSpinWait();
+        } else {
+            LockSupport.parkNanos(this, parkNanos);
+        }
+    }
+
     @Override
     public T take() throws InterruptedException {
-        int idleCounter = 0;
-        while (true) {
-            T item = relaxedPoll();
-            if (item == null) {
-                if (Thread.interrupted()) {
-                    throw new InterruptedException();
-                }
+        awaitItems(false, 0L);
+        // the queue is not empty and there is a single consumer, so poll() returns an item
+        return poll();
+    }
 
-                idleCounter = WAIT_STRATEGY.idle(idleCounter);
-                continue;
-            }
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!awaitItems(true, System.nanoTime() + unit.toNanos(timeout))) {
+            return null;
+        }
+        return poll();
+    }
 
+    /**
+     * Take all the items of the queue, up to the size of the array, waiting if the queue is empty.
+     *
+     * @param array the array to fill with the items
+     * @return the number of items taken
+     */
+    public int takeAll(T[] array) throws InterruptedException {
+        awaitItems(false, 0L);
+        return pollAll(array);
+    }
 
-            return item;
+    /**
+     * Take all the items of the queue, up to the size of the array, waiting up to the timeout
+     * if the queue is empty.
+     *
+     * @param array the array to fill with the items
+     * @return the number of items taken, 0 if the timeout elapsed
+     */
+    public int pollAll(T[] array, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!awaitItems(true, System.nanoTime() + unit.toNanos(timeout))) {
+            return 0;
         }
+        return pollAll(array);
     }
 
-    @Override
-    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
-        long absoluteEndTime = System.nanoTime() + unit.toNanos(timeout);
-
-        int idleCounter = 0;
-        while (true) {
+    private int pollAll(T[] array) {
+        array[0] = poll();
+        int count = 1;
+        while (count < array.length) {
             T item = relaxedPoll();
             if (item == null) {
-                if (Thread.interrupted()) {
-                    throw new InterruptedException();
+                break;
+            }
+            array[count++] = item;
+        }
+        return count;
+    }
+
+    /**
+     * Wait until the queue is not empty.
+     *
+     * @return false if the deadline passed
+     */
+    private boolean awaitItems(boolean timed, long deadline) throws InterruptedException {
+        int idleCounter = 0;
+        while (isEmpty()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            long remaining = 0L;
+            if (timed) {
+                remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
                 }
+            }
+
+            if (busyWait || idleCounter < CONSUMER_SPIN_TRIES) {
+                BusyWait.onSpinWait();
+                idleCounter++;
+                continue;
+            }
 
-                if (System.nanoTime() > absoluteEndTime) {
-                    return null;
+            waitingConsumer = Thread.currentThread();
+            // check again after publishing the consumer, an item added before would not wake it up
+            if (isEmpty()) {
+                if (timed) {
+                    LockSupport.parkNanos(this, remaining);
                 } else {
-                    idleCounter = WAIT_STRATEGY.idle(idleCounter);
-                    continue;
+                    LockSupport.park(this);
                 }
             }
-
-            return item;
+            waitingConsumer = null;
         }
+        return true;
     }
 
     @Override
@@ -143,18 +234,4 @@ public class BlockingMpscQueue<T> extends MpscArrayQueue<T> implements BlockingQ
         }
 
     }
-
-    /**
-     * Waiting strategy that starts with busy loop and gradually falls back to sleeping if no items are available.
-     */
-    private static final WaitStrategy SPIN_STRATEGY = new WaitStrategy() {
-
-        @Override
-        public int idle(int idleCounter) {
-            BusyWait.onSpinWait();
-            return idleCounter + 1;
-        }
-    };
-
-    private static final WaitStrategy WAIT_STRATEGY = SPIN_STRATEGY;
 }
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.common.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Unit test of {@link BlockingMpscQueue}.
+ */
+@RunWith(Parameterized.class)
+public class BlockingMpscQueueTest {
+
+    private static final int NUM_PRODUCERS = 4;
+    private static final int NUM_ITEMS_PER_PRODUCER = 10000;
+
+    @Parameters(name = "busyWait={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][] { { true }, { false } });
+    }
+
+    private final boolean busyWait;
+
+    public BlockingMpscQueueTest(boolean busyWait) {
+        this.busyWait = busyWait;
+    }
+
+    private static void assertBlocked(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(100, TimeUnit.MILLISECONDS);
+            fail("The call should be blocked");
+        } catch (TimeoutException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOfferAndPoll() {
+        BlockingMpscQueue<Integer> queue = new BlockingMpscQueue<>(4, busyWait);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(0, queue.remainingCapacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, (int) queue.poll());
+        }
+        assertNull(queue.poll());
+        assertEquals(4, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testProducersAndConsumer() throws Exception {
+        BlockingMpscQueue<long[]> queue = new BlockingMpscQueue<>(1024, busyWait);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < NUM_PRODUCERS; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (long i = 0; i < NUM_ITEMS_PER_PRODUCER; i++) {
+                        queue.put(new long[] { producer, i });
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "producer-" + p);
+            thread.start();
+            producers.add(thread);
+        }
+        start.countDown();
+
+        // every producer's items are received once, in the order they were added
+        long[] nextItems = new long[NUM_PRODUCERS];
+        long[][] batch = new long[64][];
+        int received = 0;
+        while (received < NUM_PRODUCERS * NUM_ITEMS_PER_PRODUCER) {
+            int count = received % 2 == 0
+                    ? queue.takeAll(batch)
+                    : queue.pollAll(batch, 10, TimeUnit.SECONDS);
+            assertTrue(count > 0);
+            for (int i = 0; i < count; i++) {
+                int producer = (int) batch[i][0];
+                assertEquals(nextItems[producer]++, batch[i][1]);
+            }
+            received += count;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTakeAllIsBoundedByArray() throws Exception {
+        BlockingMpscQueue<Integer> queue = new BlockingMpscQueue<>(16, busyWait);
+        for (int i = 0; i < 10; i++) {
+            queue.put(i);
+        }
+
+        Integer[] batch = new Integer[4];
+        assertEquals(4, queue.takeAll(batch));
+        assertEquals(Arrays.asList(0, 1, 2, 3), Arrays.asList(batch));
+        assertEquals(4, queue.pollAll(batch, 0, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(4, 5, 6, 7), Arrays.asList(batch));
+        assertEquals(2, queue.takeAll(batch));
+        assertEquals(Arrays.asList(8, 9), Arrays.asList(batch).subList(0, 2));
+    }
+
+    @Test
+    public void testDrainTo() {
+        BlockingMpscQueue<Integer> queue = new BlockingMpscQueue<>(16, busyWait);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+
+        List<Integer> items = new ArrayList<>();
+        assertEquals(3, queue.drainTo(items, 3));
+        assertEquals(Arrays.asList(0, 1, 2), items);
+        assertEquals(7, queue.drainTo(items));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), items);
+        assertEquals(0, queue.drainTo(items));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTakeWaitsForItems() throws Exception {
+        BlockingMpscQueue<Integer> queue = new BlockingMpscQueue<>(16, busyWait);
+        CompletableFuture<Integer> taken = CompletableFuture.supplyAsync(() -> {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertBlocked(taken);
+
+        queue.offer(1);
+        assertEquals(1, (int) taken.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPollTimesOut() throws Exception {
+        BlockingMpscQueue<Integer> queue = new BlockingMpscQueue<>(16, busyWait);
+        long startNanos = System.nanoTime();
+        assertNull(queue.poll(20, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.pollAll(new Integer[4], 20, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void testPutWaitsForCapacity() throws Exception {
+        BlockingMpscQueue<Integer> queue = new BlockingMpscQueue<>(2, busyWait);
+        queue.put(0);
+        queue.put(1);
+        assertFalse(queue.offer(2, 20, TimeUnit.MILLISECONDS));
+
+        CompletableFuture<Void> put = CompletableFuture.runAsync(() -> {
+            try {
+                queue.put(2);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertBlocked(put);
+
+        assertEquals(0, (int) queue.take());
+        put.get(10, TimeUnit.SECONDS);
+        assertEquals(1, (int) queue.take());
+        assertEquals(2, (int) queue.take());
+    }
+
+    @Test
+    public void testTakeIsInterruptible() throws Exception {
+        BlockingMpscQueue<Integer> queue = new BlockingMpscQueue<>(16, busyWait);
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.takeAll(new Integer[4]);
+                interrupted.complete(false);
+            } catch (InterruptedException e) {
+                interrupted.complete(true);
+            }
+        });
+        consumer.start();
+        assertBlocked(interrupted);
+
+        consumer.interrupt();
+        assertTrue(interrupted.get(10, TimeUnit.SECONDS));
+        consumer.join();
+    }
+}
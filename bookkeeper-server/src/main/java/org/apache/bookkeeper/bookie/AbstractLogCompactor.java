@@ -40,8 +40,16 @@ public abstract class AbstractLogCompactor {
     protected final LogRemovalListener logRemovalListener;
 
     public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener) {
+        this(conf, logRemovalListener, new Throttler(conf));
+    }
+
+    /**
+     * Create a compactor sharing the rate limit of {@code throttler} with other compactors.
+     */
+    public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener,
+                                Throttler throttler) {
         this.conf = conf;
-        this.throttler = new Throttler(conf);
+        this.throttler = throttler;
         this.logRemovalListener = logRemovalListener;
     }
 
@@ -71,7 +79,7 @@ public abstract class AbstractLogCompactor {
         }
 
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
-        void acquire(int permits) {
+        public void acquire(int permits) {
             rateLimiter.acquire(this.isThrottleByBytes ? permits : 1);
         }
     }
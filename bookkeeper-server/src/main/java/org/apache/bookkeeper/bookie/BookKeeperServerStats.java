@@ -47,6 +47,8 @@ public interface BookKeeperServerStats {
     String ADD_ENTRY_REQUEST = "ADD_ENTRY_REQUEST";
     String ADD_ENTRY = "ADD_ENTRY";
     String ADD_ENTRY_REJECTED = "ADD_ENTRY_REJECTED";
+    String RANGE_ADD_ENTRY_REQUEST = "RANGE_ADD_ENTRY_REQUEST";
+    String RANGE_ADD_ENTRY_COUNT = "RANGE_ADD_ENTRY_COUNT";
     String FORCE_LEDGER_REQUEST = "FORCE_LEDGER_REQUEST";
     String FORCE_LEDGER = "FORCE_LEDGER";
     String READ_ENTRY_REQUEST = "READ_ENTRY_REQUEST";
@@ -60,6 +62,9 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_LONG_POLL_PRE_WAIT = "READ_ENTRY_LONG_POLL_PRE_WAIT";
     String READ_ENTRY_LONG_POLL_WAIT = "READ_ENTRY_LONG_POLL_WAIT";
     String READ_ENTRY_LONG_POLL_READ = "READ_ENTRY_LONG_POLL_READ";
+    String RANGE_READ_ENTRY_REQUEST = "RANGE_READ_ENTRY_REQUEST";
+    String RANGE_READ_ENTRY = "RANGE_READ_ENTRY";
+    String RANGE_READ_ENTRY_COUNT = "RANGE_READ_ENTRY_COUNT";
     String WRITE_LAC_REQUEST = "WRITE_LAC_REQUEST";
     String WRITE_LAC = "WRITE_LAC";
     String READ_LAC_REQUEST = "READ_LAC_REQUEST";
@@ -68,6 +73,9 @@ public interface BookKeeperServerStats {
     String GET_BOOKIE_INFO = "GET_BOOKIE_INFO";
     String GET_LIST_OF_ENTRIES_OF_LEDGER = "GET_LIST_OF_ENTRIES_OF_LEDGER";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST = "GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST";
+    String COPY_FRAGMENT = "COPY_FRAGMENT";
+    String COPY_FRAGMENT_REQUEST = "COPY_FRAGMENT_REQUEST";
+    String COPY_FRAGMENT_BYTES = "COPY_FRAGMENT_BYTES";
 
     // Ensemble Stats
     String WATCHER_SCOPE = "bookie_watcher";
@@ -89,6 +97,7 @@ public interface BookKeeperServerStats {
     String BOOKIE_ADD_ENTRY_BYTES = "BOOKIE_ADD_ENTRY_BYTES";
     String BOOKIE_READ_ENTRY_BYTES = "BOOKIE_READ_ENTRY_BYTES";
     String BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER = "BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String BOOKIE_JOURNAL_REPLAY = "BOOKIE_JOURNAL_REPLAY";
 
     String ADD_ENTRY_IN_PROGRESS = "ADD_ENTRY_IN_PROGRESS";
     String ADD_ENTRY_BLOCKED = "ADD_ENTRY_BLOCKED";
@@ -96,6 +105,12 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_IN_PROGRESS = "READ_ENTRY_IN_PROGRESS";
     String READ_ENTRY_BLOCKED = "READ_ENTRY_BLOCKED";
     String READ_ENTRY_BLOCKED_WAIT = "READ_ENTRY_BLOCKED_WAIT";
+    // per client stats of the requests queued by the admission control
+    String CLIENT_LABEL = "client";
+    String ADD_ENTRY_CLIENT_QUEUED = "ADD_ENTRY_CLIENT_QUEUED";
+    String ADD_ENTRY_CLIENT_REJECTED = "ADD_ENTRY_CLIENT_REJECTED";
+    String READ_ENTRY_CLIENT_QUEUED = "READ_ENTRY_CLIENT_QUEUED";
+    String READ_ENTRY_CLIENT_REJECTED = "READ_ENTRY_CLIENT_REJECTED";
 
     //
     // Journal Stats (scoped under SERVER_SCOPE)
@@ -120,6 +135,8 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_LEDGERS = "JOURNAL_LEDGERS";
+    String JOURNAL_WRITE_RATE = "JOURNAL_WRITE_RATE";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
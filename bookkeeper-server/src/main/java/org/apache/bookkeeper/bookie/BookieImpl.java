@@ -31,6 +31,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -48,6 +49,9 @@ import java.util.Optional;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
@@ -95,6 +99,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    private final JournalSelector journalSelector;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -480,6 +485,10 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
 
         handles = new HandleFactoryImpl(ledgerStorage);
 
+        journalSelector = new JournalSelector(journals, conf.getJournalSelectLeastLoaded(),
+                statsLogger.scope(JOURNAL_SCOPE));
+        ledgerStorage.registerLedgerDeletionListener(journalSelector);
+
         // Expose Stats
         this.bookieStats = new BookieStats(statsLogger, journalDirectories.size(), conf.getJournalQueueSize());
     }
@@ -583,13 +592,51 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             }
         };
 
-        for (Journal journal : journals) {
-            replay(journal, scanner);
-        }
+        replayJournals(scanner);
         long elapsedTs = System.currentTimeMillis() - startTs;
+        bookieStats.getJournalReplayStats().registerSuccessfulEvent(elapsedTs, TimeUnit.MILLISECONDS);
         LOG.info("Finished replaying journal in {} ms.", elapsedTs);
     }
 
+    /**
+     * Replay the journals concurrently, one thread per journal directory. The entries of a
+     * ledger are replayed in the order of each journal, the ledger storage handles the
+     * concurrent inserts as it does for the add requests.
+     */
+    private void replayJournals(JournalScanner scanner) throws IOException {
+        if (journals.size() <= 1) {
+            for (Journal journal : journals) {
+                replay(journal, scanner);
+            }
+            return;
+        }
+
+        ExecutorService replayExecutor = Executors.newFixedThreadPool(journals.size(),
+                new DefaultThreadFactory("BookieJournalReplay"));
+        try {
+            List<Future<?>> replays = new ArrayList<>(journals.size());
+            for (Journal journal : journals) {
+                replays.add(replayExecutor.submit(() -> {
+                    replay(journal, scanner);
+                    return null;
+                }));
+            }
+            for (Future<?> replay : replays) {
+                replay.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying journals", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException("Failed to replay journals", ee.getCause());
+        } finally {
+            replayExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Replay journal files and updates journal's in-memory lastLogMark object.
      *
@@ -609,9 +656,6 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             }
         }
 
-        // TODO: When reading in the journal logs that need to be synced, we
-        // should use BufferedChannels instead to minimize the amount of
-        // system calls done.
         for (Long id : logs) {
             long logPosition = 0L;
             if (id == markedLog.getLogFileId()) {
@@ -894,7 +938,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     }
 
     private Journal getJournal(long ledgerId) {
-        return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+        return journalSelector.getJournal(ledgerId);
     }
 
     /**
@@ -910,20 +954,23 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
 
         // journal `addEntry` should happen after the entry is added to ledger storage.
         // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
+        // a ledger known from the replay may be pinned to another journal than the one holding its key
+        boolean logKey = journalSelector.pin(ledgerId);
         if (masterKeyCache.get(ledgerId) == null) {
             // Force the load into masterKey cache
             byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
-            if (oldValue == null) {
-                // new handle, we should add the key to journal ensure we can rebuild
-                ByteBuffer bb = ByteBuffer.allocate(8 + 8 + 4 + masterKey.length);
-                bb.putLong(ledgerId);
-                bb.putLong(METAENTRY_ID_LEDGER_KEY);
-                bb.putInt(masterKey.length);
-                bb.put(masterKey);
-                bb.flip();
-
-                getJournal(ledgerId).logAddEntry(bb, false /* ackBeforeSync */, new NopWriteCallback(), null);
-            }
+            // new handle, we should add the key to journal ensure we can rebuild
+            logKey |= oldValue == null;
+        }
+        if (logKey) {
+            ByteBuffer bb = ByteBuffer.allocate(8 + 8 + 4 + masterKey.length);
+            bb.putLong(ledgerId);
+            bb.putLong(METAENTRY_ID_LEDGER_KEY);
+            bb.putInt(masterKey.length);
+            bb.put(masterKey);
+            bb.flip();
+
+            getJournal(ledgerId).logAddEntry(bb, false /* ackBeforeSync */, new NopWriteCallback(), null);
         }
 
         if (!writeDataToJournal) {
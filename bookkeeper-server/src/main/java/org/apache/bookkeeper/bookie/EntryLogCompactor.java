@@ -52,7 +52,16 @@ public class EntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, new Throttler(conf));
+    }
+
+    public EntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            Throttler throttler) {
+        super(conf, logRemover, throttler);
         this.maxOutstandingRequests = conf.getCompactionMaxOutstandingRequests();
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
@@ -94,6 +94,17 @@ public class EntryLogMetadata {
         return ledgersMap;
     }
 
+    /**
+     * Create a copy of this metadata, which stays valid after this object is recycled.
+     */
+    public EntryLogMetadata copy() {
+        EntryLogMetadata copy = new EntryLogMetadata(entryLogId);
+        copy.totalSize = totalSize;
+        copy.remainingSize = remainingSize;
+        ledgersMap.forEach(copy.ledgersMap::put);
+        return copy;
+    }
+
     public void removeLedgerIf(LongPredicate predicate) {
         ledgersMap.removeIf((ledgerId, size) -> {
             boolean shouldRemove = predicate.test(ledgerId);
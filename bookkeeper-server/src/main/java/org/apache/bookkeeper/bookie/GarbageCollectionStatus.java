@@ -44,4 +44,11 @@ public class GarbageCollectionStatus {
     private long lastMinorCompactionTime;
     private long majorCompactionCounter;
     private long minorCompactionCounter;
+
+    // number of entry logs compacted, per usage bucket [10% 20% ... 100%] of the entry logs
+    private long[] compactedEntryLogsPerBucket;
+    // number of bytes reclaimed by compaction, per usage bucket
+    private long[] reclaimedBytesPerBucket;
+    // number of bytes reclaimed per second spent compacting, per usage bucket
+    private double[] reclaimRatePerBucket;
 }
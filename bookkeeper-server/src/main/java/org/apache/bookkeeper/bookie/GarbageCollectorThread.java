@@ -28,12 +28,21 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import lombok.Getter;
 
@@ -48,7 +57,6 @@ import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.SafeRunnable;
 import org.apache.commons.lang3.mutable.MutableBoolean;
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -91,6 +99,17 @@ public class GarbageCollectorThread extends SafeRunnable {
     final EntryLogger entryLogger;
     final AbstractLogCompactor compactor;
 
+    // One compactor per compaction worker, all sharing the same rate limit
+    final List<AbstractLogCompactor> compactors;
+    // Null when the entry logs are compacted by the gc thread itself
+    private final ExecutorService compactionExecutor;
+
+    private static final int NUM_USAGE_BUCKETS = 10;
+    // Compaction results per usage bucket of the compacted entry logs
+    private final AtomicLongArray compactedEntryLogsPerBucket = new AtomicLongArray(NUM_USAGE_BUCKETS);
+    private final AtomicLongArray reclaimedBytesPerBucket = new AtomicLongArray(NUM_USAGE_BUCKETS);
+    private final AtomicLongArray compactionTimeNanosPerBucket = new AtomicLongArray(NUM_USAGE_BUCKETS);
+
     // Stats loggers for garbage collection operations
     private final GarbageCollectorStats gcStats;
 
@@ -108,6 +127,8 @@ public class GarbageCollectorThread extends SafeRunnable {
     final AtomicBoolean majorCompacting = new AtomicBoolean(false);
 
     volatile boolean running = true;
+    // set when shutdown starts, so that the compaction workers stop picking new entry logs
+    volatile boolean shutdownRequested = false;
 
     // Boolean to trigger a forced GC.
     final AtomicBoolean forceGarbageCollection = new AtomicBoolean(false);
@@ -210,10 +231,24 @@ public class GarbageCollectorThread extends SafeRunnable {
                 }
             }
         };
-        if (conf.getUseTransactionalCompaction()) {
-            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+        AbstractLogCompactor.Throttler compactionThrottler = new AbstractLogCompactor.Throttler(conf);
+        int compactionThreads = Math.max(1, conf.getCompactionThreads());
+        this.compactors = new ArrayList<>(compactionThreads);
+        for (int i = 0; i < compactionThreads; i++) {
+            if (conf.getUseTransactionalCompaction()) {
+                compactors.add(new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                        compactionThrottler));
+            } else {
+                compactors.add(new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                        compactionThrottler));
+            }
+        }
+        this.compactor = compactors.get(0);
+        if (compactionThreads > 1) {
+            this.compactionExecutor = Executors.newFixedThreadPool(compactionThreads,
+                    new DefaultThreadFactory("GarbageCollectorThread-compaction"));
         } else {
-            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+            this.compactionExecutor = null;
         }
 
         this.throttler = new AbstractLogCompactor.Throttler(conf);
@@ -534,48 +569,66 @@ public class GarbageCollectorThread extends SafeRunnable {
      * Those entry log files whose remaining size percentage is higher than threshold
      * would not be compacted.
      * </p>
+     *
+     * <p>
+     * The candidates are compacted in order of increasing usage, since the emptiest logs reclaim
+     * the most space for each byte copied. When more than one compaction thread is configured, the
+     * candidates are shared by the compaction workers.
+     * </p>
      */
     @VisibleForTesting
     void doCompactEntryLogs(double threshold, long maxTimeMillis) throws EntryLogMetadataMapException {
         LOG.info("Do compaction to compact those files lower than {}", threshold);
 
-        final int numBuckets = 10;
-        int[] entryLogUsageBuckets = new int[numBuckets];
-        int[] compactedBuckets = new int[numBuckets];
-
-        long start = System.currentTimeMillis();
-        MutableLong end = new MutableLong(start);
-        MutableLong timeDiff = new MutableLong(0);
+        int[] entryLogUsageBuckets = new int[NUM_USAGE_BUCKETS];
+        AtomicIntegerArray compactedBuckets = new AtomicIntegerArray(NUM_USAGE_BUCKETS);
 
+        // We go through all the entry logs so that we get a accurate report of where
+        // the usage was prior to running compaction.
+        List<EntryLogMetadata> candidates = new ArrayList<>();
         entryLogMetaMap.forEach((entryLogId, meta) -> {
-            int bucketIndex = calculateUsageIndex(numBuckets, meta.getUsage());
+            int bucketIndex = calculateUsageIndex(NUM_USAGE_BUCKETS, meta.getUsage());
             entryLogUsageBuckets[bucketIndex]++;
-
-            if (timeDiff.getValue() < maxTimeMillis) {
-                end.setValue(System.currentTimeMillis());
-                timeDiff.setValue(end.getValue() - start);
-            }
-            if (meta.getUsage() >= threshold || (maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis)
-                    || !running) {
-                // We allow the usage limit calculation to continue so that we get a accurate
-                // report of where the usage was prior to running compaction.
-                return;
+            if (meta.getUsage() < threshold) {
+                // the metadata can be recycled by the map once we return
+                candidates.add(meta.copy());
             }
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Compacting entry log {} with usage {} below threshold {}",
-                        meta.getEntryLogId(), meta.getUsage(), threshold);
+        });
+        candidates.sort(Comparator.comparingDouble(EntryLogMetadata::getUsage));
+
+        Queue<EntryLogMetadata> queue = new ConcurrentLinkedQueue<>(candidates);
+        long start = System.currentTimeMillis();
+        if (compactionExecutor == null) {
+            compactEntryLogs(queue, null, threshold, start, maxTimeMillis, compactedBuckets);
+        } else if (compacting.compareAndSet(false, true)) {
+            // Shutdown waits for the compacting flag, the workers stop as soon as it is requested
+            try {
+                List<Future<?>> workers = new ArrayList<>(compactors.size());
+                for (AbstractLogCompactor logCompactor : compactors) {
+                    workers.add(compactionExecutor.submit(() ->
+                            compactEntryLogs(queue, logCompactor, threshold, start, maxTimeMillis, compactedBuckets)));
+                }
+                for (Future<?> worker : workers) {
+                    try {
+                        worker.get();
+                    } catch (ExecutionException e) {
+                        LOG.error("Compaction worker failed", e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted while waiting for the compaction workers");
+            } finally {
+                compacting.set(false);
             }
+        }
 
-            long priorRemainingSize = meta.getRemainingSize();
-            compactEntryLog(meta);
-            gcStats.getReclaimedSpaceViaCompaction().add(meta.getTotalSize() - priorRemainingSize);
-            compactedBuckets[bucketIndex]++;
-        });
+        long timeDiff = System.currentTimeMillis() - start;
         if (LOG.isDebugEnabled()) {
             if (!running) {
                 LOG.debug("Compaction exited due to gc not running");
             }
-            if (timeDiff.getValue() > maxTimeMillis) {
+            if (maxTimeMillis > 0 && timeDiff > maxTimeMillis) {
                 LOG.debug("Compaction ran for {}ms but was limited by {}ms", timeDiff, maxTimeMillis);
             }
         }
@@ -584,6 +637,41 @@ public class GarbageCollectorThread extends SafeRunnable {
                 entryLogUsageBuckets, compactedBuckets);
     }
 
+    /**
+     * Compact the candidates until none is left or the compaction has to stop.
+     *
+     * @param logCompactor the compactor of the worker, or null when running on the gc thread
+     */
+    private void compactEntryLogs(Queue<EntryLogMetadata> candidates, AbstractLogCompactor logCompactor,
+                                  double threshold, long start, long maxTimeMillis,
+                                  AtomicIntegerArray compactedBuckets) {
+        while (running && !shutdownRequested
+                && (maxTimeMillis <= 0 || System.currentTimeMillis() - start < maxTimeMillis)) {
+            EntryLogMetadata meta = candidates.poll();
+            if (meta == null) {
+                return;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compacting entry log {} with usage {} below threshold {}",
+                        meta.getEntryLogId(), meta.getUsage(), threshold);
+            }
+
+            int bucketIndex = calculateUsageIndex(NUM_USAGE_BUCKETS, meta.getUsage());
+            long priorRemainingSize = meta.getRemainingSize();
+            long compactionStart = MathUtils.nowInNano();
+            boolean compacted = logCompactor == null
+                    ? compactEntryLog(meta) : compactEntryLog(logCompactor, meta);
+            if (compacted) {
+                long reclaimed = meta.getTotalSize() - priorRemainingSize;
+                gcStats.getReclaimedSpaceViaCompaction().add(reclaimed);
+                compactedBuckets.incrementAndGet(bucketIndex);
+                compactedEntryLogsPerBucket.incrementAndGet(bucketIndex);
+                reclaimedBytesPerBucket.addAndGet(bucketIndex, reclaimed);
+                compactionTimeNanosPerBucket.addAndGet(bucketIndex, MathUtils.elapsedNanos(compactionStart));
+            }
+        }
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -609,6 +697,7 @@ public class GarbageCollectorThread extends SafeRunnable {
         }
         LOG.info("Shutting down GarbageCollectorThread");
 
+        shutdownRequested = true;
         while (!compacting.compareAndSet(false, true)) {
             // Wait till the thread stops compacting
             Thread.sleep(100);
@@ -617,6 +706,9 @@ public class GarbageCollectorThread extends SafeRunnable {
         this.running = false;
         // Interrupt GC executor thread
         gcExecutor.shutdownNow();
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdownNow();
+        }
         try {
             entryLogMetaMap.close();
         } catch (Exception e) {
@@ -643,8 +735,9 @@ public class GarbageCollectorThread extends SafeRunnable {
      * Compact an entry log.
      *
      * @param entryLogMeta
+     * @return true if the entry log was compacted
      */
-    protected void compactEntryLog(EntryLogMetadata entryLogMeta) {
+    protected boolean compactEntryLog(EntryLogMetadata entryLogMeta) {
         // Similar with Sync Thread
         // try to mark compacting flag to make sure it would not be interrupted
         // by shutdown during compaction. otherwise it will receive
@@ -653,20 +746,27 @@ public class GarbageCollectorThread extends SafeRunnable {
         if (!compacting.compareAndSet(false, true)) {
             // set compacting flag failed, means compacting is true now
             // indicates that compaction is in progress for this EntryLogId.
-            return;
+            return false;
         }
 
         try {
-            // Do the actual compaction
-            compactor.compact(entryLogMeta);
-        } catch (Exception e) {
-            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+            return compactEntryLog(compactor, entryLogMeta);
         } finally {
             // Mark compaction done
             compacting.set(false);
         }
     }
 
+    private boolean compactEntryLog(AbstractLogCompactor logCompactor, EntryLogMetadata entryLogMeta) {
+        try {
+            // Do the actual compaction
+            return logCompactor.compact(entryLogMeta);
+        } catch (Exception e) {
+            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+            return false;
+        }
+    }
+
     /**
      * Method to read in all of the entry logs (those that we haven't done so yet),
      * and find the set of ledger ID's that make up each entry log file.
@@ -725,6 +825,29 @@ public class GarbageCollectorThread extends SafeRunnable {
             .lastMinorCompactionTime(lastMinorCompactionTime)
             .majorCompactionCounter(gcStats.getMajorCompactionCounter().get())
             .minorCompactionCounter(gcStats.getMinorCompactionCounter().get())
+            .compactedEntryLogsPerBucket(toArray(compactedEntryLogsPerBucket))
+            .reclaimedBytesPerBucket(toArray(reclaimedBytesPerBucket))
+            .reclaimRatePerBucket(getReclaimRatePerBucket())
             .build();
     }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i);
+        }
+        return values;
+    }
+
+    // bytes reclaimed per second spent compacting the entry logs of each usage bucket
+    private double[] getReclaimRatePerBucket() {
+        double[] rates = new double[NUM_USAGE_BUCKETS];
+        for (int i = 0; i < NUM_USAGE_BUCKETS; i++) {
+            long timeNanos = compactionTimeNanosPerBucket.get(i);
+            if (timeNanos > 0) {
+                rates[i] = reclaimedBytesPerBucket.get(i) / (timeNanos / (double) TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+        return rates;
+    }
 }
@@ -41,12 +41,11 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.JournalStats;
@@ -634,6 +633,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     final long journalPreAllocSize;
     // write buffer size for the journal files
     final int journalWriteBufferSize;
+    // read-ahead buffer size when scanning the journal files
+    final int journalReplayReadAheadSize;
+    // size of the entries added to the journal, to measure its load
+    private final LongAdder addedBytes = new LongAdder();
     // number journal files kept before marked journal
     final int maxBackupJournals;
 
@@ -676,8 +679,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private static String journalThreadName = "BookieJournal";
 
     // journal entry queue to commit
-    final BlockingQueue<QueueEntry> queue;
-    final BlockingQueue<ForceWriteRequest> forceWriteRequests;
+    final BlockingMpscQueue<QueueEntry> queue;
+    final BlockingMpscQueue<ForceWriteRequest> forceWriteRequests;
+    // entries drained from the queue by the journal thread, and not processed yet
+    private volatile int drainedQueueEntries = 0;
 
     volatile boolean running = true;
     private final LedgerDirsManager ledgerDirsManager;
@@ -700,14 +705,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex));
 
-        if (conf.isBusyWaitEnabled()) {
-            // To achieve lower latency, use busy-wait blocking queue implementation
-            queue = new BlockingMpscQueue<>(conf.getJournalQueueSize());
-            forceWriteRequests = new BlockingMpscQueue<>(conf.getJournalQueueSize());
-        } else {
-            queue = new ArrayBlockingQueue<>(conf.getJournalQueueSize());
-            forceWriteRequests = new ArrayBlockingQueue<>(conf.getJournalQueueSize());
-        }
+        // The add threads enqueue without contending on a lock. To achieve lower latency with
+        // busy-wait, the journal threads spin instead of parking when their queue is empty
+        queue = new BlockingMpscQueue<>(conf.getJournalQueueSize(), conf.isBusyWaitEnabled());
+        forceWriteRequests = new BlockingMpscQueue<>(conf.getJournalQueueSize(), conf.isBusyWaitEnabled());
 
         // Adjust the journal max memory in case there are multiple journals configured.
         long journalMaxMemory = conf.getJournalMaxMemorySizeMb() / conf.getJournalDirNames().length * 1024 * 1024;
@@ -718,6 +719,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.maxJournalSize = conf.getMaxJournalSizeMB() * MB;
         this.journalPreAllocSize = conf.getJournalPreAllocSizeMB() * MB;
         this.journalWriteBufferSize = conf.getJournalWriteBufferSizeKB() * KB;
+        this.journalReplayReadAheadSize = Math.max(conf.getJournalReplayReadAheadSizeKB(), 1) * KB;
         this.syncData = conf.getJournalSyncData();
         this.maxBackupJournals = conf.getMaxBackupJournals();
         this.forceWriteThread = new ForceWriteThread(this, conf.getJournalAdaptiveGroupWrites(),
@@ -855,14 +857,17 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
         int journalVersion = recLog.getFormatVersion();
         try {
+            // the journal is read sequentially in large chunks, the records are copied from it
+            ByteBuffer readAhead = ByteBuffer.allocate(journalReplayReadAheadSize);
+            readAhead.flip();
             ByteBuffer lenBuff = ByteBuffer.allocate(4);
             ByteBuffer recBuff = ByteBuffer.allocate(64 * 1024);
             while (true) {
                 // entry start offset
-                long offset = recLog.fc.position();
+                long offset = recLog.fc.position() - readAhead.remaining();
                 // start reading entry
                 lenBuff.clear();
-                fullRead(recLog, lenBuff);
+                fullRead(recLog, readAhead, lenBuff);
                 if (lenBuff.remaining() != 0) {
                     break;
                 }
@@ -876,7 +881,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
                         // skip padding bytes
                         lenBuff.clear();
-                        fullRead(recLog, lenBuff);
+                        fullRead(recLog, readAhead, lenBuff);
                         if (lenBuff.remaining() != 0) {
                             break;
                         }
@@ -896,7 +901,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     recBuff = ByteBuffer.allocate(len);
                 }
                 recBuff.limit(len);
-                if (fullRead(recLog, recBuff) != len) {
+                if (fullRead(recLog, readAhead, recBuff) != len) {
                     // This seems scary, but it just means that this is where we
                     // left off writing
                     break;
@@ -906,7 +911,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     scanner.process(journalVersion, offset, recBuff);
                 }
             }
-            return recLog.fc.position();
+            return recLog.fc.position() - readAhead.remaining();
         } finally {
             recLog.close();
         }
@@ -938,6 +943,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         journalStats.getJournalCbQueueSize().inc();
 
         memoryLimitController.reserveMemory(entry.readableBytes());
+        addedBytes.add(entry.readableBytes());
 
         queue.put(QueueEntry.create(
                 entry, ackBeforeSync,  ledgerId, entryId, cb, ctx, MathUtils.nowInNano(),
@@ -959,12 +965,22 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     }
 
     /**
-     * Get the length of journal entries queue.
+     * Get the length of journal entries queue, including the entries already drained by the
+     * journal thread that it did not process yet.
      *
      * @return length of journal entry queue.
      */
     public int getJournalQueueLength() {
-        return queue.size();
+        return queue.size() + drainedQueueEntries;
+    }
+
+    /**
+     * Get the total size of the entries added to the journal.
+     *
+     * @return the number of bytes added since the journal was created.
+     */
+    long getAddedBytes() {
+        return addedBytes.sum();
     }
 
     /**
@@ -997,6 +1013,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         RecyclableArrayList<QueueEntry> toFlush = entryListRecycler.newInstance();
         int numEntriesToFlush = 0;
+        // entries drained from the queue in one batch, processed one at a time
+        QueueEntry[] localQueueEntries = new QueueEntry[conf.getJournalQueueSize()];
+        int localQueueEntriesIdx = 0;
+        int localQueueEntriesLen = 0;
         ByteBuf lenBuff = Unpooled.buffer(4);
         ByteBuf paddingBuff = Unpooled.buffer(2 * conf.getJournalAlignmentSize());
         paddingBuff.writeZero(paddingBuff.capacity());
@@ -1048,10 +1068,16 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     }
 
                     if (numEntriesToFlush == 0) {
-                        journalTime.add(MathUtils.elapsedNanos(busyStartTime));
-                        qe = queue.take();
+                        if (localQueueEntriesIdx == localQueueEntriesLen) {
+                            journalTime.add(MathUtils.elapsedNanos(busyStartTime));
+                            localQueueEntriesLen = queue.takeAll(localQueueEntries);
+                            localQueueEntriesIdx = 0;
+                            busyStartTime = MathUtils.nowInNano();
+                        }
+                        qe = localQueueEntries[localQueueEntriesIdx];
+                        localQueueEntries[localQueueEntriesIdx++] = null;
+                        drainedQueueEntries = localQueueEntriesLen - localQueueEntriesIdx;
                         dequeueStartTime = MathUtils.nowInNano();
-                        busyStartTime = dequeueStartTime;
                         journalStats.getJournalQueueSize().dec();
                         journalStats.getJournalQueueStats()
                             .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
@@ -1061,7 +1087,16 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
                         }
-                        qe = queue.poll(pollWaitTimeNanos, TimeUnit.NANOSECONDS);
+                        if (localQueueEntriesIdx == localQueueEntriesLen) {
+                            localQueueEntriesLen = queue.pollAll(localQueueEntries,
+                                    pollWaitTimeNanos, TimeUnit.NANOSECONDS);
+                            localQueueEntriesIdx = 0;
+                        }
+                        if (localQueueEntriesIdx < localQueueEntriesLen) {
+                            qe = localQueueEntries[localQueueEntriesIdx];
+                            localQueueEntries[localQueueEntriesIdx++] = null;
+                            drainedQueueEntries = localQueueEntriesLen - localQueueEntriesIdx;
+                        }
                         dequeueStartTime = MathUtils.nowInNano();
 
                         if (qe != null) {
@@ -1265,14 +1300,27 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
     }
 
-    private static int fullRead(JournalChannel fc, ByteBuffer bb) throws IOException {
+    /**
+     * Fill bb with the data of the read-ahead buffer, reading the next chunk of the journal
+     * into it whenever it is consumed.
+     */
+    private static int fullRead(JournalChannel fc, ByteBuffer readAhead, ByteBuffer bb) throws IOException {
         int total = 0;
         while (bb.remaining() > 0) {
-            int rc = fc.read(bb);
-            if (rc <= 0) {
-                return total;
+            if (!readAhead.hasRemaining()) {
+                readAhead.clear();
+                int rc = fc.read(readAhead);
+                readAhead.flip();
+                if (rc <= 0) {
+                    return total;
+                }
             }
-            total += rc;
+            int size = Math.min(bb.remaining(), readAhead.remaining());
+            ByteBuffer chunk = readAhead.duplicate();
+            chunk.limit(chunk.position() + size);
+            bb.put(chunk);
+            readAhead.position(readAhead.position() + size);
+            total += size;
         }
         return total;
     }
@@ -0,0 +1,182 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_LEDGERS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_RATE;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Selects the journal of the entries of each ledger.
+ *
+ * <p>By default, the journal is chosen by the ledger id. With least loaded selection, a ledger
+ * gets the least loaded journal when the bookie first writes it, and keeps it as long as the
+ * bookie runs, so that the entries of a ledger are journaled in order. The load of a journal is
+ * the number of entries in its queue, then its write rate, then the number of its ledgers.
+ *
+ * <p>As the selection is not kept across restarts, a ledger may be journaled to another journal
+ * than before the restart: the bookie logs the ledger key again in the journal a ledger is pinned
+ * to, so that each journal can be replayed on its own.
+ */
+class JournalSelector implements LedgerStorage.LedgerDeletionListener {
+
+    private static final long RATE_SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Journal> journals;
+    private final boolean leastLoaded;
+    private final ConcurrentLongLongHashMap ledgerJournals;
+
+    // guarded by this
+    private final long[] ledgerCounts;
+    private final long[] lastAddedBytes;
+    private final double[] writeRates;
+    private long lastSampleNanos;
+
+    JournalSelector(List<Journal> journals, boolean leastLoaded, StatsLogger statsLogger) {
+        this.journals = journals;
+        this.leastLoaded = leastLoaded && journals.size() > 1;
+        this.ledgerJournals = ConcurrentLongLongHashMap.newBuilder().build();
+        this.ledgerCounts = new long[journals.size()];
+        this.lastAddedBytes = new long[journals.size()];
+        this.writeRates = new double[journals.size()];
+        this.lastSampleNanos = MathUtils.nowInNano();
+
+        if (this.leastLoaded) {
+            for (int i = 0; i < journals.size(); i++) {
+                final int journalIndex = i;
+                StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(i));
+                journalStatsLogger.registerGauge(JOURNAL_LEDGERS, new Gauge<Long>() {
+                    @Override
+                    public Long getDefaultValue() {
+                        return 0L;
+                    }
+
+                    @Override
+                    public Long getSample() {
+                        return getLedgerCount(journalIndex);
+                    }
+                });
+                journalStatsLogger.registerGauge(JOURNAL_WRITE_RATE, new Gauge<Long>() {
+                    @Override
+                    public Long getDefaultValue() {
+                        return 0L;
+                    }
+
+                    @Override
+                    public Long getSample() {
+                        return getWriteRate(journalIndex);
+                    }
+                });
+            }
+        }
+    }
+
+    Journal getJournal(long ledgerId) {
+        if (!leastLoaded) {
+            return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+        }
+        return journals.get((int) ledgerJournals.computeIfAbsent(ledgerId, lid -> selectLeastLoaded()));
+    }
+
+    /**
+     * Pin the ledger to the least loaded journal, if it is not pinned yet.
+     *
+     * @return true if the ledger was pinned by this call, false if it already was or if the
+     *         journal is chosen by the ledger id
+     */
+    boolean pin(long ledgerId) {
+        if (!leastLoaded || ledgerJournals.containsKey(ledgerId)) {
+            return false;
+        }
+        boolean[] pinned = new boolean[1];
+        ledgerJournals.computeIfAbsent(ledgerId, lid -> {
+            pinned[0] = true;
+            return selectLeastLoaded();
+        });
+        return pinned[0];
+    }
+
+    @Override
+    public void ledgerDeleted(long ledgerId) {
+        if (!leastLoaded) {
+            return;
+        }
+        long journalIndex = ledgerJournals.remove(ledgerId);
+        if (journalIndex >= 0) {
+            synchronized (this) {
+                ledgerCounts[(int) journalIndex]--;
+            }
+        }
+    }
+
+    private synchronized long selectLeastLoaded() {
+        sampleWriteRates();
+        int selected = 0;
+        int selectedQueueLength = journals.get(0).getJournalQueueLength();
+        for (int i = 1; i < journals.size(); i++) {
+            int queueLength = journals.get(i).getJournalQueueLength();
+            if (queueLength < selectedQueueLength
+                    || (queueLength == selectedQueueLength && isLessLoaded(i, selected))) {
+                selected = i;
+                selectedQueueLength = queueLength;
+            }
+        }
+        ledgerCounts[selected]++;
+        return selected;
+    }
+
+    private boolean isLessLoaded(int journal, int other) {
+        if (writeRates[journal] != writeRates[other]) {
+            return writeRates[journal] < writeRates[other];
+        }
+        return ledgerCounts[journal] < ledgerCounts[other];
+    }
+
+    private void sampleWriteRates() {
+        long now = MathUtils.nowInNano();
+        long elapsedNanos = now - lastSampleNanos;
+        if (elapsedNanos < RATE_SAMPLE_INTERVAL_NANOS) {
+            return;
+        }
+        for (int i = 0; i < journals.size(); i++) {
+            long addedBytes = journals.get(i).getAddedBytes();
+            writeRates[i] = (addedBytes - lastAddedBytes[i]) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+            lastAddedBytes[i] = addedBytes;
+        }
+        lastSampleNanos = now;
+    }
+
+    private synchronized long getLedgerCount(int journalIndex) {
+        return ledgerCounts[journalIndex];
+    }
+
+    private synchronized long getWriteRate(int journalIndex) {
+        sampleWriteRates();
+        return (long) writeRates[journalIndex];
+    }
+}
@@ -24,6 +24,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_ADD_ENTR
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_ADD_ENTRY_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_JOURNAL_REPLAY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_READ_ENTRY_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_RECOVERY_ADD_ENTRY;
@@ -88,6 +89,8 @@ public class BookieStats {
     private final OpStatsLogger addBytesStats;
     @StatsDoc(name = BOOKIE_READ_ENTRY_BYTES, help = "bytes stats of ReadEntry on a bookie")
     private final OpStatsLogger readBytesStats;
+    @StatsDoc(name = BOOKIE_JOURNAL_REPLAY, help = "time spent replaying the journals on bookie startup")
+    private final OpStatsLogger journalReplayStats;
     @StatsDoc(name = JOURNAL_DIRS, help = "number of configured journal directories")
     private final Gauge<Integer> journalDirsGauge;
     @StatsDoc(name = JOURNAL_QUEUE_MAX_SIZE, help = "maximum length of a journal queue")
@@ -104,6 +107,7 @@ public class BookieStats {
         getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER);
         addBytesStats = statsLogger.getOpStatsLogger(BOOKIE_ADD_ENTRY_BYTES);
         readBytesStats = statsLogger.getOpStatsLogger(BOOKIE_READ_ENTRY_BYTES);
+        journalReplayStats = statsLogger.getOpStatsLogger(BOOKIE_JOURNAL_REPLAY);
         journalDirsGauge = new Gauge<Integer>() {
             @Override
             public Integer getDefaultValue() {
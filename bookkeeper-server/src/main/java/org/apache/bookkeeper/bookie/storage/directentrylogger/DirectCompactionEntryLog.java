@@ -0,0 +1,202 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import com.google.common.base.MoreObjects;
+import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.io.IOException;
+import org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.util.HardLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compaction entry log of the {@link DirectEntryLogger}.
+ * <p/>
+ * The compacted entries are written to {@code <dst>.log.compacting}. Once compacted, it is
+ * linked as {@code <dst>.log.<src>.compacted}, which survives a crash of the bookie, and
+ * then linked as {@code <dst>.log} to be available for reads. These are the same files as
+ * the compaction logs of the DefaultEntryLogger.
+ * <p/>
+ * The compaction log writes with its own buffers, so that compactions do not compete with
+ * the current entry log for the write buffers.
+ */
+class DirectCompactionEntryLog implements CompactionEntryLog {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectCompactionEntryLog.class);
+
+    private final DirectEntryLogger entryLogger;
+    private final long srcLogId;
+    private final long dstLogId;
+    private final File compactingFile;
+    private final File compactedFile;
+    private final File completeFile;
+
+    private BufferPool bufferPool;
+    private WriterWithMetadata writer;
+
+    private DirectCompactionEntryLog(DirectEntryLogger entryLogger, long srcLogId, long dstLogId,
+                                     File compactingFile, File compactedFile, File completeFile) {
+        this.entryLogger = entryLogger;
+        this.srcLogId = srcLogId;
+        this.dstLogId = dstLogId;
+        this.compactingFile = compactingFile;
+        this.compactedFile = compactedFile;
+        this.completeFile = completeFile;
+    }
+
+    /**
+     * Start a new compaction of srcLogId into dstLogId.
+     */
+    static DirectCompactionEntryLog newLog(DirectEntryLogger entryLogger, File ledgerDir,
+                                           long srcLogId, long dstLogId) throws IOException {
+        DirectCompactionEntryLog log = new DirectCompactionEntryLog(entryLogger, srcLogId, dstLogId,
+                compactingFile(ledgerDir, dstLogId), compactedFile(ledgerDir, dstLogId, srcLogId),
+                DirectEntryLogger.logFile(ledgerDir, dstLogId));
+        log.bufferPool = entryLogger.newCompactionBufferPool();
+        try {
+            log.writer = entryLogger.newWriter(dstLogId, log.compactingFile, log.bufferPool);
+        } catch (IOException e) {
+            log.bufferPool.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * Resume a compaction that was interrupted after srcLogId was compacted to dstLogId.
+     */
+    static DirectCompactionEntryLog recoverLog(DirectEntryLogger entryLogger, File ledgerDir,
+                                               long srcLogId, long dstLogId) {
+        return new DirectCompactionEntryLog(entryLogger, srcLogId, dstLogId,
+                compactingFile(ledgerDir, dstLogId), compactedFile(ledgerDir, dstLogId, srcLogId),
+                DirectEntryLogger.logFile(ledgerDir, dstLogId));
+    }
+
+    static File compactingFile(File ledgerDir, long dstLogId) {
+        return new File(ledgerDir, Long.toHexString(dstLogId) + TransactionalEntryLogCompactor.COMPACTING_SUFFIX);
+    }
+
+    static File compactedFile(File ledgerDir, long dstLogId, long srcLogId) {
+        return new File(ledgerDir, Long.toHexString(dstLogId) + ".log." + Long.toHexString(srcLogId)
+                        + TransactionalEntryLogCompactor.COMPACTED_SUFFIX);
+    }
+
+    @Override
+    public long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+        if (writer == null) {
+            throw new IOException("Compaction log " + dstLogId + " is not writable any more");
+        }
+        return (dstLogId << 32L) | writer.addEntry(ledgerId, entry);
+    }
+
+    @Override
+    public void scan(EntryLogScanner scanner) throws IOException {
+        File file = compactingFile.exists() ? compactingFile
+                : compactedFile.exists() ? compactedFile : completeFile;
+        try (DirectReader reader = entryLogger.newReader(dstLogId, file)) {
+            LogScan.scanEntries(reader, scanner);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (writer == null) {
+            throw new IOException("Failed to flush compaction log which has already been closed.");
+        }
+        try {
+            writer.finalizeAndClose();
+        } finally {
+            writer = null;
+            bufferPool.close();
+        }
+        LOG.info("Flushed compaction log file {} with logId {}.", compactingFile, dstLogId);
+    }
+
+    @Override
+    public void abort() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close compaction log {}", dstLogId, e);
+            }
+            writer = null;
+            bufferPool.close();
+        }
+        deleteIfExists(compactingFile);
+        deleteIfExists(compactedFile);
+    }
+
+    @Override
+    public void markCompacted() throws IOException {
+        if (compactingFile.exists()) {
+            if (!compactedFile.exists()) {
+                HardLink.createHardLink(compactingFile, compactedFile);
+            }
+        } else {
+            throw new IOException("Compaction log doesn't exist any more after flush: " + compactingFile);
+        }
+        deleteIfExists(compactingFile);
+    }
+
+    @Override
+    public void makeAvailable() throws IOException {
+        if (!completeFile.exists()) {
+            HardLink.createHardLink(compactedFile, completeFile);
+        }
+    }
+
+    @Override
+    public void finalizeAndCleanup() {
+        deleteIfExists(compactedFile);
+        deleteIfExists(compactingFile);
+    }
+
+    @Override
+    public long getDstLogId() {
+        return dstLogId;
+    }
+
+    @Override
+    public long getSrcLogId() {
+        return srcLogId;
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Could not delete file: {}", file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("logId", dstLogId)
+            .add("compactedLogId", srcLogId)
+            .add("compactingLogFile", compactingFile)
+            .add("compactedLogFile", compactedFile)
+            .add("finalLogFile", completeFile)
+            .toString();
+    }
+}
@@ -0,0 +1,521 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.apache.bookkeeper.bookie.AbstractLogCompactor;
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An entry logger that reads and writes the entry log files with direct I/O (O_DIRECT),
+ * bypassing the page cache.
+ * <p/>
+ * The DbLedgerStorage keeps its own write and read caches, so going through the page cache
+ * only copies every entry one more time and makes the memory used by the bookie depend on
+ * the OS. With direct I/O, the entries are copied into aligned buffers that are written as a
+ * whole, in the background, while the next buffer is filled; reads load aligned blocks of the
+ * log into a read buffer that serves the following reads of the same block.
+ * <p/>
+ * The files have the same format as the logs of the DefaultEntryLogger, except that the
+ * header fills a whole alignment block and that each flush pads the log to the next alignment.
+ * The padding is skipped when scanning, so this entry logger can read the logs written by the
+ * DefaultEntryLogger, but the DefaultEntryLogger cannot scan the logs written by this one:
+ * switching a bookie to this entry logger cannot be undone.
+ * <p/>
+ * A single ledger directory is used, and there is always a single log being written. Once
+ * the current log is full, its ledgers map is appended and it is replaced by a new log.
+ */
+public class DirectEntryLogger implements EntryLogger {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectEntryLogger.class);
+
+    // Number of buffers the total write buffer size is split into
+    private static final int WRITE_BUFFER_COUNT = 8;
+    // Number of write buffers of each compaction log
+    private static final int COMPACTION_WRITE_BUFFER_COUNT = 2;
+    private static final long NO_LOG = -1L;
+
+    private final File ledgerDir;
+    private final EntryLogIds ids;
+    private final NativeIO nativeIO;
+    private final ByteBufAllocator allocator;
+    private final long maxFileSize;
+    private final int maxSaneEntrySize;
+    private final int writeBufferSize;
+    private final int readBufferSize;
+    private final int maxIdleReaders;
+    private final DirectEntryLoggerStats stats;
+
+    private final ExecutorService writeExecutor;
+    private final BufferPool writeBuffers;
+
+    private final Object writerLock = new Object();
+    // guarded by writerLock
+    private WriterWithMetadata curWriter;
+    // id of the log being written, set before its file is created
+    private volatile long curLogId = NO_LOG;
+    // offset up to which the log being written can be read from the disk
+    private volatile long curFlushedPosition = 0L;
+
+    private final ConcurrentHashMap<Long, ReaderPool> readers = new ConcurrentHashMap<>();
+    private final AtomicInteger idleReaders = new AtomicInteger();
+
+    /**
+     * The readers of a log not in use. Readers are reused most recently used first, as the
+     * last block they read is the most likely to serve the next read.
+     */
+    private class ReaderPool {
+        final long logId;
+        final File file;
+        final ConcurrentLinkedDeque<DirectReader> idle = new ConcurrentLinkedDeque<>();
+        volatile boolean closed = false;
+
+        ReaderPool(long logId, File file) {
+            this.logId = logId;
+            this.file = file;
+        }
+
+        DirectReader acquire() throws IOException {
+            DirectReader reader = idle.pollFirst();
+            if (reader != null) {
+                idleReaders.decrementAndGet();
+                return reader;
+            }
+            return newReader(logId, file);
+        }
+
+        void release(DirectReader reader) {
+            if (closed || idleReaders.incrementAndGet() > maxIdleReaders) {
+                if (!closed) {
+                    idleReaders.decrementAndGet();
+                }
+                closeReader(reader);
+                return;
+            }
+            idle.offerFirst(reader);
+            if (closed) {
+                // raced with the removal of the log
+                closeIdleReaders();
+            }
+        }
+
+        void close() {
+            closed = true;
+            closeIdleReaders();
+        }
+
+        private void closeIdleReaders() {
+            DirectReader reader;
+            while ((reader = idle.pollFirst()) != null) {
+                idleReaders.decrementAndGet();
+                closeReader(reader);
+            }
+        }
+    }
+
+    public DirectEntryLogger(File ledgerDir,
+                             NativeIO nativeIO,
+                             ByteBufAllocator allocator,
+                             long maxFileSize,
+                             int maxSaneEntrySize,
+                             long totalWriteBufferSize,
+                             long totalReadBufferSize,
+                             int readBufferSize,
+                             StatsLogger statsLogger) throws IOException {
+        checkArgument(maxFileSize <= 0xFFFFFFFFL, "Max file size must fit in 32 bits: %d", maxFileSize);
+        if (!ledgerDir.exists()) {
+            throw new FileNotFoundException("Entry log directory '" + ledgerDir + "' does not exist");
+        }
+        this.ledgerDir = ledgerDir;
+        this.nativeIO = nativeIO;
+        this.allocator = allocator;
+        this.maxFileSize = maxFileSize;
+        this.maxSaneEntrySize = maxSaneEntrySize;
+        this.writeBufferSize = Math.max(Buffer.ALIGNMENT,
+                (int) Math.min(totalWriteBufferSize / WRITE_BUFFER_COUNT, Integer.MAX_VALUE) & ~(Buffer.ALIGNMENT - 1));
+        this.readBufferSize = Math.max(2 * Buffer.ALIGNMENT, Buffer.nextAlignment(readBufferSize));
+        this.maxIdleReaders = (int) Math.max(1, totalReadBufferSize / this.readBufferSize);
+        this.stats = new DirectEntryLoggerStats(statsLogger);
+        this.ids = new EntryLogIds(ledgerDir);
+
+        this.writeExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("DirectEntryLoggerWrite"));
+        try {
+            this.writeBuffers = new BufferPool(nativeIO, writeBufferSize, WRITE_BUFFER_COUNT);
+        } catch (IOException | RuntimeException e) {
+            writeExecutor.shutdown();
+            throw e;
+        }
+
+        LOG.info("Created direct I/O entry logger on {} (max file size: {}, write buffers: {} x {} bytes,"
+                 + " read buffers: {} x {} bytes)", ledgerDir, maxFileSize, WRITE_BUFFER_COUNT, writeBufferSize,
+                 maxIdleReaders, this.readBufferSize);
+    }
+
+    static File logFile(File ledgerDir, long logId) {
+        return new File(ledgerDir, Long.toHexString(logId) + LOG_FILE_SUFFIX);
+    }
+
+    @Override
+    public long addEntry(long ledgerId, ByteBuf buf) throws IOException {
+        synchronized (writerLock) {
+            int entrySize = buf.readableBytes();
+            if (curWriter == null) {
+                curWriter = newCurrentWriter();
+            } else if (curWriter.shouldRoll(entrySize, maxFileSize)
+                       && curWriter.position() > Header.LOGFILE_DIRECT_HEADER_SIZE) {
+                rollCurrentWriter();
+            }
+            long offset = curWriter.addEntry(ledgerId, buf);
+            return (curWriter.logId() << 32L) | offset;
+        }
+    }
+
+    private WriterWithMetadata newCurrentWriter() throws IOException {
+        long logId = ids.nextId();
+        // exclude the new log from the flushed logs before its file shows up
+        curLogId = logId;
+        curFlushedPosition = 0L;
+        WriterWithMetadata writer = newWriter(logId, logFile(ledgerDir, logId), writeBuffers);
+        LOG.info("Created new entry log file {} for logId {}.", logFile(ledgerDir, logId), logId);
+        return writer;
+    }
+
+    private void rollCurrentWriter() throws IOException {
+        WriterWithMetadata writer = curWriter;
+        curWriter = null;
+        writer.finalizeAndClose();
+        curWriter = newCurrentWriter();
+    }
+
+    WriterWithMetadata newWriter(long logId, File file, BufferPool bufferPool) throws IOException {
+        if (file.exists()) {
+            throw new IOException(exMsg("Entry log file already exists").kv("logId", logId)
+                                  .kv("file", file).toString());
+        }
+        DirectWriter writer = new DirectWriter(logId, file.toString(), nativeIO, bufferPool, writeExecutor, stats);
+        try {
+            return new WriterWithMetadata(writer);
+        } catch (IOException | RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    DirectReader newReader(long logId, File file) throws IOException {
+        return new DirectReader(logId, file.toString(), allocator, nativeIO, readBufferSize, stats);
+    }
+
+    BufferPool newCompactionBufferPool() throws IOException {
+        return new BufferPool(nativeIO, writeBufferSize, COMPACTION_WRITE_BUFFER_COUNT);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (writerLock) {
+            if (curWriter != null) {
+                curWriter.flush();
+                curFlushedPosition = curWriter.flushedPosition();
+            }
+        }
+    }
+
+    /**
+     * The data of the current log is only readable from the disk once flushed. The entries
+     * starting before the last flushed position were completely written by that flush.
+     */
+    private void ensureFlushed(long logId, long offset) throws IOException {
+        if (logId == curLogId && offset >= curFlushedPosition) {
+            synchronized (writerLock) {
+                if (curWriter != null && curWriter.logId() == logId && offset >= curFlushedPosition) {
+                    flush();
+                }
+            }
+        }
+    }
+
+    @Override
+    public ByteBuf readEntry(long entryLocation) throws IOException, NoEntryException {
+        return internalReadEntry(-1L, -1L, entryLocation, false);
+    }
+
+    @Override
+    public ByteBuf readEntry(long ledgerId, long entryId, long entryLocation) throws IOException, NoEntryException {
+        return internalReadEntry(ledgerId, entryId, entryLocation, true);
+    }
+
+    private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
+            throws IOException, NoEntryException {
+        long logId = location >> 32L;
+        long pos = location & 0xFFFFFFFFL;
+        ensureFlushed(logId, pos);
+        // past the flushed position, the log being written may hold data still in flight,
+        // which must not stay in the buffer of the reader
+        long stablePosition = logId == curLogId ? curFlushedPosition : Long.MAX_VALUE;
+
+        ReaderPool pool = getReaderPool(logId);
+        DirectReader reader = pool.acquire();
+        boolean healthy = false;
+        try {
+            int entrySize;
+            try {
+                entrySize = reader.readIntAt(pos - Integer.BYTES);
+            } catch (EOFException e) {
+                healthy = true;
+                throw new NoEntryException("Short read from entrylog " + logId, ledgerId, entryId);
+            }
+
+            if (entrySize > maxSaneEntrySize) {
+                LOG.warn("Sanity check failed for entry size of {} at location {} in {}", entrySize, pos, logId);
+            }
+            if (entrySize < Header.MIN_SANE_ENTRY_SIZE) {
+                LOG.error("Read invalid entry length {}", entrySize);
+                throw new IOException(exMsg("Invalid entry length").kv("logId", logId).kv("pos", pos)
+                                      .kv("ledgerId", ledgerId).kv("entryId", entryId)
+                                      .kv("entrySize", entrySize).toString());
+            }
+
+            if (validateEntry) {
+                long thisLedgerId = reader.readLongAt(pos);
+                long thisEntryId = reader.readLongAt(pos + Long.BYTES);
+                if (thisLedgerId != ledgerId || thisEntryId != entryId) {
+                    throw new IOException(exMsg("Found wrong entry").kv("logId", logId).kv("pos", pos)
+                                          .kv("expectedLedgerId", ledgerId).kv("expectedEntryId", entryId)
+                                          .kv("foundLedgerId", thisLedgerId).kv("foundEntryId", thisEntryId)
+                                          .toString());
+                }
+            }
+
+            ByteBuf entry;
+            try {
+                entry = reader.readBufferAt(pos, entrySize);
+            } catch (EOFException e) {
+                healthy = true;
+                throw new NoEntryException("Short read for " + ledgerId + "@" + entryId + " in " + logId
+                                           + "@" + pos + ", expected " + entrySize + " bytes", ledgerId, entryId);
+            }
+            healthy = true;
+            return entry;
+        } finally {
+            if (healthy) {
+                reader.invalidateFrom(stablePosition);
+                pool.release(reader);
+            } else {
+                closeReader(reader);
+            }
+        }
+    }
+
+    private ReaderPool getReaderPool(long logId) throws IOException {
+        ReaderPool pool = readers.get(logId);
+        if (pool != null) {
+            return pool;
+        }
+        File file = logFile(ledgerDir, logId);
+        if (!file.exists()) {
+            throw new FileNotFoundException(exMsg("No file for log").kv("logId", logId)
+                                            .kv("file", file).toString());
+        }
+        return readers.computeIfAbsent(logId, id -> new ReaderPool(id, file));
+    }
+
+    private static void closeReader(DirectReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close reader of entry log {}", reader.logId(), e);
+        }
+    }
+
+    @Override
+    public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        if (entryLogId == curLogId) {
+            flush();
+        }
+        try (DirectReader reader = newReader(entryLogId, logFile(ledgerDir, entryLogId))) {
+            LogScan.scanEntries(reader, scanner);
+        }
+    }
+
+    @Override
+    public EntryLogMetadata getEntryLogMetadata(long entryLogId, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        try (DirectReader reader = newReader(entryLogId, logFile(ledgerDir, entryLogId))) {
+            try {
+                return LogScan.metadataFromIndex(reader);
+            } catch (IOException e) {
+                LOG.info("Failed to get ledgers map index from: {}.log : {}", entryLogId, e.getMessage());
+                // Fall-back to scanning
+                return LogScan.metadataByScanning(reader, throttler);
+            }
+        }
+    }
+
+    @Override
+    public Collection<Long> getFlushedLogIds() {
+        Set<Long> logIds = new HashSet<>();
+        File[] files = ledgerDir.listFiles(file -> file.getName().endsWith(LOG_FILE_SUFFIX));
+        // read after listing the files, as the id is set before the file of a new log is created
+        long currentLogId = curLogId;
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    long logId = Long.parseLong(name.substring(0, name.length() - LOG_FILE_SUFFIX.length()), 16);
+                    if (logId != currentLogId) {
+                        logIds.add(logId);
+                    }
+                } catch (NumberFormatException e) {
+                    LOG.warn("Ignoring file {} with an invalid entry log name", file);
+                }
+            }
+        }
+        return logIds;
+    }
+
+    @Override
+    public boolean logExists(long logId) {
+        return logFile(ledgerDir, logId).exists();
+    }
+
+    @Override
+    public boolean removeEntryLog(long entryLogId) {
+        ReaderPool pool = readers.remove(entryLogId);
+        if (pool != null) {
+            pool.close();
+        }
+
+        File file = logFile(ledgerDir, entryLogId);
+        if (!file.exists()) {
+            LOG.warn("Trying to delete an entry log file {} that does not exist", file);
+            return false;
+        }
+        if (!file.delete()) {
+            LOG.warn("Could not delete entry log file {}", file);
+        }
+        return true;
+    }
+
+    @Override
+    public CompactionEntryLog newCompactionLog(long logToCompact) throws IOException {
+        return DirectCompactionEntryLog.newLog(this, ledgerDir, logToCompact, ids.nextId());
+    }
+
+    @Override
+    public Collection<CompactionEntryLog> incompleteCompactionLogs() {
+        List<CompactionEntryLog> compactionLogs = new ArrayList<>();
+
+        File[] compactingPhaseFiles = ledgerDir.listFiles(
+                file -> file.getName().endsWith(TransactionalEntryLogCompactor.COMPACTING_SUFFIX));
+        if (compactingPhaseFiles != null) {
+            for (File file : compactingPhaseFiles) {
+                if (file.delete()) {
+                    LOG.info("Deleted failed compaction file {}", file);
+                }
+            }
+        }
+
+        File[] compactedPhaseFiles = ledgerDir.listFiles(
+                file -> file.getName().endsWith(TransactionalEntryLogCompactor.COMPACTED_SUFFIX));
+        if (compactedPhaseFiles != null) {
+            for (File compactedFile : compactedPhaseFiles) {
+                LOG.info("Found compacted log file {} has partially flushed index, recovering index.",
+                         compactedFile);
+                // <dst>.log.<src>.compacted
+                String[] parts = compactedFile.getName().split(Pattern.quote("."));
+                long dstLogId;
+                long srcLogId;
+                try {
+                    if (parts.length != 4) {
+                        throw new NumberFormatException();
+                    }
+                    dstLogId = Long.parseLong(parts[0], 16);
+                    srcLogId = Long.parseLong(parts[2], 16);
+                } catch (NumberFormatException nfe) {
+                    LOG.info("Invalid compacted file found ({}), deleting", compactedFile);
+                    if (!compactedFile.delete()) {
+                        LOG.warn("Couldn't delete invalid compacted file ({})", compactedFile);
+                    }
+                    continue;
+                }
+                compactionLogs.add(DirectCompactionEntryLog.recoverLog(this, ledgerDir, srcLogId, dstLogId));
+            }
+        }
+        return compactionLogs;
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOG.info("Stopping direct I/O entry logger on {}", ledgerDir);
+        try {
+            synchronized (writerLock) {
+                if (curWriter != null) {
+                    WriterWithMetadata writer = curWriter;
+                    curWriter = null;
+                    writer.finalizeAndClose();
+                }
+            }
+        } finally {
+            for (ReaderPool pool : readers.values()) {
+                pool.close();
+            }
+            readers.clear();
+
+            writeExecutor.shutdown();
+            try {
+                if (!writeExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOG.warn("Timed out waiting for the entry log writes to complete");
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            writeBuffers.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+
+import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Stats of the direct I/O entry logger.
+ */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Direct I/O entry logger related stats"
+)
+@Getter
+class DirectEntryLoggerStats {
+
+    private static final String WRITTEN_BYTES = "direct-entrylog-written-bytes";
+    private static final String PADDING_BYTES = "direct-entrylog-padding-bytes";
+    private static final String FLUSH = "direct-entrylog-flush";
+    private static final String READ_BLOCK = "direct-entrylog-read-block";
+    private static final String READ_BUFFER_HITS = "direct-entrylog-read-buffer-hits";
+
+    @StatsDoc(
+            name = WRITTEN_BYTES,
+            help = "number of bytes written to the entry log files, padding included"
+    )
+    private final Counter writtenBytesCounter;
+    @StatsDoc(
+            name = PADDING_BYTES,
+            help = "number of padding bytes written to align the flushes of the entry log files"
+    )
+    private final Counter paddingBytesCounter;
+    @StatsDoc(
+            name = FLUSH,
+            help = "operation stats of flushing the written entries to the current entry log file"
+    )
+    private final OpStatsLogger flushStats;
+    @StatsDoc(
+            name = READ_BLOCK,
+            help = "operation stats of reading an aligned block of an entry log file from the disk"
+    )
+    private final OpStatsLogger readBlockStats;
+    @StatsDoc(
+            name = READ_BUFFER_HITS,
+            help = "number of reads served by the block already loaded in the read buffer"
+    )
+    private final Counter readBufferHitCounter;
+
+    DirectEntryLoggerStats(StatsLogger stats) {
+        writtenBytesCounter = stats.getCounter(WRITTEN_BYTES);
+        paddingBytesCounter = stats.getCounter(PADDING_BYTES);
+        flushStats = stats.getOpStatsLogger(FLUSH);
+        readBlockStats = stats.getOpStatsLogger(READ_BLOCK);
+        readBufferHitCounter = stats.getCounter(READ_BUFFER_HITS);
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Reads a log file opened with O_DIRECT.
+ * <p/>
+ * The file is read in aligned blocks of the size of the read buffer. The last block
+ * read stays in the buffer, so consecutive reads of small entries, as done by the
+ * read-ahead or a scan, only hit the disk once per block.
+ * <p/>
+ * Blocks are only cached up to the end of the file at the time they were read,
+ * so a reader can be used while the file is being appended to, as long as the
+ * data being read was flushed.
+ * <p/>
+ * This class is not thread safe.
+ */
+class DirectReader implements AutoCloseable {
+    private final long logId;
+    private final String filename;
+    private final ByteBufAllocator allocator;
+    private final NativeIO nativeIO;
+    private final DirectEntryLoggerStats stats;
+    private final int fd;
+    private Buffer buffer;
+
+    // [blockStart, blockEnd) range of the file loaded in the buffer
+    private long blockStart = -1;
+    private long blockEnd = -1;
+
+    DirectReader(long logId, String filename, ByteBufAllocator allocator, NativeIO nativeIO,
+                 int bufferSize, DirectEntryLoggerStats stats) throws IOException {
+        checkArgument(bufferSize >= 2 * Buffer.ALIGNMENT,
+                      "Read buffer size must be at least %d bytes", 2 * Buffer.ALIGNMENT);
+        this.logId = logId;
+        this.filename = filename;
+        this.allocator = allocator;
+        this.nativeIO = nativeIO;
+        this.stats = stats;
+        this.fd = nativeIO.open(filename, NativeIO.O_RDONLY | NativeIO.O_DIRECT, 00644);
+        try {
+            this.buffer = new Buffer(nativeIO, bufferSize);
+        } catch (IOException | RuntimeException e) {
+            nativeIO.close(fd);
+            throw e;
+        }
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    /**
+     * @return the current size of the file.
+     */
+    long maxOffset() throws IOException {
+        return nativeIO.lseek(fd, 0, NativeIO.SEEK_END);
+    }
+
+    int readIntAt(long offset) throws IOException {
+        ensureLoaded(offset, Integer.BYTES);
+        return buffer.readInt((int) (offset - blockStart));
+    }
+
+    long readLongAt(long offset) throws IOException {
+        ensureLoaded(offset, Long.BYTES);
+        return buffer.readLong((int) (offset - blockStart));
+    }
+
+    /**
+     * Read size bytes at offset into a new buffer.
+     */
+    ByteBuf readBufferAt(long offset, int size) throws IOException {
+        ByteBuf buf = allocator.buffer(size, size);
+        try {
+            readIntoBufferAt(buf, offset, size);
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        return buf;
+    }
+
+    void readIntoBufferAt(ByteBuf buf, long offset, int size) throws IOException {
+        while (size > 0) {
+            ensureLoaded(offset, 1);
+            int bytesToRead = (int) Math.min(size, blockEnd - offset);
+            int bytesRead = buffer.readByteBuf(buf, (int) (offset - blockStart), bytesToRead);
+            offset += bytesRead;
+            size -= bytesRead;
+        }
+    }
+
+    /**
+     * Drop the block loaded in the buffer, for example after a part of the file was overwritten.
+     */
+    void invalidate() {
+        blockStart = -1;
+        blockEnd = -1;
+    }
+
+    /**
+     * Drop the loaded data from the offset on, for example because it may not be completely written yet.
+     */
+    void invalidateFrom(long offset) {
+        if (blockEnd > offset) {
+            blockEnd = Math.max(blockStart, offset);
+        }
+    }
+
+    private void ensureLoaded(long offset, int size) throws IOException {
+        if (offset >= blockStart && offset + size <= blockEnd) {
+            stats.getReadBufferHitCounter().inc();
+            return;
+        }
+
+        long startTime = MathUtils.nowInNano();
+        long alignedOffset = offset & ~((long) Buffer.ALIGNMENT - 1);
+        long bytesRead = nativeIO.pread(fd, buffer.pointer(), buffer.size(), alignedOffset);
+        if (bytesRead < 0) {
+            invalidate();
+            throw new IOException(exMsg("Failed to read entry log").kv("logId", logId)
+                                  .kv("filename", filename).kv("offset", alignedOffset)
+                                  .kv("rc", bytesRead).toString());
+        }
+        blockStart = alignedOffset;
+        blockEnd = alignedOffset + bytesRead;
+        stats.getReadBlockStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+
+        if (offset + size > blockEnd) {
+            throw new EOFException(exMsg("Short read from entry log").kv("logId", logId)
+                                   .kv("filename", filename).kv("offset", offset)
+                                   .kv("size", size).kv("available", blockEnd - offset).toString());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            nativeIO.close(fd);
+        } finally {
+            buffer.free();
+            buffer = null;
+        }
+    }
+}
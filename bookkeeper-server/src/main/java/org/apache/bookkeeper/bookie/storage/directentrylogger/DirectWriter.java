@@ -0,0 +1,269 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Appends data to a file opened with O_DIRECT.
+ * <p/>
+ * The data is copied into aligned buffers taken from a {@link BufferPool}. Once a buffer
+ * is full, it is written to the file on the write executor while the next buffer is
+ * being filled, and goes back to the pool when the write completes. When the pool is
+ * empty, the writer waits for a buffer to be released, which bounds the memory used by
+ * the writes in progress.
+ * <p/>
+ * A flush pads the data written so far to the next alignment and writes it, so the
+ * following writes start at an aligned position of the file. The padding bytes are
+ * skipped when the file is scanned.
+ * <p/>
+ * This class is not thread safe.
+ */
+class DirectWriter implements AutoCloseable {
+    private final long logId;
+    private final String filename;
+    private final NativeIO nativeIO;
+    private final BufferPool bufferPool;
+    private final ExecutorService writeExecutor;
+    private final DirectEntryLoggerStats stats;
+    private final int fd;
+
+    private final List<Future<?>> outstandingWrites = new ArrayList<>();
+    private Buffer buffer;
+    // offset in the file of the start of the current buffer
+    private long bufferOffset = 0;
+    // bytes at the start of the current buffer that were already written by a flush
+    private int bufferFlushedBytes = 0;
+    private boolean closed = false;
+
+    DirectWriter(long logId, String filename, NativeIO nativeIO, BufferPool bufferPool,
+                 ExecutorService writeExecutor, DirectEntryLoggerStats stats) throws IOException {
+        this.logId = logId;
+        this.filename = filename;
+        this.nativeIO = nativeIO;
+        this.bufferPool = bufferPool;
+        this.writeExecutor = writeExecutor;
+        this.stats = stats;
+        this.fd = nativeIO.open(filename, NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+        this.buffer = bufferPool.acquire();
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    /**
+     * @return the offset in the file of the next byte to be written.
+     */
+    long position() {
+        return bufferOffset + buffer.position();
+    }
+
+    /**
+     * @return the offset in the file up to which the data was flushed.
+     */
+    long flushedPosition() {
+        return bufferOffset + bufferFlushedBytes;
+    }
+
+    /**
+     * Write an integer. An integer never spans two buffers, if there are less than
+     * 4 bytes left in the current buffer, they are filled with padding.
+     */
+    void writeInt(int value) throws IOException {
+        if (buffer.size() - buffer.position() < Integer.BYTES) {
+            int padding = buffer.size() - buffer.position();
+            buffer.padToAlignment();
+            stats.getPaddingBytesCounter().add(padding);
+            writeBuffer();
+        }
+        buffer.writeInt(value);
+        if (buffer.position() == buffer.size()) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Write the readable bytes of the bytebuf, without changing its reader index.
+     */
+    void writeByteBuf(ByteBuf buf) throws IOException {
+        int offset = buf.readerIndex();
+        int remaining = buf.readableBytes();
+        while (remaining > 0) {
+            int size = Math.min(remaining, buffer.size() - buffer.position());
+            buffer.writeByteBuf(buf.slice(offset, size));
+            offset += size;
+            remaining -= size;
+            if (buffer.position() == buffer.size()) {
+                writeBuffer();
+            }
+        }
+    }
+
+    /**
+     * Write the data of the current buffer, padded to the next alignment, and wait for all the
+     * outstanding writes to complete.
+     *
+     * @param sync whether to fsync the file once the data is written
+     */
+    void flush(boolean sync) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        waitForOutstandingWrites();
+
+        int position = buffer.position();
+        if (position > bufferFlushedBytes) {
+            int alignedPosition = buffer.padToAlignment();
+            stats.getPaddingBytesCounter().add(alignedPosition - position);
+            writeFully(buffer, bufferFlushedBytes, alignedPosition - bufferFlushedBytes,
+                       bufferOffset + bufferFlushedBytes);
+            if (alignedPosition == buffer.size()) {
+                buffer.reset();
+                bufferOffset += alignedPosition;
+                bufferFlushedBytes = 0;
+            } else {
+                bufferFlushedBytes = alignedPosition;
+            }
+        }
+        if (sync) {
+            nativeIO.fsync(fd);
+        }
+        stats.getFlushStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Overwrite an aligned block of already flushed data, for example the header of the file.
+     */
+    void writeAt(long offset, ByteBuf data) throws IOException {
+        if (!Buffer.isAligned(offset) || offset + data.readableBytes() > flushedPosition()) {
+            throw new IOException(exMsg("Invalid overwrite").kv("logId", logId)
+                                  .kv("offset", offset).kv("size", data.readableBytes())
+                                  .kv("flushedPosition", flushedPosition()).toString());
+        }
+        Buffer block = new Buffer(nativeIO, Buffer.nextAlignment(data.readableBytes()));
+        try {
+            block.writeByteBuf(data.slice());
+            int size = block.padToAlignment();
+            writeFully(block, 0, size, offset);
+        } finally {
+            block.free();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        checkOutstandingWrites();
+
+        final Buffer toWrite = buffer;
+        final int start = bufferFlushedBytes;
+        final int size = toWrite.size() - start;
+        final long offset = bufferOffset + start;
+        outstandingWrites.add(writeExecutor.submit(() -> {
+            try {
+                writeFully(toWrite, start, size, offset);
+            } finally {
+                bufferPool.release(toWrite);
+            }
+            return null;
+        }));
+
+        bufferOffset += toWrite.size();
+        bufferFlushedBytes = 0;
+        buffer = bufferPool.acquire();
+    }
+
+    private void writeFully(Buffer buf, int start, int size, long offset) throws IOException {
+        int written = 0;
+        while (written < size) {
+            int rc = nativeIO.pwrite(fd, buf.pointer(start + written, size - written),
+                                     size - written, offset + written);
+            if (rc <= 0) {
+                throw new NativeIOException(exMsg("Failed to write to entry log").kv("logId", logId)
+                                            .kv("filename", filename).kv("offset", offset + written)
+                                            .kv("rc", rc).toString());
+            }
+            written += rc;
+        }
+        stats.getWrittenBytesCounter().add(size);
+    }
+
+    /**
+     * Rethrow the failure of any write that already completed.
+     */
+    private void checkOutstandingWrites() throws IOException {
+        for (int i = outstandingWrites.size() - 1; i >= 0; i--) {
+            Future<?> write = outstandingWrites.get(i);
+            if (write.isDone()) {
+                outstandingWrites.remove(i);
+                getWriteResult(write);
+            }
+        }
+    }
+
+    private void waitForOutstandingWrites() throws IOException {
+        try {
+            for (Future<?> write : outstandingWrites) {
+                getWriteResult(write);
+            }
+        } finally {
+            outstandingWrites.clear();
+        }
+    }
+
+    private void getWriteResult(Future<?> write) throws IOException {
+        try {
+            write.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(exMsg("Interrupted while writing entry log").kv("logId", logId).toString(), ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(exMsg("Failed to write entry log").kv("logId", logId).toString(), ee.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            waitForOutstandingWrites();
+        } finally {
+            bufferPool.release(buffer);
+            buffer = null;
+            nativeIO.close(fd);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Allocates the ids of the entry logs of a ledger directory.
+ * <p/>
+ * The next id follows the largest id found either in the "lastId" file or in the
+ * names of the logs of the directory, including the compaction logs. The "lastId"
+ * file is kept up to date, in the same format as the DefaultEntryLogger, so that
+ * both entry loggers can be used on the same directory.
+ * <p/>
+ * Log ids must fit in 32 bits. Once the max id is reached, the ids start again from 0,
+ * skipping the ids of the logs still present.
+ */
+class EntryLogIds {
+    private static final Logger LOG = LoggerFactory.getLogger(EntryLogIds.class);
+
+    static final String LAST_ID_FILE = "lastId";
+
+    private final File ledgerDir;
+    private long lastId;
+
+    EntryLogIds(File ledgerDir) throws IOException {
+        this.ledgerDir = ledgerDir;
+        this.lastId = Math.max(readLastId(ledgerDir), maxIdInDirectory(ledgerDir));
+    }
+
+    synchronized long nextId() throws IOException {
+        long id = lastId;
+        do {
+            id = id >= Integer.MAX_VALUE ? 0 : id + 1;
+        } while (logFilesExist(id));
+        lastId = id;
+        Files.write(new File(ledgerDir, LAST_ID_FILE).toPath(),
+                    (Long.toHexString(id) + "\n").getBytes(UTF_8));
+        return id;
+    }
+
+    private boolean logFilesExist(long id) {
+        String prefix = Long.toHexString(id) + ".log";
+        String[] files = ledgerDir.list((dir, name) -> name.startsWith(prefix));
+        return files != null && files.length > 0;
+    }
+
+    private static long readLastId(File ledgerDir) {
+        File lastIdFile = new File(ledgerDir, LAST_ID_FILE);
+        if (!lastIdFile.exists()) {
+            return -1L;
+        }
+        try {
+            String lastId = new String(Files.readAllBytes(lastIdFile.toPath()), UTF_8).trim();
+            return Long.parseLong(lastId, 16);
+        } catch (IOException | NumberFormatException e) {
+            LOG.warn("Invalid {} file in {}, ignoring it", LAST_ID_FILE, ledgerDir, e);
+            return -1L;
+        }
+    }
+
+    private static long maxIdInDirectory(File ledgerDir) throws IOException {
+        String[] files = ledgerDir.list((dir, name) -> name.endsWith(".log")
+                || name.endsWith(TransactionalEntryLogCompactor.COMPACTING_SUFFIX)
+                || name.endsWith(TransactionalEntryLogCompactor.COMPACTED_SUFFIX));
+        if (files == null) {
+            throw new IOException("Failed to list the entry logs of " + ledgerDir);
+        }
+        long maxId = -1L;
+        for (String file : files) {
+            try {
+                maxId = Math.max(maxId, Long.parseLong(file.substring(0, file.indexOf('.')), 16));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring file {} with an invalid entry log name in {}", file, ledgerDir);
+            }
+        }
+        return maxId;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+
+/**
+ * The header of an entry log file.
+ * <p/>
+ * The layout of the first bytes is the same as the logs written by the
+ * DefaultEntryLogger:
+ * <pre>
+ * [fingerprint "BKLO": 4 bytes][version: 4 bytes][ledgers map offset: 8 bytes][ledgers count: 4 bytes]
+ * </pre>
+ * Legacy logs have a 1024 bytes header. The direct entry logger needs every write to be
+ * aligned, so its header fills a whole alignment block, with the bytes after the legacy
+ * header size filled with padding. Since a scan skips padding up to the next alignment,
+ * scanning from the legacy header size works for both kinds of logs.
+ */
+final class Header {
+    static final int LOGFILE_LEGACY_HEADER_SIZE = 1024;
+    static final int LOGFILE_DIRECT_HEADER_SIZE = Buffer.ALIGNMENT;
+
+    static final int HEADER_V0 = 0; // Old log file format (no ledgers map index)
+    static final int HEADER_V1 = 1; // Introduced ledger map index
+    static final int HEADER_CURRENT_VERSION = HEADER_V1;
+
+    static final int FINGERPRINT = ('B' << 24) | ('K' << 16) | ('L' << 8) | 'O';
+
+    static final long INVALID_LID = -1L;
+    // EntryId used to mark an entry (belonging to INVALID_ID) as a component of the serialized ledgers map
+    static final long LEDGERS_MAP_ENTRY_ID = -2L;
+    // size, ledgerId, entryId and count of a ledgers map batch
+    static final int LEDGERS_MAP_HEADER_SIZE = 4 + 8 + 8 + 4;
+    static final int LEDGERS_MAP_ENTRY_SIZE = 8 + 8;
+    // Break the ledgers map into multiple batches, each of which can contain up to 10K ledgers
+    static final int LEDGERS_MAP_MAX_BATCH_SIZE = 10000;
+
+    static final int MIN_SANE_ENTRY_SIZE = 8 + 8;
+
+    private final int version;
+    private final long ledgersMapOffset;
+    private final int ledgersCount;
+
+    private Header(int version, long ledgersMapOffset, int ledgersCount) {
+        this.version = version;
+        this.ledgersMapOffset = ledgersMapOffset;
+        this.ledgersCount = ledgersCount;
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    long getLedgersMapOffset() {
+        return ledgersMapOffset;
+    }
+
+    int getLedgersCount() {
+        return ledgersCount;
+    }
+
+    /**
+     * Write a direct log header to the buffer, LOGFILE_DIRECT_HEADER_SIZE bytes.
+     */
+    static void writeHeader(ByteBuf buf, long ledgersMapOffset, int ledgersCount) {
+        int start = buf.writerIndex();
+        buf.writeInt(FINGERPRINT);
+        buf.writeInt(HEADER_CURRENT_VERSION);
+        buf.writeLong(ledgersMapOffset);
+        buf.writeInt(ledgersCount);
+        buf.writeZero(LOGFILE_LEGACY_HEADER_SIZE - (buf.writerIndex() - start));
+        buf.writeBytes(Buffer.PADDING, 0, LOGFILE_DIRECT_HEADER_SIZE - LOGFILE_LEGACY_HEADER_SIZE);
+    }
+
+    /**
+     * Read the header of a log, either legacy or direct.
+     */
+    static Header readHeader(DirectReader reader) throws IOException {
+        int fingerprint = reader.readIntAt(0);
+        if (fingerprint != FINGERPRINT) {
+            throw new IOException(exMsg("Not an entry log, invalid fingerprint")
+                                  .kv("logId", reader.logId())
+                                  .kv("fingerprint", Integer.toHexString(fingerprint)).toString());
+        }
+        int version = reader.readIntAt(4);
+        if (version < HEADER_V0 || version > HEADER_CURRENT_VERSION) {
+            throw new IOException(exMsg("Unknown entry log header version")
+                                  .kv("logId", reader.logId())
+                                  .kv("version", version).toString());
+        }
+        return new Header(version, reader.readLongAt(8), reader.readIntAt(16));
+    }
+}
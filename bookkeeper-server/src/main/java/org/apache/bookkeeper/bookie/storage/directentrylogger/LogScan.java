@@ -0,0 +1,182 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import org.apache.bookkeeper.bookie.AbstractLogCompactor;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequential reads of a whole entry log: scanning its entries and reading its ledgers map.
+ * <p/>
+ * A size starting with a padding byte is negative, in which case the data is skipped up to
+ * the next alignment. Negative sizes found at an aligned offset mean the log is corrupted.
+ */
+final class LogScan {
+    private static final Logger LOG = LoggerFactory.getLogger(LogScan.class);
+
+    private LogScan() {}
+
+    static long nextAlignment(long offset) {
+        return (offset + Buffer.ALIGNMENT - 1) & ~((long) Buffer.ALIGNMENT - 1);
+    }
+
+    /**
+     * Scan all the entries of the log.
+     */
+    static void scanEntries(DirectReader reader, EntryLogScanner scanner) throws IOException {
+        long maxOffset = reader.maxOffset();
+        long offset = Header.LOGFILE_LEGACY_HEADER_SIZE;
+
+        while (offset + Integer.BYTES <= maxOffset) {
+            int entrySize = reader.readIntAt(offset);
+            if (entrySize < 0) {
+                long nextOffset = nextAlignment(offset);
+                if (nextOffset == offset) {
+                    LOG.warn("Invalid entry size {} at offset {} of entry log {}, stopping the scan",
+                             entrySize, offset, reader.logId());
+                    return;
+                }
+                offset = nextOffset;
+                continue;
+            } else if (entrySize < Long.BYTES) {
+                // Zero filled tail of a log that was not completely written
+                LOG.warn("Invalid entry size {} at offset {} of entry log {}, stopping the scan",
+                         entrySize, offset, reader.logId());
+                return;
+            }
+
+            long entryOffset = offset;
+            offset += Integer.BYTES;
+            if (offset + entrySize > maxOffset) {
+                LOG.warn("Short read for entry at offset {} of entry log {} ({} bytes left, expected {})",
+                         entryOffset, reader.logId(), maxOffset - offset, entrySize);
+                return;
+            }
+
+            long ledgerId = reader.readLongAt(offset);
+            if (ledgerId != Header.INVALID_LID && scanner.accept(ledgerId)) {
+                ByteBuf entry = reader.readBufferAt(offset, entrySize);
+                try {
+                    scanner.process(ledgerId, entryOffset, entry);
+                } finally {
+                    entry.release();
+                }
+            }
+            offset += entrySize;
+        }
+    }
+
+    /**
+     * Build the metadata of the log by scanning all its entries.
+     */
+    static EntryLogMetadata metadataByScanning(DirectReader reader, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        final EntryLogMetadata meta = new EntryLogMetadata(reader.logId());
+        scanEntries(reader, new EntryLogScanner() {
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                if (throttler != null) {
+                    throttler.acquire(entry.readableBytes());
+                }
+                meta.addLedgerSize(ledgerId, entry.readableBytes() + Integer.BYTES);
+            }
+
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId >= 0;
+            }
+        });
+        return meta;
+    }
+
+    /**
+     * Build the metadata of the log from the ledgers map stored at its end.
+     */
+    static EntryLogMetadata metadataFromIndex(DirectReader reader) throws IOException {
+        // The header is overwritten when the log is finalized
+        reader.invalidate();
+        Header header = Header.readHeader(reader);
+        if (header.getVersion() < Header.HEADER_V1) {
+            throw new IOException(exMsg("Old log file header without ledgers map")
+                                  .kv("logId", reader.logId()).toString());
+        }
+        if (header.getLedgersMapOffset() == 0L) {
+            throw new IOException(exMsg("No ledgers map index found")
+                                  .kv("logId", reader.logId()).toString());
+        }
+
+        EntryLogMetadata meta = new EntryLogMetadata(reader.logId());
+        long maxOffset = reader.maxOffset();
+        long offset = header.getLedgersMapOffset();
+        while (offset + Integer.BYTES <= maxOffset) {
+            int mapSize = reader.readIntAt(offset);
+            if (mapSize < 0) {
+                long nextOffset = nextAlignment(offset);
+                if (nextOffset == offset) {
+                    break;
+                }
+                offset = nextOffset;
+                continue;
+            }
+            offset += Integer.BYTES;
+
+            long ledgerId = reader.readLongAt(offset);
+            if (ledgerId != Header.INVALID_LID) {
+                throw new IOException(exMsg("Cannot deserialize ledgers map").kv("logId", reader.logId())
+                                      .kv("ledgerId", ledgerId).toString());
+            }
+            long entryId = reader.readLongAt(offset + 8);
+            if (entryId != Header.LEDGERS_MAP_ENTRY_ID) {
+                throw new IOException(exMsg("Cannot deserialize ledgers map").kv("logId", reader.logId())
+                                      .kv("entryId", entryId).toString());
+            }
+            int ledgersCount = reader.readIntAt(offset + 16);
+            if (mapSize != Header.LEDGERS_MAP_HEADER_SIZE - Integer.BYTES
+                    + Header.LEDGERS_MAP_ENTRY_SIZE * ledgersCount) {
+                throw new IOException(exMsg("Invalid entry size when reading ledgers map")
+                                      .kv("logId", reader.logId()).kv("mapSize", mapSize)
+                                      .kv("ledgersCount", ledgersCount).toString());
+            }
+
+            long pos = offset + 20;
+            for (int i = 0; i < ledgersCount; i++) {
+                meta.addLedgerSize(reader.readLongAt(pos), reader.readLongAt(pos + 8));
+                pos += Header.LEDGERS_MAP_ENTRY_SIZE;
+            }
+            offset += mapSize;
+        }
+
+        if (meta.getLedgersMap().size() != header.getLedgersCount()) {
+            throw new IOException(exMsg("Not all ledgers were found in ledgers map index")
+                                  .kv("logId", reader.logId())
+                                  .kv("expected", header.getLedgersCount())
+                                  .kv("found", meta.getLedgersMap().size()).toString());
+        }
+        return meta;
+    }
+}
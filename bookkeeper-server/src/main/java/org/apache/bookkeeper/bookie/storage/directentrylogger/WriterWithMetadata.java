@@ -0,0 +1,154 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Writes the entries of an entry log, and keeps track of the size of the data
+ * of each ledger in the log, so that the ledgers map can be appended to the log
+ * once it is complete.
+ * <p/>
+ * Each entry is written as [size: 4 bytes][entry], and the location of an entry
+ * is the offset of the entry itself, after its size. This is the same format as the
+ * logs of the DefaultEntryLogger.
+ * <p/>
+ * This class is not thread safe.
+ */
+class WriterWithMetadata implements AutoCloseable {
+    private final DirectWriter writer;
+    private final ConcurrentLongLongHashMap ledgersMap = ConcurrentLongLongHashMap.newBuilder()
+            .concurrencyLevel(1)
+            .build();
+
+    WriterWithMetadata(DirectWriter writer) throws IOException {
+        this.writer = writer;
+        ByteBuf header = Unpooled.buffer(Header.LOGFILE_DIRECT_HEADER_SIZE);
+        try {
+            Header.writeHeader(header, 0L, 0);
+            writer.writeByteBuf(header);
+        } finally {
+            header.release();
+        }
+    }
+
+    long logId() {
+        return writer.logId();
+    }
+
+    long position() {
+        return writer.position();
+    }
+
+    long flushedPosition() {
+        return writer.flushedPosition();
+    }
+
+    /**
+     * Check whether an entry of the given size can be added without the log growing over maxFileSize.
+     */
+    boolean shouldRoll(int entrySize, long maxFileSize) {
+        // +4 for the size, +4 in case the size needs to be padded to the next buffer
+        return writer.position() + entrySize + 2 * Integer.BYTES > maxFileSize;
+    }
+
+    /**
+     * @return the offset of the entry in the log
+     */
+    long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+        int size = entry.readableBytes();
+        writer.writeInt(size);
+        long offset = writer.position();
+        writer.writeByteBuf(entry);
+        ledgersMap.addAndGet(ledgerId, size + Integer.BYTES);
+        return offset;
+    }
+
+    void flush() throws IOException {
+        writer.flush(true);
+    }
+
+    /**
+     * Append the ledgers map at the end of the log, then update the header with its offset
+     * and make everything durable. No entry can be added afterwards.
+     */
+    void finalizeAndClose() throws IOException {
+        try {
+            long ledgersMapOffset = writer.position();
+            int numberOfLedgers = (int) ledgersMap.size();
+
+            final int maxMapSize = Header.LEDGERS_MAP_HEADER_SIZE
+                    + Header.LEDGERS_MAP_ENTRY_SIZE * Header.LEDGERS_MAP_MAX_BATCH_SIZE;
+            final ByteBuf serializedMap = Unpooled.buffer(maxMapSize);
+            final long[] ledgersAndSizes = new long[numberOfLedgers * 2];
+            final int[] index = new int[1];
+            ledgersMap.forEach((ledgerId, size) -> {
+                if (index[0] < ledgersAndSizes.length) {
+                    ledgersAndSizes[index[0]++] = ledgerId;
+                    ledgersAndSizes[index[0]++] = size;
+                }
+            });
+
+            try {
+                int written = 0;
+                while (written < numberOfLedgers) {
+                    int batchSize = Math.min(numberOfLedgers - written, Header.LEDGERS_MAP_MAX_BATCH_SIZE);
+                    int ledgerMapSize = Header.LEDGERS_MAP_HEADER_SIZE + Header.LEDGERS_MAP_ENTRY_SIZE * batchSize;
+
+                    serializedMap.clear();
+                    serializedMap.writeLong(Header.INVALID_LID);
+                    serializedMap.writeLong(Header.LEDGERS_MAP_ENTRY_ID);
+                    serializedMap.writeInt(batchSize);
+                    for (int i = 0; i < batchSize; i++, written++) {
+                        serializedMap.writeLong(ledgersAndSizes[written * 2]);
+                        serializedMap.writeLong(ledgersAndSizes[written * 2 + 1]);
+                    }
+                    writer.writeInt(ledgerMapSize - Integer.BYTES);
+                    writer.writeByteBuf(serializedMap);
+                }
+            } finally {
+                serializedMap.release();
+            }
+
+            // The ledgers map must be durable before the header points to it
+            writer.flush(true);
+
+            ByteBuf header = Unpooled.buffer(Header.LOGFILE_DIRECT_HEADER_SIZE);
+            try {
+                Header.writeHeader(header, ledgersMapOffset, numberOfLedgers);
+                writer.writeAt(0, header);
+            } finally {
+                header.release();
+            }
+            writer.flush(true);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -91,6 +91,45 @@ public class DbLedgerStorage implements LedgerStorage {
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
 
+    static final String READ_AHEAD_ADAPTIVE_ENABLED = "dbStorage_readAheadAdaptiveEnabled";
+    static final boolean DEFAULT_READ_AHEAD_ADAPTIVE_ENABLED = false;
+
+    static final String READ_AHEAD_CACHE_MAX_BATCH_SIZE = "dbStorage_readAheadCacheMaxBatchSize";
+    static final int DEFAULT_READ_AHEAD_CACHE_MAX_BATCH_SIZE = 1000;
+
+    static final String READ_AHEAD_ASYNC_THREADS = "dbStorage_readAheadAsyncThreads";
+    static final int DEFAULT_READ_AHEAD_ASYNC_THREADS = 0;
+
+    static final String READ_AHEAD_ASYNC_MAX_PENDING = "dbStorage_readAheadAsyncMaxPending";
+    static final int DEFAULT_READ_AHEAD_ASYNC_MAX_PENDING = 1024;
+
+    static final String READ_AHEAD_CACHE_SHARDS = "dbStorage_readAheadCacheShards";
+    static final int DEFAULT_READ_AHEAD_CACHE_SHARDS = 1;
+
+    static final String PIPELINED_FLUSH_ENABLED = "dbStorage_pipelinedFlushEnabled";
+    static final boolean DEFAULT_PIPELINED_FLUSH_ENABLED = false;
+
+    static final String WRITE_CACHE_ZERO_COPY_READS = "dbStorage_writeCacheZeroCopyReads";
+    static final boolean DEFAULT_WRITE_CACHE_ZERO_COPY_READS = false;
+
+    static final String LOCATION_INDEX_RANGE_ENCODING = "dbStorage_locationIndexRangeEncoding";
+    static final boolean DEFAULT_LOCATION_INDEX_RANGE_ENCODING = false;
+
+    // one-way switch, the default entry logger cannot read the entry logs written with direct I/O
+    public static final String DIRECT_IO_ENTRY_LOGGER = "dbStorage_directIOEntryLogger";
+    static final boolean DEFAULT_DIRECT_IO_ENTRY_LOGGER = false;
+
+    static final String DIRECT_IO_ENTRY_LOGGER_TOTAL_WRITE_BUFFER_SIZE_MB =
+            "dbStorage_directIOEntryLoggerTotalWriteBufferSizeMB";
+    static final long DEFAULT_DIRECT_IO_ENTRY_LOGGER_TOTAL_WRITE_BUFFER_SIZE_MB = 64;
+
+    static final String DIRECT_IO_ENTRY_LOGGER_TOTAL_READ_BUFFER_SIZE_MB =
+            "dbStorage_directIOEntryLoggerTotalReadBufferSizeMB";
+    static final long DEFAULT_DIRECT_IO_ENTRY_LOGGER_TOTAL_READ_BUFFER_SIZE_MB = 64;
+
+    static final String DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE_KB = "dbStorage_directIOEntryLoggerReadBufferSizeKB";
+    static final int DEFAULT_DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE_KB = 1024;
+
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
     // but in that case data integrity should kick off anyhow.
@@ -127,6 +166,12 @@ public class DbLedgerStorage implements LedgerStorage {
                 DEFAULT_WRITE_CACHE_MAX_SIZE_MB) * MB;
         long readCacheMaxSize = getLongVariableOrDefault(conf, READ_AHEAD_CACHE_MAX_SIZE_MB,
                 DEFAULT_READ_CACHE_MAX_SIZE_MB) * MB;
+        long directIOWriteBufferMaxSize = getLongVariableOrDefault(conf,
+                DIRECT_IO_ENTRY_LOGGER_TOTAL_WRITE_BUFFER_SIZE_MB,
+                DEFAULT_DIRECT_IO_ENTRY_LOGGER_TOTAL_WRITE_BUFFER_SIZE_MB) * MB;
+        long directIOReadBufferMaxSize = getLongVariableOrDefault(conf,
+                DIRECT_IO_ENTRY_LOGGER_TOTAL_READ_BUFFER_SIZE_MB,
+                DEFAULT_DIRECT_IO_ENTRY_LOGGER_TOTAL_READ_BUFFER_SIZE_MB) * MB;
 
         this.allocator = allocator;
         this.numberOfDirs = ledgerDirsManager.getAllLedgerDirs().size();
@@ -142,6 +187,8 @@ public class DbLedgerStorage implements LedgerStorage {
 
         long perDirectoryWriteCacheSize = writeCacheMaxSize / numberOfDirs;
         long perDirectoryReadCacheSize = readCacheMaxSize / numberOfDirs;
+        long perDirectoryDirectIOWriteBufferSize = directIOWriteBufferMaxSize / numberOfDirs;
+        long perDirectoryDirectIOReadBufferSize = directIOReadBufferMaxSize / numberOfDirs;
         int readAheadCacheBatchSize = conf.getInt(READ_AHEAD_CACHE_BATCH_SIZE, DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE);
 
         gcExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("GarbageCollector"));
@@ -155,7 +202,8 @@ public class DbLedgerStorage implements LedgerStorage {
             LedgerDirsManager ldm = new LedgerDirsManager(conf, dirs, ledgerDirsManager.getDiskChecker(), statsLogger);
             ledgerStorageList.add(newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ldm, indexDirsManager,
                     statsLogger, gcExecutor, perDirectoryWriteCacheSize,
-                    perDirectoryReadCacheSize, readAheadCacheBatchSize));
+                    perDirectoryReadCacheSize, readAheadCacheBatchSize,
+                    perDirectoryDirectIOWriteBufferSize, perDirectoryDirectIOReadBufferSize));
             ldm.getListeners().forEach(ledgerDirsManager::addLedgerDirsListener);
         }
 
@@ -191,11 +239,12 @@ public class DbLedgerStorage implements LedgerStorage {
     protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
             LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
             StatsLogger statsLogger, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
-            int readAheadCacheBatchSize)
+            int readAheadCacheBatchSize, long directIOWriteBufferSize, long directIOReadBufferSize)
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager,
                                                   statsLogger, allocator, gcExecutor, writeCacheSize, readCacheSize,
-                                                  readAheadCacheBatchSize);
+                                                  readAheadCacheBatchSize, directIOWriteBufferSize,
+                                                  directIOReadBufferSize, null);
     }
 
     @Override
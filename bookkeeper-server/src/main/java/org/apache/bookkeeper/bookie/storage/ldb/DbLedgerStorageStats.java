@@ -54,8 +54,17 @@ class DbLedgerStorageStats {
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_ENTRIES = "readahead-entries";
+    private static final String READAHEAD_HITS = "readahead-hits";
+    private static final String READAHEAD_HIT_RATIO = "readahead-hit-ratio";
+    private static final String READAHEAD_WASTED_BYTES = "readahead-wasted-bytes";
+    private static final String READAHEAD_DEDUPED = "readahead-deduped";
+    private static final String READAHEAD_REJECTED = "readahead-rejected";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
+    private static final String FLUSH_WRITE_ENTRYLOG = "flush-write-entrylog";
+    private static final String FLUSH_BUILD_LOCATIONS_INDEX = "flush-build-locations-index";
+    private static final String FLUSH_LOCATIONS_INDEX_WAIT = "flush-locations-index-wait";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
     private static final String FLUSH_LEDGER_INDEX = "flush-ledger-index";
     private static final String FLUSH_SIZE = "flush-size";
@@ -133,6 +142,38 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+            name = READAHEAD_ENTRIES,
+            help = "number of entries read ahead into the read cache"
+    )
+    private final Counter readAheadEntriesCounter;
+    @StatsDoc(
+            name = READAHEAD_HITS,
+            help = "number of read cache hits on entries that were read ahead",
+            parent = READ_CACHE_HITS
+    )
+    private final Counter readAheadHitCounter;
+    @StatsDoc(
+            name = READAHEAD_HIT_RATIO,
+            help = "percentage of the entries read ahead that were then read from the read cache"
+    )
+    private final Gauge<Long> readAheadHitRatioGauge;
+    @StatsDoc(
+            name = READAHEAD_WASTED_BYTES,
+            help = "estimated number of bytes read ahead that were not read before the next read-ahead"
+                    + " of the same ledger"
+    )
+    private final Counter readAheadWastedBytesCounter;
+    @StatsDoc(
+            name = READAHEAD_DEDUPED,
+            help = "number of read-aheads skipped because the same entries were already being read ahead"
+    )
+    private final Counter readAheadDedupedCounter;
+    @StatsDoc(
+            name = READAHEAD_REJECTED,
+            help = "number of asynchronous read-aheads dropped because too many were pending"
+    )
+    private final Counter readAheadRejectedCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -143,6 +184,26 @@ class DbLedgerStorageStats {
             help = "operation stats of flushing to the current entry log file"
     )
     private final OpStatsLogger flushEntryLogStats;
+    @StatsDoc(
+            name = FLUSH_WRITE_ENTRYLOG,
+            help = "operation stats of copying the write cache entries into the current entry log file",
+            parent = FLUSH
+    )
+    private final OpStatsLogger flushWriteEntryLogStats;
+    @StatsDoc(
+            name = FLUSH_BUILD_LOCATIONS_INDEX,
+            help = "operation stats of building the locations index batch, on the flush index thread"
+                    + " when the pipelined flush is enabled",
+            parent = FLUSH
+    )
+    private final OpStatsLogger flushBuildLocationIndexStats;
+    @StatsDoc(
+            name = FLUSH_LOCATIONS_INDEX_WAIT,
+            help = "time spent by the flush committing the locations index batch after the entry log"
+                    + " was synced, when the pipelined flush is enabled",
+            parent = FLUSH
+    )
+    private final OpStatsLogger flushLocationIndexWaitStats;
     @StatsDoc(
             name = FLUSH_LOCATIONS_INDEX,
             help = "operation stats of flushing to the locations index"
@@ -211,8 +272,29 @@ class DbLedgerStorageStats {
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadEntriesCounter = stats.getCounter(READAHEAD_ENTRIES);
+        readAheadHitCounter = stats.getCounter(READAHEAD_HITS);
+        readAheadWastedBytesCounter = stats.getCounter(READAHEAD_WASTED_BYTES);
+        readAheadDedupedCounter = stats.getCounter(READAHEAD_DEDUPED);
+        readAheadRejectedCounter = stats.getCounter(READAHEAD_REJECTED);
+        readAheadHitRatioGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                long entries = readAheadEntriesCounter.get();
+                return entries > 0 ? readAheadHitCounter.get() * 100 / entries : 0L;
+            }
+        };
+        stats.registerGauge(READAHEAD_HIT_RATIO, readAheadHitRatioGauge);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
+        flushWriteEntryLogStats = stats.getOpStatsLogger(FLUSH_WRITE_ENTRYLOG);
+        flushBuildLocationIndexStats = stats.getOpStatsLogger(FLUSH_BUILD_LOCATIONS_INDEX);
+        flushLocationIndexWaitStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX_WAIT);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
         flushLedgerIndexStats = stats.getOpStatsLogger(FLUSH_LEDGER_INDEX);
         flushSizeStats = stats.getOpStatsLogger(FLUSH_SIZE);
@@ -20,10 +20,15 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Iterables;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -31,6 +36,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -43,6 +49,12 @@ import org.slf4j.LoggerFactory;
  *
  * <p>For each ledger multiple entries are stored in the same "record", represented
  * by the {@link LedgerIndexPage} class.
+ *
+ * <p>When {@value DbLedgerStorage#LOCATION_INDEX_RANGE_ENCODING} is enabled, runs of consecutive
+ * entries written to the same entry log are stored in a single record, keyed by the first entry
+ * of the run (see {@link EntryLocationRange}). A single entry record has the same format as the
+ * legacy per-entry index, so an existing index can be read in range mode, while switching back to
+ * the per-entry mode requires rebuilding the index with {@link LocationsIndexRebuildOp}.
  */
 public class EntryLocationIndex implements Closeable {
 
@@ -51,9 +63,15 @@ public class EntryLocationIndex implements Closeable {
 
     private final EntryLocationIndexStats stats;
 
+    private final boolean rangeEncoding;
+    // Serializes the read-modify-write of range records between checkpoint and compaction
+    private final Object rangeUpdateLock = new Object();
+
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
+        rangeEncoding = conf.getBoolean(DbLedgerStorage.LOCATION_INDEX_RANGE_ENCODING,
+                DbLedgerStorage.DEFAULT_LOCATION_INDEX_RANGE_ENCODING);
 
         this.stats = new EntryLocationIndexStats(
             stats,
@@ -71,7 +89,16 @@ public class EntryLocationIndex implements Closeable {
         locationsDb.close();
     }
 
+    @VisibleForTesting
+    KeyValueStorage getLocationsDb() {
+        return locationsDb;
+    }
+
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        if (rangeEncoding) {
+            return getLocationFromRange(ledgerId, entryId);
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -90,6 +117,29 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    private long getLocationFromRange(long ledgerId, long entryId) throws IOException {
+        // The record containing the entry is the last one starting at or before the entry
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId + 1);
+        Entry<byte[], byte[]> record;
+        try {
+            record = locationsDb.getFloor(key.array);
+        } finally {
+            key.recycle();
+        }
+
+        if (record != null && ArrayUtil.getLong(record.getKey(), 0) == ledgerId) {
+            long index = entryId - ArrayUtil.getLong(record.getKey(), 8);
+            if (index < EntryLocationRange.count(record.getValue())) {
+                return EntryLocationRange.getLocation(record.getValue(), (int) index);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Entry not found {}@{} in db index", ledgerId, entryId);
+        }
+        return 0;
+    }
+
     public long getLastEntryInLedger(long ledgerId) throws IOException {
         if (deletedLedgers.contains(ledgerId)) {
             // Ledger already deleted
@@ -117,7 +167,8 @@ public class EntryLocationIndex implements Closeable {
             throw new Bookie.NoEntryException(ledgerId, -1);
         } else {
             long foundLedgerId = ArrayUtil.getLong(entry.getKey(), 0);
-            long lastEntryId = ArrayUtil.getLong(entry.getKey(), 8);
+            // Legacy records always have a count of 1
+            long lastEntryId = ArrayUtil.getLong(entry.getKey(), 8) + EntryLocationRange.count(entry.getValue()) - 1;
 
             if (foundLedgerId == ledgerId) {
                 if (log.isDebugEnabled()) {
@@ -138,10 +189,18 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public Batch newBatch() {
+        if (rangeEncoding) {
+            return new RangeEncodingBatch(locationsDb.newBatch());
+        }
         return locationsDb.newBatch();
     }
 
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
+        if (batch instanceof RangeEncodingBatch) {
+            ((RangeEncodingBatch) batch).add(ledgerId, entryId, location);
+            return;
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
 
@@ -235,14 +294,27 @@ public class EntryLocationIndex implements Closeable {
                             ledgerId, firstEntryId, lastEntryId);
                 }
 
-                // Iterate over all the keys and remove each of them
-                for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
-                    keyToDelete.set(ledgerId, entryId);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Deleting index for ({}, {})", keyToDelete.getFirst(), keyToDelete.getSecond());
+                if (rangeEncoding) {
+                    // Records only exist for the first entry of each run
+                    lastKeyWrapper.set(ledgerId, lastEntryId + 1);
+                    try (CloseableIterator<byte[]> keys = locationsDb.keys(firstKeyWrapper.array,
+                            lastKeyWrapper.array)) {
+                        while (keys.hasNext()) {
+                            batch.remove(keys.next());
+                            ++deletedEntriesInBatch;
+                        }
+                    }
+                } else {
+                    // Iterate over all the keys and remove each of them
+                    for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+                        keyToDelete.set(ledgerId, entryId);
+                        if (log.isDebugEnabled()) {
+                            log.debug("Deleting index for ({}, {})", keyToDelete.getFirst(),
+                                    keyToDelete.getSecond());
+                        }
+                        batch.remove(keyToDelete.array);
+                        ++deletedEntriesInBatch;
                     }
-                    batch.remove(keyToDelete.array);
-                    ++deletedEntriesInBatch;
                 }
 
                 if (deletedEntriesInBatch > DELETE_ENTRIES_BATCH_SIZE) {
@@ -272,5 +344,240 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    // (ledgerId, entryId, sequence, location) tuples of the range encoding batches
+    private static final int PENDING_GROUP_SIZE = 4;
+    private static final ArrayGroupSort RANGE_SORTER = new ArrayGroupSort(3, PENDING_GROUP_SIZE);
+
+    /**
+     * Batch that collects the entry locations and writes them as range records when flushed.
+     *
+     * <p>When an entry is added several times to the batch, the last location added wins.
+     * Existing records covering some of the updated entries are split, so that every entry is
+     * always covered by a single record.
+     */
+    private final class RangeEncodingBatch implements Batch {
+        private final Batch batch;
+
+        // (ledgerId, entryId, sequence, location) tuples, the sequence being the order of insertion
+        private long[] pending = new long[PENDING_GROUP_SIZE * 1024];
+        private int pendingSize = 0;
+
+        RangeEncodingBatch(Batch batch) {
+            this.batch = batch;
+        }
+
+        void add(long ledgerId, long entryId, long location) {
+            if (log.isDebugEnabled()) {
+                log.debug("Add location - ledger: {} -- entry: {} -- location: {}", ledgerId, entryId, location);
+            }
+
+            if (pendingSize == pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+            pending[pendingSize] = ledgerId;
+            pending[pendingSize + 1] = entryId;
+            pending[pendingSize + 2] = pendingSize / PENDING_GROUP_SIZE;
+            pending[pendingSize + 3] = location;
+            pendingSize += PENDING_GROUP_SIZE;
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            batch.put(key, value);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            batch.remove(key);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            batch.deleteRange(beginKey, endKey);
+        }
+
+        @Override
+        public void clear() {
+            pendingSize = 0;
+            batch.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (rangeUpdateLock) {
+                writeRanges();
+                batch.flush();
+                // The records were computed against the current db content, they must not be written again
+                batch.clear();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            batch.close();
+        }
+
+        private void writeRanges() throws IOException {
+            // Entries coming from the write cache are already sorted
+            if (!isSorted()) {
+                RANGE_SORTER.sort(pending, 0, pendingSize);
+            }
+
+            int ledgerStart = 0;
+            while (ledgerStart < pendingSize) {
+                long ledgerId = pending[ledgerStart];
+                int ledgerEnd = ledgerStart;
+                while (ledgerEnd < pendingSize && pending[ledgerEnd] == ledgerId) {
+                    ledgerEnd += PENDING_GROUP_SIZE;
+                }
+
+                writeLedgerRanges(ledgerId, ledgerStart, ledgerEnd);
+                ledgerStart = ledgerEnd;
+            }
+
+            pendingSize = 0;
+        }
+
+        private boolean isSorted() {
+            // the sequences are increasing, so it is enough to compare the (ledgerId, entryId) pairs
+            for (int i = PENDING_GROUP_SIZE; i < pendingSize; i += PENDING_GROUP_SIZE) {
+                long prevLedgerId = pending[i - PENDING_GROUP_SIZE];
+                if (prevLedgerId > pending[i]
+                        || (prevLedgerId == pending[i] && pending[i - PENDING_GROUP_SIZE + 1] > pending[i + 1])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void writeLedgerRanges(long ledgerId, int from, int to) throws IOException {
+            // Drop duplicated entries, keeping the location added last which is the most recent write
+            int end = from;
+            for (int i = from; i < to; i += PENDING_GROUP_SIZE) {
+                if (end > from && pending[end - PENDING_GROUP_SIZE + 1] == pending[i + 1]) {
+                    end -= PENDING_GROUP_SIZE;
+                }
+                System.arraycopy(pending, i, pending, end, PENDING_GROUP_SIZE);
+                end += PENDING_GROUP_SIZE;
+            }
+
+            splitExistingRecords(ledgerId, from, end);
+
+            int runStart = from;
+            for (int i = from + PENDING_GROUP_SIZE; i <= end; i += PENDING_GROUP_SIZE) {
+                int runLength = (i - runStart) / PENDING_GROUP_SIZE;
+                if (i == end
+                        || runLength == EntryLocationRange.MAX_RUN_LENGTH
+                        || pending[i + 1] != pending[i - PENDING_GROUP_SIZE + 1] + 1
+                        || !EntryLocationRange.canExtend(pending[i - 1], pending[i + 3])) {
+                    putRecord(ledgerId, pending[runStart + 1],
+                            EntryLocationRange.encode(pending, runStart + 3, PENDING_GROUP_SIZE, runLength));
+                    runStart = i;
+                }
+            }
+        }
+
+        private void splitExistingRecords(long ledgerId, int from, int end) throws IOException {
+            LongPairWrapper firstKey = LongPairWrapper.get(ledgerId, pending[from + 1]);
+            LongPairWrapper lastKey = LongPairWrapper.get(ledgerId, pending[end - PENDING_GROUP_SIZE + 1] + 1);
+            List<Entry<byte[], byte[]>> records = new ArrayList<>();
+            try {
+                // The last record starting before the end of the updated entries. Most often the entries
+                // are new, and it ends before the first of them, in which case no record is updated.
+                Entry<byte[], byte[]> last = locationsDb.getFloor(lastKey.array);
+                if (last == null || ArrayUtil.getLong(last.getKey(), 0) != ledgerId
+                        || ArrayUtil.getLong(last.getKey(), 8) + EntryLocationRange.count(last.getValue())
+                            <= pending[from + 1]) {
+                    return;
+                }
+
+                // A record starting before the first entry can still cover it
+                Entry<byte[], byte[]> floor = locationsDb.getFloor(firstKey.array);
+                if (floor != null && ArrayUtil.getLong(floor.getKey(), 0) == ledgerId) {
+                    records.add(floor);
+                }
+
+                try (CloseableIterator<byte[]> keys = locationsDb.keys(firstKey.array, lastKey.array)) {
+                    while (keys.hasNext()) {
+                        byte[] key = keys.next();
+                        byte[] value = locationsDb.get(key);
+                        if (value != null) {
+                            records.add(new SimpleEntry<>(key, value));
+                        }
+                    }
+                }
+            } finally {
+                firstKey.recycle();
+                lastKey.recycle();
+            }
+
+            for (Entry<byte[], byte[]> record : records) {
+                splitRecord(ledgerId, record.getKey(), record.getValue(), from, end);
+            }
+        }
+
+        private void splitRecord(long ledgerId, byte[] key, byte[] value, int from, int end) throws IOException {
+            long recordFirstEntry = ArrayUtil.getLong(key, 8);
+            int count = EntryLocationRange.count(value);
+
+            int idx = findEntry(from, end, recordFirstEntry);
+            if (idx == end || pending[idx + 1] >= recordFirstEntry + count) {
+                // None of the entries of the record is being updated
+                return;
+            }
+
+            batch.remove(key);
+
+            // Write back the parts of the record that are not being updated
+            long[] locations = EntryLocationRange.decode(value);
+            int pieceStart = -1;
+            for (int i = 0; i < count; i++) {
+                long entryId = recordFirstEntry + i;
+                while (idx < end && pending[idx + 1] < entryId) {
+                    idx += PENDING_GROUP_SIZE;
+                }
+
+                if (idx < end && pending[idx + 1] == entryId) {
+                    if (pieceStart >= 0) {
+                        putRecord(ledgerId, recordFirstEntry + pieceStart,
+                                EntryLocationRange.encode(locations, pieceStart, 1, i - pieceStart));
+                        pieceStart = -1;
+                    }
+                } else if (pieceStart < 0) {
+                    pieceStart = i;
+                }
+            }
+
+            if (pieceStart >= 0) {
+                putRecord(ledgerId, recordFirstEntry + pieceStart,
+                        EntryLocationRange.encode(locations, pieceStart, 1, count - pieceStart));
+            }
+        }
+
+        // Index of the first pending tuple with entryId >= the given one
+        private int findEntry(int from, int end, long entryId) {
+            int low = 0;
+            int high = (end - from) / PENDING_GROUP_SIZE;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (pending[from + mid * PENDING_GROUP_SIZE + 1] < entryId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return from + low * PENDING_GROUP_SIZE;
+        }
+
+        private void putRecord(long ledgerId, long firstEntryId, byte[] value) throws IOException {
+            LongPairWrapper key = LongPairWrapper.get(ledgerId, firstEntryId);
+            try {
+                batch.put(key.array, value);
+            } finally {
+                key.recycle();
+            }
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(EntryLocationIndex.class);
 }
@@ -0,0 +1,144 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * Encoding of the values stored in the entry location index when range encoding is enabled.
+ *
+ * <p>A record keyed by {@code (ledgerId, firstEntryId)} describes a run of consecutive entries
+ * of the same ledger. A run of a single entry is stored as the plain 8 bytes location, which is
+ * the legacy per-entry format. Longer runs are stored as:
+ *
+ * <pre>
+ * [first location: 8 bytes][count: 4 bytes][count - 1 varint deltas between consecutive locations]
+ * </pre>
+ *
+ * <p>All the entries of a run are stored in the same entry log at increasing offsets, so the
+ * deltas are always positive and small (roughly the size of the entries).
+ */
+final class EntryLocationRange {
+
+    /**
+     * Max number of entries in a single record. It bounds the cost of decoding a location.
+     */
+    static final int MAX_RUN_LENGTH = 256;
+
+    private static final int LOCATION_SIZE = Long.BYTES;
+    private static final int HEADER_SIZE = LOCATION_SIZE + Integer.BYTES;
+    private static final int MAX_VARINT_SIZE = 10;
+
+    private EntryLocationRange() {}
+
+    /**
+     * Check whether {@code location} can follow {@code prevLocation} in the same run.
+     */
+    static boolean canExtend(long prevLocation, long location) {
+        return (prevLocation >>> 32) == (location >>> 32) && location > prevLocation;
+    }
+
+    static int count(byte[] value) {
+        if (value.length == LOCATION_SIZE) {
+            return 1;
+        }
+        return ((value[8] & 0xFF) << 24)
+                | ((value[9] & 0xFF) << 16)
+                | ((value[10] & 0xFF) << 8)
+                | (value[11] & 0xFF);
+    }
+
+    /**
+     * Get the location of the entry at position {@code index} in the run.
+     */
+    static long getLocation(byte[] value, int index) {
+        long location = ArrayUtil.getLong(value, 0);
+        int pos = HEADER_SIZE;
+        for (int i = 0; i < index; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = value[pos++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            location += delta;
+        }
+        return location;
+    }
+
+    /**
+     * Decode all the locations of the run.
+     */
+    static long[] decode(byte[] value) {
+        int count = count(value);
+        long[] locations = new long[count];
+        locations[0] = ArrayUtil.getLong(value, 0);
+        int pos = HEADER_SIZE;
+        for (int i = 1; i < count; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = value[pos++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            locations[i] = locations[i - 1] + delta;
+        }
+        return locations;
+    }
+
+    /**
+     * Encode {@code count} locations read from {@code array}, starting at {@code offset} and
+     * moving by {@code stride} positions for each location.
+     */
+    static byte[] encode(long[] array, int offset, int stride, int count) {
+        if (count == 1) {
+            byte[] value = new byte[LOCATION_SIZE];
+            ArrayUtil.setLong(value, 0, array[offset]);
+            return value;
+        }
+
+        byte[] buffer = new byte[HEADER_SIZE + (count - 1) * MAX_VARINT_SIZE];
+        ArrayUtil.setLong(buffer, 0, array[offset]);
+        buffer[8] = (byte) (count >>> 24);
+        buffer[9] = (byte) (count >>> 16);
+        buffer[10] = (byte) (count >>> 8);
+        buffer[11] = (byte) count;
+
+        int pos = HEADER_SIZE;
+        long prev = array[offset];
+        for (int i = 1; i < count; i++) {
+            long location = array[offset + i * stride];
+            long delta = location - prev;
+            while ((delta & ~0x7FL) != 0) {
+                buffer[pos++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            buffer[pos++] = (byte) delta;
+            prev = location;
+        }
+
+        byte[] value = new byte[pos];
+        System.arraycopy(buffer, 0, value, 0, pos);
+        return value;
+    }
+}
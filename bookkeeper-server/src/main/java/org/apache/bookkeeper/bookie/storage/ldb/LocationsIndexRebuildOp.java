@@ -37,6 +37,7 @@ import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
@@ -47,10 +48,16 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Scan all entries in the entry log and rebuild the locations index.
+ *
+ * <p>The index is written in the format selected by
+ * {@value DbLedgerStorage#LOCATION_INDEX_RANGE_ENCODING}, so this is also the way to convert an
+ * existing index from one format to the other.
  */
 public class LocationsIndexRebuildOp {
     private final ServerConfiguration conf;
 
+    private static final int REBUILD_BATCH_SIZE = 100000;
+
     public LocationsIndexRebuildOp(ServerConfiguration conf) {
         this.conf = conf;
     }
@@ -76,15 +83,21 @@ public class LocationsIndexRebuildOp {
         Set<Long> activeLedgers = getActiveLedgers(conf, KeyValueStorageRocksDB.factory, basePath);
         LOG.info("Found {} active ledgers in ledger manager", activeLedgers.size());
 
-        KeyValueStorage newIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(basePath, "locations",
-                DbConfigType.Default, conf);
+        EntryLocationIndex newIndex = new EntryLocationIndex(conf,
+                (defaultBasePath, subPath, dbConfigType, conf1) ->
+                        KeyValueStorageRocksDB.factory.newKeyValueStorage(defaultBasePath, subPath,
+                                DbConfigType.Default, conf1),
+                basePath, NullStatsLogger.INSTANCE);
 
         int totalEntryLogs = entryLogs.size();
         int completedEntryLogs = 0;
         LOG.info("Scanning {} entry logs", totalEntryLogs);
 
         for (long entryLogId : entryLogs) {
+            Batch batch = newIndex.newBatch();
             entryLogger.scanEntryLog(entryLogId, new EntryLogScanner() {
+                private int entriesInBatch = 0;
+
                 @Override
                 public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
                     long entryId = entry.getLong(8);
@@ -98,9 +111,12 @@ public class LocationsIndexRebuildOp {
                     }
 
                     // Update the ledger index page
-                    LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
-                    LongWrapper value = LongWrapper.get(location);
-                    newIndex.put(key.array, value.array);
+                    newIndex.addLocation(batch, ledgerId, entryId, location);
+                    if (++entriesInBatch >= REBUILD_BATCH_SIZE) {
+                        batch.flush();
+                        batch.clear();
+                        entriesInBatch = 0;
+                    }
                 }
 
                 @Override
@@ -108,13 +124,14 @@ public class LocationsIndexRebuildOp {
                     return activeLedgers.contains(ledgerId);
                 }
             });
+            batch.flush();
+            batch.close();
 
             ++completedEntryLogs;
             LOG.info("Completed scanning of log {}.log -- {} / {}", Long.toHexString(entryLogId), completedEntryLogs,
                     totalEntryLogs);
         }
 
-        newIndex.sync();
         newIndex.close();
 
         LOG.info("Rebuilding index is done. Total time: {}",
@@ -0,0 +1,258 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Decides how many entries to read ahead after a read cache miss, and tracks how much
+ * of the read-ahead is actually used.
+ *
+ * <p>The policy keeps the access pattern of each ledger being read. When adaptive, the
+ * read-ahead window of a ledger starts at the configured batch size, doubles (up to the max
+ * batch size) every time the reader misses the entry right after the last one it read, which
+ * means a sequential reader consumed the whole window, and halves on every other miss, down to
+ * no read-ahead at all for random readers. Otherwise the window is always the batch size.
+ *
+ * <p>The entries read ahead that are never read before the next read-ahead of the same
+ * ledger are accounted as wasted.
+ *
+ * <p>The policy also tracks the read-aheads in progress, so that a miss on an entry that is
+ * already being read ahead does not start another read-ahead of the same range.
+ *
+ * <p>The state of a ledger that was not read for a while, and has no read-ahead in progress,
+ * is dropped, so that the ledgers read once do not pile up.
+ */
+class ReadAheadPolicy {
+
+    // below this window a reader is considered random and read-ahead is disabled
+    private static final int MIN_ADAPTIVE_WINDOW = 4;
+
+    private static final long IDLE_LEDGER_EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final boolean adaptive;
+    private final int batchSize;
+    private final int maxBatchSize;
+    private final DbLedgerStorageStats stats;
+    private final LongSupplier nanoClock;
+    private final AtomicLong lastExpiryNanos;
+
+    private final ConcurrentLongHashMap<LedgerReadState> ledgers = ConcurrentLongHashMap.<LedgerReadState>newBuilder()
+            .expectedItems(4096)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+
+    private static class LedgerReadState {
+        int window;
+        long lastEntryId = -1;
+        volatile long lastAccessNanos;
+
+        // entries [windowStart, windowEnd) were read ahead for a total of windowBytes
+        long windowStart;
+        long windowEnd;
+        long windowBytes;
+        // the entries of the window below this one are considered read
+        long consumedEnd;
+        // [first, end) ranges of the read-aheads in progress
+        List<long[]> inProgress;
+
+        LedgerReadState(int window, long now) {
+            this.window = window;
+            this.lastAccessNanos = now;
+        }
+    }
+
+    ReadAheadPolicy(boolean adaptive, int batchSize, int maxBatchSize, DbLedgerStorageStats stats) {
+        this(adaptive, batchSize, maxBatchSize, stats, MathUtils::nowInNano);
+    }
+
+    @VisibleForTesting
+    ReadAheadPolicy(boolean adaptive, int batchSize, int maxBatchSize, DbLedgerStorageStats stats,
+                    LongSupplier nanoClock) {
+        this.adaptive = adaptive;
+        this.batchSize = batchSize;
+        this.maxBatchSize = Math.max(batchSize, maxBatchSize);
+        this.stats = stats;
+        this.nanoClock = nanoClock;
+        this.lastExpiryNanos = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Record an entry of the ledger found in the read cache.
+     */
+    void onCacheHit(long ledgerId, long entryId) {
+        LedgerReadState state = ledgers.get(ledgerId);
+        if (state == null) {
+            return;
+        }
+
+        synchronized (state) {
+            if (entryId >= state.windowStart && entryId < state.windowEnd) {
+                stats.getReadAheadHitCounter().inc();
+                state.consumedEnd = Math.max(state.consumedEnd, entryId + 1);
+            }
+            state.lastEntryId = entryId;
+            state.lastAccessNanos = nanoClock.getAsLong();
+        }
+    }
+
+    /**
+     * Record a read cache miss on an entry of the ledger.
+     *
+     * @return the number of entries to read ahead after the missed entry
+     */
+    int onCacheMiss(long ledgerId, long entryId) {
+        long now = nanoClock.getAsLong();
+        expireIdleLedgers(now);
+        LedgerReadState state = ledgers.computeIfAbsent(ledgerId, k -> new LedgerReadState(batchSize, now));
+
+        synchronized (state) {
+            state.lastAccessNanos = now;
+            if (isInProgress(state, entryId)) {
+                // The reader caught up with a read-ahead that is still in progress
+                state.lastEntryId = entryId;
+                return 0;
+            }
+
+            long unread = state.windowEnd - Math.max(state.consumedEnd, state.windowStart);
+            if (unread > 0) {
+                long windowCount = state.windowEnd - state.windowStart;
+                stats.getReadAheadWastedBytesCounter().add(state.windowBytes * unread / windowCount);
+            }
+
+            if (adaptive && state.lastEntryId >= 0) {
+                if (entryId == state.lastEntryId + 1) {
+                    // sequential reader that went past the window
+                    state.window = state.window == 0 ? batchSize : Math.min(state.window * 2, maxBatchSize);
+                } else {
+                    state.window /= 2;
+                    if (state.window < MIN_ADAPTIVE_WINDOW) {
+                        state.window = 0;
+                    }
+                }
+            }
+
+            state.lastEntryId = entryId;
+            state.windowStart = entryId + 1;
+            state.windowEnd = entryId + 1;
+            state.windowBytes = 0;
+            state.consumedEnd = entryId + 1;
+            return state.window;
+        }
+    }
+
+    /**
+     * Register a read-ahead of {@code count} entries starting at {@code firstEntryId}, unless it
+     * overlaps with a read-ahead of the ledger already in progress.
+     *
+     * @return true if the read-ahead should be done, in which case {@link #onReadAhead} must be
+     *         called once it completes
+     */
+    boolean startReadAhead(long ledgerId, long firstEntryId, int count) {
+        LedgerReadState state = ledgers.computeIfAbsent(ledgerId,
+                k -> new LedgerReadState(batchSize, nanoClock.getAsLong()));
+
+        synchronized (state) {
+            if (state.inProgress == null) {
+                state.inProgress = new ArrayList<>(1);
+            }
+            long endEntryId = firstEntryId + count;
+            for (int i = 0; i < state.inProgress.size(); i++) {
+                long[] range = state.inProgress.get(i);
+                if (firstEntryId < range[1] && range[0] < endEntryId) {
+                    stats.getReadAheadDedupedCounter().inc();
+                    return false;
+                }
+            }
+            state.inProgress.add(new long[] { firstEntryId, endEntryId });
+            return true;
+        }
+    }
+
+    private static boolean isInProgress(LedgerReadState state, long entryId) {
+        if (state.inProgress == null) {
+            return false;
+        }
+        for (int i = 0; i < state.inProgress.size(); i++) {
+            long[] range = state.inProgress.get(i);
+            if (entryId >= range[0] && entryId < range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record the entries read ahead after a miss.
+     */
+    void onReadAhead(long ledgerId, long firstEntryId, int count, long bytes) {
+        stats.getReadAheadEntriesCounter().add(count);
+
+        LedgerReadState state = ledgers.get(ledgerId);
+        if (state == null) {
+            return;
+        }
+
+        synchronized (state) {
+            if (state.inProgress != null) {
+                state.inProgress.removeIf(range -> range[0] == firstEntryId);
+            }
+
+            state.windowStart = firstEntryId;
+            state.windowEnd = firstEntryId + count;
+            state.windowBytes = bytes;
+            // the reader might have already read some of the entries while they were being read ahead
+            state.consumedEnd = state.lastEntryId >= firstEntryId ? state.lastEntryId + 1 : firstEntryId;
+        }
+    }
+
+    /**
+     * Drop the ledgers not read since the expiry time, at most once per expiry time.
+     */
+    private void expireIdleLedgers(long now) {
+        long lastExpiry = lastExpiryNanos.get();
+        if (now - lastExpiry < IDLE_LEDGER_EXPIRY_NANOS || !lastExpiryNanos.compareAndSet(lastExpiry, now)) {
+            return;
+        }
+        ledgers.removeIf((ledgerId, state) -> {
+            synchronized (state) {
+                return now - state.lastAccessNanos >= IDLE_LEDGER_EXPIRY_NANOS
+                        && (state.inProgress == null || state.inProgress.isEmpty());
+            }
+        });
+    }
+
+    @VisibleForTesting
+    long getLedgerCount() {
+        return ledgers.size();
+    }
+
+    void removeLedger(long ledgerId) {
+        ledgers.remove(ledgerId);
+    }
+}
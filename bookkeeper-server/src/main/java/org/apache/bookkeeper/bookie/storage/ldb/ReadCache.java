@@ -30,8 +30,9 @@ import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
 import org.slf4j.Logger;
@@ -46,107 +47,191 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>The cache can be split in multiple shards, selected by ledger id, that
+ * rotate their segments independently. Lookups do not take any lock: they
+ * use an optimistic read of the shard lock, which is only invalidated when the
+ * shard rotates a segment, and fall back to the read lock in that case.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
-    private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
-
-    private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
-
-    private int currentSegmentIdx;
-    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
-    private final int segmentSize;
-
-    private ByteBufAllocator allocator;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Shard[] shards;
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
-        this.allocator = allocator;
-        int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
-        segmentSize = (int) (maxCacheSize / segmentsCount);
-
-        cacheSegments = new ArrayList<>();
-        cacheIndexes = new ArrayList<>();
-
-        for (int i = 0; i < segmentsCount; i++) {
-            cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
-                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-                    .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+        this(allocator, maxCacheSize, maxSegmentSize, 1);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, int shardsCount) {
+        shards = new Shard[Math.max(1, shardsCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(allocator, maxCacheSize / shards.length, maxSegmentSize);
         }
     }
 
+    private Shard getShard(long ledgerId) {
+        return shards.length == 1 ? shards[0] : shards[MathUtils.signSafeMod(ledgerId, shards.length)];
+    }
+
     @Override
     public void close() {
-        cacheSegments.forEach(ByteBuf::release);
+        for (Shard shard : shards) {
+            shard.close();
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
-        int entrySize = entry.readableBytes();
-        int alignedSize = align64(entrySize);
+        getShard(ledgerId).put(ledgerId, entryId, entry);
+    }
 
-        lock.readLock().lock();
+    public ByteBuf get(long ledgerId, long entryId) {
+        return getShard(ledgerId).get(ledgerId, entryId);
+    }
 
-        try {
-            if (entrySize > segmentSize) {
-                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return getShard(ledgerId).hasEntry(ledgerId, entryId);
+    }
+
+    /**
+     * @return the total size of cached entries
+     */
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the total number of cached entries
+     */
+    public long count() {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.count();
+        }
+        return count;
+    }
+
+    private static class Shard {
+        private final List<ByteBuf> cacheSegments;
+        private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+
+        private int currentSegmentIdx;
+        private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+
+        private final int segmentSize;
+
+        private final ByteBufAllocator allocator;
+        private final StampedLock lock = new StampedLock();
+
+        Shard(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+            this.allocator = allocator;
+            int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+            segmentSize = (int) (maxCacheSize / segmentsCount);
+
+            cacheSegments = new ArrayList<>();
+            cacheIndexes = new ArrayList<>();
+
+            for (int i = 0; i < segmentsCount; i++) {
+                cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
+                ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
+                        .expectedItems(4096)
+                        .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                        .build();
+                cacheIndexes.add(concurrentLongLongPairHashMap);
             }
-            int offset = currentSegmentOffset.getAndAdd(alignedSize);
-            if (offset + entrySize > segmentSize) {
-                // Roll-over the segment (outside the read-lock)
-            } else {
+        }
+
+        void close() {
+            cacheSegments.forEach(ByteBuf::release);
+        }
+
+        void put(long ledgerId, long entryId, ByteBuf entry) {
+            int entrySize = entry.readableBytes();
+            int alignedSize = align64(entrySize);
+
+            long stamp = lock.readLock();
+
+            try {
+                if (entrySize > segmentSize) {
+                    log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+                    return;
+                }
+                int offset = currentSegmentOffset.getAndAdd(alignedSize);
+                if (offset + entrySize > segmentSize) {
+                    // Roll-over the segment (outside the read-lock)
+                } else {
+                    // Copy entry into read cache segment
+                    cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
+                            entry.readableBytes());
+                    cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+                    return;
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+
+            // We could not insert in segment, we to get the write lock and roll-over to
+            // next segment
+            stamp = lock.writeLock();
+
+            try {
+                int offset = currentSegmentOffset.getAndAdd(entrySize);
+                if (offset + entrySize > segmentSize) {
+                    // Rollover to next segment
+                    currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+                    currentSegmentOffset.set(alignedSize);
+                    cacheIndexes.get(currentSegmentIdx).clear();
+                    offset = 0;
+                }
+
                 // Copy entry into read cache segment
                 cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
                         entry.readableBytes());
                 cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-                return;
+            } finally {
+                lock.unlockWrite(stamp);
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
-        // We could not insert in segment, we to get the write lock and roll-over to
-        // next segment
-        lock.writeLock().lock();
-
-        try {
-            int offset = currentSegmentOffset.getAndAdd(entrySize);
-            if (offset + entrySize > segmentSize) {
-                // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
-                currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
-                offset = 0;
+        ByteBuf get(long ledgerId, long entryId) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                ByteBuf entry = doGet(ledgerId, entryId);
+                if (lock.validate(stamp)) {
+                    return entry;
+                }
+
+                // A segment was rotated meanwhile, the entry could have been overwritten
+                if (entry != null) {
+                    entry.release();
+                }
             }
 
-            // Copy entry into read cache segment
-            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-        } finally {
-            lock.writeLock().unlock();
+            stamp = lock.readLock();
+            try {
+                return doGet(ledgerId, entryId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
         }
-    }
-
-    public ByteBuf get(long ledgerId, long entryId) {
-        lock.readLock().lock();
 
-        try {
+        private ByteBuf doGet(long ledgerId, long entryId) {
             // We need to check all the segments, starting from the current one and looking
             // backward to minimize the
             // checks for recently inserted entries
             int size = cacheSegments.size();
+            int currentIdx = currentSegmentIdx;
             for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+                int segmentIdx = (currentIdx + (size - i)) % size;
 
                 LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
                 if (res != null) {
@@ -158,74 +243,78 @@ public class ReadCache implements Closeable {
                     return entry;
                 }
             }
-        } finally {
-            lock.readLock().unlock();
+
+            // Entry not found in any segment
+            return null;
         }
 
-        // Entry not found in any segment
-        return null;
-    }
+        boolean hasEntry(long ledgerId, long entryId) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                boolean found = doHasEntry(ledgerId, entryId);
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            }
 
-    public boolean hasEntry(long ledgerId, long entryId) {
-        lock.readLock().lock();
+            stamp = lock.readLock();
+            try {
+                return doHasEntry(ledgerId, entryId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
 
-        try {
+        private boolean doHasEntry(long ledgerId, long entryId) {
             int size = cacheSegments.size();
+            int currentIdx = currentSegmentIdx;
             for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+                int segmentIdx = (currentIdx + (size - i)) % size;
 
                 LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
                 if (res != null) {
                     return true;
                 }
             }
-        } finally {
-            lock.readLock().unlock();
-        }
 
-        // Entry not found in any segment
-        return false;
-    }
+            // Entry not found in any segment
+            return false;
+        }
 
-    /**
-     * @return the total size of cached entries
-     */
-    public long size() {
-        lock.readLock().lock();
-
-        try {
-            long size = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                if (i == currentSegmentIdx) {
-                    size += currentSegmentOffset.get();
-                } else if (!cacheIndexes.get(i).isEmpty()) {
-                    size += segmentSize;
-                } else {
-                    // the segment is empty
+        long size() {
+            long stamp = lock.readLock();
+
+            try {
+                long size = 0;
+                for (int i = 0; i < cacheIndexes.size(); i++) {
+                    if (i == currentSegmentIdx) {
+                        size += currentSegmentOffset.get();
+                    } else if (!cacheIndexes.get(i).isEmpty()) {
+                        size += segmentSize;
+                    } else {
+                        // the segment is empty
+                    }
                 }
-            }
 
-            return size;
-        } finally {
-            lock.readLock().unlock();
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
         }
-    }
 
-    /**
-     * @return the total number of cached entries
-     */
-    public long count() {
-        lock.readLock().lock();
+        long count() {
+            long stamp = lock.readLock();
 
-        try {
-            long count = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
-            }
+            try {
+                long count = 0;
+                for (int i = 0; i < cacheIndexes.size(); i++) {
+                    count += cacheIndexes.get(i).size();
+                }
 
-            return count;
-        } finally {
-            lock.readLock().unlock();
+                return count;
+            } finally {
+                lock.unlockRead(stamp);
+            }
         }
     }
 }
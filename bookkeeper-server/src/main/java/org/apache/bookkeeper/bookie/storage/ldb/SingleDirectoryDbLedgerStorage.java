@@ -41,12 +41,19 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
 
@@ -69,9 +76,11 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerEntryPage;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.DirectEntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.proto.BookieProtocol;
@@ -118,9 +127,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final AtomicBoolean isFlushOngoing = new AtomicBoolean(false);
 
     private static String dbStoragerExecutorName = "db-storage";
+    private static final String readAheadExecutorName = "db-storage-read-ahead";
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
             new DefaultThreadFactory(dbStoragerExecutorName));
 
+    // Executor used to build and commit the locations index while a checkpoint writes the entry log
+    private final ExecutorService flushIndexExecutor;
+
+    // Number of entries handed over at once to the locations index stage of a pipelined flush
+    private static final int FLUSH_INDEX_CHUNK_SIZE = 16 * 1024;
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -138,9 +154,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final long maxThrottleTimeNanos;
 
     private final DbLedgerStorageStats dbLedgerStorageStats;
+    private final ReadAheadPolicy readAheadPolicy;
+    // Executor of the asynchronous read-aheads, or null if they run on the reading thread
+    private final ExecutorService readAheadExecutor;
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final long MB = 1024 * 1024;
+
     private final long maxReadAheadBytesSize;
 
     private final Counter flushExecutorTime;
@@ -149,6 +170,26 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
             ByteBufAllocator allocator, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
             int readAheadCacheBatchSize) throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator, gcExecutor,
+                writeCacheSize, readCacheSize, readAheadCacheBatchSize,
+                conf.getLong(DbLedgerStorage.DIRECT_IO_ENTRY_LOGGER_TOTAL_WRITE_BUFFER_SIZE_MB,
+                        DbLedgerStorage.DEFAULT_DIRECT_IO_ENTRY_LOGGER_TOTAL_WRITE_BUFFER_SIZE_MB) * MB,
+                conf.getLong(DbLedgerStorage.DIRECT_IO_ENTRY_LOGGER_TOTAL_READ_BUFFER_SIZE_MB,
+                        DbLedgerStorage.DEFAULT_DIRECT_IO_ENTRY_LOGGER_TOTAL_READ_BUFFER_SIZE_MB) * MB,
+                null);
+    }
+
+    /**
+     * Create the storage on top of the given entry logger, or on top of the one selected by the
+     * configuration when {@code entryLogger} is null. The direct I/O buffer sizes are the ones of
+     * this directory, when the direct I/O entry logger is selected.
+     */
+    @VisibleForTesting
+    SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
+            LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
+            ByteBufAllocator allocator, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
+            int readAheadCacheBatchSize, long directIOWriteBufferSize, long directIOReadBufferSize,
+            EntryLogger entryLogger) throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
                 "Db implementation only allows for one storage dir");
 
@@ -159,8 +200,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 ledgerDirsManager.getAllLedgerDirs().get(0).getPath());
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        if (conf.getBoolean(DbLedgerStorage.WRITE_CACHE_ZERO_COPY_READS,
+                DbLedgerStorage.DEFAULT_WRITE_CACHE_ZERO_COPY_READS)) {
+            this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2,
+                    WriteCache.ZERO_COPY_MAX_SEGMENT_SIZE, true);
+            this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2,
+                    WriteCache.ZERO_COPY_MAX_SEGMENT_SIZE, true);
+        } else {
+            this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
+            this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        }
 
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
@@ -172,7 +221,15 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        readCache = new ReadCache(allocator, readCacheMaxSize, ReadCache.DEFAULT_MAX_SEGMENT_SIZE,
+                conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_SHARDS, DbLedgerStorage.DEFAULT_READ_AHEAD_CACHE_SHARDS));
+
+        if (conf.getBoolean(DbLedgerStorage.PIPELINED_FLUSH_ENABLED,
+                DbLedgerStorage.DEFAULT_PIPELINED_FLUSH_ENABLED)) {
+            flushIndexExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("db-storage-flush-index"));
+        } else {
+            flushIndexExecutor = null;
+        }
 
         ledgerIndex = new LedgerMetadataIndex(conf, KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
@@ -186,8 +243,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
-        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
-        gcThread = new GarbageCollectorThread(conf, ledgerManager, ledgerDirsManager, this, entryLogger, statsLogger);
+        if (entryLogger != null) {
+            this.entryLogger = entryLogger;
+        } else if (conf.getBoolean(DbLedgerStorage.DIRECT_IO_ENTRY_LOGGER,
+                DbLedgerStorage.DEFAULT_DIRECT_IO_ENTRY_LOGGER)) {
+            //We reserve 500 bytes as overhead for the protocol, as the DefaultEntryLogger does
+            this.entryLogger = new DirectEntryLogger(ledgerDirsManager.getAllLedgerDirs().get(0), new NativeIOImpl(),
+                    allocator, conf.getEntryLogSizeLimit(), conf.getNettyMaxFrameSizeBytes() - 500,
+                    directIOWriteBufferSize, directIOReadBufferSize,
+                    conf.getInt(DbLedgerStorage.DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE_KB,
+                            DbLedgerStorage.DEFAULT_DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE_KB) * 1024,
+                    ledgerDirStatsLogger);
+        } else {
+            this.entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
+        }
+        gcThread = new GarbageCollectorThread(conf, ledgerManager, ledgerDirsManager, this, this.entryLogger,
+                statsLogger);
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
                 ledgerDirStatsLogger,
@@ -197,6 +268,26 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             () -> readCache.count()
         );
 
+        readAheadPolicy = new ReadAheadPolicy(
+                conf.getBoolean(DbLedgerStorage.READ_AHEAD_ADAPTIVE_ENABLED,
+                        DbLedgerStorage.DEFAULT_READ_AHEAD_ADAPTIVE_ENABLED),
+                readAheadCacheBatchSize,
+                conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_MAX_BATCH_SIZE,
+                        DbLedgerStorage.DEFAULT_READ_AHEAD_CACHE_MAX_BATCH_SIZE),
+                dbLedgerStorageStats);
+
+        int readAheadThreads = conf.getInt(DbLedgerStorage.READ_AHEAD_ASYNC_THREADS,
+                DbLedgerStorage.DEFAULT_READ_AHEAD_ASYNC_THREADS);
+        if (readAheadThreads > 0) {
+            readAheadExecutor = new ThreadPoolExecutor(readAheadThreads, readAheadThreads,
+                    0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(conf.getInt(DbLedgerStorage.READ_AHEAD_ASYNC_MAX_PENDING,
+                            DbLedgerStorage.DEFAULT_READ_AHEAD_ASYNC_MAX_PENDING)),
+                    newRegisteredThreadFactory(readAheadExecutorName));
+        } else {
+            readAheadExecutor = null;
+        }
+
         flushExecutorTime = ledgerDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
 
         executor.submit(() -> {
@@ -266,6 +357,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             flush();
 
             gcThread.shutdown();
+            if (readAheadExecutor != null) {
+                readAheadExecutor.shutdownNow();
+                readAheadExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
             entryLogger.close();
 
             cleanupExecutor.shutdown();
@@ -278,6 +373,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             writeCacheBeingFlushed.close();
             readCache.close();
             executor.shutdown();
+            if (flushIndexExecutor != null) {
+                flushIndexExecutor.shutdown();
+            }
 
         } catch (IOException e) {
             log.error("Error closing db storage", e);
@@ -541,10 +639,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            readAheadPolicy.onCacheHit(ledgerId, entryId);
             return entry;
         }
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
+        int readAheadBatchSize = readAheadPolicy.onCacheMiss(ledgerId, entryId);
 
         // Read from main storage
         long entryLocation;
@@ -571,14 +671,42 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         readCache.put(ledgerId, entryId, entry);
 
         // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        if (readAheadBatchSize > 0 && readAheadPolicy.startReadAhead(ledgerId, entryId + 1, readAheadBatchSize)) {
+            long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
+            if (readAheadExecutor != null) {
+                submitReadAhead(ledgerId, entryId + 1, nextEntryLocation, readAheadBatchSize);
+            } else {
+                fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, readAheadBatchSize);
+            }
+        }
 
         return entry;
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    private void submitReadAhead(long ledgerId, long firstEntryId, long firstEntryLocation, int batchSize) {
+        try {
+            readAheadExecutor.execute(() -> fillReadAheadCache(ledgerId, firstEntryId, firstEntryLocation, batchSize));
+        } catch (RejectedExecutionException e) {
+            // Too many read-aheads pending, the reader will trigger a new one on its next miss
+            dbLedgerStorageStats.getReadAheadRejectedCounter().inc();
+            readAheadPolicy.onReadAhead(ledgerId, firstEntryId, 0, 0);
+        }
+    }
+
+    private static ThreadFactory newRegisteredThreadFactory(String name) {
+        ThreadFactory threadFactory = new DefaultThreadFactory(name);
+        AtomicInteger threadIdx = new AtomicInteger();
+        return r -> {
+            Thread thread = threadFactory.newThread(r);
+            ThreadRegistry.register(name, threadIdx.getAndIncrement(), thread.getId());
+            return thread;
+        };
+    }
+
+    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation,
+                                    int batchSize) {
         long readAheadStartNano = MathUtils.nowInNano();
+        final long readAheadFirstEntryId = firstEntryId;
         int count = 0;
         long size = 0;
 
@@ -587,7 +715,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
 
-            while (count < readAheadCacheBatchSize
+            // the read-ahead stops at the end of the entry log of the missed entry
+            while (count < batchSize
                     && size < maxReadAheadBytesSize
                     && currentEntryLogId == firstEntryLogId) {
                 ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
@@ -620,6 +749,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 log.debug("Exception during read ahead for ledger: {}: e", orginalLedgerId, e);
             }
         } finally {
+            readAheadPolicy.onReadAhead(orginalLedgerId, readAheadFirstEntryId, count, size);
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
             dbLedgerStorageStats.getReadAheadTime().add(MathUtils.elapsedNanos(readAheadStartNano));
@@ -717,30 +847,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                         sizeToFlush / 1024.0 / 1024);
             }
 
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                try {
-                    long location = entryLogger.addEntry(ledgerId, entry);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
-
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+            if (flushIndexExecutor != null) {
+                flushWriteCachePipelined();
+            } else {
+                flushWriteCache();
             }
 
             long ledgerIndexStartTime = MathUtils.nowInNano();
@@ -793,6 +903,175 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    private void flushWriteCache() throws IOException {
+        // Write all the pending entries into the entry logger and collect the offset
+        // position for each entry
+
+        long writeStartTime = MathUtils.nowInNano();
+        Batch batch = entryLocationIndex.newBatch();
+        writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+            try {
+                long location = entryLogger.addEntry(ledgerId, entry);
+                entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushWriteEntryLogStats(), writeStartTime);
+
+        long entryLoggerStart = MathUtils.nowInNano();
+        entryLogger.flush();
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+
+        long batchFlushStartTime = MathUtils.nowInNano();
+        batch.flush();
+        batch.close();
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+        if (log.isDebugEnabled()) {
+            log.debug("DB batch flushed time : {} s",
+                    MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Flush the write cache, building the locations index batch on the flush index thread.
+     *
+     * <p>The checkpoint thread copies the entries into the entry log and hands over their locations
+     * in chunks, so the batch is built while the entries are written and the entry log is synced.
+     * The batch is only committed once the entry log sync has succeeded, so the index never points
+     * at entry log data that is not durable.
+     */
+    private void flushWriteCachePipelined() throws IOException {
+        PipelinedLocationIndexFlush indexFlush = new PipelinedLocationIndexFlush();
+
+        long writeStartTime = MathUtils.nowInNano();
+        try {
+            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+                try {
+                    long location = entryLogger.addEntry(ledgerId, entry);
+                    indexFlush.add(ledgerId, entryId, location);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushWriteEntryLogStats(), writeStartTime);
+
+            long entryLoggerStart = MathUtils.nowInNano();
+            entryLogger.flush();
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+        } catch (IOException | RuntimeException e) {
+            try {
+                indexFlush.abort();
+            } catch (IOException ie) {
+                e.addSuppressed(ie);
+            }
+            throw e;
+        }
+
+        long waitStartTime = MathUtils.nowInNano();
+        waitForLocationIndexFlush(indexFlush.commit());
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexWaitStats(), waitStartTime);
+    }
+
+    private static void waitForLocationIndexFlush(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the locations index", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Locations index stage of a pipelined flush. All the batch operations run on the flush index
+     * thread, in the order the chunks were submitted.
+     */
+    private final class PipelinedLocationIndexFlush {
+        private final Batch batch = entryLocationIndex.newBatch();
+
+        // (ledgerId, entryId, location) triples not yet handed over to the index thread
+        private long[] chunk = new long[3 * FLUSH_INDEX_CHUNK_SIZE];
+        private int chunkSize = 0;
+
+        // Only accessed from the flush index thread
+        private long buildTimeNanos = 0;
+        private IOException failure = null;
+
+        void add(long ledgerId, long entryId, long location) {
+            chunk[chunkSize++] = ledgerId;
+            chunk[chunkSize++] = entryId;
+            chunk[chunkSize++] = location;
+            if (chunkSize == chunk.length) {
+                submitChunk();
+            }
+        }
+
+        private void submitChunk() {
+            final long[] locations = chunk;
+            final int size = chunkSize;
+            chunk = new long[chunk.length];
+            chunkSize = 0;
+
+            flushIndexExecutor.execute(() -> {
+                if (failure != null) {
+                    return;
+                }
+
+                long startTime = MathUtils.nowInNano();
+                try {
+                    for (int i = 0; i < size; i += 3) {
+                        entryLocationIndex.addLocation(batch, locations[i], locations[i + 1], locations[i + 2]);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                buildTimeNanos += MathUtils.elapsedNanos(startTime);
+            });
+        }
+
+        Future<?> commit() {
+            if (chunkSize > 0) {
+                submitChunk();
+            }
+
+            return flushIndexExecutor.submit(() -> {
+                try {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    dbLedgerStorageStats.getFlushBuildLocationIndexStats()
+                            .registerSuccessfulEvent(buildTimeNanos, TimeUnit.NANOSECONDS);
+
+                    long batchFlushStartTime = MathUtils.nowInNano();
+                    batch.flush();
+                    recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+                    if (log.isDebugEnabled()) {
+                        log.debug("DB batch flushed time : {} s",
+                                MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+                    }
+                } finally {
+                    batch.close();
+                }
+                return null;
+            });
+        }
+
+        /**
+         * Discard the batch without committing it. The entries are replayed from the journal.
+         */
+        void abort() throws IOException {
+            waitForLocationIndexFlush(flushIndexExecutor.submit(() -> {
+                batch.close();
+                return null;
+            }));
+        }
+    }
+
     /**
      * Swap the current write cache with the replacement cache.
      */
@@ -839,6 +1118,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         entryLocationIndex.delete(ledgerId);
         ledgerIndex.delete(ledgerId);
+        readAheadPolicy.removeLedger(ledgerId);
 
         for (int i = 0, size = ledgerDeletionListeners.size(); i < size; i++) {
             LedgerDeletionListener listener = ledgerDeletionListeners.get(i);
@@ -1003,6 +1283,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return entryLocationIndex;
     }
 
+    @VisibleForTesting
+    ReadCache getReadCache() {
+        return readCache;
+    }
+
     private void recordSuccessfulEvent(OpStatsLogger logger, long startTimeNanos) {
         logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
     }
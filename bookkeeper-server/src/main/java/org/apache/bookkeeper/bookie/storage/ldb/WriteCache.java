@@ -22,11 +22,16 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
@@ -50,6 +55,18 @@ import org.slf4j.LoggerFactory;
  *
  * <p>There is the possibility to iterate through the stored entries in an ordered
  * way, by (ledgerId, entry).
+ *
+ * <p>With zero-copy reads, {@link #get(long, long)} returns a retained slice of the
+ * cache segment instead of a copy of the entry. The slices keep a reference on their
+ * segment, so when the cache is cleared the segments that are still referenced are
+ * replaced with new ones, and freed once the last slice is released. A clear epoch
+ * lets the readers detect a concurrent {@link #clear()} and never hand out a slice
+ * of a segment that could be overwritten.
+ *
+ * <p>Once {@link #ZERO_COPY_MAX_RETIRED_SEGMENTS} replaced segments are still referenced,
+ * the reads copy the entries again, so that the segments of the cache stop getting
+ * referenced and no more segments are replaced. The replaced segments are checked on
+ * every clear.
  */
 public class WriteCache implements Closeable {
 
@@ -86,18 +103,43 @@ public class WriteCache implements Closeable {
 
     private final ByteBufAllocator allocator;
 
+    /**
+     * Smaller segments are used with zero-copy reads, to bound the memory taken by the
+     * segments that are replaced because they are still referenced when the cache is cleared.
+     */
+    static final int ZERO_COPY_MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Max number of replaced segments still referenced by slices, before the reads fall back to copies.
+     */
+    static final int ZERO_COPY_MAX_RETIRED_SEGMENTS = 4;
+
+    private final boolean zeroCopyReads;
+
+    // odd while the cache is being cleared
+    private final AtomicInteger clearEpoch = new AtomicInteger(0);
+
+    // replaced segments not yet freed, only accessed by clear
+    private final List<ByteBuf> retiredSegments = new ArrayList<>();
+    private volatile boolean copyReads = false;
+
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
         // Default maxSegmentSize set to 1Gb
         this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, false);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean zeroCopyReads) {
         checkArgument(maxSegmentSize > 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
         checkArgument(maxSegmentSize == alignedMaxSegmentSize, "Max segment size needs to be in form of 2^n");
 
         this.allocator = allocator;
+        this.zeroCopyReads = zeroCopyReads;
         this.maxCacheSize = maxCacheSize;
         this.maxSegmentSize = (int) maxSegmentSize;
         this.segmentOffsetMask = maxSegmentSize - 1;
@@ -116,13 +158,46 @@ public class WriteCache implements Closeable {
         cacheSegments[segmentsCount - 1] = Unpooled.directBuffer(lastSegmentSize, lastSegmentSize);
     }
 
+    /**
+     * Clear the cache. It must not be called concurrently with {@link #put(long, long, ByteBuf)}
+     * or with another clear.
+     */
     public void clear() {
-        cacheSize.set(0L);
-        cacheOffset.set(0L);
-        cacheCount.reset();
-        index.clear();
-        lastEntryMap.clear();
-        deletedLedgers.clear();
+        clearEpoch.incrementAndGet();
+        try {
+            cacheSize.set(0L);
+            cacheOffset.set(0L);
+            cacheCount.reset();
+            index.clear();
+            lastEntryMap.clear();
+            deletedLedgers.clear();
+
+            if (zeroCopyReads) {
+                replaceReferencedSegments();
+            }
+        } finally {
+            clearEpoch.incrementAndGet();
+        }
+    }
+
+    private void replaceReferencedSegments() {
+        retiredSegments.removeIf(segment -> segment.refCnt() == 0);
+        for (int i = 0; i < segmentsCount; i++) {
+            ByteBuf segment = cacheSegments[i];
+            if (segment.refCnt() > 1) {
+                // Some readers still hold slices of this segment, it will be freed by the last of them
+                int capacity = segment.capacity();
+                cacheSegments[i] = Unpooled.directBuffer(capacity, capacity);
+                segment.release();
+                retiredSegments.add(segment);
+            }
+        }
+        copyReads = retiredSegments.size() >= ZERO_COPY_MAX_RETIRED_SEGMENTS;
+    }
+
+    @VisibleForTesting
+    int getRetiredSegmentsCount() {
+        return retiredSegments.size();
     }
 
     @Override
@@ -185,6 +260,10 @@ public class WriteCache implements Closeable {
     }
 
     public ByteBuf get(long ledgerId, long entryId) {
+        if (zeroCopyReads) {
+            return getSlice(ledgerId, entryId);
+        }
+
         LongPair result = index.get(ledgerId, entryId);
         if (result == null) {
             return null;
@@ -200,6 +279,52 @@ public class WriteCache implements Closeable {
         return entry;
     }
 
+    // a retained slice of the segment, or a copy of the entry once too many segments are retired
+    private ByteBuf getSlice(long ledgerId, long entryId) {
+        while (true) {
+            int epoch = clearEpoch.get();
+            if ((epoch & 1) != 0) {
+                // The cache is being cleared after its entries were flushed, they can be read from the storage
+                return null;
+            }
+
+            LongPair result = index.get(ledgerId, entryId);
+            if (result == null) {
+                return null;
+            }
+
+            long offset = result.first;
+            int size = (int) result.second;
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+
+            ByteBuf entry;
+            try {
+                if (copyReads) {
+                    entry = allocator.buffer(size, size);
+                    try {
+                        entry.writeBytes(cacheSegments[segmentIdx], localOffset, size);
+                    } catch (IllegalReferenceCountException e) {
+                        entry.release();
+                        throw e;
+                    }
+                } else {
+                    entry = cacheSegments[segmentIdx].retainedSlice(localOffset, size);
+                }
+            } catch (IllegalReferenceCountException e) {
+                // The segment was replaced and released by a concurrent clear
+                continue;
+            }
+
+            if (clearEpoch.get() == epoch) {
+                return entry;
+            }
+
+            // The cache was cleared while taking the entry, its content could be overwritten
+            entry.release();
+        }
+    }
+
     public boolean hasEntry(long ledgerId, long entryId) {
         return index.get(ledgerId, entryId) != null;
     }
@@ -0,0 +1,214 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} timing the speculative requests on the observed latency.
+ *
+ * <p>A speculative request is issued once the pending request has been outstanding for longer than a
+ * percentile of the recent latencies of the requests like it, as reported by
+ * {@link SpeculativeRequestExecutor#getRecentLatencyNanos(double)}, so the requests are only duplicated
+ * when they are slower than usual. The timeout is bounded by {@code maxSpeculativeRequestTimeout}, and
+ * is {@code firstSpeculativeRequestTimeout} while the latency is unknown. The following speculative
+ * requests back off as with the {@link DefaultSpeculativeRequestExecutionPolicy}.
+ *
+ * <p>The speculative requests are limited to a ratio of the requests initiated: each request earns a
+ * share of a speculative request, and a speculative request is only issued when a whole one was earned.
+ * Up to {@code MAX_BURST_REQUESTS} speculative requests can be saved up for a burst. A speculative
+ * request skipped over the budget is tried again after the next backoff, as long as the backoff grows.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+
+    private static final long MAX_BURST_REQUESTS = 100L;
+    // the credits are counted in millionths of a speculative request
+    private static final long CREDITS_PER_REQUEST = 1_000_000L;
+
+    final int firstSpeculativeRequestTimeout;
+    final int maxSpeculativeRequestTimeout;
+    final float backoffMultiplier;
+    final double latencyPercentile;
+
+    // the credits earned by each request initiated, 0 if the speculative requests are not limited
+    private final long creditsPerInitiatedRequest;
+    private final long maxCredits;
+    private final AtomicLong credits;
+
+    public AdaptiveSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, float backoffMultiplier,
+            double latencyPercentile, double maxSpeculativeRequestRatio) {
+        this.firstSpeculativeRequestTimeout = firstSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = maxSpeculativeRequestTimeout;
+        this.backoffMultiplier = backoffMultiplier;
+        this.latencyPercentile = latencyPercentile;
+
+        if (backoffMultiplier <= 0) {
+            throw new IllegalArgumentException("Invalid value provided for backoffMultiplier");
+        }
+        if (latencyPercentile <= 0 || latencyPercentile > 100) {
+            throw new IllegalArgumentException("Invalid value provided for latencyPercentile");
+        }
+
+        // Prevent potential over flow
+        if (Math.round((double) maxSpeculativeRequestTimeout * (double) backoffMultiplier) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid values for maxSpeculativeRequestTimeout and backoffMultiplier");
+        }
+
+        if (maxSpeculativeRequestRatio > 0) {
+            this.creditsPerInitiatedRequest = Math.max(1L,
+                    Math.round(maxSpeculativeRequestRatio * CREDITS_PER_REQUEST));
+        } else {
+            this.creditsPerInitiatedRequest = 0L;
+        }
+        this.maxCredits = MAX_BURST_REQUESTS * CREDITS_PER_REQUEST;
+        this.credits = new AtomicLong(maxCredits);
+    }
+
+    /**
+     * Initialize the speculative request execution policy.
+     *
+     * @param scheduler The scheduler service to issue the speculative request
+     * @param requestExecutor The executor is used to issue the actual speculative requests
+     * @return ScheduledFuture, in case caller needs to cancel it.
+     */
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        earnCredits();
+        return scheduleSpeculativeRead(scheduler, requestExecutor,
+                getSpeculativeRequestTimeout(requestExecutor, firstSpeculativeRequestTimeout));
+    }
+
+    /**
+     * Get the timeout of the next speculative request from the recent latency of the pending requests.
+     *
+     * @return the timeout in milliseconds, or {@code defaultTimeout} if the latency is unknown
+     */
+    private int getSpeculativeRequestTimeout(SpeculativeRequestExecutor requestExecutor, int defaultTimeout) {
+        long latencyNanos = requestExecutor.getRecentLatencyNanos(latencyPercentile);
+        if (latencyNanos < 0) {
+            return defaultTimeout;
+        }
+        long latencyMillis = Math.max(1L, (latencyNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1)
+                / TimeUnit.MILLISECONDS.toNanos(1));
+        return (int) Math.min(maxSpeculativeRequestTimeout, latencyMillis);
+    }
+
+    private int getBackoffTimeout(int speculativeRequestTimeout) {
+        return Math.min(maxSpeculativeRequestTimeout,
+                Math.round((float) speculativeRequestTimeout * backoffMultiplier));
+    }
+
+    private void earnCredits() {
+        if (creditsPerInitiatedRequest > 0 && credits.get() < maxCredits) {
+            credits.accumulateAndGet(creditsPerInitiatedRequest, (c, earned) -> Math.min(maxCredits, c + earned));
+        }
+    }
+
+    private boolean tryAcquireCredits() {
+        if (creditsPerInitiatedRequest <= 0) {
+            return true;
+        }
+        long available;
+        do {
+            available = credits.get();
+            if (available < CREDITS_PER_REQUEST) {
+                return false;
+            }
+        } while (!credits.compareAndSet(available, available - CREDITS_PER_REQUEST));
+        return true;
+    }
+
+    private void releaseCredits() {
+        if (creditsPerInitiatedRequest > 0) {
+            credits.accumulateAndGet(CREDITS_PER_REQUEST, (c, released) -> Math.min(maxCredits, c + released));
+        }
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
+                                         final SpeculativeRequestExecutor requestExecutor,
+                                         final int speculativeRequestTimeout) {
+        try {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!tryAcquireCredits()) {
+                        int backoffTimeout = getBackoffTimeout(speculativeRequestTimeout);
+                        if (backoffTimeout > speculativeRequestTimeout) {
+                            // over the budget, try again later in case the request is still pending
+                            scheduleSpeculativeRead(scheduler, requestExecutor, backoffTimeout);
+                        } else if (LOG.isDebugEnabled()) {
+                            // the request completes or fails without speculation
+                            LOG.debug("Skipped speculative request for {} over the speculative request budget, "
+                                + "speculativeReadTimeout = {}", requestExecutor, speculativeRequestTimeout);
+                        }
+                        return;
+                    }
+                    ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                    Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                        @Override
+                        public void onSuccess(Boolean issueNextRequest) {
+                            if (issueNextRequest) {
+                                int backoffTimeout = getBackoffTimeout(speculativeRequestTimeout);
+                                scheduleSpeculativeRead(scheduler, requestExecutor,
+                                        Math.max(backoffTimeout, getSpeculativeRequestTimeout(requestExecutor, 0)));
+                            } else {
+                                // no request was issued
+                                releaseCredits();
+                                if (LOG.isTraceEnabled()) {
+                                    LOG.trace("Stopped issuing speculative requests for {}, "
+                                        + "speculativeReadTimeout = {}", requestExecutor, speculativeRequestTimeout);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable thrown) {
+                            releaseCredits();
+                            LOG.warn("Failed to issue speculative request for {}, speculativeReadTimeout = {} : ",
+                                    requestExecutor, speculativeRequestTimeout, thrown);
+                        }
+                    }, directExecutor());
+                }
+            }, speculativeRequestTimeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeReadTimeout = {} : ",
+                        requestExecutor, speculativeRequestTimeout, re);
+            }
+        }
+        return null;
+    }
+}
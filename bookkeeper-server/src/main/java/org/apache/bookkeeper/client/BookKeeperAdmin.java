@@ -209,6 +209,9 @@ public class BookKeeperAdmin implements AutoCloseable {
      */
     @Override
     public void close() throws InterruptedException, BKException {
+        if (lfr != null) {
+            lfr.close();
+        }
         if (ownsBK) {
             bkc.close();
         }
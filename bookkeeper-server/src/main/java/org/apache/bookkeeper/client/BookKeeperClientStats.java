@@ -63,6 +63,8 @@ public interface BookKeeperClientStats {
     String LAC_UPDATE_MISSES = "LAC_UPDATE_MISSES";
     String GET_BOOKIE_INFO_OP = "GET_BOOKIE_INFO";
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
+    String SPECULATIVE_READ_ENTRY_COUNT = "SPECULATIVE_READ_ENTRY_COUNT";
+    String SPECULATIVE_READ_WIN_COUNT = "SPECULATIVE_READ_WIN_COUNT";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_OP = "GET_LIST_OF_ENTRIES_OF_LEDGER";
 
@@ -71,8 +73,14 @@ public interface BookKeeperClientStats {
 
     String CHANNEL_READ_OP = "READ_ENTRY";
     String CHANNEL_TIMEOUT_READ = "TIMEOUT_READ_ENTRY";
+    String CHANNEL_RANGE_READ_OP = "RANGE_READ_ENTRY";
+    String CHANNEL_TIMEOUT_RANGE_READ = "TIMEOUT_RANGE_READ_ENTRY";
     String CHANNEL_ADD_OP = "ADD_ENTRY";
     String CHANNEL_TIMEOUT_ADD = "TIMEOUT_ADD_ENTRY";
+    String CHANNEL_RANGE_ADD_OP = "RANGE_ADD_ENTRY";
+    String CHANNEL_TIMEOUT_RANGE_ADD = "TIMEOUT_RANGE_ADD_ENTRY";
+    String CHANNEL_COPY_FRAGMENT_OP = "COPY_FRAGMENT";
+    String CHANNEL_TIMEOUT_COPY_FRAGMENT = "TIMEOUT_COPY_FRAGMENT";
     String CHANNEL_WRITE_LAC_OP = "WRITE_LAC";
     String CHANNEL_FORCE_OP = "FORCE";
     String CHANNEL_TIMEOUT_WRITE_LAC = "TIMEOUT_WRITE_LAC";
@@ -121,6 +129,8 @@ public interface BookKeeperClientStats {
     Counter getReadOpDmCounter();
     Counter getAddOpUrCounter();
     Counter getSpeculativeReadCounter();
+    Counter getSpeculativeReadEntryCounter();
+    Counter getSpeculativeReadWinCounter();
     Counter getEnsembleBookieDistributionCounter(String bookie);
     Counter getEnsembleChangeCounter();
     Counter getLacUpdateHitsCounter();
@@ -44,4 +44,25 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the moving average of the read latency of a bookie.
+     *
+     * @param bookieSocketAddress
+     * @return average read latency in nanoseconds, -1 if unknown
+     */
+    default long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+        return -1L;
+    }
+
+    /**
+     * Returns a percentile of the latency of the recent reads from a bookie.
+     *
+     * @param bookieSocketAddress
+     * @param percentile the percentile, between 0 and 100
+     * @return percentile read latency in nanoseconds, -1 if unknown
+     */
+    default long getBookieRecentReadLatencyNanos(BookieId bookieSocketAddress, double percentile) {
+        return -1L;
+    }
+
 }
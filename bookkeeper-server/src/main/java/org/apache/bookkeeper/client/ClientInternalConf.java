@@ -29,6 +29,8 @@ import org.apache.bookkeeper.feature.FeatureProvider;
 import org.apache.bookkeeper.feature.SettableFeatureProvider;
 
 class ClientInternalConf {
+    private static final int RANGE_READ_FRAME_OVERHEAD_BYTES = 64 * 1024;
+
     final Feature disableEnsembleChangeFeature;
     final boolean delayEnsembleChange;
 
@@ -41,6 +43,9 @@ class ClientInternalConf {
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
     final boolean enableStickyReads;
+    final boolean enableRangeRead;
+    final int rangeReadMaxEntries;
+    final long rangeReadMaxSizeBytes;
     final int recoveryReadBatchSize;
     final int throttleValue;
     final int bookieFailureHistoryExpirationMSec;
@@ -82,9 +87,22 @@ class ClientInternalConf {
         this.enableBookieFailureTracking = conf.getEnableBookieFailureTracking();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.enableStickyReads = conf.isStickyReadsEnabled();
+        this.enableRangeRead = conf.isRangeReadEnabled() && !conf.getUseV2WireProtocol();
+        this.rangeReadMaxEntries = Math.max(1, conf.getRangeReadMaxEntries());
+        // leave room in the frame for the response header and per-entry framing
+        this.rangeReadMaxSizeBytes = Math.min(conf.getRangeReadMaxSizeBytes(),
+                conf.getNettyMaxFrameSizeBytes() - RANGE_READ_FRAME_OVERHEAD_BYTES);
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.isAdaptiveSpeculativeReadTimeoutEnabled()) {
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new AdaptiveSpeculativeRequestExecutionPolicy(
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout(),
+                                        conf.getSpeculativeReadTimeoutBackoffMultiplier(),
+                                        conf.getSpeculativeReadLatencyPercentile(),
+                                        conf.getSpeculativeReadMaxRatio()));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
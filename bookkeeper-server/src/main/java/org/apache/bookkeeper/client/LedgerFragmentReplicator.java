@@ -26,6 +26,7 @@ import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_REA
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_WRITTEN;
 import static org.apache.bookkeeper.replication.ReplicationStats.READ_DATA_LATENCY;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WORKER_SCOPE;
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WRITE_RATE;
 import static org.apache.bookkeeper.replication.ReplicationStats.WRITE_DATA_LATENCY;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.Unpooled;
@@ -39,6 +40,8 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import org.apache.bookkeeper.client.AsyncCallback.ReadCallback;
@@ -50,6 +53,7 @@ import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.MultiCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -93,6 +97,11 @@ public class LedgerFragmentReplicator {
         help = "The distribution of size of entries written by the replicator"
     )
     private final OpStatsLogger numBytesWritten;
+    @StatsDoc(
+        name = REPLICATION_WRITE_RATE,
+        help = "The rate, in bytes per second, of the entries written by the replicator"
+    )
+    private final Gauge<Long> writeRateGauge;
     @StatsDoc(
             name = READ_DATA_LATENCY,
             help = "The distribution of latency of read entries by the replicator"
@@ -106,8 +115,18 @@ public class LedgerFragmentReplicator {
 
     protected Throttler replicationThrottle = null;
 
+    private final boolean bookieFragmentCopyEnabled;
+
     private AtomicInteger averageEntrySize;
 
+    private static final long RATE_SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongAdder bytesWritten = new LongAdder();
+    // guarded by this
+    private long lastSampledBytes = 0L;
+    private long lastSampleNanos = MathUtils.nowInNano();
+    private long writeRate = 0L;
+
     private static final int INITIAL_AVERAGE_ENTRY_SIZE = 1024;
     private static final double AVERAGE_ENTRY_SIZE_RATIO = 0.8;
 
@@ -120,16 +139,36 @@ public class LedgerFragmentReplicator {
         numBytesWritten = this.statsLogger.getOpStatsLogger(NUM_BYTES_WRITTEN);
         readDataLatency = this.statsLogger.getOpStatsLogger(READ_DATA_LATENCY);
         writeDataLatency = this.statsLogger.getOpStatsLogger(WRITE_DATA_LATENCY);
+        writeRateGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return getWriteRate();
+            }
+        };
+        this.statsLogger.registerGauge(REPLICATION_WRITE_RATE, writeRateGauge);
         if (conf.getReplicationRateByBytes() > 0) {
             this.replicationThrottle = new Throttler(conf.getReplicationRateByBytes());
         }
         averageEntrySize = new AtomicInteger(INITIAL_AVERAGE_ENTRY_SIZE);
+        this.bookieFragmentCopyEnabled = conf.isBookieFragmentCopyEnabled();
     }
 
     public LedgerFragmentReplicator(BookKeeper bkc, ClientConfiguration conf) {
         this(bkc, NullStatsLogger.INSTANCE, conf);
     }
 
+    /**
+     * Unregister the gauges of the replicator, which must not be used anymore.
+     */
+    public void close() {
+        statsLogger.unregisterGauge(REPLICATION_WRITE_RATE, writeRateGauge);
+    }
+
     private static final Logger LOG = LoggerFactory
             .getLogger(LedgerFragmentReplicator.class);
 
@@ -166,6 +205,66 @@ public class LedgerFragmentReplicator {
             return;
         }
 
+        if (bookieFragmentCopyEnabled) {
+            copyFragment(lh, lf, ledgerFragmentMcb, newBookies, onReadEntryFailureCallback);
+        } else {
+            replicateEntries(lh, lf, ledgerFragmentMcb, newBookies, onReadEntryFailureCallback);
+        }
+    }
+
+    /**
+     * Ask the new bookies to copy the entries of the fragment from the other bookies of the ledger,
+     * so the entries are not relayed through the replicator. If a bookie fails to copy them, the
+     * entries are relayed to all the new bookies.
+     */
+    private void copyFragment(final LedgerHandle lh,
+            final LedgerFragment lf,
+            final AsyncCallback.VoidCallback ledgerFragmentMcb,
+            final Set<BookieId> newBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback) {
+        final long firstEntryId = lf.getFirstStoredEntryId();
+        final long lastEntryId = lf.getLastStoredEntryId();
+        final AtomicLong bytesCopied = new AtomicLong(0L);
+        MultiCallback copyMcb = new MultiCallback(newBookies.size(), (rc, path, ctx) -> {
+            if (rc == BKException.Code.OK) {
+                long bytes = bytesCopied.get();
+                numEntriesWritten.add((lastEntryId - firstEntryId + 1) * newBookies.size());
+                numBytesWritten.registerSuccessfulValue(bytes);
+                bytesWritten.add(bytes);
+                if (replicationThrottle != null && bytes > 0) {
+                    replicationThrottle.acquire((int) Math.min(Integer.MAX_VALUE, bytes));
+                }
+                ledgerFragmentMcb.processResult(BKException.Code.OK, null, null);
+                return;
+            }
+            LOG.warn("Bookies {} failed to copy entries {} to {} of ledger {}, relaying the entries",
+                    newBookies, firstEntryId, lastEntryId, lh.getId());
+            try {
+                replicateEntries(lh, lf, ledgerFragmentMcb, newBookies, onReadEntryFailureCallback);
+            } catch (InterruptedException e) {
+                ledgerFragmentMcb.processResult(BKException.Code.InterruptedException, null, null);
+                Thread.currentThread().interrupt();
+            }
+        }, null, BKException.Code.OK, BKException.Code.LedgerRecoveryException);
+        for (BookieId newBookie : newBookies) {
+            bkc.getBookieClient().copyFragment(newBookie, lh.getId(), lh.getLedgerKey(), firstEntryId, lastEntryId,
+                    (rc, ledgerId, entryId, bytes, ctx) -> {
+                        if (rc == BKException.Code.OK) {
+                            bytesCopied.addAndGet(bytes);
+                        } else {
+                            LOG.info("Bookie {} failed to copy entries {} to {} of ledger {}: {}",
+                                    newBookie, firstEntryId, lastEntryId, ledgerId, BKException.getMessage(rc));
+                        }
+                        copyMcb.processResult(rc, null, null);
+                    }, null);
+        }
+    }
+
+    private void replicateEntries(final LedgerHandle lh,
+            final LedgerFragment lf,
+            final AsyncCallback.VoidCallback ledgerFragmentMcb,
+            final Set<BookieId> newBookies,
+            final BiConsumer<Long, Long> onReadEntryFailureCallback) throws InterruptedException {
         /*
          * Add all the entries to entriesToReplicate list from
          * firstStoredEntryId to lastStoredEntryID.
@@ -354,6 +453,7 @@ public class LedgerFragmentReplicator {
                     numEntriesWritten.inc();
                     if (ctx instanceof Long) {
                         numBytesWritten.registerSuccessfulValue((Long) ctx);
+                        bytesWritten.add((Long) ctx);
                     }
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("Success writing ledger id {}, entry id {} to a new bookie {}!",
@@ -500,6 +600,26 @@ public class LedgerFragmentReplicator {
             });
     }
 
+    /**
+     * Get the rate of the bytes written to the new bookies, sampled at most once per second.
+     * The replication throttle applies to the fragments replicated concurrently, as they share
+     * this replicator.
+     *
+     * @return rate in bytes per second
+     */
+    synchronized long getWriteRate() {
+        long now = MathUtils.nowInNano();
+        long elapsedNanos = now - lastSampleNanos;
+        if (elapsedNanos >= RATE_SAMPLE_INTERVAL_NANOS) {
+            long sampledBytes = bytesWritten.sum();
+            writeRate = (long) ((sampledBytes - lastSampledBytes)
+                    * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+            lastSampledBytes = sampledBytes;
+            lastSampleNanos = now;
+        }
+        return writeRate;
+    }
+
     static class Throttler {
         private final RateLimiter rateLimiter;
 
@@ -239,6 +239,16 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+                return clientCtx.getBookieClient().getReadLatencyNanos(bookieSocketAddress);
+            }
+
+            @Override
+            public long getBookieRecentReadLatencyNanos(BookieId bookieSocketAddress, double percentile) {
+                return clientCtx.getBookieClient().getRecentReadLatencyNanos(bookieSocketAddress, percentile);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -41,6 +41,7 @@ import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.common.util.SafeRunnable;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
@@ -54,8 +55,12 @@ import org.slf4j.LoggerFactory;
  * This class could be improved because we could start pushing data to the
  * application as soon as it arrives rather than waiting for the whole thing.
  *
+ * <p>When range reads are enabled and every bookie of the ensemble stores every
+ * entry, the entries are requested from a single bookie through range read
+ * requests; any entry that the range reads could not return is then read through
+ * the usual per-entry requests.
  */
-class PendingReadOp implements ReadEntryCallback, SafeRunnable {
+class PendingReadOp implements ReadEntryCallback, ReadEntriesCallback, SafeRunnable {
     private static final Logger LOG = LoggerFactory.getLogger(PendingReadOp.class);
 
     private ScheduledFuture<?> speculativeTask = null;
@@ -330,6 +335,10 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
     class SequenceReadRequest extends LedgerEntryRequest {
         static final int NOT_FOUND = -1;
         int nextReplicaIndexToReadFrom = 0;
+        // the replica the first speculative read was sent to
+        int firstSpeculativeReplica = NOT_FOUND;
+        // the bookie the last read was sent to
+        volatile BookieId pendingBookie = null;
 
         final BitSet sentReplicas;
         final BitSet erroredReplicas;
@@ -379,6 +388,9 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             // request to
             if (sentTo.cardinality() == 0) {
                 clientCtx.getClientStats().getSpeculativeReadCounter().inc();
+                if (firstSpeculativeReplica == NOT_FOUND) {
+                    firstSpeculativeReplica = nextReplicaIndexToReadFrom;
+                }
                 return sendNextRead();
             } else {
                 return null;
@@ -390,6 +402,15 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             sendNextRead();
         }
 
+        @Override
+        public long getRecentLatencyNanos(double percentile) {
+            BookieId bookie = pendingBookie;
+            if (null == bookie) {
+                return -1L;
+            }
+            return lh.getBookiesHealthInfo().getBookieRecentReadLatencyNanos(bookie, percentile);
+        }
+
         synchronized BookieId sendNextRead() {
             if (nextReplicaIndexToReadFrom >= getLedgerMetadata().getWriteQuorumSize()) {
                 // we are done, the read has failed from all replicas, just fail the
@@ -409,6 +430,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
                 sendReadTo(bookieIndex, to, this);
                 sentToHosts.add(to);
                 sentReplicas.set(replica);
+                pendingBookie = to;
                 return to;
             } catch (InterruptedException ie) {
                 LOG.error("Interrupted reading entry " + this, ie);
@@ -443,8 +465,21 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
 
         @Override
         boolean complete(int bookieIndex, BookieId host, ByteBuf buffer) {
+            if (isComplete()) {
+                return false;
+            }
+            int replica;
+            int speculativeReplica;
+            synchronized (this) {
+                // the write set is recycled once complete
+                replica = writeSet.indexOf(bookieIndex);
+                speculativeReplica = firstSpeculativeReplica;
+            }
             boolean completed = super.complete(bookieIndex, host, buffer);
             if (completed) {
+                if (speculativeReplica != NOT_FOUND && replica >= speculativeReplica) {
+                    clientCtx.getClientStats().getSpeculativeReadWinCounter().inc();
+                }
                 int numReplicasTried = getNextReplicaIndexToReadFrom();
                 // Check if any speculative reads were issued and mark any slow bookies before
                 // the first successful speculative read as "slow"
@@ -530,15 +565,94 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             i++;
         } while (i <= endEntryId);
         // read the entries.
-        for (LedgerEntryRequest entry : seq) {
+        if (useRangeRead()) {
+            int fromIndex = 0;
+            while (fromIndex < seq.size()) {
+                fromIndex = sendRangeRead(fromIndex, seq.size());
+            }
+        } else {
+            readEntries(0, seq.size());
+        }
+    }
+
+    private void readEntries(int fromIndex, int toIndex) {
+        for (LedgerEntryRequest entry : seq.subList(fromIndex, toIndex)) {
+            if (entry.isComplete()) {
+                continue;
+            }
             entry.read();
             if (!parallelRead && clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
+                clientCtx.getClientStats().getSpeculativeReadEntryCounter().inc();
                 speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
                     .initiateSpeculativeRequest(clientCtx.getScheduler(), entry);
             }
         }
     }
 
+    private boolean useRangeRead() {
+        return clientCtx.getConf().enableRangeRead
+            && !isRecoveryRead
+            && !parallelRead
+            && seq.size() > 1;
+    }
+
+    /**
+     * Send a range read for the entries starting at <i>fromIndex</i> in the sequence. The range
+     * stops before <i>limitIndex</i>, at the next ensemble change, at the first entry not stored
+     * by any of the bookies storing all the previous ones, or once it reaches the configured
+     * maximum number of entries, whichever comes first. With striping, a range is therefore at
+     * most a write quorum of entries.
+     *
+     * @return the index of the first entry not covered by the request.
+     */
+    int sendRangeRead(int fromIndex, int limitIndex) {
+        LedgerEntryRequest first = seq.get(fromIndex);
+        DistributionSchedule schedule = lh.getDistributionSchedule();
+
+        // the bookies storing all the entries of the range, in the read order of the first entry
+        int[] bookies = new int[first.writeSet.size()];
+        int numBookies = 0;
+        for (int i = 0; i < first.writeSet.size(); i++) {
+            if (schedule.hasEntry(first.eId, first.writeSet.get(i))) {
+                bookies[numBookies++] = first.writeSet.get(i);
+            }
+        }
+
+        int toIndex = fromIndex + 1;
+        int maxIndex = (int) Math.min(limitIndex, (long) fromIndex + clientCtx.getConf().rangeReadMaxEntries);
+        while (toIndex < maxIndex && seq.get(toIndex).ensemble == first.ensemble) {
+            long entryId = seq.get(toIndex).eId;
+            int remaining = 0;
+            for (int i = 0; i < numBookies; i++) {
+                if (schedule.hasEntry(entryId, bookies[i])) {
+                    bookies[remaining++] = bookies[i];
+                }
+            }
+            if (remaining == 0) {
+                break;
+            }
+            numBookies = remaining;
+            toIndex++;
+        }
+        int count = toIndex - fromIndex;
+        if (count == 1) {
+            readEntries(fromIndex, toIndex);
+            return toIndex;
+        }
+
+        int bookieIndex = bookies[0];
+        BookieId to = first.ensemble.get(bookieIndex);
+        if (lh.throttler != null) {
+            lh.throttler.acquire(count);
+        }
+        sentToHosts.add(to);
+        clientCtx.getBookieClient().readEntries(to, lh.ledgerId, first.eId, count,
+                clientCtx.getConf().rangeReadMaxSizeBytes, this,
+                new RangeReadContext(bookieIndex, to, fromIndex, count),
+                BookieProtocol.FLAG_NONE, false);
+        return toIndex;
+    }
+
     @Override
     public void safeRun() {
         initiate();
@@ -567,6 +681,31 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
     }
 
+    private static class RangeReadContext implements ReadEntryCallbackCtx {
+        final int bookieIndex;
+        final BookieId to;
+        final int fromIndex;
+        final int count;
+        long lac = LedgerHandle.INVALID_ENTRY_ID;
+
+        RangeReadContext(int bookieIndex, BookieId to, int fromIndex, int count) {
+            this.bookieIndex = bookieIndex;
+            this.to = to;
+            this.fromIndex = fromIndex;
+            this.count = count;
+        }
+
+        @Override
+        public void setLastAddConfirmed(long lac) {
+            this.lac = lac;
+        }
+
+        @Override
+        public long getLastAddConfirmed() {
+            return lac;
+        }
+    }
+
     private static ReadContext createReadContext(int bookieIndex, BookieId to, LedgerEntryRequest entry) {
         return new ReadContext(bookieIndex, to, entry);
     }
@@ -617,6 +756,41 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
     }
 
+    @Override
+    public void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> entries, Object ctx) {
+        final RangeReadContext rctx = (RangeReadContext) ctx;
+        final int toIndex = rctx.fromIndex + rctx.count;
+
+        if (rc != BKException.Code.OK) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Range read of L{} E{}-E{} from bookie {} failed : {}, falling back to entry reads",
+                        ledgerId, firstEntryId, firstEntryId + rctx.count - 1, rctx.to, BKException.getMessage(rc));
+            }
+            readEntries(rctx.fromIndex, toIndex);
+            return;
+        }
+
+        heardFromHosts.add(rctx.to);
+        heardFromHostsBitSet.set(rctx.bookieIndex, true);
+
+        int numEntries = Math.min(entries.size(), rctx.count);
+        for (int i = 0; i < entries.size(); i++) {
+            ByteBuf buffer = entries.get(i);
+            if (i >= numEntries || !seq.get(rctx.fromIndex + i).complete(rctx.bookieIndex, rctx.to, buffer)) {
+                buffer.release();
+            } else {
+                submitCallback(BKException.Code.OK);
+            }
+        }
+        lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
+
+        // the bookie might not have returned the whole range, ask for the rest.
+        int nextIndex = rctx.fromIndex + numEntries;
+        while (nextIndex < toIndex) {
+            nextIndex = sendRangeRead(nextIndex, toIndex);
+        }
+    }
+
     protected void submitCallback(int code) {
         if (BKException.Code.OK == code) {
             numPendingEntries--;
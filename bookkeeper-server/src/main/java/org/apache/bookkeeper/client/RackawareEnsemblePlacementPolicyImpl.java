@@ -26,6 +26,7 @@ import static org.apache.bookkeeper.client.BookKeeperClientStats.NUM_WRITABLE_BO
 import static org.apache.bookkeeper.client.BookKeeperClientStats.READ_REQUESTS_REORDERED;
 import static org.apache.bookkeeper.client.RegionAwareEnsemblePlacementPolicy.UNKNOWN_REGION;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -43,6 +44,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -103,6 +105,8 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     static final int SLOW_MASK        = 0x20 << 24;
     static final int UNAVAIL_MASK     = 0x40 << 24;
     static final int MASK_BITS        = 0xFFF << 20;
+    // a bookie is noticeably faster than another when its latency is lower by more than 1/5
+    private static final long LATENCY_REORDER_MARGIN_DIVISOR = 5;
 
     protected HashedWheelTimer timer;
     // Use a loading cache so slow bookies are expired. Use entryId as values.
@@ -112,6 +116,8 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected boolean enforceDurability = false;
     protected int stabilizePeriodSeconds = 0;
     protected int reorderThresholdPendingRequests = 0;
+    protected boolean reorderReadsByLatency = false;
+    protected double reorderReadsLatencyProbeRate = 0.0;
     // looks like these only assigned in the same thread as constructor, immediately after constructor;
     // no need to make volatile
     protected StatsLogger statsLogger = null;
@@ -291,6 +297,8 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                     return -1L;
                 }
             });
+        this.reorderReadsByLatency = conf.isReorderReadsByLatencyEnabled();
+        this.reorderReadsLatencyProbeRate = conf.getReorderReadsLatencyProbeRate();
         return initialize(
                 dnsResolver,
                 timer,
@@ -802,6 +810,62 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             ensemble, writeSet, writeSetWithRegion, bookiesHealthInfo, false, "", writeSet.size());
     }
 
+    /**
+     * Order the write set by the read latency of the bookies. The bookies without a known latency
+     * keep their position, the bookies with a known latency are ordered among the other positions.
+     * A bookie is only moved ahead of a slower bookie when it is noticeably faster, so that the
+     * reads don't switch between bookies of similar latency. Once in a while, the original order is
+     * kept, so that the latency of the slower bookies is still sampled and they are tried again once
+     * they recover.
+     *
+     * @return true if the write set was reordered
+     */
+    @VisibleForTesting
+    boolean reorderReadSequenceByLatency(List<BookieId> ensemble,
+                                                 BookiesHealthInfo bookiesHealthInfo,
+                                                 DistributionSchedule.WriteSet writeSet) {
+        if (writeSet.size() <= 1 || ThreadLocalRandom.current().nextDouble() < reorderReadsLatencyProbeRate) {
+            return false;
+        }
+        long[] latencies = new long[writeSet.size()];
+        // the positions of the bookies with a known latency
+        int[] positions = new int[writeSet.size()];
+        int numPositions = 0;
+        for (int i = 0; i < writeSet.size(); i++) {
+            latencies[i] = bookiesHealthInfo.getBookieReadLatencyNanos(ensemble.get(writeSet.get(i)));
+            if (latencies[i] >= 0) {
+                positions[numPositions++] = i;
+            }
+        }
+        boolean reordered = false;
+        // a stable insertion sort over the positions, the write sets are small
+        for (int k = 1; k < numPositions; k++) {
+            long latency = latencies[positions[k]];
+            int bookieIndex = writeSet.get(positions[k]);
+            int j = k;
+            while (j > 0 && isFasterBookie(latency, latencies[positions[j - 1]])) {
+                latencies[positions[j]] = latencies[positions[j - 1]];
+                writeSet.set(positions[j], writeSet.get(positions[j - 1]));
+                j--;
+            }
+            if (j != k) {
+                latencies[positions[j]] = latency;
+                writeSet.set(positions[j], bookieIndex);
+                reordered = true;
+            }
+        }
+        if (reordered && LOG.isDebugEnabled()) {
+            BookieId first = ensemble.get(writeSet.get(0));
+            LOG.debug("read set reordered by latency to {}, first bookie {} (average {} ns, recent p99 {} ns)",
+                    writeSet, first, latencies[0], bookiesHealthInfo.getBookieRecentReadLatencyNanos(first, 99.0));
+        }
+        return reordered;
+    }
+
+    private static boolean isFasterBookie(long latencyNanos, long otherLatencyNanos) {
+        return latencyNanos + latencyNanos / LATENCY_REORDER_MARGIN_DIVISOR < otherLatencyNanos;
+    }
+
     /**
      * This function orders the read sequence with a given region. For region-unaware policies (e.g.
      * RackAware), we pass in false for regionAware and an empty myRegion. When this happens, any
@@ -895,6 +959,10 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             }
         }
 
+        if (reorderReadsByLatency && !reordered) {
+            reordered = reorderReadSequenceByLatency(ensemble, bookiesHealthInfo, writeSet);
+        }
+
         if (!isAnyBookieUnavailable) {
             if (reordered) {
                 readReorderedCounter.registerSuccessfulValue(1);
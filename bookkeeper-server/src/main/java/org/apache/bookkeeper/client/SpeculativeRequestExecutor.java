@@ -39,4 +39,15 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Get a percentile of the recent latencies of the requests like the one the executor is
+     * waiting for, for the policies that time the speculative requests on the observed latency.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or -1 if unknown
+     */
+    default long getRecentLatencyNanos(double percentile) {
+        return -1L;
+    }
 }
@@ -140,6 +140,16 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         help = "The number of speculative read requests"
     )
     private final Counter speculativeReadCounter;
+    @StatsDoc(
+        name = SPECULATIVE_READ_ENTRY_COUNT,
+        help = "The number of entry reads that may send speculative read requests"
+    )
+    private final Counter speculativeReadEntryCounter;
+    @StatsDoc(
+        name = SPECULATIVE_READ_WIN_COUNT,
+        help = "The number of entry reads completed by a bookie read after a speculative read request was sent"
+    )
+    private final Counter speculativeReadWinCounter;
 
     @StatsDoc(
         name = WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS_LATENCY,
@@ -184,6 +194,8 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.clientChannelWriteWaitStats = stats.getOpStatsLogger(CLIENT_CHANNEL_WRITE_WAIT);
 
         speculativeReadCounter = stats.getCounter(SPECULATIVE_READ_COUNT);
+        speculativeReadEntryCounter = stats.getCounter(SPECULATIVE_READ_ENTRY_COUNT);
+        speculativeReadWinCounter = stats.getCounter(SPECULATIVE_READ_WIN_COUNT);
 
         this.writeDelayedDueToNotEnoughFaultDomainsLatency =
                 stats.getOpStatsLogger(WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS_LATENCY);
@@ -257,6 +269,14 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return speculativeReadCounter;
     }
     @Override
+    public Counter getSpeculativeReadEntryCounter() {
+        return speculativeReadEntryCounter;
+    }
+    @Override
+    public Counter getSpeculativeReadWinCounter() {
+        return speculativeReadWinCounter;
+    }
+    @Override
     public Counter getEnsembleChangeCounter() {
         return ensembleChangeCounter;
     }
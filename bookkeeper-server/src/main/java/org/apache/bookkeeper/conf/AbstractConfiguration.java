@@ -147,6 +147,9 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     //Netty configuration
     protected static final String NETTY_MAX_FRAME_SIZE = "nettyMaxFrameSizeBytes";
     protected static final int DEFAULT_NETTY_MAX_FRAME_SIZE = 5 * 1024 * 1024; // 5MB
+    protected static final String NETTY_FLUSH_COALESCING_ENABLED = "nettyFlushCoalescingEnabled";
+    protected static final String NETTY_FLUSH_COALESCING_MAX_MESSAGES = "nettyFlushCoalescingMaxMessages";
+    protected static final String NETTY_FLUSH_COALESCING_MAX_BYTES = "nettyFlushCoalescingMaxBytes";
 
     // Zookeeper ACL settings
     protected static final String ZK_ENABLE_SECURITY = "zkEnableSecurity";
@@ -190,6 +193,7 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     public static final String LIMIT_STATS_LOGGING = "limitStatsLogging";
 
     protected static final String REPLICATION_RATE_BY_BYTES = "replicationRateByBytes";
+    protected static final String BOOKIE_FRAGMENT_COPY_ENABLED = "bookieFragmentCopyEnabled";
 
     protected AbstractConfiguration() {
         super();
@@ -764,6 +768,73 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Whether the flushes of the netty channels are coalesced.
+     *
+     * <p>When enabled, the messages written to a channel are flushed once per iteration of its
+     * event loop, or as soon as {@link #getNettyFlushCoalescingMaxMessages()} messages or
+     * {@link #getNettyFlushCoalescingMaxBytes()} bytes are pending, instead of once per message.
+     *
+     * @return true if the flushes are coalesced
+     */
+    public boolean isNettyFlushCoalescingEnabled() {
+        return getBoolean(NETTY_FLUSH_COALESCING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the coalescing of the flushes of the netty channels.
+     *
+     * @param enabled
+     *          whether to coalesce the flushes
+     * @return configuration
+     */
+    public T setNettyFlushCoalescingEnabled(boolean enabled) {
+        setProperty(NETTY_FLUSH_COALESCING_ENABLED, enabled);
+        return getThis();
+    }
+
+    /**
+     * Get the number of pending messages that triggers a flush when the flushes are coalesced.
+     *
+     * @return the max number of messages written to a channel between two flushes
+     */
+    public int getNettyFlushCoalescingMaxMessages() {
+        return getInt(NETTY_FLUSH_COALESCING_MAX_MESSAGES, 64);
+    }
+
+    /**
+     * Set the number of pending messages that triggers a flush when the flushes are coalesced.
+     *
+     * @param maxMessages
+     *          the max number of messages written to a channel between two flushes
+     * @return configuration
+     */
+    public T setNettyFlushCoalescingMaxMessages(int maxMessages) {
+        setProperty(NETTY_FLUSH_COALESCING_MAX_MESSAGES, maxMessages);
+        return getThis();
+    }
+
+    /**
+     * Get the number of pending bytes that triggers a flush when the flushes are coalesced.
+     *
+     * @return the max number of bytes written to a channel between two flushes
+     */
+    public int getNettyFlushCoalescingMaxBytes() {
+        return getInt(NETTY_FLUSH_COALESCING_MAX_BYTES, 64 * 1024);
+    }
+
+    /**
+     * Set the number of pending bytes that triggers a flush when the flushes are coalesced.
+     *
+     * @param maxBytes
+     *          the max number of bytes written to a channel between two flushes
+     * @return configuration
+     */
+    public T setNettyFlushCoalescingMaxBytes(int maxBytes) {
+        setProperty(NETTY_FLUSH_COALESCING_MAX_BYTES, maxBytes);
+        return getThis();
+    }
+
     /**
      * Get the security provider factory class name. If this returns null, no security will be enforced on the channel.
      *
@@ -1229,6 +1300,32 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Whether the ledger fragments are copied bookie to bookie on re-replication.
+     *
+     * <p>On a bookie, this enables the fragment copy requests. On a replication worker, this asks
+     * the new bookies of a fragment to copy its entries from the other bookies, rather than relaying
+     * the entries through the worker. The worker falls back to relaying the entries when a bookie
+     * fails a copy request.
+     *
+     * @return true if the ledger fragments are copied bookie to bookie.
+     */
+    public boolean isBookieFragmentCopyEnabled() {
+        return getBoolean(BOOKIE_FRAGMENT_COPY_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable copying the ledger fragments bookie to bookie on re-replication.
+     *
+     * @param enabled flag to enable/disable bookie to bookie fragment copies.
+     *
+     * @return configuration
+     */
+    public T setBookieFragmentCopyEnabled(boolean enabled) {
+        this.setProperty(BOOKIE_FRAGMENT_COPY_ENABLED, enabled);
+        return getThis();
+    }
+
     /**
      * Trickery to allow inheritance with fluent style.
      */
@@ -109,6 +109,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_TIMEOUT = "adaptiveSpeculativeReadTimeout";
+    protected static final String SPECULATIVE_READ_LATENCY_PERCENTILE = "speculativeReadLatencyPercentile";
+    protected static final String SPECULATIVE_READ_MAX_RATIO = "speculativeReadMaxRatio";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -117,10 +120,16 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
+    protected static final String RANGE_READ_ENABLED = "rangeReadEnabled";
+    protected static final String RANGE_READ_MAX_ENTRIES = "rangeReadMaxEntries";
+    protected static final String RANGE_READ_MAX_SIZE_BYTES = "rangeReadMaxSizeBytes";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
     protected static final String MAX_ALLOWED_ENSEMBLE_CHANGES = "maxNumEnsembleChanges";
+    protected static final String ADD_BATCHING_WINDOW_MICROS = "addBatchingWindowMicros";
+    protected static final String ADD_BATCHING_MAX_ENTRIES = "addBatchingMaxEntries";
+    protected static final String ADD_BATCHING_MAX_SIZE_BYTES = "addBatchingMaxSizeBytes";
     // Timeout Setting
     protected static final String ADD_ENTRY_TIMEOUT_SEC = "addEntryTimeoutSec";
     protected static final String ADD_ENTRY_QUORUM_TIMEOUT_SEC = "addEntryQuorumTimeoutSec";
@@ -130,6 +139,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String EXPLICIT_LAC_INTERVAL = "explicitLacInterval";
     protected static final String PCBC_TIMEOUT_TIMER_TICK_DURATION_MS = "pcbcTimeoutTimerTickDurationMs";
     protected static final String PCBC_TIMEOUT_TIMER_NUM_TICKS = "pcbcTimeoutTimerNumTicks";
+    protected static final String PCBC_TIMEOUT_TIMER_ENABLED = "pcbcTimeoutTimerEnabled";
     protected static final String TIMEOUT_TIMER_TICK_DURATION_MS = "timeoutTimerTickDurationMs";
     protected static final String TIMEOUT_TIMER_NUM_TICKS = "timeoutTimerNumTicks";
     // backpressure configuration
@@ -160,6 +170,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_BY_LATENCY_ENABLED = "readReorderByLatencyEnabled";
+    protected static final String READ_REORDER_LATENCY_PROBE_RATE = "readReorderLatencyProbeRate";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
 
@@ -771,6 +783,36 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the request timeouts of the per channel bookie clients are scheduled
+     * on a hashed wheel timer shared by all the channels of the client.
+     *
+     * <p>When disabled, the pending operations of all the channels are scanned every
+     * {@link #getTimeoutMonitorIntervalSec()} seconds, whose cost grows with the number of
+     * outstanding operations.
+     *
+     * @return true if request timeouts are scheduled on a hashed wheel timer
+     */
+    public boolean getPCBCTimeoutTimerEnabled() {
+        return getBoolean(PCBC_TIMEOUT_TIMER_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable scheduling the request timeouts on a hashed wheel timer.
+     * The wheel is configured by {@link #setPCBCTimeoutTimerTickDurationMs(long)} and
+     * {@link #setPCBCTimeoutTimerNumTicks(int)}.
+     *
+     * @see #getPCBCTimeoutTimerEnabled()
+     *
+     * @param enabled
+     *          whether to schedule request timeouts on a hashed wheel timer.
+     * @return client configuration.
+     */
+    public ClientConfiguration setPCBCTimeoutTimerEnabled(boolean enabled) {
+        setProperty(PCBC_TIMEOUT_TIMER_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get the tick duration in milliseconds that used for the
      * HashedWheelTimer that used by PCBC to timeout
@@ -778,7 +820,6 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
      *
      * @return tick duration in milliseconds
      */
-    @Deprecated
     public long getPCBCTimeoutTimerTickDurationMs() {
         return getLong(PCBC_TIMEOUT_TIMER_TICK_DURATION_MS, 100);
     }
@@ -795,7 +836,6 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
      *          tick duration in milliseconds.
      * @return client configuration.
      */
-    @Deprecated
     public ClientConfiguration setPCBCTimeoutTimerTickDurationMs(long tickDuration) {
         setProperty(PCBC_TIMEOUT_TIMER_TICK_DURATION_MS, tickDuration);
         return this;
@@ -808,7 +848,6 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
      *
      * @return number of ticks that used for timeout timer.
      */
-    @Deprecated
     public int getPCBCTimeoutTimerNumTicks() {
         return getInt(PCBC_TIMEOUT_TIMER_NUM_TICKS, 1024);
     }
@@ -825,7 +864,6 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
      *          number of ticks that used for timeout timer.
      * @return client configuration.
      */
-    @Deprecated
     public ClientConfiguration setPCBCTimeoutTimerNumTicks(int numTicks) {
         setProperty(PCBC_TIMEOUT_TIMER_NUM_TICKS, numTicks);
         return this;
@@ -1038,6 +1076,83 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the speculative read timeout adapts to the read latency of the bookies.
+     *
+     * <p>If enabled, a speculative entry read is sent once the pending read has been outstanding
+     * for longer than a percentile of the recent read latencies of its bookie, see
+     * {@link #getSpeculativeReadLatencyPercentile()}. The timeout is bounded by the max speculative
+     * read timeout, and falls back to the first speculative read timeout until the latency of the
+     * bookie is known. The speculative reads are also limited to a ratio of the entries read, see
+     * {@link #getSpeculativeReadMaxRatio()}.
+     *
+     * @return true if the speculative read timeout is adaptive. Default false.
+     */
+    public boolean isAdaptiveSpeculativeReadTimeoutEnabled() {
+        return getBoolean(ADAPTIVE_SPECULATIVE_READ_TIMEOUT, false);
+    }
+
+    /**
+     * Enable or disable the adaptive speculative read timeout.
+     *
+     * @see #isAdaptiveSpeculativeReadTimeoutEnabled()
+     * @param enabled
+     *          whether the speculative read timeout is adaptive.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadTimeoutEnabled(boolean enabled) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_TIMEOUT, enabled);
+        return this;
+    }
+
+    /**
+     * Get the percentile of the recent read latencies of a bookie used as the adaptive speculative
+     * read timeout.
+     *
+     * @return the latency percentile, between 0 and 100. Default 95.
+     */
+    public double getSpeculativeReadLatencyPercentile() {
+        return getDouble(SPECULATIVE_READ_LATENCY_PERCENTILE, 95.0);
+    }
+
+    /**
+     * Set the percentile of the recent read latencies of a bookie used as the adaptive speculative
+     * read timeout.
+     *
+     * @param percentile
+     *          the latency percentile, between 0 and 100.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the maximum ratio of speculative reads to entries read, when the speculative read timeout
+     * is adaptive. Speculative reads over the budget are not sent, so a bookie slowing down doesn't
+     * multiply the load on the other bookies. A non-positive ratio doesn't limit the speculative reads.
+     *
+     * @return the maximum ratio of speculative reads. Default 0.1.
+     */
+    public double getSpeculativeReadMaxRatio() {
+        return getDouble(SPECULATIVE_READ_MAX_RATIO, 0.1);
+    }
+
+    /**
+     * Set the maximum ratio of speculative reads to entries read, when the speculative read timeout
+     * is adaptive.
+     *
+     * @see #getSpeculativeReadMaxRatio()
+     * @param maxRatio
+     *          the maximum ratio of speculative reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadMaxRatio(double maxRatio) {
+        setProperty(SPECULATIVE_READ_MAX_RATIO, maxRatio);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1198,6 +1313,78 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether reads of multiple entries may be served by range read requests.
+     *
+     * @return true if range reads are enabled, otherwise false.
+     */
+    public boolean isRangeReadEnabled() {
+        return getBoolean(RANGE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable range reads.
+     *
+     * <p>If this flag is enabled, the consecutive entries of a read that are all stored
+     * by the same bookie are asked to that bookie as one range read request, instead of one
+     * request per entry. When the write quorum spans the whole ensemble, this is the whole
+     * read; with striping, it is at most a write quorum of entries. If the range read fails,
+     * the entries are read again one by one.
+     *
+     * <p>Older bookies reject the range reads. Once a bookie rejected one, the client reads
+     * the entries one by one from it until it reconnects to the bookie.
+     * Range reads are not available with the v2 wire protocol.
+     *
+     * @param enabled the flag to enable/disable range reads.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadEnabled(boolean enabled) {
+        setProperty(RANGE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of entries requested by a single range read request.
+     *
+     * @return the maximum number of entries per range read request.
+     */
+    public int getRangeReadMaxEntries() {
+        return getInt(RANGE_READ_MAX_ENTRIES, 1000);
+    }
+
+    /**
+     * Set the maximum number of entries requested by a single range read request.
+     *
+     * @param maxEntries the maximum number of entries per range read request.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadMaxEntries(int maxEntries) {
+        setProperty(RANGE_READ_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the maximum total size of the entries returned by a single range read request.
+     *
+     * <p>The value is capped by the netty max frame size of the client.
+     *
+     * @return the maximum size in bytes of a range read response.
+     */
+    public long getRangeReadMaxSizeBytes() {
+        return getLong(RANGE_READ_MAX_SIZE_BYTES, 4 * 1024 * 1024);
+    }
+
+    /**
+     * Set the maximum total size of the entries returned by a single range read request.
+     *
+     * @param maxSizeBytes the maximum size in bytes of a range read response.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadMaxSizeBytes(long maxSizeBytes) {
+        setProperty(RANGE_READ_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
     /**
      * Get Ensemble Placement Policy Class.
      *
@@ -1246,6 +1433,54 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether reads are reordered to try the bookies with the lowest read latency first.
+     *
+     * @return true if reads are reordered by the read latency of the bookies.
+     */
+    public boolean isReorderReadsByLatencyEnabled() {
+        return getBoolean(READ_REORDER_BY_LATENCY_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable reordering reads by the read latency of the bookies.
+     *
+     * <p>If enabled, the placement policy orders the bookies of the write set of an entry by the
+     * moving average of their read response latency, when no bookie was reordered by its number of
+     * pending requests. Bookies without a known latency keep their position in the original order.
+     *
+     * @param enabled
+     *            the flag to enable/disable reordering reads by latency.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setReorderReadsByLatencyEnabled(boolean enabled) {
+        setProperty(READ_REORDER_BY_LATENCY_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the fraction of the reads that keep their original order when reordering reads by
+     * latency, so that the latency of the slower bookies keeps being sampled.
+     *
+     * @return the fraction of the reads that are not reordered by latency.
+     */
+    public double getReorderReadsLatencyProbeRate() {
+        return getDouble(READ_REORDER_LATENCY_PROBE_RATE, 0.05);
+    }
+
+    /**
+     * Set the fraction of the reads that keep their original order when reordering reads by
+     * latency.
+     *
+     * @param probeRate
+     *            the fraction, between 0 and 1, of the reads that are not reordered by latency.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setReorderReadsLatencyProbeRate(double probeRate) {
+        setProperty(READ_REORDER_LATENCY_PROBE_RATE, probeRate);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
@@ -1822,6 +2057,84 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the window during which the adds of a ledger to a bookie are batched.
+     *
+     * @return the add batching window in microseconds, 0 if add batching is disabled.
+     */
+    public long getAddBatchingWindowMicros() {
+        return getLong(ADD_BATCHING_WINDOW_MICROS, 0);
+    }
+
+    /**
+     * Set the window during which the adds of a ledger to a bookie are batched.
+     * <p>
+     * If set to a positive value, the entries of a ledger sent to a bookie within the
+     * window are coalesced into a single range add request. The bookie journals and
+     * indexes them as individual entries, and the add of each entry completes on its own.
+     * Batching trades up to the window of latency for fewer requests when many small
+     * entries are added.
+     * </p>
+     * <p>
+     * Only enable this once all the bookies support range adds. The adds to an older
+     * bookie are sent again one by one when it rejects the first batch. Recovery adds and
+     * the v2 wire protocol are never batched.
+     * </p>
+     *
+     * @param windowMicros
+     *          the add batching window in microseconds, 0 to disable add batching.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddBatchingWindowMicros(long windowMicros) {
+        setProperty(ADD_BATCHING_WINDOW_MICROS, windowMicros);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of entries in a batch of adds.
+     *
+     * @return the maximum number of entries per range add request.
+     */
+    public int getAddBatchingMaxEntries() {
+        return getInt(ADD_BATCHING_MAX_ENTRIES, 100);
+    }
+
+    /**
+     * Set the maximum number of entries in a batch of adds. A batch that reaches it is
+     * sent without waiting for the end of the window.
+     *
+     * @param maxEntries
+     *          the maximum number of entries per range add request.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddBatchingMaxEntries(int maxEntries) {
+        setProperty(ADD_BATCHING_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the maximum total size of the entries in a batch of adds.
+     *
+     * @return the maximum size in bytes of a range add request.
+     */
+    public int getAddBatchingMaxSizeBytes() {
+        return getInt(ADD_BATCHING_MAX_SIZE_BYTES, 256 * 1024);
+    }
+
+    /**
+     * Set the maximum total size of the entries in a batch of adds. A batch that reaches
+     * it is sent without waiting for the end of the window. The value is capped by the
+     * netty max frame size of the client.
+     *
+     * @param maxSizeBytes
+     *          the maximum size in bytes of a range add request.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddBatchingMaxSizeBytes(int maxSizeBytes) {
+        setProperty(ADD_BATCHING_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
     /**
      * Whether to enable bookie address changes tracking.
      *
@@ -107,6 +107,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String COMPACTION_THREADS = "compactionThreads";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -146,6 +147,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
+    protected static final String JOURNAL_REPLAY_READ_AHEAD_SIZE = "journalReplayReadAheadSizeKB";
+    protected static final String JOURNAL_SELECT_LEAST_LOADED = "journalSelectLeastLoaded";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
     protected static final String NUM_JOURNAL_CALLBACK_THREADS = "numJournalCallbackThreads";
     protected static final String JOURNAL_FORMAT_VERSION_TO_WRITE = "journalFormatVersionToWrite";
@@ -156,6 +159,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
+    protected static final String MAX_QUEUED_REQUESTS_PER_CHANNEL = "maxQueuedRequestsPerChannel";
+    protected static final String ADMISSION_CONTROL_CLIENT_WEIGHTS = "admissionControlClientWeights";
     protected static final String CLOSE_CHANNEL_ON_RESPONSE_TIMEOUT = "closeChannelOnResponseTimeout";
     protected static final String WAIT_TIMEOUT_ON_RESPONSE_BACKPRESSURE = "waitTimeoutOnResponseBackpressureMs";
 
@@ -206,6 +211,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String AUTO_RECOVERY_DAEMON_ENABLED = "autoRecoveryDaemonEnabled";
     protected static final String LOST_BOOKIE_RECOVERY_DELAY = "lostBookieRecoveryDelay";
     protected static final String RW_REREPLICATE_BACKOFF_MS = "rwRereplicateBackoffMs";
+    protected static final String RW_REREPLICATE_CONCURRENCY = "rwRereplicateConcurrency";
     protected static final String UNDERREPLICATED_LEDGER_RECOVERY_GRACE_PERIOD =
             "underreplicatedLedgerRecoveryGracePeriod";
     protected static final String AUDITOR_REPLICAS_CHECK_INTERVAL = "auditorReplicasCheckInterval";
@@ -839,6 +845,49 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Size of the read-ahead buffer used to scan the journal files, for example when
+     * replaying the journals on startup.
+     *
+     * @return journal replay read-ahead size in KB
+     */
+    public int getJournalReplayReadAheadSizeKB() {
+        return this.getInt(JOURNAL_REPLAY_READ_AHEAD_SIZE, 4096);
+    }
+
+    /**
+     * Set the size of the read-ahead buffer used to scan the journal files.
+     *
+     * @param readAheadSizeKB the size of the read-ahead buffer, in KB.
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayReadAheadSizeKB(int readAheadSizeKB) {
+        setProperty(JOURNAL_REPLAY_READ_AHEAD_SIZE, readAheadSizeKB);
+        return this;
+    }
+
+    /**
+     * Whether the ledgers are assigned to the least loaded journal when they are first written,
+     * instead of a journal chosen by their ledger id. The ledgers keep their journal until the
+     * bookie restarts.
+     *
+     * @return true if the ledgers are assigned to the least loaded journal
+     */
+    public boolean getJournalSelectLeastLoaded() {
+        return getBoolean(JOURNAL_SELECT_LEAST_LOADED, false);
+    }
+
+    /**
+     * Set whether the ledgers are assigned to the least loaded journal when they are first written.
+     *
+     * @param enabled whether to assign the ledgers to the least loaded journal
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalSelectLeastLoaded(boolean enabled) {
+        setProperty(JOURNAL_SELECT_LEAST_LOADED, enabled);
+        return this;
+    }
+
     /**
      * Max number of older journal files kept.
      *
@@ -1030,6 +1079,52 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get max number of requests of a channel queued while the adds or reads in progress
+     * are at their limit. Requests beyond it are rejected with ETOOMANYREQUESTS.
+     *
+     * @return Max number of queued requests per channel.
+     */
+    public int getMaxQueuedRequestsPerChannel() {
+        return this.getInt(MAX_QUEUED_REQUESTS_PER_CHANNEL, 1000);
+    }
+
+    /**
+     * Set max number of requests of a channel queued while the adds or reads in progress
+     * are at their limit.
+     *
+     * @param value
+     *          max number of queued requests per channel.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxQueuedRequestsPerChannel(int value) {
+        this.setProperty(MAX_QUEUED_REQUESTS_PER_CHANNEL, value);
+        return this;
+    }
+
+    /**
+     * Get the weights of the clients when the queued requests are admitted, as a list of
+     * {@code client:weight} pairs. A client is identified by its authenticated principal,
+     * or by its host address for anonymous connections. Clients not listed have a weight of 1.
+     *
+     * @return the weights of the clients.
+     */
+    public String[] getAdmissionControlClientWeights() {
+        return getStringArray(ADMISSION_CONTROL_CLIENT_WEIGHTS);
+    }
+
+    /**
+     * Set the weights of the clients when the queued requests are admitted.
+     *
+     * @param weights
+     *          comma separated list of {@code client:weight} pairs.
+     * @return server configuration.
+     */
+    public ServerConfiguration setAdmissionControlClientWeights(String weights) {
+        this.setProperty(ADMISSION_CONTROL_CLIENT_WEIGHTS, weights);
+        return this;
+    }
+
     /**
      * Configures action in case if server timed out sending response to the client.
      * true == close the channel and drop response
@@ -2737,6 +2832,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         setProperty(RW_REREPLICATE_BACKOFF_MS, backoffMs);
     }
 
+    /**
+     * Get the number of ledgers that the replication worker rereplicates concurrently.
+     *
+     * @return number of concurrent rereplications
+     */
+    public int getRwRereplicateConcurrency() {
+        return getInt(RW_REREPLICATE_CONCURRENCY, 1);
+    }
+
+    /**
+     * Set the number of ledgers that the replication worker rereplicates concurrently.
+     *
+     * <p>The worker holds the underreplication lock of each ledger it rereplicates. The bytes
+     * rereplicated by all of them are throttled by {@link #getReplicationRateByBytes()}.
+     *
+     * @param concurrency number of concurrent rereplications
+     * @return server configuration
+     */
+    public ServerConfiguration setRwRereplicateConcurrency(int concurrency) {
+        setProperty(RW_REREPLICATE_CONCURRENCY, concurrency);
+        return this;
+    }
+
     /**
      * Sets that whether force start a bookie in readonly mode.
      *
@@ -2878,6 +2996,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the number of threads compacting entry logs in parallel. Default is 1.
+     *
+     * @return number of compaction threads
+     */
+    public int getCompactionThreads() {
+        return getInt(COMPACTION_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads compacting entry logs in parallel.
+     *
+     * <p>The compaction rate limit is shared by all the compaction threads.
+     *
+     * @param numThreads number of compaction threads
+     *
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionThreads(int numThreads) {
+        setProperty(COMPACTION_THREADS, numThreads);
+        return this;
+    }
+
     /**
      * Should we remove pages from page cache after force write.
      *
@@ -3086,6 +3227,10 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
             throw new ConfigurationException(
                     "When entryLogPerLedger is enabled , it is unnecessary to use transactional compaction");
         }
+        if (isEntryLogPerLedgerEnabled() && getLedgerStorageClass().equals(DbLedgerStorage.class.getName())
+                && getBoolean(DbLedgerStorage.DIRECT_IO_ENTRY_LOGGER, false)) {
+            throw new ConfigurationException("entryLogPerLedger is not supported by the direct I/O entry logger");
+        }
         if ((getJournalFormatVersionToWrite() >= 6) ^ (getFileInfoFormatVersionToWrite() >= 1)) {
             throw new ConfigurationException("For persisiting explicitLac, journalFormatVersionToWrite should be >= 6"
                     + "and FileInfoFormatVersionToWrite should be >= 1");
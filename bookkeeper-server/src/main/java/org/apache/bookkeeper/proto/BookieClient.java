@@ -26,8 +26,10 @@ import java.util.concurrent.CompletableFuture;
 
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -84,6 +86,25 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get the moving average of the latency of the read responses from the bookie
+     * at {@code address}. Long poll reads are not sampled.
+     *
+     * @param address the address of the bookie
+     * @return the average latency in nanoseconds, or -1 if no read response was received yet
+     */
+    long getReadLatencyNanos(BookieId address);
+
+    /**
+     * Get a percentile of the latency of the recent read responses from the bookie
+     * at {@code address}.
+     *
+     * @param address the address of the bookie
+     * @param percentile the percentile, between 0 and 100
+     * @return the percentile latency in nanoseconds, or -1 if no read response was received yet
+     */
+    long getRecentReadLatencyNanos(BookieId address, double percentile);
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -180,6 +201,49 @@ public interface BookieClient {
                    ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
                    boolean allowFastFail);
 
+    /**
+     * Read a range of consecutive entries from bookie at address {@code address}
+     * in a single request.
+     *
+     * <p>The bookie may return fewer entries than requested, stopping at the first
+     * entry it doesn't have or once the response would grow beyond {@code maxBytes}.
+     * The first entry is always returned if the bookie has it.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param firstEntryId id of the first entry we wish to read
+     * @param maxCount the maximum number of entries to return
+     * @param maxBytes the maximum total size of the returned entries
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param flags a bit mask of flags from BookieProtocol.FLAG_*
+     *              {@link org.apache.bookkeeper.proto.BookieProtocol}
+     * @param allowFastFail fail the read immediately if the channel is non-writable
+     *                      {@link #isWritable(BookieId,long)}
+     */
+    void readEntries(BookieId address, long ledgerId, long firstEntryId,
+                     int maxCount, long maxBytes, ReadEntriesCallback cb, Object ctx,
+                     int flags, boolean allowFastFail);
+
+    /**
+     * Ask the bookie at address {@code address} to copy the entries {@code firstEntryId}
+     * to {@code lastEntryId} of a ledger from the other bookies of their ensembles.
+     *
+     * <p>The bookie reads the entries itself, verifies their digests and stores them, so
+     * the entries are not relayed through this client. Bookies that don't support fragment
+     * copies fail the request.
+     *
+     * @param address address of the bookie to copy the entries to
+     * @param ledgerId id of the ledger the entries belong to
+     * @param masterKey master key of the ledger
+     * @param firstEntryId id of the first entry to copy
+     * @param lastEntryId id of the last entry to copy
+     * @param cb the callback notified when the entries are copied
+     * @param ctx a context object passed to the callback on completion
+     */
+    void copyFragment(BookieId address, long ledgerId, byte[] masterKey,
+                      long firstEntryId, long lastEntryId, CopyFragmentCallback cb, Object ctx);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
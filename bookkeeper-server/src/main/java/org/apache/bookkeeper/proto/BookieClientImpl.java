@@ -24,6 +24,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.bookkeeper.util.SafeRunnable.safeRun;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ExtensionRegistry;
 
 import io.netty.buffer.ByteBuf;
@@ -31,6 +32,7 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.concurrent.DefaultThreadFactory;
@@ -57,10 +59,12 @@ import org.apache.bookkeeper.common.util.SafeRunnable;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -84,6 +88,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     private final OrderedExecutor executor;
     private final ScheduledExecutorService scheduler;
     private final ScheduledFuture<?> timeoutFuture;
+    // shared by all the channels to schedule the request timeouts, null if they are polled
+    private final HashedWheelTimer requestTimer;
 
     private final EventLoopGroup eventLoopGroup;
     private final ByteBufAllocator allocator;
@@ -126,7 +132,14 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         this.bookieErrorThresholdPerInterval = conf.getBookieErrorThresholdPerInterval();
 
         this.scheduler = scheduler;
-        if (conf.getAddEntryTimeout() > 0 || conf.getReadEntryTimeout() > 0) {
+        if (conf.getPCBCTimeoutTimerEnabled()) {
+            this.requestTimer = new HashedWheelTimer(
+                    new ThreadFactoryBuilder().setNameFormat("BookieClientRequestTimeout-%d").setDaemon(true).build(),
+                    conf.getPCBCTimeoutTimerTickDurationMs(), TimeUnit.MILLISECONDS,
+                    conf.getPCBCTimeoutTimerNumTicks());
+            this.timeoutFuture = null;
+        } else if (conf.getAddEntryTimeout() > 0 || conf.getReadEntryTimeout() > 0) {
+            this.requestTimer = null;
             SafeRunnable monitor = safeRun(() -> {
                 monitorPendingOperations();
             });
@@ -135,6 +148,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                                                                     conf.getTimeoutMonitorIntervalSec(),
                                                                     TimeUnit.SECONDS);
         } else {
+            this.requestTimer = null;
             this.timeoutFuture = null;
         }
     }
@@ -184,6 +198,18 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    @Override
+    public long getReadLatencyNanos(BookieId address) {
+        PerChannelBookieClientPool pcbcPool = channels.get(address);
+        return pcbcPool == null ? -1L : pcbcPool.getReadLatencyNanos();
+    }
+
+    @Override
+    public long getRecentReadLatencyNanos(BookieId address, double percentile) {
+        PerChannelBookieClientPool pcbcPool = channels.get(address);
+        return pcbcPool == null ? -1L : pcbcPool.getRecentReadLatencyNanos(percentile);
+    }
+
     @Override
     public PerChannelBookieClient create(BookieId address, PerChannelBookieClientPool pcbcPool,
             SecurityHandlerFactory shFactory, boolean forceUseV3) throws SecurityException {
@@ -197,7 +223,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
         return new PerChannelBookieClient(clientConfiguration, executor, eventLoopGroup, allocator, address,
                                    statsLoggerForPCBC, authProviderFactory, registry, pcbcPool,
-                                   shFactory, bookieAddressResolver);
+                                   shFactory, bookieAddressResolver, requestTimer);
     }
 
     public PerChannelBookieClientPool lookupClient(BookieId addr) {
@@ -516,6 +542,60 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     }
 
 
+    @Override
+    public void readEntries(final BookieId addr, final long ledgerId, final long firstEntryId,
+                            final int maxCount, final long maxBytes, final ReadEntriesCallback cb,
+                            final Object ctx, int flags, final boolean allowFastFail) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            cb.readEntriesComplete(getRc(BKException.Code.BookieHandleNotAvailableException),
+                                   ledgerId, firstEntryId, null, ctx);
+            return;
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                try {
+                    executor.executeOrdered(ledgerId, safeRun(() -> {
+                        cb.readEntriesComplete(rc, ledgerId, firstEntryId, null, ctx);
+                    }));
+                } catch (RejectedExecutionException ree) {
+                    cb.readEntriesComplete(getRc(BKException.Code.InterruptedException),
+                                           ledgerId, firstEntryId, null, ctx);
+                }
+            } else {
+                pcbc.readEntries(ledgerId, firstEntryId, maxCount, maxBytes, cb, ctx, flags, allowFastFail);
+            }
+        }, ledgerId);
+    }
+
+    @Override
+    public void copyFragment(final BookieId addr, final long ledgerId, final byte[] masterKey,
+                             final long firstEntryId, final long lastEntryId,
+                             final CopyFragmentCallback cb, final Object ctx) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            cb.copyFragmentComplete(getRc(BKException.Code.BookieHandleNotAvailableException),
+                                    ledgerId, firstEntryId, 0L, ctx);
+            return;
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                try {
+                    executor.executeOrdered(ledgerId, safeRun(() -> {
+                        cb.copyFragmentComplete(rc, ledgerId, firstEntryId, 0L, ctx);
+                    }));
+                } catch (RejectedExecutionException ree) {
+                    cb.copyFragmentComplete(getRc(BKException.Code.InterruptedException),
+                                            ledgerId, firstEntryId, 0L, ctx);
+                }
+            } else {
+                pcbc.copyFragment(ledgerId, masterKey, firstEntryId, lastEntryId, cb, ctx);
+            }
+        }, ledgerId);
+    }
+
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
                                           final long ledgerId,
@@ -592,6 +672,9 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             if (timeoutFuture != null) {
                 timeoutFuture.cancel(false);
             }
+            if (requestTimer != null) {
+                requestTimer.stop();
+            }
         } finally {
             closeLock.writeLock().unlock();
         }
@@ -336,6 +336,10 @@ class BookieNettyServer {
                     pipeline.addLast("lengthprepender", new LengthFieldPrepender(4));
 
                     pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
+                    if (conf.isNettyFlushCoalescingEnabled()) {
+                        pipeline.addLast(FlushCoalescingHandler.NAME, new FlushCoalescingHandler(
+                                conf.getNettyFlushCoalescingMaxMessages(), conf.getNettyFlushCoalescingMaxBytes()));
+                    }
                     pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
@@ -36,10 +36,10 @@ import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -49,7 +49,6 @@ import lombok.Getter;
 import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
 import org.apache.bookkeeper.auth.AuthToken;
 import org.apache.bookkeeper.bookie.Bookie;
-import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.processor.RequestProcessor;
@@ -119,8 +118,8 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final RequestStats requestStats;
 
-    final Semaphore addsSemaphore;
-    final Semaphore readsSemaphore;
+    final RequestAdmissionController addsAdmission;
+    final RequestAdmissionController readsAdmission;
 
     // to temporary blacklist channels
     final Optional<Cache<Channel, Boolean>> blacklistedChannels;
@@ -130,6 +129,11 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    /**
+     * Copies the fragments requested by the replication workers, if fragment copies are enabled.
+     */
+    private volatile FragmentCopier fragmentCopier;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
             SecurityHandlerFactory shFactory, ByteBufAllocator allocator) throws SecurityException {
         this.serverCfg = serverCfg;
@@ -197,58 +201,67 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.statsEnabled = serverCfg.isStatisticsEnabled();
         this.requestStats = new RequestStats(statsLogger);
 
+        Map<String, Integer> clientWeights =
+                RequestAdmissionController.parseClientWeights(serverCfg.getAdmissionControlClientWeights());
         int maxAdds = serverCfg.getMaxAddsInProgressLimit();
-        addsSemaphore = maxAdds > 0 ? new Semaphore(maxAdds, true) : null;
+        addsAdmission = maxAdds > 0 ? new RequestAdmissionController("add", maxAdds,
+                serverCfg.getMaxQueuedRequestsPerChannel(), clientWeights, requestStats.getAddAdmissionStats()) : null;
 
         int maxReads = serverCfg.getMaxReadsInProgressLimit();
-        readsSemaphore = maxReads > 0 ? new Semaphore(maxReads, true) : null;
-    }
-
-    protected void onAddRequestStart(Channel channel) {
-        if (addsSemaphore != null) {
-            if (!addsSemaphore.tryAcquire()) {
-                final long throttlingStartTimeNanos = MathUtils.nowInNano();
-                channel.config().setAutoRead(false);
-                LOG.info("Too many add requests in progress, disabling autoread on channel {}", channel);
-                requestStats.blockAddRequest();
-                addsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
-                final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
-                LOG.info("Re-enabled autoread on channel {} after AddRequest delay of {} nanos", channel, delayNanos);
-                requestStats.unblockAddRequest(delayNanos);
-            }
+        readsAdmission = maxReads > 0 ? new RequestAdmissionController("read", maxReads,
+                serverCfg.getMaxQueuedRequestsPerChannel(), clientWeights, requestStats.getReadAdmissionStats()) : null;
+    }
+
+    /**
+     * Admit an add request. When too many adds are in progress, the request is queued and
+     * onAdmitted runs later, or it is rejected with onRejected. Either way, the request must
+     * complete with {@link #onAddRequestFinish()}.
+     */
+    protected void onAddRequestStart(Channel channel, Runnable onAdmitted, Runnable onRejected) {
+        if (addsAdmission != null) {
+            addsAdmission.admit(channel, () -> {
+                requestStats.trackAddRequest();
+                onAdmitted.run();
+            }, () -> {
+                requestStats.trackAddRequest();
+                onRejected.run();
+            });
+        } else {
+            requestStats.trackAddRequest();
+            onAdmitted.run();
         }
-        requestStats.trackAddRequest();
     }
 
     protected void onAddRequestFinish() {
         requestStats.untrackAddRequest();
-        if (addsSemaphore != null) {
-            addsSemaphore.release();
+        if (addsAdmission != null) {
+            addsAdmission.release();
         }
     }
 
-    protected void onReadRequestStart(Channel channel) {
-        if (readsSemaphore != null) {
-            if (!readsSemaphore.tryAcquire()) {
-                final long throttlingStartTimeNanos = MathUtils.nowInNano();
-                channel.config().setAutoRead(false);
-                LOG.info("Too many read requests in progress, disabling autoread on channel {}", channel);
-                requestStats.blockReadRequest();
-                readsSemaphore.acquireUninterruptibly();
-                channel.config().setAutoRead(true);
-                final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
-                LOG.info("Re-enabled autoread on channel {} after ReadRequest delay of {} nanos", channel, delayNanos);
-                requestStats.unblockReadRequest(delayNanos);
-            }
+    /**
+     * Admit a read request, like {@link #onAddRequestStart(Channel, Runnable, Runnable)}. The
+     * request must complete with {@link #onReadRequestFinish()}.
+     */
+    protected void onReadRequestStart(Channel channel, Runnable onAdmitted, Runnable onRejected) {
+        if (readsAdmission != null) {
+            readsAdmission.admit(channel, () -> {
+                requestStats.trackReadRequest();
+                onAdmitted.run();
+            }, () -> {
+                requestStats.trackReadRequest();
+                onRejected.run();
+            });
+        } else {
+            requestStats.trackReadRequest();
+            onAdmitted.run();
         }
-        requestStats.trackReadRequest();
     }
 
     protected void onReadRequestFinish() {
         requestStats.untrackReadRequest();
-        if (readsSemaphore != null) {
-            readsSemaphore.release();
+        if (readsAdmission != null) {
+            readsAdmission.release();
         }
     }
 
@@ -315,9 +328,15 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case ADD_ENTRY:
                         processAddRequestV3(r, c);
                         break;
+                    case RANGE_ADD_ENTRY:
+                        processRangeAddRequestV3(r, c);
+                        break;
                     case READ_ENTRY:
                         processReadRequestV3(r, c);
                         break;
+                    case RANGE_READ_ENTRY:
+                        processRangeReadRequestV3(r, c);
+                        break;
                     case FORCE_LEDGER:
                         processForceLedgerRequestV3(r, c);
                         break;
@@ -349,6 +368,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case GET_LIST_OF_ENTRIES_OF_LEDGER:
                         processGetListOfEntriesOfLedgerProcessorV3(r, c);
                         break;
+                    case COPY_FRAGMENT:
+                        processCopyFragmentRequestV3(r, c);
+                        break;
                     default:
                         LOG.info("Unknown operation type {}", header.getOperation());
                         BookkeeperProtocol.Response.Builder response =
@@ -426,7 +448,10 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private void processAddRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, c, this);
+        onAddRequestStart(c, () -> executeAddRequestV3(r, write), () -> rejectAddRequestV3(r, write));
+    }
 
+    private void executeAddRequestV3(final BookkeeperProtocol.Request r, final WriteEntryProcessorV3 write) {
         final OrderedExecutor threadPool;
         if (RequestUtils.isHighPriority(r)) {
             threadPool = highPriorityThreadPool;
@@ -444,21 +469,51 @@ public class BookieRequestProcessor implements RequestProcessor {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests",
                               r.getAddRequest().getLedgerId(), r.getAddRequest().getEntryId());
                 }
-                getRequestStats().getAddEntryRejectedCounter().inc();
-                BookkeeperProtocol.AddResponse.Builder addResponse = BookkeeperProtocol.AddResponse.newBuilder()
-                        .setLedgerId(r.getAddRequest().getLedgerId())
-                        .setEntryId(r.getAddRequest().getEntryId())
-                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
-                BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
-                        .setHeader(write.getHeader())
-                        .setStatus(addResponse.getStatus())
-                        .setAddResponse(addResponse);
-                BookkeeperProtocol.Response resp = response.build();
-                write.sendResponse(addResponse.getStatus(), resp, requestStats.getAddRequestStats());
+                rejectAddRequestV3(r, write);
+            }
+        }
+    }
+
+    private void rejectAddRequestV3(final BookkeeperProtocol.Request r, final WriteEntryProcessorV3 write) {
+        getRequestStats().getAddEntryRejectedCounter().inc();
+        BookkeeperProtocol.AddResponse.Builder addResponse = BookkeeperProtocol.AddResponse.newBuilder()
+                .setLedgerId(r.getAddRequest().getLedgerId())
+                .setEntryId(r.getAddRequest().getEntryId())
+                .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+        BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
+                .setHeader(write.getHeader())
+                .setStatus(addResponse.getStatus())
+                .setAddResponse(addResponse);
+        BookkeeperProtocol.Response resp = response.build();
+        write.sendResponse(addResponse.getStatus(), resp, requestStats.getAddRequestStats());
+    }
+
+    private void processRangeAddRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        RangeAddEntryProcessorV3 write = new RangeAddEntryProcessorV3(r, c, this);
+        onAddRequestStart(c, () -> executeRangeAddRequestV3(r, write), () -> rejectRangeAddRequestV3(write));
+    }
+
+    private void executeRangeAddRequestV3(final BookkeeperProtocol.Request r, final RangeAddEntryProcessorV3 write) {
+        if (null == writeThreadPool) {
+            write.run();
+        } else {
+            try {
+                writeThreadPool.executeOrdered(r.getRangeAddRequest().getLedgerId(), write);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to add {} entries to ledger {}. Too many pending requests",
+                              r.getRangeAddRequest().getEntryIdCount(), r.getRangeAddRequest().getLedgerId());
+                }
+                rejectRangeAddRequestV3(write);
             }
         }
     }
 
+    private void rejectRangeAddRequestV3(final RangeAddEntryProcessorV3 write) {
+        getRequestStats().getAddEntryRejectedCounter().inc();
+        write.sendResponse(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+    }
+
     private void processForceLedgerRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         ForceLedgerProcessorV3 forceLedger = new ForceLedgerProcessorV3(r, c, this);
 
@@ -522,6 +577,11 @@ public class BookieRequestProcessor implements RequestProcessor {
             }
         }
 
+        onReadRequestStart(c, () -> executeReadRequestV3(r, read, threadPool), () -> rejectReadRequestV3(r, read));
+    }
+
+    private void executeReadRequestV3(final BookkeeperProtocol.Request r, final ReadEntryProcessorV3 read,
+                                      final OrderedExecutor threadPool) {
         if (null == threadPool) {
             read.run();
         } else {
@@ -532,21 +592,51 @@ public class BookieRequestProcessor implements RequestProcessor {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
                               r.getReadRequest().getLedgerId(), r.getReadRequest().getEntryId());
                 }
-                getRequestStats().getReadEntryRejectedCounter().inc();
-                BookkeeperProtocol.ReadResponse.Builder readResponse = BookkeeperProtocol.ReadResponse.newBuilder()
-                    .setLedgerId(r.getReadRequest().getLedgerId())
-                    .setEntryId(r.getReadRequest().getEntryId())
-                    .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
-                BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
-                    .setHeader(read.getHeader())
-                    .setStatus(readResponse.getStatus())
-                    .setReadResponse(readResponse);
-                BookkeeperProtocol.Response resp = response.build();
-                read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
+                rejectReadRequestV3(r, read);
             }
         }
     }
 
+    private void rejectReadRequestV3(final BookkeeperProtocol.Request r, final ReadEntryProcessorV3 read) {
+        getRequestStats().getReadEntryRejectedCounter().inc();
+        // completes the request, releasing its slot
+        read.sendResponse(BookkeeperProtocol.ReadResponse.newBuilder()
+            .setLedgerId(r.getReadRequest().getLedgerId())
+            .setEntryId(r.getReadRequest().getEntryId())
+            .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS)
+            .build());
+    }
+
+    private void processRangeReadRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        final RangeReadEntryProcessorV3 read = new RangeReadEntryProcessorV3(r, c, this);
+        onReadRequestStart(c, () -> executeRangeReadRequestV3(r, read), () -> rejectRangeReadRequestV3(r, read));
+    }
+
+    private void executeRangeReadRequestV3(final BookkeeperProtocol.Request r, final RangeReadEntryProcessorV3 read) {
+        if (null == readThreadPool) {
+            read.run();
+        } else {
+            try {
+                readThreadPool.executeOrdered(r.getRangeReadRequest().getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to range read entries at {}:{}. Too many pending requests",
+                              r.getRangeReadRequest().getLedgerId(), r.getRangeReadRequest().getFirstEntryId());
+                }
+                rejectRangeReadRequestV3(r, read);
+            }
+        }
+    }
+
+    private void rejectRangeReadRequestV3(final BookkeeperProtocol.Request r, final RangeReadEntryProcessorV3 read) {
+        getRequestStats().getReadEntryRejectedCounter().inc();
+        read.sendResponse(BookkeeperProtocol.RangeReadResponse.newBuilder()
+            .setLedgerId(r.getRangeReadRequest().getLedgerId())
+            .setFirstEntryId(r.getRangeReadRequest().getFirstEntryId())
+            .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS)
+            .build());
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
         BookkeeperProtocol.BKPacketHeader.Builder header = BookkeeperProtocol.BKPacketHeader.newBuilder();
@@ -618,6 +708,23 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processCopyFragmentRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        CopyFragmentProcessorV3 copyFragment = new CopyFragmentProcessorV3(r, c, this);
+        if (null == readThreadPool) {
+            copyFragment.run();
+        } else {
+            try {
+                readThreadPool.executeOrdered(r.getCopyFragmentRequest().getLedgerId(), copyFragment);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to copy entries of ledger {}. Too many pending requests",
+                              r.getCopyFragmentRequest().getLedgerId());
+                }
+                copyFragment.sendResponse(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS, 0L);
+            }
+        }
+    }
+
     private void processAddRequest(final BookieProtocol.ParsedAddRequest r, final Channel c) {
         WriteEntryProcessor write = WriteEntryProcessor.create(r, c, this);
 
@@ -684,6 +791,10 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    public void setFragmentCopier(FragmentCopier fragmentCopier) {
+        this.fragmentCopier = fragmentCopier;
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
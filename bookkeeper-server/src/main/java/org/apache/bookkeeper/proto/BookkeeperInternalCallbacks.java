@@ -23,6 +23,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -223,6 +224,25 @@ public class BookkeeperInternalCallbacks {
         void readEntryComplete(int rc, long ledgerId, long entryId, ByteBuf buffer, Object ctx);
     }
 
+    /**
+     * Declaration of a callback implementation for range read operations
+     * (operations to read a run of consecutive entries of a ledger from one bookie).
+     * On success {@code entries} holds the bodies of {@code firstEntryId},
+     * {@code firstEntryId + 1}, ... in order; it may contain fewer entries than requested.
+     */
+    public interface ReadEntriesCallback {
+        void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> entries, Object ctx);
+    }
+
+    /**
+     * Declaration of a callback implementation for fragment copy operations
+     * (operations asking a bookie to copy a range of entries of a ledger from the other bookies).
+     * On success {@code bytesCopied} is the total size of the entries the bookie stored.
+     */
+    public interface CopyFragmentCallback {
+        void copyFragmentComplete(int rc, long ledgerId, long firstEntryId, long bytesCopied, Object ctx);
+    }
+
     /**
      * Listener on entries responded.
      */
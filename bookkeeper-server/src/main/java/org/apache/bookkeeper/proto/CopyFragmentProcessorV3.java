@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.Channel;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyFragmentRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyFragmentResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor for v3 fragment copy requests. The bookie copies the requested range of entries
+ * from the other bookies of the ledger with its {@link FragmentCopier}, and responds once the
+ * entries are durably added, or on the first failure.
+ *
+ * <p>Bookies without a fragment copier reject the requests with {@link StatusCode#EBADREQ}.
+ */
+class CopyFragmentProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CopyFragmentProcessorV3.class);
+
+    protected final CopyFragmentRequest copyFragmentRequest;
+    protected final long ledgerId;
+    protected final long firstEntryId;
+
+    public CopyFragmentProcessorV3(Request request,
+                                   Channel channel,
+                                   BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+
+        this.copyFragmentRequest = request.getCopyFragmentRequest();
+        this.ledgerId = copyFragmentRequest.getLedgerId();
+        this.firstEntryId = copyFragmentRequest.getFirstEntryId();
+    }
+
+    @Override
+    public void safeRun() {
+        if (!isVersionCompatible()) {
+            sendResponse(StatusCode.EBADVERSION, 0L);
+            return;
+        }
+        FragmentCopier copier = requestProcessor.getFragmentCopier();
+        if (null == copier) {
+            sendResponse(StatusCode.EBADREQ, 0L);
+            return;
+        }
+        if (requestProcessor.getBookie().isReadOnly()) {
+            LOG.warn("BookieServer is running as readonly mode, so rejecting the fragment copy of ledger {}",
+                    ledgerId);
+            sendResponse(StatusCode.EREADONLY, 0L);
+            return;
+        }
+
+        final long startTimeNanos = MathUtils.nowInNano();
+        copier.copyFragment(ledgerId, copyFragmentRequest.getMasterKey().toByteArray(),
+                firstEntryId, copyFragmentRequest.getLastEntryId())
+            .whenComplete((bytesCopied, cause) -> {
+                long elapsedNanos = MathUtils.elapsedNanos(startTimeNanos);
+                if (null == cause) {
+                    requestProcessor.getRequestStats().getCopyFragmentStats()
+                            .registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    requestProcessor.getRequestStats().getCopyFragmentBytesStats()
+                            .registerSuccessfulValue(bytesCopied);
+                    sendResponse(StatusCode.EOK, bytesCopied);
+                    return;
+                }
+                requestProcessor.getRequestStats().getCopyFragmentStats()
+                        .registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                Throwable t = cause instanceof CompletionException && null != cause.getCause()
+                        ? cause.getCause() : cause;
+                LOG.warn("Failed to copy entries {} to {} of ledger {}",
+                        firstEntryId, copyFragmentRequest.getLastEntryId(), ledgerId, t);
+                sendResponse(toStatusCode(t), 0L);
+            });
+    }
+
+    private static StatusCode toStatusCode(Throwable t) {
+        if (t instanceof BKException.BKNoSuchLedgerExistsOnMetadataServerException
+                || t instanceof BKException.BKNoSuchLedgerExistsException) {
+            return StatusCode.ENOLEDGER;
+        } else if (t instanceof BKException.BKUnauthorizedAccessException) {
+            return StatusCode.EUA;
+        } else {
+            return StatusCode.EIO;
+        }
+    }
+
+    protected void sendResponse(StatusCode status, long bytesCopied) {
+        CopyFragmentResponse copyFragmentResponse = CopyFragmentResponse.newBuilder()
+                .setStatus(status)
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setBytesCopied(bytesCopied)
+                .build();
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(status)
+                .setCopyFragmentResponse(copyFragmentResponse);
+        sendResponse(status, response.build(),
+                     requestProcessor.getRequestStats().getCopyFragmentRequestStats());
+    }
+
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -55,6 +55,7 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     final AtomicInteger counter = new AtomicInteger(0);
     final AtomicLong errorCounter = new AtomicLong(0);
+    final ReadLatencyTracker readLatency = new ReadLatencyTracker();
 
     DefaultPerChannelBookieClientPool(ClientConfiguration conf, PerChannelBookieClientFactory factory,
                                       BookieId address,
@@ -141,6 +142,21 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         errorCounter.incrementAndGet();
     }
 
+    @Override
+    public void recordReadLatency(long latencyNanos) {
+        readLatency.record(latencyNanos);
+    }
+
+    @Override
+    public long getReadLatencyNanos() {
+        return readLatency.getAverageNanos();
+    }
+
+    @Override
+    public long getRecentReadLatencyNanos(double percentile) {
+        return readLatency.getRecentPercentileNanos(percentile);
+    }
+
     @Override
     public void disconnect(boolean wait) {
         for (int i = 0; i < clients.length; i++) {
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Coalesces the flushes of a channel.
+ * <p/>
+ * A flush is deferred until the end of the current read of the channel, or else until the tasks
+ * already queued on the event loop have run, so that the messages written by all of them go out
+ * in a single write syscall. The pending messages are flushed right away once there are
+ * maxPendingMessages of them or they hold maxPendingBytes bytes, and when the channel becomes
+ * unwritable or is closed.
+ * <p/>
+ * All the methods are called on the event loop of the channel, so the handler needs no locking.
+ * It must be placed right after the encoder of the protocol, so that each message it sees is one
+ * encoded request or response.
+ */
+class FlushCoalescingHandler extends ChannelDuplexHandler {
+    static final String NAME = "flushCoalescing";
+
+    private final int maxPendingMessages;
+    private final long maxPendingBytes;
+
+    // messages and bytes written since the last flush
+    private int pendingMessages = 0;
+    private long pendingBytes = 0;
+    private boolean flushPending = false;
+    private boolean readInProgress = false;
+    private boolean flushScheduled = false;
+    private ChannelHandlerContext ctx;
+    private final Runnable flushTask = () -> {
+        flushScheduled = false;
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    };
+
+    FlushCoalescingHandler(int maxPendingMessages, long maxPendingBytes) {
+        this.maxPendingMessages = maxPendingMessages;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfPending(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pendingMessages++;
+        if (msg instanceof ByteBuf) {
+            pendingBytes += ((ByteBuf) msg).readableBytes();
+        } else if (msg instanceof ByteBufList) {
+            pendingBytes += ((ByteBufList) msg).readableBytes();
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flushPending = true;
+        if (pendingMessages >= maxPendingMessages || pendingBytes >= maxPendingBytes) {
+            flushNow(ctx);
+        } else if (!readInProgress && !flushScheduled) {
+            // flush once the tasks queued so far on the event loop, likely other writes, have run
+            flushScheduled = true;
+            ctx.executor().execute(flushTask);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        // the responses written while handling the read go out together
+        readInProgress = false;
+        flushIfPending(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            // the pending messages must be flushed for the channel to become writable again
+            flushIfPending(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        readInProgress = false;
+        flushIfPending(ctx);
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        readInProgress = false;
+        flushIfPending(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        readInProgress = false;
+        flushIfPending(ctx);
+        ctx.close(promise);
+    }
+
+    private void flushIfPending(ChannelHandlerContext ctx) {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        flushPending = false;
+        pendingMessages = 0;
+        pendingBytes = 0;
+        ctx.flush();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.DistributionSchedule;
+import org.apache.bookkeeper.client.RoundRobinDistributionSchedule;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies a range of entries of a ledger to this bookie from the other bookies of the ledger.
+ *
+ * <p>The entries are read with range reads, from one bookie of their write set at a time, moving
+ * on to another bookie of the write set when a read fails. Each entry is verified against its
+ * digest before it is added to this bookie through the journal, as a recovery add, so the copy is
+ * durable once it completes. The reads are sequential while the adds of a range read are in flight.
+ */
+public class FragmentCopier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FragmentCopier.class);
+
+    private final BookieId bookieId;
+    private final Bookie bookie;
+    private final LedgerManager ledgerManager;
+    private final BookieClient bookieClient;
+    private final ByteBufAllocator allocator;
+
+    public FragmentCopier(BookieId bookieId, Bookie bookie, LedgerManager ledgerManager,
+                          BookieClient bookieClient, ByteBufAllocator allocator) {
+        this.bookieId = bookieId;
+        this.bookie = bookie;
+        this.ledgerManager = ledgerManager;
+        this.bookieClient = bookieClient;
+        this.allocator = allocator;
+    }
+
+    /**
+     * Copy the entries {@code firstEntryId} to {@code lastEntryId} of a ledger to this bookie.
+     *
+     * @return a future completed with the total size of the entries copied, or failed with the
+     *         {@link BKException} of the first read or add that could not be completed
+     */
+    public CompletableFuture<Long> copyFragment(long ledgerId, byte[] masterKey,
+                                                long firstEntryId, long lastEntryId) {
+        return ledgerManager.readLedgerMetadata(ledgerId).thenCompose(versioned -> {
+            LedgerMetadata metadata = versioned.getValue();
+            DigestManager digestManager;
+            try {
+                digestManager = createDigestManager(ledgerId, metadata);
+            } catch (BKException bke) {
+                return failed(bke);
+            }
+            FragmentCopy copy = new FragmentCopy(ledgerId, masterKey, firstEntryId, lastEntryId,
+                    metadata, digestManager);
+            copy.readNext();
+            return copy.future;
+        });
+    }
+
+    private DigestManager createDigestManager(long ledgerId, LedgerMetadata metadata) throws BKException {
+        BookKeeper.DigestType digestType = BookKeeper.DigestType.fromApiDigestType(metadata.getDigestType());
+        if (digestType == BookKeeper.DigestType.MAC && !metadata.hasPassword()) {
+            // the digests can't be verified without the password
+            throw BKException.create(BKException.Code.UnauthorizedAccessException);
+        }
+        byte[] password = metadata.hasPassword() ? metadata.getPassword() : new byte[0];
+        try {
+            return DigestManager.instantiate(ledgerId, password,
+                    BookKeeper.DigestType.toProtoDigestType(digestType), allocator, false);
+        } catch (Exception e) {
+            LOG.error("Failed to instantiate the digest manager of ledger {}", ledgerId, e);
+            throw BKException.create(BKException.Code.DigestNotInitializedException);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * The state of the copy of a range of entries.
+     */
+    private class FragmentCopy implements ReadEntriesCallback, WriteCallback {
+        final long ledgerId;
+        final byte[] masterKey;
+        final long lastEntryId;
+        final LedgerMetadata metadata;
+        final DigestManager digestManager;
+        final DistributionSchedule distributionSchedule;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        // guarded by this
+        long nextEntryId;
+        BookieId source = null;
+        final Set<BookieId> failedSources = new HashSet<>();
+        int pendingAdds = 0;
+        boolean readsDone = false;
+        long bytesCopied = 0L;
+
+        FragmentCopy(long ledgerId, byte[] masterKey, long firstEntryId, long lastEntryId,
+                     LedgerMetadata metadata, DigestManager digestManager) {
+            this.ledgerId = ledgerId;
+            this.masterKey = masterKey;
+            this.nextEntryId = firstEntryId;
+            this.lastEntryId = lastEntryId;
+            this.metadata = metadata;
+            this.digestManager = digestManager;
+            this.distributionSchedule = new RoundRobinDistributionSchedule(
+                    metadata.getWriteQuorumSize(), metadata.getAckQuorumSize(), metadata.getEnsembleSize());
+        }
+
+        /**
+         * Select the bookie to read the next entry from, preferring the last bookie read from.
+         */
+        private BookieId selectSource(long entryId) {
+            List<BookieId> ensemble = metadata.getEnsembleAt(entryId);
+            DistributionSchedule.WriteSet writeSet = distributionSchedule.getWriteSet(entryId);
+            try {
+                BookieId selected = null;
+                for (int i = 0; i < writeSet.size(); i++) {
+                    BookieId candidate = ensemble.get(writeSet.get(i));
+                    if (candidate.equals(bookieId) || failedSources.contains(candidate)) {
+                        continue;
+                    }
+                    if (candidate.equals(source)) {
+                        return candidate;
+                    }
+                    if (null == selected) {
+                        selected = candidate;
+                    }
+                }
+                return selected;
+            } finally {
+                writeSet.recycle();
+            }
+        }
+
+        void readNext() {
+            long entryId;
+            BookieId readFrom;
+            synchronized (this) {
+                if (future.isDone()) {
+                    return;
+                }
+                if (nextEntryId > lastEntryId) {
+                    readsDone = true;
+                    maybeComplete();
+                    return;
+                }
+                entryId = nextEntryId;
+                readFrom = selectSource(entryId);
+                if (null == readFrom) {
+                    LOG.warn("No bookie left to copy entry {} of ledger {} from, failed bookies: {}",
+                            entryId, ledgerId, failedSources);
+                    fail(BKException.Code.ReplicationException);
+                    return;
+                }
+                source = readFrom;
+            }
+            int maxCount = (int) Math.min(Integer.MAX_VALUE, lastEntryId - entryId + 1);
+            bookieClient.readEntries(readFrom, ledgerId, entryId, maxCount, 0L, this, readFrom,
+                    BookieProtocol.FLAG_NONE, false);
+        }
+
+        @Override
+        public void readEntriesComplete(int rc, long ledgerId, long firstEntryId,
+                                        List<ByteBuf> entries, Object ctx) {
+            BookieId readFrom = (BookieId) ctx;
+            if (rc != BKException.Code.OK) {
+                LOG.warn("Failed to read entries of ledger {} from {} starting at entry {}: {}",
+                        ledgerId, readFrom, firstEntryId, BKException.getMessage(rc));
+                synchronized (this) {
+                    failedSources.add(readFrom);
+                }
+                readNext();
+                return;
+            }
+
+            int numEntries = (int) Math.min(entries.size(), lastEntryId - firstEntryId + 1);
+            int added = 0;
+            try {
+                for (; added < numEntries && !future.isDone(); added++) {
+                    long entryId = firstEntryId + added;
+                    ByteBuf entry = entries.get(added);
+                    try {
+                        digestManager.verifyDigestAndReturnData(entryId, entry.duplicate());
+                    } catch (BKException.BKDigestMatchException e) {
+                        LOG.error("Digest mismatch on entry {} of ledger {} read from {}",
+                                entryId, ledgerId, readFrom);
+                        synchronized (this) {
+                            failedSources.add(readFrom);
+                        }
+                        break;
+                    }
+                    addEntry(entryId, entry);
+                }
+            } finally {
+                // the entries that were not added are still ours
+                for (int i = added; i < entries.size(); i++) {
+                    entries.get(i).release();
+                }
+            }
+            synchronized (this) {
+                nextEntryId = firstEntryId + added;
+            }
+            readNext();
+        }
+
+        private void addEntry(long entryId, ByteBuf entry) {
+            int entrySize = entry.readableBytes();
+            synchronized (this) {
+                pendingAdds++;
+                bytesCopied += entrySize;
+            }
+            try {
+                // the entry is released by the bookie
+                bookie.recoveryAddEntry(entry, this, null, masterKey);
+            } catch (BookieException.BookieUnauthorizedAccessException e) {
+                LOG.error("Not allowed to add entry {} of ledger {}", entryId, ledgerId, e);
+                fail(BKException.Code.UnauthorizedAccessException);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(BKException.Code.InterruptedException);
+            } catch (Exception e) {
+                LOG.error("Failed to add entry {} of ledger {}", entryId, ledgerId, e);
+                fail(BKException.Code.WriteException);
+            }
+        }
+
+        @Override
+        public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+            if (rc != BookieProtocol.EOK) {
+                LOG.error("Failed to add entry {} of ledger {}: rc {}", entryId, ledgerId, rc);
+                fail(BKException.Code.WriteException);
+                return;
+            }
+            synchronized (this) {
+                pendingAdds--;
+                maybeComplete();
+            }
+        }
+
+        private void fail(int rc) {
+            future.completeExceptionally(BKException.create(rc));
+        }
+
+        private void maybeComplete() {
+            if (readsDone && pendingAdds == 0) {
+                future.complete(bytesCopied);
+            }
+        }
+    }
+}
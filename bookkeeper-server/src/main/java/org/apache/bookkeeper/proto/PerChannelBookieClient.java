@@ -57,6 +57,8 @@ import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import java.io.IOException;
@@ -70,6 +72,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -77,6 +81,7 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -96,10 +101,12 @@ import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyFragmentCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetListOfEntriesOfLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
@@ -109,6 +116,8 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyFragmentRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyFragmentResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
@@ -117,6 +126,10 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRe
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
@@ -179,6 +192,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long readEntryTimeoutNanos;
     final int maxFrameSize;
     final long getBookieInfoTimeoutNanos;
+    final long addBatchingWindowNanos;
+    final int addBatchingMaxEntries;
+    final int addBatchingMaxBytes;
     final int startTLSTimeout;
 
     private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
@@ -200,11 +216,41 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "timeout stats of read entries requests"
     )
     private final OpStatsLogger readTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_RANGE_READ_OP,
+        help = "channel stats of range read entries requests"
+    )
+    private final OpStatsLogger rangeReadEntryOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_READ,
+        help = "timeout stats of range read entries requests"
+    )
+    private final OpStatsLogger rangeReadTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_COPY_FRAGMENT_OP,
+        help = "channel stats of copy fragment requests"
+    )
+    private final OpStatsLogger copyFragmentOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_COPY_FRAGMENT,
+        help = "timeout stats of copy fragment requests"
+    )
+    private final OpStatsLogger copyFragmentTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_ADD_OP,
         help = "channel stats of add entries requests"
     )
     private final OpStatsLogger addEntryOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_RANGE_ADD_OP,
+        help = "channel stats of range add entries requests"
+    )
+    private final OpStatsLogger rangeAddEntryOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_ADD,
+        help = "timeout stats of range add entries requests"
+    )
+    private final OpStatsLogger rangeAddTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_WRITE_LAC_OP,
         help = "channel stats of write_lac requests"
@@ -311,6 +357,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
     private final boolean useV2WireProtocol;
     private final boolean preserveMdcForTaskExecution;
+    // set once the bookie rejected a range read, until the next connection to the bookie
+    private volatile boolean rangeReadUnsupported = false;
 
     /**
      * The following member variables do not need to be concurrent, or volatile
@@ -344,6 +392,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final SecurityHandlerFactory shFactory;
     private volatile boolean isWritable = true;
     private long lastBookieUnavailableLogTimestamp = 0;
+    // when set, request timeouts are scheduled on this timer instead of being polled
+    private final Timer requestTimer;
+    // adds waiting for the end of the batching window, per ledger. guarded by itself
+    private final Map<Long, AddBatch> addBatches = new HashMap<>();
+    // cleared once the bookie rejected a range add
+    private volatile boolean rangeAddSupported = true;
 
     public PerChannelBookieClient(OrderedExecutor executor, EventLoopGroup eventLoopGroup,
                                   BookieId addr, BookieAddressResolver bookieAddressResolver) throws SecurityException {
@@ -380,6 +434,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                   PerChannelBookieClientPool pcbcPool,
                                   SecurityHandlerFactory shFactory,
                                   BookieAddressResolver bookieAddressResolver) throws SecurityException {
+        this(conf, executor, eventLoopGroup, allocator, bookieId, parentStatsLogger, authProviderFactory,
+                extRegistry, pcbcPool, shFactory, bookieAddressResolver, null);
+    }
+
+    public PerChannelBookieClient(ClientConfiguration conf, OrderedExecutor executor,
+                                  EventLoopGroup eventLoopGroup,
+                                  ByteBufAllocator allocator,
+                                  BookieId bookieId,
+                                  StatsLogger parentStatsLogger, ClientAuthProvider.Factory authProviderFactory,
+                                  ExtensionRegistry extRegistry,
+                                  PerChannelBookieClientPool pcbcPool,
+                                  SecurityHandlerFactory shFactory,
+                                  BookieAddressResolver bookieAddressResolver,
+                                  Timer requestTimer) throws SecurityException {
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
         this.conf = conf;
         this.bookieId = bookieId;
@@ -395,9 +463,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.addEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryTimeout());
         this.readEntryTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getReadEntryTimeout());
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
+        this.addBatchingWindowNanos = TimeUnit.MICROSECONDS.toNanos(conf.getAddBatchingWindowMicros());
+        this.addBatchingMaxEntries = conf.getAddBatchingMaxEntries();
+        this.addBatchingMaxBytes = Math.min(conf.getAddBatchingMaxSizeBytes(), maxFrameSize / 2);
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
+        this.requestTimer = requestTimer;
 
         this.authProviderFactory = authProviderFactory;
         this.extRegistry = extRegistry;
@@ -418,7 +490,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         getListOfEntriesOfLedgerCompletionOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.GET_LIST_OF_ENTRIES_OF_LEDGER_OP);
         readTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_READ);
+        rangeReadEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_RANGE_READ_OP);
+        rangeReadTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_READ);
+        copyFragmentOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_COPY_FRAGMENT_OP);
+        copyFragmentTimeoutOpLogger = statsLogger.getOpStatsLogger(
+                BookKeeperClientStats.CHANNEL_TIMEOUT_COPY_FRAGMENT);
         addTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_ADD);
+        rangeAddEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_RANGE_ADD_OP);
+        rangeAddTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_ADD);
         writeLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_WRITE_LAC);
         forceLedgerTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_FORCE);
         readLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_READ_LAC);
@@ -587,6 +666,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 pipeline.addLast("lengthbasedframedecoder",
                         new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
                 pipeline.addLast("lengthprepender", new LengthFieldPrepender(4));
+                if (conf.isNettyFlushCoalescingEnabled()) {
+                    pipeline.addLast(FlushCoalescingHandler.NAME, new FlushCoalescingHandler(
+                            conf.getNettyFlushCoalescingMaxMessages(), conf.getNettyFlushCoalescingMaxBytes()));
+                }
                 pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.RequestEncoder(extRegistry));
                 pipeline.addLast(
                     "bookieProtoDecoder",
@@ -679,9 +762,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new V3CompletionKey(txnId,
                                                                 OperationType.WRITE_LAC);
         // writeLac is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
-                              new WriteLacCompletion(completionKey, cb,
-                                                     ctx, lac));
+        putCompletion(completionKey,
+                      new WriteLacCompletion(completionKey, cb,
+                                             ctx, lac));
 
         // Build the request
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -721,9 +804,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new V3CompletionKey(txnId,
                                                                 OperationType.FORCE_LEDGER);
         // force is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
-                              new ForceLedgerCompletion(completionKey, cb,
-                                                     ctx, ledgerId));
+        putCompletion(completionKey,
+                      new ForceLedgerCompletion(completionKey, cb,
+                                             ctx, ledgerId));
 
         // Build the request
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -763,6 +846,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
     void addEntry(final long ledgerId, byte[] masterKey, final long entryId, ByteBufList toSend, WriteCallback cb,
                   Object ctx, final int options, boolean allowFastFail, final EnumSet<WriteFlag> writeFlags) {
+        if (addBatchingWindowNanos > 0 && !useV2WireProtocol && options == BookieProtocol.FLAG_NONE
+                && rangeAddSupported) {
+            final Channel c = channel;
+            if (c != null) {
+                batchAddEntry(c, ledgerId, masterKey, entryId, toSend, cb, ctx, allowFastFail, writeFlags);
+                return;
+            }
+        }
+        sendAddEntry(ledgerId, masterKey, entryId, toSend, cb, ctx, options, allowFastFail, writeFlags);
+    }
+
+    private void sendAddEntry(final long ledgerId, byte[] masterKey, final long entryId, ByteBufList toSend,
+                              WriteCallback cb, Object ctx, final int options, boolean allowFastFail,
+                              final EnumSet<WriteFlag> writeFlags) {
         Object request = null;
         CompletionKey completionKey = null;
         if (useV2WireProtocol) {
@@ -790,21 +887,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
             }
 
-            ByteString body = null;
-            if (toSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(toSend.array(), toSend.arrayOffset(), toSend.readableBytes());
-            } else {
-                for (int i = 0; i < toSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(toSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
-                }
-            }
             AddRequest.Builder addBuilder = AddRequest.newBuilder()
                     .setLedgerId(ledgerId)
                     .setEntryId(entryId)
                     .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
+                    .setBody(toByteString(toSend));
 
             if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
                 addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
@@ -837,6 +924,132 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private static ByteString toByteString(ByteBufList toSend) {
+        ByteString body = null;
+        if (toSend.hasArray()) {
+            body = UnsafeByteOperations.unsafeWrap(toSend.array(), toSend.arrayOffset(), toSend.readableBytes());
+        } else {
+            for (int i = 0; i < toSend.size(); i++) {
+                ByteString piece = UnsafeByteOperations.unsafeWrap(toSend.getBuffer(i).nioBuffer());
+                // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
+                body = (body == null) ? piece : body.concat(piece);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Add the entry to the batch of its ledger. The batch is sent as a single range add
+     * request at the end of the batching window, or as soon as it is full.
+     */
+    private void batchAddEntry(Channel c, long ledgerId, byte[] masterKey, long entryId, ByteBufList toSend,
+                               WriteCallback cb, Object ctx, boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+        // the batch holds the entry until its add completes
+        toSend.retain();
+
+        AddBatch batch;
+        boolean newBatch = false;
+        boolean full = false;
+        synchronized (addBatches) {
+            batch = addBatches.get(ledgerId);
+            if (batch == null) {
+                batch = new AddBatch(c, ledgerId, masterKey, allowFastFail, writeFlags);
+                addBatches.put(ledgerId, batch);
+                newBatch = true;
+            }
+            batch.add(entryId, toSend, cb, ctx);
+            if (batch.adds.size() >= addBatchingMaxEntries || batch.bytes >= addBatchingMaxBytes) {
+                addBatches.remove(ledgerId);
+                full = true;
+            }
+        }
+
+        if (full) {
+            sendAddBatch(batch);
+        } else if (newBatch) {
+            final AddBatch toFlush = batch;
+            try {
+                c.eventLoop().schedule(() -> flushAddBatch(toFlush), addBatchingWindowNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                flushAddBatch(toFlush);
+            }
+        }
+    }
+
+    private void flushAddBatch(AddBatch batch) {
+        synchronized (addBatches) {
+            if (addBatches.get(batch.ledgerId) != batch) {
+                // already sent because it was full
+                return;
+            }
+            addBatches.remove(batch.ledgerId);
+        }
+        sendAddBatch(batch);
+    }
+
+    /**
+     * Fail the adds of the batches not sent yet. Only the batches of the given channel are
+     * failed, or all of them if the channel is null.
+     */
+    private void errorOutAddBatches(Channel c, int rc) {
+        List<AddBatch> failed = new ArrayList<>();
+        synchronized (addBatches) {
+            Iterator<AddBatch> iterator = addBatches.values().iterator();
+            while (iterator.hasNext()) {
+                AddBatch batch = iterator.next();
+                if (c == null || batch.channel == c) {
+                    iterator.remove();
+                    failed.add(batch);
+                }
+            }
+        }
+        for (AddBatch batch : failed) {
+            executor.executeOrdered(batch.ledgerId, () -> {
+                for (BatchedAdd add : batch.adds) {
+                    add.cb.writeComplete(rc, batch.ledgerId, add.entryId, bookieId, add.ctx);
+                    add.toSend.release();
+                }
+            });
+        }
+    }
+
+    private void sendAddBatch(AddBatch batch) {
+        if (batch.adds.size() == 1) {
+            BatchedAdd add = batch.adds.get(0);
+            sendAddEntry(batch.ledgerId, batch.masterKey, add.entryId, add.toSend, add.cb, add.ctx,
+                         BookieProtocol.FLAG_NONE, batch.allowFastFail, batch.writeFlags);
+            add.toSend.release();
+            return;
+        }
+
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.RANGE_ADD_ENTRY);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_ADD_ENTRY)
+                .setTxnId(txnId);
+        RangeAddRequest.Builder rangeAddBuilder = RangeAddRequest.newBuilder()
+                .setLedgerId(batch.ledgerId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(batch.masterKey));
+        for (BatchedAdd add : batch.adds) {
+            rangeAddBuilder.addEntryId(add.entryId);
+            rangeAddBuilder.addBody(toByteString(add.toSend));
+        }
+        if (!batch.writeFlags.isEmpty()) {
+            rangeAddBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(batch.writeFlags));
+        }
+
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeAddRequest(rangeAddBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey, new RangeAddCompletion(completionKey, batch));
+        // the batch is sent on the channel it was started on, if it is gone the write fails
+        writeAndFlush(batch.channel, completionKey, request, batch.allowFastFail);
+    }
+
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
         Object request = null;
         CompletionKey completionKey = null;
@@ -869,7 +1082,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void getListOfEntriesOfLedger(final long ledgerId, GetListOfEntriesOfLedgerCallback cb) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER);
-        completionObjects.put(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
+        putCompletion(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
 
         // Build the request.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder().setVersion(ProtocolVersion.VERSION_THREE)
@@ -986,18 +1199,107 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .build();
         }
 
-        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId);
+        // the latency of a long poll is mostly the time waiting for the LAC to advance
+        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId,
+                                                           null == timeOutInMillis);
         putCompletionKeyValue(completionKey, readCompletion);
 
         writeAndFlush(channel, completionKey, request, allowFastFail);
     }
 
+    /**
+     * Range Reads.
+     *
+     * <p>Read up to {@code maxCount} consecutive entries starting at {@code firstEntryId}
+     * in a single request. Range reads are only supported by the v3 protocol. Once the bookie
+     * rejected a range read, the following ones fail right away with an
+     * {@link BKException.Code#IllegalOpException} until the client reconnects.
+     */
+    public void readEntries(final long ledgerId,
+                            final long firstEntryId,
+                            final int maxCount,
+                            final long maxBytes,
+                            ReadEntriesCallback cb,
+                            Object ctx,
+                            int flags,
+                            boolean allowFastFail) {
+        if (useV2WireProtocol || rangeReadUnsupported) {
+            cb.readEntriesComplete(BKException.Code.IllegalOpException, ledgerId, firstEntryId, null, ctx);
+            return;
+        }
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.RANGE_READ_ENTRY);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_READ_ENTRY)
+                .setTxnId(txnId);
+        if (((short) flags & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+            headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+        }
+
+        RangeReadRequest.Builder rangeReadBuilder = RangeReadRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setMaxCount(maxCount)
+                .setMaxBytes(maxBytes);
+
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeReadRequest(rangeReadBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey,
+                              new RangeReadCompletion(completionKey, cb, ctx, ledgerId, firstEntryId));
+        writeAndFlush(channel, completionKey, request, allowFastFail);
+    }
+
+    /**
+     * Fragment Copies.
+     *
+     * <p>Ask the bookie to copy the entries {@code firstEntryId} to {@code lastEntryId} from the
+     * other bookies of the ledger. Fragment copies are only supported by the v3 protocol.
+     */
+    public void copyFragment(final long ledgerId,
+                             final byte[] masterKey,
+                             final long firstEntryId,
+                             final long lastEntryId,
+                             CopyFragmentCallback cb,
+                             Object ctx) {
+        if (useV2WireProtocol) {
+            cb.copyFragmentComplete(BKException.Code.IllegalOpException, ledgerId, firstEntryId, 0L, ctx);
+            return;
+        }
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.COPY_FRAGMENT);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.COPY_FRAGMENT)
+                .setTxnId(txnId);
+
+        CopyFragmentRequest.Builder copyFragmentBuilder = CopyFragmentRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
+                .setFirstEntryId(firstEntryId)
+                .setLastEntryId(lastEntryId);
+
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setCopyFragmentRequest(copyFragmentBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey,
+                              new CopyFragmentCompletion(completionKey, cb, ctx, ledgerId, firstEntryId));
+        writeAndFlush(channel, completionKey, request);
+    }
+
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
-        completionObjects.put(completionKey,
-                              new GetBookieInfoCompletion(
-                                      completionKey, cb, ctx));
+        putCompletion(completionKey,
+                      new GetBookieInfoCompletion(
+                              completionKey, cb, ctx));
 
         // Build the request and calculate the total size to be included in the packet.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -1059,6 +1361,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
             state = ConnectionState.CLOSED;
             errorOutOutstandingEntries(BKException.Code.ClientClosedException);
+            errorOutAddBatches(null, BKException.Code.BookieHandleNotAvailableException);
         } finally {
             closeLock.writeLock().unlock();
         }
@@ -1164,12 +1467,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = getCompletionValue(key);
         if (completion != null) {
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
         }
     }
 
@@ -1177,12 +1477,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = getCompletionValue(key);
         if (completion != null) {
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
         }
     }
 
@@ -1227,6 +1524,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    void recordReadLatency(long latencyNanos) {
+        if (pcbcPool != null) {
+            pcbcPool.recordReadLatency(latencyNanos);
+        }
+    }
+
     /**
      * If our channel has disconnected, we just error out the pending entries.
      */
@@ -1243,6 +1546,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         errorOutOutstandingEntries(BKException.Code.BookieHandleNotAvailableException);
+        errorOutAddBatches(ctx.channel(), BKException.Code.BookieHandleNotAvailableException);
         errorOutPendingOps(BKException.Code.BookieHandleNotAvailableException);
 
         synchronized (this) {
@@ -1467,6 +1771,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         + header.getOperation() + " and txnId : " + header.getTxnId());
             }
         } else {
+            // the value can be recycled as soon as the response is handled
+            completionValue.cancelTimeout();
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey, new SafeRunnable() {
                 @Override
@@ -1573,6 +1879,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         protected long ledgerId;
         protected long entryId;
         protected long startTime;
+        // the pending timeout on the request timer, if any
+        private volatile Timeout timeout;
 
         public CompletionValue(String operationName,
                                Object ctx,
@@ -1606,8 +1914,26 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
+        /**
+         * Record the latency of a read that got a response from the bookie, or timed out.
+         * Reads failing before reaching the bookie say nothing of its latency.
+         */
+        void logReadLatency(int rc) {
+            if (rc == BKException.Code.OK
+                || rc == BKException.Code.TimeoutException
+                || rc == BKException.Code.NoSuchEntryException
+                || rc == BKException.Code.NoSuchLedgerExistsException) {
+                recordReadLatency(latency());
+            }
+        }
+
+        long getTimeoutNanos() {
+            return readEntryTimeoutNanos;
+        }
+
         boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
+            if (MathUtils.elapsedNanos(startTime) >= getTimeoutNanos()) {
+                cancelTimeout();
                 timeout();
                 return true;
             } else {
@@ -1615,6 +1941,27 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
+        void scheduleTimeout(CompletionKey key) {
+            long timeoutNanos = getTimeoutNanos();
+            if (requestTimer == null || timeoutNanos <= 0) {
+                return;
+            }
+            timeout = requestTimer.newTimeout(t -> expireTimeout(t, key, this),
+                    timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        void cancelTimeout() {
+            Timeout t = timeout;
+            if (t != null) {
+                timeout = null;
+                t.cancel();
+            }
+        }
+
+        boolean isTimeoutPending(Timeout t) {
+            return timeout == t;
+        }
+
         void timeout() {
             errorOut(BKException.Code.TimeoutException);
             timeoutOpLogger.registerSuccessfulEvent(latency(),
@@ -1847,6 +2194,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                               final ReadEntryCallback originalCallback,
                               final Object originalCtx,
                               long ledgerId, final long entryId) {
+            this(key, originalCallback, originalCtx, ledgerId, entryId, true);
+        }
+
+        public ReadCompletion(final CompletionKey key,
+                              final ReadEntryCallback originalCallback,
+                              final Object originalCtx,
+                              long ledgerId, final long entryId,
+                              final boolean sampleReadLatency) {
             super("Read", originalCtx, ledgerId, entryId,
                   readEntryOpLogger, readTimeoutOpLogger);
 
@@ -1856,6 +2211,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   long entryId, ByteBuf buffer,
                                                   Object ctx) {
                         logOpResult(rc);
+                        if (sampleReadLatency) {
+                            logReadLatency(rc);
+                        }
                         originalCallback.readEntryComplete(rc,
                                                            ledgerId, entryId,
                                                            buffer, originalCtx);
@@ -1941,6 +2299,144 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // visible for testing
+    class RangeReadCompletion extends CompletionValue {
+        final ReadEntriesCallback cb;
+
+        public RangeReadCompletion(final CompletionKey key,
+                                   final ReadEntriesCallback originalCallback,
+                                   final Object originalCtx,
+                                   long ledgerId, final long firstEntryId) {
+            super("RangeRead", originalCtx, ledgerId, firstEntryId,
+                  rangeReadEntryOpLogger, rangeReadTimeoutOpLogger);
+
+            this.cb = new ReadEntriesCallback() {
+                    @Override
+                    public void readEntriesComplete(int rc, long ledgerId,
+                                                    long firstEntryId, List<ByteBuf> entries,
+                                                    Object ctx) {
+                        logOpResult(rc);
+                        logReadLatency(rc);
+                        originalCallback.readEntriesComplete(rc,
+                                                             ledgerId, firstEntryId,
+                                                             entries, originalCtx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readEntriesComplete(rc, ledgerId,
+                                                 entryId, null, ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            readEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            readEntryOutstanding.dec();
+            RangeReadResponse rangeReadResponse = response.getRangeReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? rangeReadResponse.getStatus() : response.getStatus();
+
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", entryId,
+                            "numEntries", rangeReadResponse.getBodyCount());
+            }
+
+            int rc = convertStatus(status, BKException.Code.ReadException);
+            if (response.getStatus() == StatusCode.EBADREQ) {
+                // the bookie does not know the operation
+                if (!rangeReadUnsupported) {
+                    LOG.info("Bookie {} does not support range reads, reading the entries one by one", bookieId);
+                    rangeReadUnsupported = true;
+                }
+                rc = BKException.Code.IllegalOpException;
+            } else if (rc == BKException.Code.OK && rangeReadResponse.getBodyCount() == 0) {
+                rc = BKException.Code.NoSuchEntryException;
+            }
+            if (rc != BKException.Code.OK) {
+                cb.readEntriesComplete(rc, ledgerId, entryId, null, ctx);
+                return;
+            }
+
+            if (rangeReadResponse.hasMaxLAC() && (ctx instanceof ReadEntryCallbackCtx)) {
+                ((ReadEntryCallbackCtx) ctx).setLastAddConfirmed(rangeReadResponse.getMaxLAC());
+            }
+            List<ByteBuf> entries = new ArrayList<>(rangeReadResponse.getBodyCount());
+            for (ByteString body : rangeReadResponse.getBodyList()) {
+                entries.add(Unpooled.wrappedBuffer(body.asReadOnlyByteBuffer()));
+            }
+            cb.readEntriesComplete(rc, ledgerId, entryId, entries, ctx);
+        }
+    }
+
+    // visible for testing
+    class CopyFragmentCompletion extends CompletionValue {
+        final CopyFragmentCallback cb;
+
+        public CopyFragmentCompletion(final CompletionKey key,
+                                      final CopyFragmentCallback originalCallback,
+                                      final Object originalCtx,
+                                      long ledgerId, final long firstEntryId) {
+            super("CopyFragment", originalCtx, ledgerId, firstEntryId,
+                  copyFragmentOpLogger, copyFragmentTimeoutOpLogger);
+
+            this.cb = new CopyFragmentCallback() {
+                    @Override
+                    public void copyFragmentComplete(int rc, long ledgerId, long firstEntryId,
+                                                     long bytesCopied, Object ctx) {
+                        logOpResult(rc);
+                        originalCallback.copyFragmentComplete(rc, ledgerId, firstEntryId,
+                                                              bytesCopied, originalCtx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        long getTimeoutNanos() {
+            // the bookie reads the entries then adds them
+            return readEntryTimeoutNanos + addEntryTimeoutNanos;
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.copyFragmentComplete(rc, ledgerId, entryId, 0L, ctx));
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            CopyFragmentResponse copyFragmentResponse = response.getCopyFragmentResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? copyFragmentResponse.getStatus() : response.getStatus();
+
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", entryId,
+                            "bytesCopied", copyFragmentResponse.getBytesCopied());
+            }
+
+            int rc = convertStatus(status, BKException.Code.WriteException);
+            cb.copyFragmentComplete(rc, ledgerId, entryId, copyFragmentResponse.getBytesCopied(), ctx);
+        }
+    }
+
     class StartTLSCompletion extends CompletionValue {
         final StartTLSCallback cb;
 
@@ -2013,13 +2509,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= getBookieInfoTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long getTimeoutNanos() {
+            return getBookieInfoTimeoutNanos;
         }
 
         @Override
@@ -2159,13 +2650,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long getTimeoutNanos() {
+            return addEntryTimeoutNanos;
         }
 
         @Override
@@ -2214,6 +2700,127 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private static class BatchedAdd {
+        final long entryId;
+        final ByteBufList toSend;
+        final WriteCallback cb;
+        final Object ctx;
+
+        BatchedAdd(long entryId, ByteBufList toSend, WriteCallback cb, Object ctx) {
+            this.entryId = entryId;
+            this.toSend = toSend;
+            this.cb = cb;
+            this.ctx = ctx;
+        }
+    }
+
+    private static class AddBatch {
+        final Channel channel;
+        final long ledgerId;
+        final byte[] masterKey;
+        final boolean allowFastFail;
+        final EnumSet<WriteFlag> writeFlags;
+        final List<BatchedAdd> adds = new ArrayList<>();
+        long bytes = 0;
+
+        AddBatch(Channel channel, long ledgerId, byte[] masterKey, boolean allowFastFail,
+                 EnumSet<WriteFlag> writeFlags) {
+            this.channel = channel;
+            this.ledgerId = ledgerId;
+            this.masterKey = masterKey;
+            this.allowFastFail = allowFastFail;
+            this.writeFlags = writeFlags;
+        }
+
+        void add(long entryId, ByteBufList toSend, WriteCallback cb, Object ctx) {
+            adds.add(new BatchedAdd(entryId, toSend, cb, ctx));
+            bytes += toSend.readableBytes();
+        }
+    }
+
+    // visible for testing
+    class RangeAddCompletion extends CompletionValue {
+        final CompletionKey key;
+        final AddBatch batch;
+
+        RangeAddCompletion(final CompletionKey key, final AddBatch batch) {
+            super("RangeAdd", null, batch.ledgerId, batch.adds.get(0).entryId,
+                  rangeAddEntryOpLogger, rangeAddTimeoutOpLogger);
+            this.key = key;
+            this.batch = batch;
+        }
+
+        @Override
+        long getTimeoutNanos() {
+            return addEntryTimeoutNanos;
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(() -> writeComplete(rc, null));
+        }
+
+        @Override
+        public void setOutstanding() {
+            addEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            addEntryOutstanding.dec();
+            if (response.getStatus() == StatusCode.EBADREQ && !response.hasRangeAddResponse()) {
+                // the bookie does not know range adds, send the entries again one by one
+                if (rangeAddSupported) {
+                    rangeAddSupported = false;
+                    LOG.info("Bookie {} does not support range adds, disabling add batching", bookieId);
+                }
+                for (BatchedAdd add : batch.adds) {
+                    sendAddEntry(batch.ledgerId, batch.masterKey, add.entryId, add.toSend, add.cb, add.ctx,
+                                 BookieProtocol.FLAG_NONE, batch.allowFastFail, batch.writeFlags);
+                    add.toSend.release();
+                }
+                key.release();
+                return;
+            }
+
+            RangeAddResponse rangeAddResponse = response.getRangeAddResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? rangeAddResponse.getStatus() : response.getStatus();
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", entryId, "numEntries", batch.adds.size());
+            }
+
+            int rc = convertStatus(status, BKException.Code.WriteException);
+            if (rangeAddResponse.getEntryStatusCount() == batch.adds.size()) {
+                writeComplete(rc, rangeAddResponse.getEntryStatusList());
+            } else {
+                writeComplete(rc, null);
+            }
+        }
+
+        /**
+         * Complete the add of each entry, with its own status if the bookie returned them.
+         */
+        private void writeComplete(int rc, List<StatusCode> entryStatuses) {
+            logOpResult(rc);
+            for (int i = 0; i < batch.adds.size(); i++) {
+                BatchedAdd add = batch.adds.get(i);
+                int entryRc = rc;
+                if (entryStatuses != null) {
+                    entryRc = convertStatus(entryStatuses.get(i), BKException.Code.WriteException);
+                }
+                add.cb.writeComplete(entryRc, batch.ledgerId, add.entryId, bookieId, add.ctx);
+                add.toSend.release();
+            }
+            key.release();
+        }
+    }
+
     // visable for testing
     CompletionKey newCompletionKey(long txnId, OperationType operationType) {
         return new V3CompletionKey(txnId, operationType);
@@ -2292,12 +2899,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private void putCompletion(CompletionKey key, CompletionValue value) {
+        completionObjects.put(key, value);
+        value.scheduleTimeout(key);
+    }
+
     private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
         CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
         if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
             // There's a pending read request on same ledger/entry. Use the multimap to track all of them
             completionObjectsV2Conflicts.put(key, value);
         }
+        value.scheduleTimeout(key);
     }
 
     private CompletionValue getCompletionValue(CompletionKey key) {
@@ -2306,9 +2919,29 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             // If there's no completion object here, try in the multimap
             completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
         }
+        if (completionValue != null) {
+            completionValue.cancelTimeout();
+        }
         return completionValue;
     }
 
+    /**
+     * Called by the request timer when the timeout of a pending operation expires.
+     *
+     * <p>The completion values (and the V2 keys) are recycled, so the operation is only
+     * timed out if the expired timeout is still the one pending on the value and the value is
+     * still registered under the key. Whoever removes the value from the map owns its completion.
+     */
+    private void expireTimeout(Timeout t, CompletionKey key, CompletionValue value) {
+        if (!value.isTimeoutPending(t)) {
+            return;
+        }
+        if (completionObjects.remove(key, value) || completionObjectsV2Conflicts.remove(key, value)) {
+            value.cancelTimeout();
+            value.timeout();
+        }
+    }
+
     private long getTxnId() {
         return txnIdGenerator.incrementAndGet();
     }
@@ -2452,6 +3085,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 if (future.isSuccess() && state == ConnectionState.CONNECTING && future.channel().isActive()) {
                     rc = BKException.Code.OK;
                     channel = future.channel();
+                    // the bookie might have been upgraded
+                    rangeReadUnsupported = false;
                     if (shFactory != null) {
                         LOG.info("Successfully connected to bookie: {} {} initiate TLS", bookieId, future.channel());
                         makeWritable();
@@ -2538,8 +3173,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         assert state == ConnectionState.CONNECTING;
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.START_TLS);
-        completionObjects.put(completionKey,
-                              new StartTLSCompletion(completionKey));
+        putCompletion(completionKey,
+                      new StartTLSCompletion(completionKey));
         BookkeeperProtocol.Request.Builder h = withRequestContext(BookkeeperProtocol.Request.newBuilder());
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
                 .setVersion(ProtocolVersion.VERSION_THREE)
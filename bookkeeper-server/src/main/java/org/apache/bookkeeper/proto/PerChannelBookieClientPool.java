@@ -66,6 +66,36 @@ public interface PerChannelBookieClientPool {
      */
     void recordError();
 
+    /**
+     * Record the latency of a read response from the bookie.
+     *
+     * @param latencyNanos
+     *          latency of the read request, in nanoseconds.
+     */
+    default void recordReadLatency(long latencyNanos) {
+        // no-op
+    }
+
+    /**
+     * Get the moving average of the latency of the read responses from the bookie.
+     *
+     * @return the average latency in nanoseconds, or -1 if unknown.
+     */
+    default long getReadLatencyNanos() {
+        return -1L;
+    }
+
+    /**
+     * Get a percentile of the latency of the recent read responses from the bookie.
+     *
+     * @param percentile
+     *          the percentile, between 0 and 100.
+     * @return the percentile latency in nanoseconds, or -1 if unknown.
+     */
+    default long getRecentReadLatencyNanos(double percentile) {
+        return -1L;
+    }
+
     /**
      * Check if any ops on any channel needs to be timed out.
      * This is called on all channels, even if the channel is not yet connected.
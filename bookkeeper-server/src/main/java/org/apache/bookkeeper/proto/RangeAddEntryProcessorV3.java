@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor for v3 range add requests. The entries of the request are added one after
+ * the other, exactly as if each of them came in its own add request, so they are journaled
+ * and indexed as individual entries.
+ *
+ * <p>A single response is sent once all the entries completed, with the status of each entry.
+ */
+class RangeAddEntryProcessorV3 extends PacketProcessorBaseV3 {
+    private static final Logger LOG = LoggerFactory.getLogger(RangeAddEntryProcessorV3.class);
+
+    private final RangeAddRequest rangeAddRequest;
+    private final long ledgerId;
+
+    public RangeAddEntryProcessorV3(Request request, Channel channel,
+                                    BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+        this.rangeAddRequest = request.getRangeAddRequest();
+        this.ledgerId = rangeAddRequest.getLedgerId();
+    }
+
+    @Override
+    public void safeRun() {
+        if (!isVersionCompatible()) {
+            sendResponse(StatusCode.EBADVERSION);
+            return;
+        }
+        if (rangeAddRequest.getEntryIdCount() != rangeAddRequest.getBodyCount()
+                || rangeAddRequest.getEntryIdCount() == 0) {
+            sendResponse(StatusCode.EBADREQ);
+            return;
+        }
+        if (requestProcessor.getBookie().isReadOnly()) {
+            LOG.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            sendResponse(StatusCode.EREADONLY);
+            return;
+        }
+
+        final int numEntries = rangeAddRequest.getEntryIdCount();
+        final StatusCode[] statuses = new StatusCode[numEntries];
+        // one more than the entries, released once all of them were submitted
+        final AtomicInteger pending = new AtomicInteger(numEntries + 1);
+
+        final EnumSet<WriteFlag> writeFlags;
+        if (rangeAddRequest.hasWriteFlags()) {
+            writeFlags = WriteFlag.getWriteFlags(rangeAddRequest.getWriteFlags());
+        } else {
+            writeFlags = WriteFlag.NONE;
+        }
+        final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
+        final byte[] masterKey = rangeAddRequest.getMasterKey().toByteArray();
+
+        for (int i = 0; i < numEntries; i++) {
+            final int index = i;
+            final long entryId = rangeAddRequest.getEntryId(i);
+            final long startTimeNanos = MathUtils.nowInNano();
+            WriteCallback wcb = new WriteCallback() {
+                @Override
+                public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+                    if (BookieProtocol.EOK == rc) {
+                        requestProcessor.getRequestStats().getAddEntryStats()
+                            .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                    } else {
+                        requestProcessor.getRequestStats().getAddEntryStats()
+                            .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                    }
+
+                    switch (rc) {
+                        case BookieProtocol.EOK:
+                            statuses[index] = StatusCode.EOK;
+                            break;
+                        case BookieProtocol.EIO:
+                            statuses[index] = StatusCode.EIO;
+                            break;
+                        default:
+                            statuses[index] = StatusCode.EUA;
+                            break;
+                    }
+                    if (pending.decrementAndGet() == 0) {
+                        sendResponse(statuses);
+                    }
+                }
+            };
+
+            StatusCode status = addEntry(entryId, rangeAddRequest.getBody(i).asReadOnlyByteBuffer(),
+                                         ackBeforeSync, masterKey, wcb);
+            if (status != StatusCode.EOK) {
+                statuses[index] = status;
+                pending.decrementAndGet();
+            }
+        }
+
+        if (pending.decrementAndGet() == 0) {
+            sendResponse(statuses);
+        }
+    }
+
+    private StatusCode addEntry(long entryId, ByteBuffer body, boolean ackBeforeSync,
+                                byte[] masterKey, WriteCallback wcb) {
+        ByteBuf entryToAdd = Unpooled.wrappedBuffer(body);
+        try {
+            requestProcessor.getBookie().addEntry(entryToAdd, ackBeforeSync, wcb, channel, masterKey);
+            return StatusCode.EOK;
+        } catch (OperationRejectedException e) {
+            requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+            // Avoid to log each occurence of this exception as this can happen when the ledger storage is
+            // unable to keep up with the write rate.
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Operation rejected while writing entry:{} to ledger:{}", entryId, ledgerId, e);
+            }
+            return StatusCode.ETOOMANYREQUESTS;
+        } catch (IOException e) {
+            LOG.error("Error writing entry:{} to ledger:{}", entryId, ledgerId, e);
+            return StatusCode.EIO;
+        } catch (BookieException.LedgerFencedException e) {
+            LOG.error("Ledger fenced while writing entry:{} to ledger:{}", entryId, ledgerId, e);
+            return StatusCode.EFENCED;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger:{} while writing entry:{}", ledgerId, entryId, e);
+            return StatusCode.EUA;
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception while writing {}@{} : ", entryId, ledgerId, t);
+            // some bad request which cause unexpected exception
+            return StatusCode.EBADREQ;
+        }
+    }
+
+    private void sendResponse(StatusCode[] statuses) {
+        RangeAddResponse.Builder rangeAddResponse = RangeAddResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setStatus(StatusCode.EOK);
+        for (int i = 0; i < statuses.length; i++) {
+            rangeAddResponse.addEntryId(rangeAddRequest.getEntryId(i));
+            rangeAddResponse.addEntryStatus(statuses[i]);
+            if (statuses[i] != StatusCode.EOK && rangeAddResponse.getStatus() == StatusCode.EOK) {
+                rangeAddResponse.setStatus(statuses[i]);
+            }
+        }
+        requestProcessor.getRequestStats().getRangeAddEntryCountStats().registerSuccessfulValue(statuses.length);
+        sendResponse(rangeAddResponse);
+    }
+
+    void sendResponse(StatusCode status) {
+        sendResponse(RangeAddResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setStatus(status));
+    }
+
+    private void sendResponse(RangeAddResponse.Builder rangeAddResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(rangeAddResponse.getStatus())
+                .setRangeAddResponse(rangeAddResponse);
+        sendResponse(response.getStatus(), response.build(),
+                     requestProcessor.getRequestStats().getRangeAddRequestStats());
+        requestProcessor.onAddRequestFinish();
+    }
+
+    /**
+     * this toString method filters out body and masterKey from the output.
+     * masterKey contains the password of the ledger and body is customer data,
+     * so it is not appropriate to have these in logs or system output.
+     */
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
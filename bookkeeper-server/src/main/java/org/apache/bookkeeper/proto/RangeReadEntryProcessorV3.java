@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.base.Stopwatch;
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor for v3 range read requests. It reads up to {@code maxCount} consecutive
+ * entries starting at {@code firstEntryId} and returns them in a single response.
+ *
+ * <p>The range stops early at the first missing entry, or once adding the next entry
+ * would exceed {@code maxBytes} (capped by the netty frame size of the bookie). The
+ * first entry is always returned when it exists; if it does not, the request fails in
+ * the same way a single entry read would.
+ */
+class RangeReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeReadEntryProcessorV3.class);
+
+    // room reserved in the frame for the response header and the per-entry protobuf framing
+    private static final int RESPONSE_HEADER_OVERHEAD = 1024;
+    private static final int PER_ENTRY_OVERHEAD = 16;
+
+    protected final RangeReadRequest rangeReadRequest;
+    protected final long ledgerId;
+    protected final long firstEntryId;
+
+    public RangeReadEntryProcessorV3(Request request,
+                                     Channel channel,
+                                     BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+
+        this.rangeReadRequest = request.getRangeReadRequest();
+        this.ledgerId = rangeReadRequest.getLedgerId();
+        this.firstEntryId = rangeReadRequest.getFirstEntryId();
+    }
+
+    private long getMaxBytes() {
+        long frameLimit = (long) requestProcessor.getServerCfg().getNettyMaxFrameSizeBytes()
+                - RESPONSE_HEADER_OVERHEAD;
+        if (rangeReadRequest.hasMaxBytes() && rangeReadRequest.getMaxBytes() > 0) {
+            return Math.min(rangeReadRequest.getMaxBytes(), frameLimit);
+        }
+        return frameLimit;
+    }
+
+    private RangeReadResponse getRangeReadResponse() {
+        final Stopwatch startTimeSw = Stopwatch.createStarted();
+        final RangeReadResponse.Builder rangeReadResponse = RangeReadResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId);
+
+        final int maxCount = Math.max(1, rangeReadRequest.getMaxCount());
+        final long maxBytes = getMaxBytes();
+        long totalBytes = 0;
+        int count = 0;
+        long entryId = firstEntryId;
+        try {
+            while (count < maxCount) {
+                ByteBuf entryBody;
+                try {
+                    entryBody = requestProcessor.getBookie().readEntry(ledgerId, entryId);
+                } catch (Bookie.NoEntryException e) {
+                    if (count == 0) {
+                        throw e;
+                    }
+                    // end of the available range
+                    break;
+                }
+                try {
+                    long entrySize = entryBody.readableBytes() + PER_ENTRY_OVERHEAD;
+                    if (count > 0 && totalBytes + entrySize > maxBytes) {
+                        break;
+                    }
+                    rangeReadResponse.addBody(ByteString.copyFrom(entryBody.nioBuffer()));
+                    totalBytes += entrySize;
+                    ++count;
+                    ++entryId;
+                } finally {
+                    ReferenceCountUtil.release(entryBody);
+                }
+            }
+            rangeReadResponse.setMaxLAC(requestProcessor.getBookie().readLastAddConfirmed(ledgerId));
+            requestProcessor.getRequestStats().getRangeReadEntryCountStats().registerSuccessfulValue(count);
+            return buildResponse(rangeReadResponse, StatusCode.EOK, startTimeSw);
+        } catch (Bookie.NoLedgerException e) {
+            LOG.info("No ledger found while range reading entry: {} from ledger: {}", entryId, ledgerId);
+            return buildResponse(rangeReadResponse, StatusCode.ENOLEDGER, startTimeSw);
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while range reading entry: {} from ledger: {}", entryId, ledgerId);
+            }
+            return buildResponse(rangeReadResponse, StatusCode.ENOENTRY, startTimeSw);
+        } catch (IOException e) {
+            if (count > 0) {
+                // return what we already have, the client will ask for the rest again
+                LOG.warn("IOException while range reading entry: {} from ledger {}, returning {} entries",
+                        entryId, ledgerId, count, e);
+                return buildResponse(rangeReadResponse, StatusCode.EOK, startTimeSw);
+            }
+            LOG.error("IOException while range reading entry: {} from ledger {} ", entryId, ledgerId, e);
+            return buildResponse(rangeReadResponse, StatusCode.EIO, startTimeSw);
+        } catch (BookieException.DataUnknownException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ledger has unknown state for entry: {} from ledger {}", entryId, ledgerId);
+            }
+            return buildResponse(rangeReadResponse, StatusCode.EUNKNOWNLEDGERSTATE, startTimeSw);
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger:{} while range reading entry:{} in request from address: {}",
+                    ledgerId, entryId, channel.remoteAddress());
+            return buildResponse(rangeReadResponse, StatusCode.EUA, startTimeSw);
+        }
+    }
+
+    private RangeReadResponse buildResponse(RangeReadResponse.Builder rangeReadResponse,
+                                            StatusCode statusCode,
+                                            Stopwatch startTimeSw) {
+        long elapsedNanos = startTimeSw.elapsed(TimeUnit.NANOSECONDS);
+        if (StatusCode.EOK == statusCode) {
+            requestProcessor.getRequestStats().getRangeReadEntryStats()
+                    .registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getRangeReadEntryStats()
+                    .registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        rangeReadResponse.setStatus(statusCode);
+        return rangeReadResponse.build();
+    }
+
+    @Override
+    public void safeRun() {
+        requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
+                MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+
+        if (!isVersionCompatible()) {
+            sendResponse(RangeReadResponse.newBuilder()
+                    .setLedgerId(ledgerId)
+                    .setFirstEntryId(firstEntryId)
+                    .setStatus(StatusCode.EBADVERSION)
+                    .build());
+            return;
+        }
+
+        sendResponse(getRangeReadResponse());
+    }
+
+    protected void sendResponse(RangeReadResponse rangeReadResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(rangeReadResponse.getStatus())
+                .setRangeReadResponse(rangeReadResponse);
+        sendResponse(response.getStatus(),
+                     response.build(),
+                     requestProcessor.getRequestStats().getRangeReadRequestStats());
+        requestProcessor.onReadRequestFinish();
+    }
+
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
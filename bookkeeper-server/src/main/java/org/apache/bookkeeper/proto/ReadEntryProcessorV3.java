@@ -61,7 +61,6 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                                 BookieRequestProcessor requestProcessor,
                                 ExecutorService fenceThreadPool) {
         super(request, channel, requestProcessor);
-        requestProcessor.onReadRequestStart(channel);
 
         this.readRequest = request.getReadRequest();
         this.ledgerId = readRequest.getLedgerId();
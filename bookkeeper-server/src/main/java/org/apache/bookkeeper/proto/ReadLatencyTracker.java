@@ -0,0 +1,97 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the latency of the read responses of a bookie.
+ *
+ * <p>It keeps an exponentially weighted moving average of the latencies, and the latencies of the
+ * most recent responses to compute percentiles from. Recording is lock free. A percentile is
+ * computed from a copy of the samples, which may miss the samples recorded while it is copied.
+ */
+class ReadLatencyTracker {
+
+    // weight of a new sample in the moving average
+    private static final double EWMA_ALPHA = 0.2;
+    private static final int NUM_RECENT_SAMPLES = 64;
+
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToLongBits(-1.0));
+    private final AtomicLongArray recentSamples = new AtomicLongArray(NUM_RECENT_SAMPLES);
+    private final AtomicLong numSamples = new AtomicLong(0L);
+
+    ReadLatencyTracker() {
+        // a slot is -1 until its first sample is stored
+        for (int i = 0; i < NUM_RECENT_SAMPLES; i++) {
+            recentSamples.set(i, -1L);
+        }
+    }
+
+    void record(long latencyNanos) {
+        long prevBits;
+        long nextBits;
+        do {
+            prevBits = ewmaBits.get();
+            double prev = Double.longBitsToDouble(prevBits);
+            double next = prev < 0 ? latencyNanos : prev + EWMA_ALPHA * (latencyNanos - prev);
+            nextBits = Double.doubleToLongBits(next);
+        } while (!ewmaBits.compareAndSet(prevBits, nextBits));
+
+        long idx = numSamples.getAndIncrement();
+        recentSamples.set((int) (idx % NUM_RECENT_SAMPLES), latencyNanos);
+    }
+
+    /**
+     * Get the moving average of the latencies.
+     *
+     * @return the moving average in nanoseconds, or -1 if no response was recorded
+     */
+    long getAverageNanos() {
+        return (long) Double.longBitsToDouble(ewmaBits.get());
+    }
+
+    /**
+     * Get a percentile of the latencies of the recent responses.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the percentile in nanoseconds, or -1 if no response was recorded
+     */
+    long getRecentPercentileNanos(double percentile) {
+        long[] samples = new long[NUM_RECENT_SAMPLES];
+        int count = 0;
+        for (int i = 0; i < NUM_RECENT_SAMPLES; i++) {
+            long sample = recentSamples.get(i);
+            if (sample >= 0) {
+                samples[count++] = sample;
+            }
+        }
+        if (count <= 0) {
+            return -1L;
+        }
+        Arrays.sort(samples, 0, count);
+        int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return samples[Math.max(0, Math.min(count - 1, rank))];
+    }
+}
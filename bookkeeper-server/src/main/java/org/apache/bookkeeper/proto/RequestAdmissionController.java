@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.bookkeeper.auth.BookKeeperPrincipal;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking admission control of one type of requests, adds or reads.
+ * <p/>
+ * At most maxInProgress requests are processed at a time. Beyond it, the requests are queued
+ * per client and the channel they came from stops reading until all its queued requests are
+ * admitted. The event loop thread never waits, so a saturated channel does not stall the other
+ * channels of its event loop.
+ * <p/>
+ * When a request completes, the next queued request is admitted from the clients in weighted
+ * round robin: a client with a weight of N gets up to N requests admitted in its turn. A client
+ * is identified by its authenticated principal, or by its host address for anonymous connections.
+ * <p/>
+ * The requests of a channel that already has maxQueuedPerChannel queued requests are rejected.
+ * <p/>
+ * The requests of a channel are processed in the order they are received: while a queued request
+ * of the channel waits to run on its event loop, the next requests of the channel run after it.
+ * <p/>
+ * The queue of a client, and its stats, are removed once its last channel is closed and it has no
+ * queued request left.
+ */
+class RequestAdmissionController {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestAdmissionController.class);
+
+    private final String name;
+    private final int maxInProgress;
+    private final int maxQueuedPerChannel;
+    private final Map<String, Integer> clientWeights;
+    private final RequestStats.AdmissionStats stats;
+    private final AttributeKey<ChannelState> channelStateKey;
+
+    // guarded by this
+    private int inProgress = 0;
+    private int queued = 0;
+    private final Map<String, ClientQueue> clients = new HashMap<>();
+    private final ArrayDeque<ClientQueue> activeClients = new ArrayDeque<>();
+
+    RequestAdmissionController(String name, int maxInProgress, int maxQueuedPerChannel,
+                               Map<String, Integer> clientWeights, RequestStats.AdmissionStats stats) {
+        this.name = name;
+        this.maxInProgress = maxInProgress;
+        this.maxQueuedPerChannel = maxQueuedPerChannel;
+        this.clientWeights = clientWeights;
+        this.stats = stats;
+        this.channelStateKey = AttributeKey.valueOf(RequestAdmissionController.class, name);
+    }
+
+    /**
+     * Parse the client weights, configured as {@code client:weight} pairs.
+     */
+    static Map<String, Integer> parseClientWeights(String[] weights) {
+        if (weights == null || weights.length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> clientWeights = new HashMap<>();
+        for (String weight : weights) {
+            int idx = weight.lastIndexOf(':');
+            try {
+                int value = Integer.parseInt(weight.substring(idx + 1).trim());
+                if (idx <= 0 || value <= 0) {
+                    throw new NumberFormatException();
+                }
+                clientWeights.put(weight.substring(0, idx).trim(), value);
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring invalid client weight '{}', expected client:weight", weight);
+            }
+        }
+        return clientWeights;
+    }
+
+    /**
+     * Admit a request received on the channel. Called on the event loop of the channel.
+     *
+     * <p>Either onAdmitted or onRejected is eventually run. In both cases, {@link #release()} must
+     * be called once the response of the request is sent.
+     *
+     * @param channel the channel the request was received on
+     * @param onAdmitted process the request, run inline or later on the event loop of the channel
+     * @param onRejected send an error response, run inline
+     */
+    void admit(Channel channel, Runnable onAdmitted, Runnable onRejected) {
+        ChannelState state = getChannelState(channel);
+        final Runnable toRun;
+        boolean runAfterScheduled = false;
+        synchronized (this) {
+            if (queued == 0 && inProgress < maxInProgress) {
+                inProgress++;
+                toRun = onAdmitted;
+                if (state.scheduled > 0) {
+                    // an admitted request of the channel did not run yet, run after it
+                    state.scheduled++;
+                    runAfterScheduled = true;
+                }
+            } else if (state.queued < maxQueuedPerChannel) {
+                enqueue(new PendingRequest(channel, state, onAdmitted));
+                toRun = null;
+            } else {
+                // the rejected request holds a slot until its error response is sent
+                inProgress++;
+                state.client.rejectedCounter.inc();
+                toRun = onRejected;
+            }
+        }
+
+        if (runAfterScheduled) {
+            schedule(new PendingRequest(channel, state, onAdmitted));
+        } else if (toRun != null) {
+            toRun.run();
+        } else if (channel.config().isAutoRead()) {
+            channel.config().setAutoRead(false);
+            LOG.info("Too many {} requests in progress, disabling autoread on channel {}", name, channel);
+        }
+    }
+
+    /**
+     * Release the slot of a completed request, admitting the next queued request if any.
+     */
+    void release() {
+        PendingRequest next;
+        synchronized (this) {
+            inProgress--;
+            if (queued == 0 || inProgress >= maxInProgress) {
+                return;
+            }
+            next = dequeue();
+            next.state.scheduled++;
+            inProgress++;
+        }
+        stats.unblockRequest(MathUtils.elapsedNanos(next.enqueueTimeNanos));
+        schedule(next);
+    }
+
+    private void schedule(PendingRequest request) {
+        try {
+            request.channel.eventLoop().execute(() -> runAdmitted(request));
+        } catch (RejectedExecutionException e) {
+            // the event loop is shutting down, complete the request anyway to release its slot
+            runAdmitted(request);
+        }
+    }
+
+    private void runAdmitted(PendingRequest request) {
+        boolean resume;
+        synchronized (this) {
+            request.state.scheduled--;
+            resume = request.state.queued == 0;
+        }
+        // the request runs before the channel reads again, so that it goes before the next ones
+        request.onAdmitted.run();
+        if (resume && !request.channel.config().isAutoRead()) {
+            request.channel.config().setAutoRead(true);
+            LOG.info("Re-enabled autoread on channel {} after {} delay of {} nanos", request.channel, name,
+                     MathUtils.elapsedNanos(request.enqueueTimeNanos));
+        }
+    }
+
+    private void enqueue(PendingRequest request) {
+        ClientQueue client = request.state.client;
+        if (client.pending.isEmpty()) {
+            client.credit = client.weight;
+            activeClients.addLast(client);
+        }
+        client.pending.addLast(request);
+        client.depth = client.pending.size();
+        request.state.queued++;
+        queued++;
+        stats.blockRequest();
+    }
+
+    private PendingRequest dequeue() {
+        ClientQueue client = activeClients.peekFirst();
+        PendingRequest request = client.pending.pollFirst();
+        client.depth = client.pending.size();
+        request.state.queued--;
+        queued--;
+
+        if (client.pending.isEmpty()) {
+            activeClients.pollFirst();
+            maybeRemoveClient(client);
+        } else if (--client.credit == 0) {
+            // end of the turn of the client
+            activeClients.pollFirst();
+            client.credit = client.weight;
+            activeClients.addLast(client);
+        }
+        return request;
+    }
+
+    private ChannelState getChannelState(Channel channel) {
+        Attribute<ChannelState> attr = channel.attr(channelStateKey);
+        ChannelState state = attr.get();
+        if (state == null) {
+            String clientId = getClientId(channel);
+            synchronized (this) {
+                state = attr.get();
+                if (state != null) {
+                    return state;
+                }
+                ClientQueue client = clients.computeIfAbsent(clientId, this::newClientQueue);
+                client.channels++;
+                state = new ChannelState(client);
+                attr.set(state);
+            }
+            final ChannelState closedState = state;
+            channel.closeFuture().addListener(future -> onChannelClosed(closedState));
+        }
+        return state;
+    }
+
+    private synchronized void onChannelClosed(ChannelState state) {
+        state.client.channels--;
+        maybeRemoveClient(state.client);
+    }
+
+    private void maybeRemoveClient(ClientQueue client) {
+        if (client.channels == 0 && client.pending.isEmpty() && clients.remove(client.clientId, client)) {
+            stats.unregisterClient(client.clientId, client.depthGauge);
+        }
+    }
+
+    private ClientQueue newClientQueue(String clientId) {
+        ClientQueue client = new ClientQueue(clientId, clientWeights.getOrDefault(clientId, 1));
+        client.rejectedCounter = stats.registerClient(clientId, client.depthGauge);
+        return client;
+    }
+
+    private static String getClientId(Channel channel) {
+        BookieNettyServer.BookieSideConnectionPeerContextHandler peerHandler =
+                channel.pipeline().get(BookieNettyServer.BookieSideConnectionPeerContextHandler.class);
+        if (peerHandler != null) {
+            BookKeeperPrincipal principal = peerHandler.getConnectionPeer().getAuthorizedId();
+            if (principal != null && !BookKeeperPrincipal.ANONYMOUS.equals(principal)) {
+                return principal.getName();
+            }
+        }
+        SocketAddress address = channel.remoteAddress();
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null) {
+            return ((InetSocketAddress) address).getAddress().getHostAddress();
+        }
+        return String.valueOf(address);
+    }
+
+    private static class ClientQueue {
+        final String clientId;
+        final int weight;
+        final ArrayDeque<PendingRequest> pending = new ArrayDeque<>();
+        final Gauge<Number> depthGauge = new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return depth;
+            }
+        };
+        Counter rejectedCounter;
+        // requests that can still be admitted in the current turn of the client
+        int credit;
+        // open channels of the client
+        int channels = 0;
+        // sampled by the queue depth gauge
+        volatile int depth;
+
+        ClientQueue(String clientId, int weight) {
+            this.clientId = clientId;
+            this.weight = weight;
+        }
+    }
+
+    private static class ChannelState {
+        final ClientQueue client;
+        // guarded by the controller
+        int queued = 0;
+        // admitted requests waiting to run on the event loop of the channel
+        int scheduled = 0;
+
+        ChannelState(ClientQueue client) {
+            this.client = client;
+        }
+    }
+
+    private static class PendingRequest {
+        final Channel channel;
+        final ChannelState state;
+        final Runnable onAdmitted;
+        final long enqueueTimeNanos = MathUtils.nowInNano();
+
+        PendingRequest(Channel channel, ChannelState state, Runnable onAdmitted) {
+            this.channel = channel;
+            this.state = state;
+            this.onAdmitted = onAdmitted;
+        }
+    }
+}
@@ -22,20 +22,33 @@ package org.apache.bookkeeper.proto;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCKED_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_CLIENT_QUEUED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_CLIENT_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_IN_PROGRESS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_WRITE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CLIENT_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COPY_FRAGMENT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COPY_FRAGMENT_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.COPY_FRAGMENT_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_ADD_ENTRY_COUNT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_ADD_ENTRY_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_READ_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_READ_ENTRY_COUNT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED_WAIT;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_CLIENT_QUEUED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_CLIENT_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_READ;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_FENCE_WAIT;
@@ -81,6 +94,8 @@ public class RequestStats {
     final AtomicInteger readsBlocked = new AtomicInteger(0);
     final AtomicInteger maxReadsInProgress = new AtomicInteger(0);
 
+    private final StatsLogger statsLogger;
+
     @StatsDoc(
         name = ADD_ENTRY_REQUEST,
         help = "request stats of AddEntry on a bookie"
@@ -98,6 +113,17 @@ public class RequestStats {
             parent = ADD_ENTRY_REQUEST
     )
     private final Counter addEntryRejectedCounter;
+    @StatsDoc(
+        name = RANGE_ADD_ENTRY_REQUEST,
+        help = "request stats of RangeAddEntry on a bookie"
+    )
+    final OpStatsLogger rangeAddRequestStats;
+    @StatsDoc(
+        name = RANGE_ADD_ENTRY_COUNT,
+        help = "the number of entries added per RangeAddEntry request",
+        parent = RANGE_ADD_ENTRY_REQUEST
+    )
+    final OpStatsLogger rangeAddEntryCountStats;
     @StatsDoc(
         name = READ_ENTRY_REQUEST,
         help = "request stats of ReadEntry on a bookie"
@@ -115,6 +141,23 @@ public class RequestStats {
             parent = READ_ENTRY_REQUEST
     )
     private final Counter readEntryRejectedCounter;
+    @StatsDoc(
+        name = RANGE_READ_ENTRY_REQUEST,
+        help = "request stats of RangeReadEntry on a bookie"
+    )
+    final OpStatsLogger rangeReadRequestStats;
+    @StatsDoc(
+        name = RANGE_READ_ENTRY,
+        help = "operation stats of RangeReadEntry on a bookie",
+        parent = RANGE_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger rangeReadEntryStats;
+    @StatsDoc(
+        name = RANGE_READ_ENTRY_COUNT,
+        help = "the number of entries returned per RangeReadEntry request",
+        parent = RANGE_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger rangeReadEntryCountStats;
     @StatsDoc(
         name = FORCE_LEDGER,
         help = "operation stats of ForceLedger on a bookie",
@@ -237,13 +280,39 @@ public class RequestStats {
             parent = GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST
     )
     final OpStatsLogger getListOfEntriesOfLedgerStats;
+    @StatsDoc(
+            name = COPY_FRAGMENT_REQUEST,
+            help = "request stats of CopyFragment on a bookie"
+    )
+    final OpStatsLogger copyFragmentRequestStats;
+    @StatsDoc(
+            name = COPY_FRAGMENT,
+            help = "operation stats of CopyFragment on a bookie",
+            parent = COPY_FRAGMENT_REQUEST
+    )
+    final OpStatsLogger copyFragmentStats;
+    @StatsDoc(
+            name = COPY_FRAGMENT_BYTES,
+            help = "the number of bytes copied per CopyFragment request",
+            parent = COPY_FRAGMENT_REQUEST
+    )
+    final OpStatsLogger copyFragmentBytesStats;
+
+    final AdmissionStats addAdmissionStats;
+    final AdmissionStats readAdmissionStats;
 
     public RequestStats(StatsLogger statsLogger) {
+        this.statsLogger = statsLogger;
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
         this.addRequestStats = statsLogger.getOpStatsLogger(ADD_ENTRY_REQUEST);
         this.addEntryRejectedCounter = statsLogger.getCounter(ADD_ENTRY_REJECTED);
+        this.rangeAddRequestStats = statsLogger.getOpStatsLogger(RANGE_ADD_ENTRY_REQUEST);
+        this.rangeAddEntryCountStats = statsLogger.getOpStatsLogger(RANGE_ADD_ENTRY_COUNT);
         this.readEntryStats = statsLogger.getThreadScopedOpStatsLogger(READ_ENTRY);
         this.readEntryRejectedCounter = statsLogger.getCounter(READ_ENTRY_REJECTED);
+        this.rangeReadRequestStats = statsLogger.getOpStatsLogger(RANGE_READ_ENTRY_REQUEST);
+        this.rangeReadEntryStats = statsLogger.getOpStatsLogger(RANGE_READ_ENTRY);
+        this.rangeReadEntryCountStats = statsLogger.getOpStatsLogger(RANGE_READ_ENTRY_COUNT);
         this.forceLedgerStats = statsLogger.getOpStatsLogger(FORCE_LEDGER);
         this.forceLedgerRequestStats = statsLogger.getOpStatsLogger(FORCE_LEDGER_REQUEST);
         this.readRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_REQUEST);
@@ -266,10 +335,17 @@ public class RequestStats {
 
         this.addEntryBlockedStats = statsLogger.getOpStatsLogger(ADD_ENTRY_BLOCKED_WAIT);
         this.readEntryBlockedStats = statsLogger.getOpStatsLogger(READ_ENTRY_BLOCKED_WAIT);
+        this.addAdmissionStats = new AdmissionStats(addsBlocked, addEntryBlockedStats,
+                ADD_ENTRY_CLIENT_QUEUED, ADD_ENTRY_CLIENT_REJECTED);
+        this.readAdmissionStats = new AdmissionStats(readsBlocked, readEntryBlockedStats,
+                READ_ENTRY_CLIENT_QUEUED, READ_ENTRY_CLIENT_REJECTED);
 
         this.getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER);
         this.getListOfEntriesOfLedgerRequestStats =
                 statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST);
+        this.copyFragmentRequestStats = statsLogger.getOpStatsLogger(COPY_FRAGMENT_REQUEST);
+        this.copyFragmentStats = statsLogger.getOpStatsLogger(COPY_FRAGMENT);
+        this.copyFragmentBytesStats = statsLogger.getOpStatsLogger(COPY_FRAGMENT_BYTES);
 
         statsLogger.registerGauge(ADD_ENTRY_IN_PROGRESS, new Gauge<Number>() {
             @Override
@@ -324,15 +400,6 @@ public class RequestStats {
     // Add requests
     //
 
-    void blockAddRequest() {
-        addsBlocked.incrementAndGet();
-    }
-
-    void unblockAddRequest(long delayNanos) {
-        addEntryBlockedStats.registerSuccessfulEvent(delayNanos, TimeUnit.NANOSECONDS);
-        addsBlocked.decrementAndGet();
-    }
-
     void trackAddRequest() {
         final int curr = addsInProgress.incrementAndGet();
         maxAddsInProgress.accumulateAndGet(curr, Integer::max);
@@ -350,15 +417,6 @@ public class RequestStats {
     // Read requests
     //
 
-    void blockReadRequest() {
-        readsBlocked.incrementAndGet();
-    }
-
-    void unblockReadRequest(long delayNanos) {
-        readEntryBlockedStats.registerSuccessfulEvent(delayNanos, TimeUnit.NANOSECONDS);
-        readsBlocked.decrementAndGet();
-    }
-
     void trackReadRequest() {
         final int curr = readsInProgress.incrementAndGet();
         maxReadsInProgress.accumulateAndGet(curr, Integer::max);
@@ -372,4 +430,46 @@ public class RequestStats {
         return maxReadsInProgress.get();
     }
 
+    /**
+     * Stats of the requests queued by the admission control, in total and per client.
+     */
+    class AdmissionStats {
+        private final AtomicInteger blocked;
+        private final OpStatsLogger blockedStats;
+        private final String clientQueuedName;
+        private final String clientRejectedName;
+
+        private AdmissionStats(AtomicInteger blocked, OpStatsLogger blockedStats,
+                               String clientQueuedName, String clientRejectedName) {
+            this.blocked = blocked;
+            this.blockedStats = blockedStats;
+            this.clientQueuedName = clientQueuedName;
+            this.clientRejectedName = clientRejectedName;
+        }
+
+        void blockRequest() {
+            blocked.incrementAndGet();
+        }
+
+        void unblockRequest(long delayNanos) {
+            blockedStats.registerSuccessfulEvent(delayNanos, TimeUnit.NANOSECONDS);
+            blocked.decrementAndGet();
+        }
+
+        /**
+         * Register the queue depth gauge of a client and return its rejection counter.
+         */
+        Counter registerClient(String client, Gauge<Number> queued) {
+            StatsLogger clientStatsLogger = statsLogger.scopeLabel(CLIENT_LABEL, client);
+            clientStatsLogger.registerGauge(clientQueuedName, queued);
+            return clientStatsLogger.getCounter(clientRejectedName);
+        }
+
+        /**
+         * Unregister the queue depth gauge of a client that has no connection left.
+         */
+        void unregisterClient(String client, Gauge<Number> queued) {
+            statsLogger.scopeLabel(CLIENT_LABEL, client).unregisterGauge(clientQueuedName, queued);
+        }
+    }
 }
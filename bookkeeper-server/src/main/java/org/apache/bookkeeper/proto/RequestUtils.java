@@ -68,6 +68,15 @@ class RequestUtils {
                 stringHelper.add("writeFlags", addRequest.getWriteFlags());
             }
             return stringHelper.toString();
+        } else if (request.hasRangeAddRequest()) {
+            BookkeeperProtocol.RangeAddRequest rangeAddRequest = request.getRangeAddRequest();
+            includeHeaderFields(stringHelper, header);
+            stringHelper.add("ledgerId", rangeAddRequest.getLedgerId());
+            stringHelper.add("entryIds", rangeAddRequest.getEntryIdList());
+            if (rangeAddRequest.hasWriteFlags()) {
+                stringHelper.add("writeFlags", rangeAddRequest.getWriteFlags());
+            }
+            return stringHelper.toString();
         } else if (request.hasReadRequest()) {
             BookkeeperProtocol.ReadRequest readRequest = request.getReadRequest();
             includeHeaderFields(stringHelper, header);
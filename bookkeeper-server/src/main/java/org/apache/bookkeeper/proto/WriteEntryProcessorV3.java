@@ -48,7 +48,6 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     public WriteEntryProcessorV3(Request request, Channel channel,
                                  BookieRequestProcessor requestProcessor) {
         super(request, channel, requestProcessor);
-        requestProcessor.onAddRequestStart(channel);
     }
 
     // Returns null if there is no exception thrown
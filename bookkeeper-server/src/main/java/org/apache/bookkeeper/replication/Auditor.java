@@ -77,6 +77,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.bookkeeper.client.BKException;
@@ -143,6 +144,7 @@ public class Auditor implements AutoCloseable {
     private final boolean ownBkc;
     private final BookKeeperAdmin admin;
     private final boolean ownAdmin;
+    private BookieLedgerIndex bookieLedgerIndex;
     private BookieLedgerIndexer bookieLedgerIndexer;
     private LedgerManager ledgerManager;
     private LedgerUnderreplicationManager ledgerUnderreplicationManager;
@@ -509,6 +511,7 @@ public class Auditor implements AutoCloseable {
         try {
             LedgerManagerFactory ledgerManagerFactory = bkc.getLedgerManagerFactory();
             ledgerManager = ledgerManagerFactory.newLedgerManager();
+            this.bookieLedgerIndex = new BookieLedgerIndex(ledgerManager, zkOpTimeoutMs);
             this.bookieLedgerIndexer = new BookieLedgerIndexer(ledgerManager);
 
             this.ledgerUnderreplicationManager = ledgerManagerFactory
@@ -1142,7 +1145,21 @@ public class Auditor implements AutoCloseable {
         LOG.info("Starting auditBookies");
         Stopwatch stopwatch = Stopwatch.createStarted();
         // put exit cases here
-        Map<String, Set<Long>> ledgerDetails = generateBookie2LedgersIndex();
+        Set<String> knownBookies;
+        Function<String, Set<Long>> bookieLedgers;
+        boolean indexed;
+        try {
+            bookieLedgerIndex.refresh();
+            knownBookies = bookieLedgerIndex.getBookies();
+            bookieLedgers = bookieLedgerIndex::getLedgers;
+            indexed = true;
+        } catch (BKAuditException bke) {
+            LOG.warn("Failed to refresh the bookie ledger index, falling back to a full scan of the ledgers", bke);
+            Map<String, Set<Long>> ledgerDetails = bookieLedgerIndexer.getBookieToLedgerIndex();
+            knownBookies = ledgerDetails.keySet();
+            bookieLedgers = ledgerDetails::get;
+            indexed = false;
+        }
         try {
             if (!ledgerUnderreplicationManager.isLedgerReplicationEnabled()) {
                 // has been disabled while we were generating the index
@@ -1158,16 +1175,19 @@ public class Auditor implements AutoCloseable {
 
         List<String> availableBookies = getAvailableBookies();
         // find lost bookies
-        Set<String> knownBookies = ledgerDetails.keySet();
         Collection<String> lostBookies = CollectionUtils.subtract(knownBookies,
                 availableBookies);
 
         bookieToLedgersMapCreationTime.registerSuccessfulEvent(stopwatch.elapsed(TimeUnit.MILLISECONDS),
                 TimeUnit.MILLISECONDS);
         if (lostBookies.size() > 0) {
+            if (indexed) {
+                // the index does not follow the ensemble changes of the closed ledgers
+                bookieLedgerIndex.refreshLedgers(lostBookies);
+            }
             try {
                 FutureUtils.result(
-                    handleLostBookiesAsync(lostBookies, ledgerDetails), ReplicationException.EXCEPTION_HANDLER);
+                    handleLostBookiesAsync(lostBookies, bookieLedgers), ReplicationException.EXCEPTION_HANDLER);
             } catch (ReplicationException e) {
                 throw new BKAuditException(e.getMessage(), e.getCause());
             }
@@ -1179,20 +1199,15 @@ public class Auditor implements AutoCloseable {
                 TimeUnit.MILLISECONDS);
     }
 
-    private Map<String, Set<Long>> generateBookie2LedgersIndex()
-            throws BKAuditException {
-        return bookieLedgerIndexer.getBookieToLedgerIndex();
-    }
-
     private CompletableFuture<?> handleLostBookiesAsync(Collection<String> lostBookies,
-                                                        Map<String, Set<Long>> ledgerDetails) {
+                                                        Function<String, Set<Long>> bookieLedgers) {
         LOG.info("Following are the failed bookies: {},"
                 + " and searching its ledgers for re-replication", lostBookies);
 
         return FutureUtils.processList(
             Lists.newArrayList(lostBookies),
             bookieIP -> publishSuspectedLedgersAsync(
-                Lists.newArrayList(bookieIP), ledgerDetails.get(bookieIP)),
+                Lists.newArrayList(bookieIP), bookieLedgers.apply(bookieIP)),
             null
         );
     }
@@ -2071,6 +2086,7 @@ public class Auditor implements AutoCloseable {
                 LOG.warn("Executor not shutting down, interrupting");
                 executor.shutdownNow();
             }
+            bookieLedgerIndex.close();
             if (ownAdmin) {
                 admin.close();
             }
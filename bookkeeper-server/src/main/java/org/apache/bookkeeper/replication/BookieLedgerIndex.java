@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.replication.ReplicationException.BKAuditException;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bookie vs its corresponding ledgers, maintained incrementally from the ledger listing.
+ *
+ * <p>Each refresh lists the ledgers, and reads the metadata of the ledgers that are not indexed
+ * yet and of the indexed ledgers that were still open. The ensembles of a closed ledger only change
+ * when its fragments are re-replicated away from a lost bookie, so the metadata of the ledgers of
+ * the lost bookies is re-read by {@link #refreshLedgers(Collection)} before they are used. No
+ * metadata watch is kept on the ledgers, so the cost of the index on the metadata store does not
+ * grow with the number of ledgers between the audits.
+ *
+ * <p>The ledgers of a bookie are kept in a primitive set.
+ */
+class BookieLedgerIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BookieLedgerIndex.class);
+
+    private static final int MAX_CONCURRENT_METADATA_READS = 1000;
+
+    private final LedgerManager ledgerManager;
+    private final long zkOpTimeoutMs;
+    // a permit is held by each metadata read in flight
+    private final Semaphore metadataReads = new Semaphore(MAX_CONCURRENT_METADATA_READS);
+    private final ConcurrentLongHashMap<IndexedLedger> ledgers =
+            ConcurrentLongHashMap.<IndexedLedger>newBuilder().build();
+
+    // guarded by this
+    private final Map<String, BookieLedgers> bookies = new HashMap<>();
+    private boolean closed = false;
+
+    BookieLedgerIndex(LedgerManager ledgerManager, long zkOpTimeoutMs) {
+        this.ledgerManager = ledgerManager;
+        this.zkOpTimeoutMs = zkOpTimeoutMs;
+    }
+
+    /**
+     * Index the ledgers created since the last refresh, update the ledgers that were still open,
+     * and drop the deleted ledgers. Returns once the metadata read of these ledgers is done.
+     *
+     * <p>A refresh waits at most the zookeeper operation timeout for the metadata reads. The
+     * ledgers whose metadata is not read in time are still indexed when it comes in, the index is
+     * just incomplete until then.
+     *
+     * @throws BKAuditException
+     *             exception while listing the ledgers or reading their metadata, or timeout while
+     *             reading their metadata
+     */
+    void refresh() throws BKAuditException, InterruptedException {
+        ConcurrentLongHashSet listed = ConcurrentLongHashSet.newBuilder().build();
+        AtomicInteger failedReads = new AtomicInteger();
+        LedgerRangeIterator ledgerRangeIterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs);
+        try {
+            while (ledgerRangeIterator.hasNext()) {
+                for (long ledgerId : ledgerRangeIterator.next().getLedgers()) {
+                    listed.add(ledgerId);
+                    IndexedLedger ledger = ledgers.computeIfAbsent(ledgerId, IndexedLedger::new);
+                    if (!ledger.closed) {
+                        readMetadata(ledger, failedReads);
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            LOG.error("Got IOException while iterating LedgerRangeIterator", ioe);
+            throw new BKAuditException("Got IOException while iterating LedgerRangeIterator", ioe);
+        }
+        awaitMetadataReads(failedReads);
+
+        List<IndexedLedger> deleted = new ArrayList<>();
+        ledgers.forEach((ledgerId, ledger) -> {
+            if (!listed.contains(ledgerId)) {
+                deleted.add(ledger);
+            }
+        });
+        for (IndexedLedger ledger : deleted) {
+            LOG.info("Removing deleted ledger {} from the bookie ledger index", ledger.ledgerId);
+            removeLedger(ledger);
+        }
+    }
+
+    /**
+     * Re-read the metadata of the ledgers stored on the bookies, so that the ensemble changes of
+     * their closed ledgers are indexed.
+     *
+     * @throws BKAuditException
+     *             exception or timeout while reading the metadata of the ledgers
+     */
+    void refreshLedgers(Collection<String> bookies) throws BKAuditException, InterruptedException {
+        Set<Long> bookiesLedgers = new HashSet<>();
+        for (String bookie : bookies) {
+            bookiesLedgers.addAll(getLedgers(bookie));
+        }
+        AtomicInteger failedReads = new AtomicInteger();
+        for (long ledgerId : bookiesLedgers) {
+            IndexedLedger ledger = ledgers.get(ledgerId);
+            if (null != ledger) {
+                readMetadata(ledger, failedReads);
+            }
+        }
+        awaitMetadataReads(failedReads);
+    }
+
+    /**
+     * Get the bookies storing at least one ledger.
+     */
+    synchronized Set<String> getBookies() {
+        return new HashSet<>(bookies.keySet());
+    }
+
+    /**
+     * Get the ledgers stored on the bookie.
+     */
+    synchronized Set<Long> getLedgers(String bookie) {
+        BookieLedgers bookieLedgers = bookies.get(bookie);
+        return null == bookieLedgers ? Collections.emptySet() : bookieLedgers.ledgers.items();
+    }
+
+    /**
+     * Drop the index. The metadata reads still in flight are ignored.
+     */
+    synchronized void close() {
+        closed = true;
+        bookies.clear();
+        ledgers.clear();
+    }
+
+    private void readMetadata(IndexedLedger ledger, AtomicInteger failedReads)
+            throws BKAuditException, InterruptedException {
+        if (!metadataReads.tryAcquire(zkOpTimeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new BKAuditException("Timed out reading the metadata of the ledgers to index");
+        }
+        ledgerManager.readLedgerMetadata(ledger.ledgerId).whenComplete((metadata, exception) -> {
+            try {
+                if (null == exception) {
+                    updateLedger(ledger, metadata);
+                } else if (BKException.getExceptionCode(exception)
+                        == BKException.Code.NoSuchLedgerExistsOnMetadataServerException) {
+                    removeLedger(ledger);
+                } else {
+                    LOG.warn("Failed to read the metadata of ledger {} to index", ledger.ledgerId, exception);
+                    failedReads.incrementAndGet();
+                }
+            } finally {
+                metadataReads.release();
+            }
+        });
+    }
+
+    private void awaitMetadataReads(AtomicInteger failedReads) throws BKAuditException, InterruptedException {
+        if (!metadataReads.tryAcquire(MAX_CONCURRENT_METADATA_READS, zkOpTimeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new BKAuditException("Timed out reading the metadata of the ledgers to index");
+        }
+        metadataReads.release(MAX_CONCURRENT_METADATA_READS);
+        if (failedReads.get() > 0) {
+            throw new BKAuditException("Failed to read the metadata of " + failedReads.get() + " ledgers to index");
+        }
+    }
+
+    private synchronized void updateLedger(IndexedLedger ledger, Versioned<LedgerMetadata> versioned) {
+        if (closed || ledgers.get(ledger.ledgerId) != ledger) {
+            return;
+        }
+        // a late read may complete after a newer one
+        if (null != ledger.version && versioned.getVersion().compare(ledger.version) == Version.Occurred.BEFORE) {
+            return;
+        }
+        LedgerMetadata metadata = versioned.getValue();
+        Set<String> ensembleBookies = new HashSet<>();
+        for (List<BookieId> ensemble : metadata.getAllEnsembles().values()) {
+            for (BookieId bookie : ensemble) {
+                ensembleBookies.add(bookie.toString());
+            }
+        }
+
+        if (null != ledger.bookies) {
+            for (BookieLedgers bookieLedgers : ledger.bookies) {
+                if (!ensembleBookies.contains(bookieLedgers.bookie)) {
+                    removeFromBookie(bookieLedgers, ledger.ledgerId);
+                }
+            }
+        }
+        BookieLedgers[] ledgerBookies = new BookieLedgers[ensembleBookies.size()];
+        int i = 0;
+        for (String bookie : ensembleBookies) {
+            BookieLedgers bookieLedgers = bookies.computeIfAbsent(bookie, BookieLedgers::new);
+            bookieLedgers.ledgers.add(ledger.ledgerId);
+            ledgerBookies[i++] = bookieLedgers;
+        }
+        ledger.bookies = ledgerBookies;
+        ledger.version = versioned.getVersion();
+        ledger.closed = metadata.isClosed();
+    }
+
+    private synchronized void removeLedger(IndexedLedger ledger) {
+        if (!ledgers.remove(ledger.ledgerId, ledger)) {
+            return;
+        }
+        if (null != ledger.bookies && !closed) {
+            for (BookieLedgers bookieLedgers : ledger.bookies) {
+                removeFromBookie(bookieLedgers, ledger.ledgerId);
+            }
+        }
+    }
+
+    private void removeFromBookie(BookieLedgers bookieLedgers, long ledgerId) {
+        bookieLedgers.ledgers.remove(ledgerId);
+        if (bookieLedgers.ledgers.isEmpty()) {
+            bookies.remove(bookieLedgers.bookie);
+        }
+    }
+
+    private static class BookieLedgers {
+        final String bookie;
+        final ConcurrentLongHashSet ledgers = ConcurrentLongHashSet.newBuilder().concurrencyLevel(1).build();
+
+        BookieLedgers(String bookie) {
+            this.bookie = bookie;
+        }
+    }
+
+    /**
+     * A ledger of the index.
+     */
+    private static class IndexedLedger {
+        final long ledgerId;
+        // guarded by the index, null until the metadata is indexed
+        BookieLedgers[] bookies = null;
+        Version version = null;
+        // whether the indexed metadata is the one of a closed ledger, its ensembles no longer change
+        volatile boolean closed = false;
+
+        IndexedLedger(long ledgerId) {
+            this.ledgerId = ledgerId;
+        }
+    }
+}
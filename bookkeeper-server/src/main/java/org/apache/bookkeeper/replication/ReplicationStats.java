@@ -59,6 +59,8 @@ public interface ReplicationStats {
     String NUM_BYTES_READ = "NUM_BYTES_READ";
     String NUM_ENTRIES_WRITTEN = "NUM_ENTRIES_WRITTEN";
     String NUM_BYTES_WRITTEN = "NUM_BYTES_WRITTEN";
+    String REPLICATION_WRITE_RATE = "REPLICATION_WRITE_RATE";
+    String NUM_LEDGERS_REPLICATING = "NUM_LEDGERS_REPLICATING";
     String READ_DATA_LATENCY = "READ_DATA_LATENCY";
     String WRITE_DATA_LATENCY = "WRITE_DATA_LATENCY";
     String REPLICATE_EXCEPTION = "exceptions";
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.replication;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION;
 import static org.apache.bookkeeper.replication.ReplicationStats.NUM_FULL_OR_PARTIAL_LEDGERS_REPLICATED;
+import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_REPLICATING;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATE_EXCEPTION;
 import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WORKER_SCOPE;
 import static org.apache.bookkeeper.replication.ReplicationStats.REREPLICATE_OP;
@@ -32,9 +33,9 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
@@ -42,8 +43,12 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
@@ -65,6 +70,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.replication.ReplicationException.CompatibilityException;
 import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
 import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -76,6 +82,10 @@ import org.slf4j.LoggerFactory;
 /**
  * ReplicationWorker will take the fragments one by one from
  * ZKLedgerUnderreplicationManager and replicates to it.
+ *
+ * <p>The worker thread acquires the lock of an underreplicated ledger once a rereplication slot
+ * is free, and the ledger is rereplicated in that slot, so that up to
+ * {@link ServerConfiguration#getRwRereplicateConcurrency()} ledgers are rereplicated concurrently.
  */
 @StatsDoc(
     name = REPLICATION_WORKER_SCOPE,
@@ -86,6 +96,7 @@ public class ReplicationWorker implements Runnable {
             .getLogger(ReplicationWorker.class);
     private static final int REPLICATED_FAILED_LEDGERS_MAXSIZE = 2000;
     public static final int NUM_OF_EXPONENTIAL_BACKOFF_RETRIALS = 5;
+    private static final long SLOTS_TERMINATION_TIMEOUT_SECONDS = 30;
 
     private final LedgerUnderreplicationManager underreplicationManager;
     private final ServerConfiguration conf;
@@ -95,6 +106,8 @@ public class ReplicationWorker implements Runnable {
     private final BookKeeper bkc;
     private final boolean ownBkc;
     private final Thread workerThread;
+    private final Semaphore rereplicationSlots;
+    private final ExecutorService rereplicationExecutor;
     private final long rwRereplicateBackoffMs;
     private final long openLedgerRereplicationGracePeriod;
     private final Timer pendingReplicationTimer;
@@ -129,6 +142,12 @@ public class ReplicationWorker implements Runnable {
             help = "the number of entries ReplicationWorker unable to read"
         )
     private final Counter numEntriesUnableToReadForReplication;
+    @StatsDoc(
+        name = NUM_LEDGERS_REPLICATING,
+        help = "the number of ledgers being re-replicated"
+    )
+    private final Gauge<Integer> numLedgersReplicatingGauge;
+    private final AtomicInteger numLedgersReplicating = new AtomicInteger(0);
     private final Map<String, Counter> exceptionCounters;
     final LoadingCache<Long, AtomicInteger> replicationFailedLedgers;
     final LoadingCache<Long, ConcurrentSkipListSet<Long>> unableToReadEntriesForReplication;
@@ -179,6 +198,10 @@ public class ReplicationWorker implements Runnable {
         this.admin = new BookKeeperAdmin(bkc, statsLogger, new ClientConfiguration(conf));
         this.ledgerChecker = new LedgerChecker(bkc);
         this.workerThread = new BookieThread(this, "ReplicationWorker");
+        int rereplicateConcurrency = Math.max(1, conf.getRwRereplicateConcurrency());
+        this.rereplicationSlots = new Semaphore(rereplicateConcurrency);
+        this.rereplicationExecutor = Executors.newFixedThreadPool(rereplicateConcurrency,
+                new DefaultThreadFactory("ReplicationWorkerSlot"));
         this.openLedgerRereplicationGracePeriod = conf
                 .getOpenLedgerRereplicationGracePeriod();
         this.lockReleaseOfFailedLedgerGracePeriod = conf.getLockReleaseOfFailedLedgerGracePeriod();
@@ -211,7 +234,19 @@ public class ReplicationWorker implements Runnable {
                 .getCounter(NUM_DEFER_LEDGER_LOCK_RELEASE_OF_FAILED_LEDGER);
         this.numEntriesUnableToReadForReplication = this.statsLogger
                 .getCounter(NUM_ENTRIES_UNABLE_TO_READ_FOR_REPLICATION);
-        this.exceptionCounters = new HashMap<String, Counter>();
+        this.numLedgersReplicatingGauge = new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return numLedgersReplicating.get();
+            }
+        };
+        this.statsLogger.registerGauge(NUM_LEDGERS_REPLICATING, numLedgersReplicatingGauge);
+        this.exceptionCounters = new ConcurrentHashMap<String, Counter>();
         this.onReadEntryFailureCallback = (ledgerid, entryid) -> {
             numEntriesUnableToReadForReplication.inc();
             unableToReadEntriesForReplication.getUnchecked(ledgerid).add(entryid);
@@ -230,19 +265,22 @@ public class ReplicationWorker implements Runnable {
         workerRunning = true;
         while (workerRunning) {
             try {
-                if (!rereplicate()) {
-                    LOG.warn("failed while replicating fragments");
-                    waitBackOffTime(rwRereplicateBackoffMs);
+                rereplicationSlots.acquire();
+                final long ledgerIdToReplicate;
+                try {
+                    ledgerIdToReplicate = underreplicationManager.getLedgerToRereplicate();
+                } catch (UnavailableException | RuntimeException e) {
+                    rereplicationSlots.release();
+                    throw e;
                 }
+                numLedgersReplicating.incrementAndGet();
+                rereplicationExecutor.execute(() -> rereplicateInSlot(ledgerIdToReplicate));
             } catch (InterruptedException e) {
                 LOG.error("InterruptedException "
                         + "while replicating fragments", e);
                 shutdown();
                 Thread.currentThread().interrupt();
                 return;
-            } catch (BKException e) {
-                LOG.error("BKException while replicating fragments", e);
-                waitBackOffTime(rwRereplicateBackoffMs);
             } catch (UnavailableException e) {
                 LOG.error("UnavailableException "
                         + "while replicating fragments", e);
@@ -257,6 +295,38 @@ public class ReplicationWorker implements Runnable {
         LOG.info("ReplicationWorker exited loop!");
     }
 
+    /**
+     * Rereplicates a ledger whose lock is held by the worker, then frees its slot. A slot
+     * backs off before being freed when the rereplication fails.
+     */
+    private void rereplicateInSlot(long ledgerIdToReplicate) {
+        try {
+            if (!rereplicateAndRecordLatency(ledgerIdToReplicate)) {
+                LOG.warn("failed while replicating fragments");
+                waitBackOffTime(rwRereplicateBackoffMs);
+            }
+        } catch (InterruptedException e) {
+            LOG.error("InterruptedException "
+                    + "while replicating fragments", e);
+            shutdown();
+            Thread.currentThread().interrupt();
+        } catch (BKException e) {
+            LOG.error("BKException while replicating fragments", e);
+            waitBackOffTime(rwRereplicateBackoffMs);
+        } catch (UnavailableException e) {
+            LOG.error("UnavailableException "
+                    + "while replicating fragments", e);
+            waitBackOffTime(rwRereplicateBackoffMs);
+            if (Thread.currentThread().isInterrupted()) {
+                LOG.error("Interrupted  while replicating fragments");
+                shutdown();
+            }
+        } finally {
+            numLedgersReplicating.decrementAndGet();
+            rereplicationSlots.release();
+        }
+    }
+
     private static void waitBackOffTime(long backoffMs) {
         try {
             Thread.sleep(backoffMs);
@@ -269,11 +339,8 @@ public class ReplicationWorker implements Runnable {
      * Replicates the under replicated fragments from failed bookie ledger to
      * targetBookie.
      */
-    private boolean rereplicate() throws InterruptedException, BKException,
-            UnavailableException {
-        long ledgerIdToReplicate = underreplicationManager
-                .getLedgerToRereplicate();
-
+    private boolean rereplicateAndRecordLatency(long ledgerIdToReplicate)
+            throws InterruptedException, BKException, UnavailableException {
         Stopwatch stopwatch = Stopwatch.createStarted();
         boolean success = false;
         try {
@@ -641,6 +708,27 @@ public class ReplicationWorker implements Runnable {
                     e);
             Thread.currentThread().interrupt();
         }
+        // interrupt the ledgers being rereplicated, their locks are released as they are interrupted
+        this.rereplicationExecutor.shutdownNow();
+        try {
+            if (!this.rereplicationExecutor.awaitTermination(SLOTS_TERMINATION_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS)) {
+                LOG.warn("Timed out waiting for the ledgers being rereplicated to be interrupted");
+            }
+        } catch (InterruptedException e) {
+            // shutting down from a rereplication slot, which the executor just interrupted
+            Thread.currentThread().interrupt();
+        }
+        this.statsLogger.unregisterGauge(NUM_LEDGERS_REPLICATING, numLedgersReplicatingGauge);
+        try {
+            // the admin does not own the client, closing it unregisters the gauges of the replicator
+            admin.close();
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while closing the BookKeeperAdmin", e);
+            Thread.currentThread().interrupt();
+        } catch (BKException e) {
+            LOG.warn("Exception while closing the BookKeeperAdmin", e);
+        }
         if (ownBkc) {
             try {
                 bkc.close();
@@ -692,12 +780,7 @@ public class ReplicationWorker implements Runnable {
     }
 
     private Counter getExceptionCounter(String name) {
-        Counter counter = this.exceptionCounters.get(name);
-        if (counter == null) {
-            counter = this.exceptionLogger.getCounter(name);
-            this.exceptionCounters.put(name, counter);
-        }
-        return counter;
+        return this.exceptionCounters.computeIfAbsent(name, this.exceptionLogger::getCounter);
     }
 
 }
@@ -79,6 +79,7 @@ import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.LedgerManagerFactory;
 import org.apache.bookkeeper.meta.MetadataBookieDriver;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.FragmentCopier;
 import org.apache.bookkeeper.server.component.ServerLifecycleComponent;
 import org.apache.bookkeeper.server.conf.BookieConfiguration;
 import org.apache.bookkeeper.server.http.BKHttpServiceProvider;
@@ -378,13 +379,18 @@ public class Main {
         LedgerStorage storage = null;
         DataIntegrityCheck integCheck = null;
 
-        if (conf.getServerConf().isDataIntegrityCheckingEnabled()) {
-            StatsLogger clientStats = bookieStats.scope(CLIENT_SCOPE);
-            ClientConfiguration clientConfiguration = new ClientConfiguration(conf.getServerConf());
+        StatsLogger clientStats = bookieStats.scope(CLIENT_SCOPE);
+        ClientConfiguration clientConfiguration = null;
+        BookKeeper bkc = null;
+        if (conf.getServerConf().isDataIntegrityCheckingEnabled()
+                || conf.getServerConf().isBookieFragmentCopyEnabled()) {
+            clientConfiguration = new ClientConfiguration(conf.getServerConf());
             clientConfiguration.setClientRole(ClientConfiguration.CLIENT_ROLE_SYSTEM);
-            BookKeeper bkc = BookKeeper.forConfig(clientConfiguration).statsLogger(clientStats).build();
+            bkc = BookKeeper.forConfig(clientConfiguration).statsLogger(clientStats).build();
             serverBuilder.addComponent(new AutoCloseableLifecycleComponent("bkc", bkc));
+        }
 
+        if (conf.getServerConf().isDataIntegrityCheckingEnabled()) {
             BookieId bookieId = BookieImpl.getBookieId(conf.getServerConf());
             ExecutorService rxExecutor = Executors.newFixedThreadPool(
                     2, new ThreadFactoryBuilder().setNameFormat("rx-schedule-%d")
@@ -446,6 +452,13 @@ public class Main {
         serverBuilder.addComponent(bookieService);
         log.info("Load lifecycle component : {}", BookieService.class.getName());
 
+        if (conf.getServerConf().isBookieFragmentCopyEnabled()) {
+            bookieService.getServer().getBookieRequestProcessor().setFragmentCopier(
+                    new FragmentCopier(BookieImpl.getBookieId(conf.getServerConf()), bookie, ledgerManager,
+                            ((org.apache.bookkeeper.client.BookKeeper) bkc).getClientCtx().getBookieClient(),
+                            allocator));
+        }
+
         if (conf.getServerConf().isLocalScrubEnabled()) {
             serverBuilder.addComponent(
                     new ScrubberService(
@@ -43,8 +43,15 @@ import org.slf4j.LoggerFactory;
  *           "lastMajorCompactionTime" : 1544578144944,
  *           "lastMinorCompactionTime" : 1544578144944,
  *           "majorCompactionCounter" : 1,
- *           "minorCompactionCounter" : 0
+ *           "minorCompactionCounter" : 0,
+ *           "compactedEntryLogsPerBucket" : [ 12, 3, 0, 0, 0, 0, 0, 0, 0, 0 ],
+ *           "reclaimedBytesPerBucket" : [ 12046102528, 2259701760, 0, 0, 0, 0, 0, 0, 0, 0 ],
+ *           "reclaimRatePerBucket" : [ 9.52E7, 3.1E7, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0 ]
  *         } ]
+ *
+ * <p>The per bucket values are cumulated since the bookie started, for the entry logs whose usage
+ * was in [0%, 10%), [10%, 20%) ... [90%, 100%] when they were compacted. The reclaim rate is in bytes
+ * reclaimed per second spent compacting.
  */
 public class GCDetailsService implements HttpEndpointService {
 
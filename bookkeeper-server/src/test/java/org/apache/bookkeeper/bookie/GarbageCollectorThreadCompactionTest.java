@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the entry log compaction of {@link GarbageCollectorThread}.
+ */
+public class GarbageCollectorThreadCompactionTest {
+
+    private ServerConfiguration conf;
+    private GarbageCollectorThread gcThread;
+    // the ids of the compacted entry logs, in compaction order
+    private final List<Long> compacted = Collections.synchronizedList(new ArrayList<>());
+    private final Set<Long> failing = new HashSet<>();
+    private long compactionMillis = 0;
+
+    @Before
+    public void setup() {
+        conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (gcThread != null) {
+            gcThread.shutdown();
+        }
+    }
+
+    private boolean compact(EntryLogMetadata meta) {
+        compacted.add(meta.getEntryLogId());
+        if (compactionMillis > 0) {
+            try {
+                Thread.sleep(compactionMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return !failing.contains(meta.getEntryLogId());
+    }
+
+    private void newGcThread() throws IOException {
+        gcThread = new GarbageCollectorThread(conf, mock(LedgerManager.class), mock(LedgerDirsManager.class),
+                mock(CompactableLedgerStorage.class), mock(EntryLogger.class), NullStatsLogger.INSTANCE,
+                mock(ScheduledExecutorService.class)) {
+            @Override
+            protected boolean compactEntryLog(EntryLogMetadata entryLogMeta) {
+                return compact(entryLogMeta);
+            }
+        };
+        // the compactors of the compaction workers, when there is more than one thread
+        for (int i = 0; i < gcThread.compactors.size(); i++) {
+            AbstractLogCompactor compactor = mock(AbstractLogCompactor.class);
+            when(compactor.compact(any(EntryLogMetadata.class))).thenAnswer(invocation ->
+                    compact(invocation.getArgument(0)));
+            gcThread.compactors.set(i, compactor);
+        }
+    }
+
+    /**
+     * Add an entry log of 1000 bytes of which {@code remaining} are still used.
+     */
+    private void addEntryLog(long entryLogId, long remaining) throws Exception {
+        EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        meta.addLedgerSize(1L, remaining);
+        meta.addLedgerSize(2L, 1000L - remaining);
+        meta.removeLedgerIf(ledgerId -> ledgerId == 2L);
+        gcThread.getEntryLogMetaMap().put(entryLogId, meta);
+    }
+
+    @Test
+    public void testCompactByIncreasingUsage() throws Exception {
+        newGcThread();
+        addEntryLog(1, 550);
+        addEntryLog(2, 150);
+        addEntryLog(3, 950);
+        addEntryLog(4, 350);
+        addEntryLog(5, 50);
+
+        gcThread.doCompactEntryLogs(0.8, 0);
+        // the emptiest logs first, the ones above the threshold are left alone
+        assertEquals(Arrays.asList(5L, 2L, 4L, 1L), compacted);
+
+        GarbageCollectionStatus status = gcThread.getGarbageCollectionStatus();
+        assertArrayEquals(new long[] { 1, 1, 0, 1, 0, 1, 0, 0, 0, 0 }, status.getCompactedEntryLogsPerBucket());
+        assertArrayEquals(new long[] { 950, 850, 0, 650, 0, 450, 0, 0, 0, 0 }, status.getReclaimedBytesPerBucket());
+    }
+
+    @Test
+    public void testFailedCompactionNotCounted() throws Exception {
+        newGcThread();
+        addEntryLog(1, 150);
+        addEntryLog(2, 250);
+        failing.add(1L);
+
+        gcThread.doCompactEntryLogs(0.8, 0);
+        assertEquals(Arrays.asList(1L, 2L), compacted);
+
+        GarbageCollectionStatus status = gcThread.getGarbageCollectionStatus();
+        assertArrayEquals(new long[] { 0, 0, 1, 0, 0, 0, 0, 0, 0, 0 }, status.getCompactedEntryLogsPerBucket());
+        assertArrayEquals(new long[] { 0, 0, 750, 0, 0, 0, 0, 0, 0, 0 }, status.getReclaimedBytesPerBucket());
+    }
+
+    @Test
+    public void testCompactionTimeLimit() throws Exception {
+        newGcThread();
+        addEntryLog(1, 150);
+        addEntryLog(2, 250);
+        addEntryLog(3, 350);
+        compactionMillis = 200;
+
+        gcThread.doCompactEntryLogs(0.8, 100);
+        // the time budget is spent on the emptiest log
+        assertEquals(Collections.singletonList(1L), compacted);
+    }
+
+    @Test
+    public void testParallelCompaction() throws Exception {
+        conf.setCompactionThreads(3);
+        newGcThread();
+        assertEquals(3, gcThread.compactors.size());
+        for (long entryLogId = 0; entryLogId < 20; entryLogId++) {
+            addEntryLog(entryLogId, 10 + entryLogId * 40);
+        }
+
+        gcThread.doCompactEntryLogs(0.5, 0);
+        // each log below the threshold is compacted once, by one of the workers
+        List<Long> expected = new ArrayList<>();
+        for (long entryLogId = 0; entryLogId < 13; entryLogId++) {
+            expected.add(entryLogId);
+        }
+        List<Long> actual = new ArrayList<>(compacted);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+        assertFalse(gcThread.compacting.get());
+
+        long total = 0;
+        for (long count : gcThread.getGarbageCollectionStatus().getCompactedEntryLogsPerBucket()) {
+            total += count;
+        }
+        assertEquals(13, total);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link Journal#getJournalQueueLength()}.
+ */
+public class JournalQueueLengthTest {
+
+    private static final int NUM_ENTRIES = 10;
+    private static final WriteCallback NOOP_CALLBACK = (rc, ledgerId, entryId, addr, ctx) -> { };
+
+    private final CountDownLatch flushStarted = new CountDownLatch(1);
+    private final CountDownLatch flushReleased = new CountDownLatch(1);
+    private File journalDir;
+    private File ledgerDir;
+    private Journal journal;
+
+    @Before
+    public void setup() throws Exception {
+        journalDir = Files.createTempDirectory("bkJournal").toFile();
+        ledgerDir = Files.createTempDirectory("bkLedger").toFile();
+        BookieImpl.getCurrentDirectory(journalDir).mkdirs();
+        BookieImpl.getCurrentDirectory(ledgerDir).mkdirs();
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setJournalRemovePagesFromCache(false);
+        // flush once two entries are buffered, and never on the group wait time
+        conf.setJournalBufferedEntriesThreshold(1);
+        conf.setJournalMaxGroupWaitMSec(TimeUnit.MINUTES.toMillis(1));
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager) {
+            @Override
+            public BufferedChannelBuilder getBufferedChannelBuilder() {
+                return (FileChannel fc, int capacity) ->
+                        new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, fc, capacity) {
+                    @Override
+                    public synchronized void flush() throws IOException {
+                        flushStarted.countDown();
+                        try {
+                            flushReleased.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException(e);
+                        }
+                        super.flush();
+                    }
+                };
+            }
+        };
+    }
+
+    @After
+    public void teardown() throws Exception {
+        flushReleased.countDown();
+        journal.shutdown();
+        FileUtils.deleteDirectory(journalDir);
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeBytes(("entry-" + entryId).getBytes());
+        return entry;
+    }
+
+    @Test
+    public void testQueueLengthCountsDrainedEntries() throws Exception {
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            journal.logAddEntry(newEntry(1, entryId), false, NOOP_CALLBACK, null);
+        }
+        assertEquals(NUM_ENTRIES, journal.getJournalQueueLength());
+
+        // the journal thread drains all the entries at once, and blocks flushing the first ones
+        journal.start();
+        assertTrue(flushStarted.await(10, TimeUnit.SECONDS));
+        assertEquals(0, journal.queue.size());
+        assertEquals(NUM_ENTRIES - 3, journal.getJournalQueueLength());
+
+        flushReleased.countDown();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link Journal#scanJournal(long, long, Journal.JournalScanner)} through the read-ahead buffer.
+ */
+public class JournalScanReadAheadTest {
+
+    private static final int NUM_ENTRIES = 200;
+
+    private File journalDir;
+    private File ledgerDir;
+    private LedgerDirsManager ledgerDirsManager;
+    private long journalId;
+
+    /**
+     * An entry processed by the scanner, with the offset of its record.
+     */
+    private static class ScannedEntry {
+        final long offset;
+        final long ledgerId;
+        final long entryId;
+        final ByteBuffer data;
+
+        ScannedEntry(long offset, ByteBuffer recBuff) {
+            this.offset = offset;
+            this.ledgerId = recBuff.getLong(recBuff.position());
+            this.entryId = recBuff.getLong(recBuff.position() + 8);
+            this.data = ByteBuffer.allocate(recBuff.remaining());
+            this.data.put(recBuff.duplicate()).flip();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        journalDir = Files.createTempDirectory("bkJournal").toFile();
+        ledgerDir = Files.createTempDirectory("bkLedger").toFile();
+        BookieImpl.getCurrentDirectory(journalDir).mkdirs();
+        BookieImpl.getCurrentDirectory(ledgerDir).mkdirs();
+
+        ServerConfiguration conf = newConf();
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        Journal journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager);
+        journal.start();
+        CountDownLatch written = new CountDownLatch(NUM_ENTRIES);
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            journal.logAddEntry(newEntry(1, entryId), false,
+                    (rc, ledgerId, eid, addr, ctx) -> written.countDown(), null);
+        }
+        assertTrue(written.await(30, TimeUnit.SECONDS));
+        journal.shutdown();
+
+        List<Long> journalIds = Journal.listJournalIds(BookieImpl.getCurrentDirectory(journalDir), null);
+        assertEquals(1, journalIds.size());
+        journalId = journalIds.get(0);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(journalDir);
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    private ServerConfiguration newConf() {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setJournalRemovePagesFromCache(false);
+        return conf;
+    }
+
+    // entries of various sizes, most of them spanning several read-ahead chunks of 1KB
+    private static int entrySize(long entryId) {
+        return 16 + (int) ((entryId * 7919) % 5000);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(entrySize(entryId));
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private long scan(int readAheadSizeKB, long journalPos, List<ScannedEntry> entries) throws Exception {
+        ServerConfiguration conf = newConf();
+        conf.setJournalReplayReadAheadSizeKB(readAheadSizeKB);
+        Journal journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager);
+        return journal.scanJournal(journalId, journalPos,
+                (journalVersion, offset, recBuff) -> entries.add(new ScannedEntry(offset, recBuff)));
+    }
+
+    @Test
+    public void testScanWithSmallReadAhead() throws Exception {
+        List<ScannedEntry> entries = new ArrayList<>();
+        long scanOffset = scan(1, 0, entries);
+
+        assertEquals(NUM_ENTRIES, entries.size());
+        File journalFile = new File(BookieImpl.getCurrentDirectory(journalDir), Long.toHexString(journalId) + ".txn");
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "r")) {
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                ScannedEntry entry = entries.get(i);
+                assertEquals(1, entry.ledgerId);
+                assertEquals(i, entry.entryId);
+                assertEquals(newEntry(1, i).nioBuffer(), entry.data);
+                // the offset is the one of the record length in the journal file
+                file.seek(entry.offset);
+                assertEquals(entrySize(i), file.readInt());
+            }
+        }
+
+        // the same records are scanned, up to the same offset, as with the default read-ahead
+        List<ScannedEntry> expected = new ArrayList<>();
+        assertEquals(scan(4096, 0, expected), scanOffset);
+        assertEquals(expected.size(), entries.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).offset, entries.get(i).offset);
+            assertEquals(expected.get(i).data, entries.get(i).data);
+        }
+    }
+
+    @Test
+    public void testScanFromOffset() throws Exception {
+        List<ScannedEntry> all = new ArrayList<>();
+        long scanOffset = scan(1, 0, all);
+
+        int from = NUM_ENTRIES / 2;
+        List<ScannedEntry> entries = new ArrayList<>();
+        assertEquals(scanOffset, scan(1, all.get(from).offset, entries));
+        assertEquals(NUM_ENTRIES - from, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(all.get(from + i).offset, entries.get(i).offset);
+            assertEquals(from + i, entries.get(i).entryId);
+        }
+    }
+}
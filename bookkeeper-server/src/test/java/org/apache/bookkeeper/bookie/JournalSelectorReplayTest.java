@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.meta.NullMetadataBookieDriver;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the journal replay of ledgers that {@link JournalSelector} moved to another journal
+ * after a restart.
+ */
+public class JournalSelectorReplayTest {
+
+    private static final long LEDGER_ID = 7L;
+    private static final byte[] MASTER_KEY = "master-key".getBytes();
+
+    private final List<File> tmpDirs = new ArrayList<>();
+    private File journalDir0;
+    private File journalDir1;
+
+    @Before
+    public void setup() throws Exception {
+        journalDir0 = newDir("bkJournal0");
+        journalDir1 = newDir("bkJournal1");
+    }
+
+    @After
+    public void teardown() throws Exception {
+        for (File dir : tmpDirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private File newDir(String prefix) throws Exception {
+        File dir = Files.createTempDirectory(prefix).toFile();
+        BookieImpl.getCurrentDirectory(dir).mkdirs();
+        tmpDirs.add(dir);
+        return dir;
+    }
+
+    private ServerConfiguration newConf(File ledgerDir, File... journalDirs) {
+        ServerConfiguration conf = new ServerConfiguration();
+        String[] journalDirNames = new String[journalDirs.length];
+        for (int i = 0; i < journalDirs.length; i++) {
+            journalDirNames[i] = journalDirs[i].getAbsolutePath();
+        }
+        conf.setJournalDirsName(journalDirNames);
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setJournalRemovePagesFromCache(false);
+        conf.setJournalSelectLeastLoaded(true);
+        conf.setAllowLoopback(true);
+        return conf;
+    }
+
+    private static BookieImpl newBookie(ServerConfiguration conf) throws Exception {
+        DiskChecker diskChecker = BookieResources.createDiskChecker(conf);
+        LedgerDirsManager ledgerDirsManager = BookieResources.createLedgerDirsManager(
+                conf, diskChecker, NullStatsLogger.INSTANCE);
+        LedgerStorage storage = BookieResources.createLedgerStorage(conf,
+                new NullMetadataBookieDriver.NullLedgerManagerFactory().newLedgerManager(),
+                ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        return new BookieImpl(conf, new NullMetadataBookieDriver.NullRegistrationManager(), storage, diskChecker,
+                ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT,
+                BookieServiceInfo.NO_INFO);
+    }
+
+    private static ByteBuf newEntry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        entry.writeBytes(("entry-" + entryId).getBytes());
+        return entry;
+    }
+
+    private static ByteBuf newKeyRecord() {
+        ByteBuf record = Unpooled.buffer(8 + 8 + 4 + MASTER_KEY.length);
+        record.writeLong(LEDGER_ID);
+        record.writeLong(BookieImpl.METAENTRY_ID_LEDGER_KEY);
+        record.writeInt(MASTER_KEY.length);
+        record.writeBytes(MASTER_KEY);
+        return record;
+    }
+
+    /**
+     * The ids of the entries of the ledger journaled in a journal directory, in journal order.
+     */
+    private static List<Long> journaledEntries(File journalDir) throws Exception {
+        File ledgerDir = Files.createTempDirectory("bkLedger").toFile();
+        try {
+            ServerConfiguration conf = newJournalConf(journalDir, ledgerDir);
+            LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+            Journal journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager);
+            List<Long> entryIds = new ArrayList<>();
+            for (long journalId : Journal.listJournalIds(BookieImpl.getCurrentDirectory(journalDir), null)) {
+                journal.scanJournal(journalId, 0, (journalVersion, offset, recBuff) -> {
+                    if (recBuff.getLong() == LEDGER_ID) {
+                        entryIds.add(recBuff.getLong());
+                    }
+                });
+            }
+            return entryIds;
+        } finally {
+            FileUtils.deleteDirectory(ledgerDir);
+        }
+    }
+
+    private static ServerConfiguration newJournalConf(File journalDir, File ledgerDir) {
+        BookieImpl.getCurrentDirectory(ledgerDir).mkdirs();
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setJournalRemovePagesFromCache(false);
+        return conf;
+    }
+
+    @Test
+    public void testLedgerSpanningTwoJournals() throws Exception {
+        // a previous run journaled the key and the first entries of the ledger to the second journal,
+        // and stopped before they reached the ledger storage
+        File ledgerDir = newDir("bkLedger");
+        ServerConfiguration journalConf = newJournalConf(journalDir1, ledgerDir);
+        Journal journal = new Journal(1, BookieImpl.getCurrentDirectory(journalDir1), journalConf,
+                new LedgerDirsManager(journalConf, journalConf.getLedgerDirs(),
+                        new DiskChecker(journalConf.getDiskUsageThreshold(),
+                                journalConf.getDiskUsageWarnThreshold())));
+        journal.start();
+        CountDownLatch journaled = new CountDownLatch(6);
+        journal.logAddEntry(newKeyRecord(), false, (rc, ledgerId, entryId, addr, ctx) -> journaled.countDown(), null);
+        for (long entryId = 0; entryId < 5; entryId++) {
+            journal.logAddEntry(newEntry(entryId), false,
+                    (rc, ledgerId, eid, addr, ctx) -> journaled.countDown(), null);
+        }
+        assertTrue(journaled.await(30, TimeUnit.SECONDS));
+        journal.shutdown();
+
+        // after the restart, the replay knows the ledger and its next entries go to the first journal
+        BookieImpl bookie = newBookie(newConf(newDir("bkLedger"), journalDir0, journalDir1));
+        bookie.start();
+        CountDownLatch added = new CountDownLatch(5);
+        for (long entryId = 5; entryId < 10; entryId++) {
+            bookie.addEntry(newEntry(entryId), false, (rc, ledgerId, eid, addr, ctx) -> {
+                if (rc == BookieProtocol.EOK) {
+                    added.countDown();
+                }
+            }, null, MASTER_KEY);
+        }
+        assertTrue(added.await(30, TimeUnit.SECONDS));
+        bookie.shutdown();
+
+        List<Long> expected = new ArrayList<>();
+        expected.add(BookieImpl.METAENTRY_ID_LEDGER_KEY);
+        for (long entryId = 5; entryId < 10; entryId++) {
+            expected.add(entryId);
+        }
+        assertEquals(expected, journaledEntries(journalDir0));
+
+        // the first journal is enough to recover the entries journaled to it
+        bookie = newBookie(newConf(newDir("bkLedger"), journalDir0));
+        bookie.start();
+        try {
+            for (long entryId = 5; entryId < 10; entryId++) {
+                ByteBuf entry = bookie.readEntry(LEDGER_ID, entryId);
+                assertEquals(newEntry(entryId), entry);
+                entry.release();
+            }
+        } finally {
+            bookie.shutdown();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the reads, writes, rollover and compaction of {@link DirectEntryLogger}.
+ */
+public class DirectEntryLoggerTest {
+
+    private static final ByteBufAllocator ALLOCATOR = UnpooledByteBufAllocator.DEFAULT;
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+    private static final int MAX_ENTRY_SIZE = 64 * 1024;
+    private static final long WRITE_BUFFER_SIZE = 8 * 16 * 1024;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private File tmpDir;
+    private File ledgerDir;
+
+    @Before
+    public void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("directEntryLogger").toFile();
+        ledgerDir = BookieImpl.getCurrentDirectory(tmpDir);
+        ledgerDir.mkdirs();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private DirectEntryLogger newLogger(long maxFileSize) throws IOException {
+        return newLogger(maxFileSize, new JavaNativeIO());
+    }
+
+    private DirectEntryLogger newLogger(long maxFileSize, NativeIO nativeIO) throws IOException {
+        return new DirectEntryLogger(ledgerDir, nativeIO, ALLOCATOR, maxFileSize, MAX_ENTRY_SIZE,
+                WRITE_BUFFER_SIZE, 4 * READ_BUFFER_SIZE, READ_BUFFER_SIZE, NullStatsLogger.INSTANCE);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.writerIndex() < size) {
+            entry.writeByte((byte) (entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static void assertEntry(ByteBuf expected, ByteBuf actual) {
+        try {
+            assertEquals(expected, actual);
+        } finally {
+            actual.release();
+        }
+    }
+
+    private static int entrySize(long entryId) {
+        // entries of various sizes, some spanning several buffers
+        return 100 + (int) (entryId * 997 % 40000);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        Map<Long, Long> locations = new HashMap<>();
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE * 64)) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                long ledgerId = entryId % 3;
+                locations.put(entryId, logger.addEntry(ledgerId, newEntry(ledgerId, entryId, entrySize(entryId))));
+            }
+            // read before and after the entries are flushed
+            assertEntry(newEntry(99 % 3, 99, entrySize(99)), logger.readEntry(99 % 3, 99, locations.get(99L)));
+            logger.flush();
+            for (long entryId = 0; entryId < 100; entryId++) {
+                assertEntry(newEntry(entryId % 3, entryId, entrySize(entryId)),
+                        logger.readEntry(entryId % 3, entryId, locations.get(entryId)));
+            }
+        }
+
+        // the entries are still there once the logger is reopened
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE * 64)) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                assertEntry(newEntry(entryId % 3, entryId, entrySize(entryId)),
+                        logger.readEntry(locations.get(entryId)));
+            }
+            // a new log is started
+            long location = logger.addEntry(5, newEntry(5, 0, 1000));
+            assertTrue((location >> 32) > (locations.get(0L) >> 32));
+        }
+    }
+
+    @Test
+    public void testReadsInterleavedWithWritesOfCurrentLog() throws Exception {
+        List<Long> locations = new ArrayList<>();
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE * 64)) {
+            for (long entryId = 0; entryId < 500; entryId++) {
+                locations.add(logger.addEntry(1, newEntry(1, entryId, 100 + (int) (entryId % 7) * 300)));
+                // the latest entry and an older one, which may be in a block read before
+                assertEntry(newEntry(1, entryId, 100 + (int) (entryId % 7) * 300),
+                        logger.readEntry(1, entryId, locations.get((int) entryId)));
+                long older = entryId / 2;
+                assertEntry(newEntry(1, older, 100 + (int) (older % 7) * 300),
+                        logger.readEntry(1, older, locations.get((int) older)));
+            }
+        }
+    }
+
+    @Test
+    public void testReadBufferNotServingUnflushedData() throws Exception {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch completeWrite = new CountDownLatch(1);
+        NativeIO nativeIO = new JavaNativeIO() {
+            @Override
+            public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+                if (offset > 0 && writeStarted.getCount() > 0) {
+                    // the file grows before the data lands
+                    extend(fd, offset + count);
+                    writeStarted.countDown();
+                    try {
+                        completeWrite.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new NativeIOException("Interrupted");
+                    }
+                }
+                return super.pwrite(fd, pointer, count, offset);
+            }
+        };
+
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE * 64, nativeIO)) {
+            long first = logger.addEntry(1, newEntry(1, 0, 100));
+            logger.flush();
+            long second = logger.addEntry(1, newEntry(1, 1, 100));
+            // fill the write buffer, which is written in the background
+            long third = logger.addEntry(1, newEntry(1, 2, 60000));
+            long fourth = logger.addEntry(1, newEntry(1, 3, 60000));
+            writeStarted.await();
+
+            // the block read for the flushed entry covers the following ones, which are not written yet
+            assertEntry(newEntry(1, 0, 100), logger.readEntry(1, 0, first));
+            completeWrite.countDown();
+
+            assertEntry(newEntry(1, 1, 100), logger.readEntry(1, 1, second));
+            assertEntry(newEntry(1, 2, 60000), logger.readEntry(1, 2, third));
+            assertEntry(newEntry(1, 3, 60000), logger.readEntry(1, 3, fourth));
+        } finally {
+            completeWrite.countDown();
+        }
+    }
+
+    @Test
+    public void testRollover() throws Exception {
+        Map<Long, Long> locations = new HashMap<>();
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE)) {
+            for (long entryId = 0; entryId < 200; entryId++) {
+                locations.put(entryId, logger.addEntry(entryId % 2, newEntry(entryId % 2, entryId, 20000)));
+            }
+            long firstLogId = locations.get(0L) >> 32;
+            long lastLogId = locations.get(199L) >> 32;
+            assertTrue(lastLogId > firstLogId);
+
+            // the log being written is not reported as flushed
+            Collection<Long> flushedLogIds = logger.getFlushedLogIds();
+            assertFalse(flushedLogIds.contains(lastLogId));
+            for (long logId = firstLogId; logId < lastLogId; logId++) {
+                assertTrue(flushedLogIds.contains(logId));
+                assertTrue(logger.logExists(logId));
+                // no log grows over the max size
+                assertTrue(new File(ledgerDir, Long.toHexString(logId) + ".log").length() <= MAX_FILE_SIZE
+                        + Buffer.ALIGNMENT);
+            }
+
+            // the ledgers map of a complete log
+            Map<Long, Long> expectedSizes = new HashMap<>();
+            for (Map.Entry<Long, Long> e : locations.entrySet()) {
+                if ((e.getValue() >> 32) == firstLogId) {
+                    expectedSizes.merge(e.getKey() % 2, 20000L + Integer.BYTES, Long::sum);
+                }
+            }
+            EntryLogMetadata metadata = logger.getEntryLogMetadata(firstLogId, null);
+            assertEquals(expectedSizes.size(), metadata.getLedgersMap().size());
+            for (Map.Entry<Long, Long> e : expectedSizes.entrySet()) {
+                assertEquals((long) e.getValue(), metadata.getLedgersMap().get(e.getKey()));
+            }
+
+            for (long entryId = 0; entryId < 200; entryId++) {
+                assertEntry(newEntry(entryId % 2, entryId, 20000), logger.readEntry(locations.get(entryId)));
+            }
+        }
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE * 64)) {
+            long logId = -1;
+            for (long entryId = 0; entryId < 50; entryId++) {
+                logId = logger.addEntry(entryId % 2, newEntry(entryId % 2, entryId, entrySize(entryId))) >> 32;
+                if (entryId % 10 == 0) {
+                    // padded flushes in the middle of the log
+                    logger.flush();
+                }
+            }
+            List<Long> scanned = new ArrayList<>();
+            logger.scanEntryLog(logId, new EntryLogScanner() {
+                @Override
+                public boolean accept(long ledgerId) {
+                    return ledgerId == 1;
+                }
+
+                @Override
+                public void process(long ledgerId, long offset, ByteBuf entry) {
+                    assertEquals(1, ledgerId);
+                    scanned.add(entry.getLong(Long.BYTES));
+                }
+            });
+            List<Long> expected = new ArrayList<>();
+            for (long entryId = 1; entryId < 50; entryId += 2) {
+                expected.add(entryId);
+            }
+            assertEquals(expected, scanned);
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE)) {
+            Map<Long, Long> locations = new HashMap<>();
+            for (long entryId = 0; entryId < 100; entryId++) {
+                locations.put(entryId, logger.addEntry(entryId % 2, newEntry(entryId % 2, entryId, 20000)));
+            }
+            long srcLogId = locations.get(0L) >> 32;
+            assertTrue(logger.getFlushedLogIds().contains(srcLogId));
+
+            // keep the entries of ledger 1 of the first log
+            CompactionEntryLog compactionLog = logger.newCompactionLog(srcLogId);
+            Map<Long, Long> newLocations = new HashMap<>();
+            logger.scanEntryLog(srcLogId, new EntryLogScanner() {
+                @Override
+                public boolean accept(long ledgerId) {
+                    return ledgerId == 1;
+                }
+
+                @Override
+                public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                    newLocations.put(entry.getLong(Long.BYTES), compactionLog.addEntry(ledgerId, entry));
+                }
+            });
+            compactionLog.flush();
+            compactionLog.markCompacted();
+            compactionLog.makeAvailable();
+            compactionLog.finalizeAndCleanup();
+            assertTrue(logger.removeEntryLog(srcLogId));
+            assertFalse(logger.logExists(srcLogId));
+
+            long dstLogId = compactionLog.getDstLogId();
+            assertTrue(logger.logExists(dstLogId));
+            assertFalse(newLocations.isEmpty());
+            for (Map.Entry<Long, Long> e : newLocations.entrySet()) {
+                assertEquals(dstLogId, e.getValue() >> 32);
+                assertEntry(newEntry(1, e.getKey(), 20000), logger.readEntry(1, e.getKey(), e.getValue()));
+            }
+            EntryLogMetadata metadata = logger.getEntryLogMetadata(dstLogId, null);
+            assertEquals(1, metadata.getLedgersMap().size());
+            assertEquals(newLocations.size() * (20000L + Integer.BYTES), metadata.getLedgersMap().get(1L));
+        }
+    }
+
+    @Test
+    public void testRecoverInterruptedCompaction() throws Exception {
+        long srcLogId;
+        long dstLogId;
+        Map<Long, Long> newLocations = new HashMap<>();
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE)) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                logger.addEntry(0, newEntry(0, entryId, 20000));
+            }
+            srcLogId = logger.getFlushedLogIds().iterator().next();
+            CompactionEntryLog compactionLog = logger.newCompactionLog(srcLogId);
+            for (long entryId = 0; entryId < 5; entryId++) {
+                newLocations.put(entryId, compactionLog.addEntry(0, newEntry(0, entryId, 20000)));
+            }
+            compactionLog.flush();
+            // the bookie stops once the compacted log is durable
+            compactionLog.markCompacted();
+            dstLogId = compactionLog.getDstLogId();
+        }
+
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE)) {
+            List<CompactionEntryLog> incomplete = new ArrayList<>(logger.incompleteCompactionLogs());
+            assertEquals(1, incomplete.size());
+            CompactionEntryLog compactionLog = incomplete.get(0);
+            assertEquals(srcLogId, compactionLog.getSrcLogId());
+            assertEquals(dstLogId, compactionLog.getDstLogId());
+            compactionLog.makeAvailable();
+            compactionLog.finalizeAndCleanup();
+            for (Map.Entry<Long, Long> e : newLocations.entrySet()) {
+                assertEntry(newEntry(0, e.getKey(), 20000), logger.readEntry(0, e.getKey(), e.getValue()));
+            }
+            assertTrue(logger.incompleteCompactionLogs().isEmpty());
+        }
+    }
+
+    @Test
+    public void testReadLogsOfDefaultEntryLogger() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        Map<Long, Long> locations = new HashMap<>();
+        DefaultEntryLogger defaultLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null,
+                NullStatsLogger.INSTANCE, ALLOCATOR);
+        try {
+            for (long entryId = 0; entryId < 20; entryId++) {
+                locations.put(entryId, defaultLogger.addEntry(0, newEntry(0, entryId, entrySize(entryId))));
+            }
+            defaultLogger.flush();
+        } finally {
+            defaultLogger.close();
+        }
+
+        try (DirectEntryLogger logger = newLogger(MAX_FILE_SIZE * 64)) {
+            for (long entryId = 0; entryId < 20; entryId++) {
+                assertEntry(newEntry(0, entryId, entrySize(entryId)), logger.readEntry(0, entryId,
+                        locations.get(entryId)));
+            }
+            // the new log does not reuse the id of the default entry logger log
+            long location = logger.addEntry(0, newEntry(0, 20, 1000));
+            assertTrue((location >> 32) > (locations.get(0L) >> 32));
+        }
+    }
+}
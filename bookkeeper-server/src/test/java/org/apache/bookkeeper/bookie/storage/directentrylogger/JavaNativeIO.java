@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+// CHECKSTYLE.OFF: IllegalImport
+import io.netty.util.internal.PlatformDependent;
+// CHECKSTYLE.ON: IllegalImport
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * A {@link NativeIO} on top of file channels, so that the direct entry logger can be tested
+ * without the native library. The alignment constraints of O_DIRECT are checked.
+ */
+class JavaNativeIO implements NativeIO {
+    private final AtomicInteger nextFd = new AtomicInteger(1000);
+    private final Map<Integer, FileChannel> files = new ConcurrentHashMap<>();
+    private final Set<Integer> directFds = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public int open(String pathname, int flags, int mode) throws NativeIOException {
+        Set<StandardOpenOption> options = EnumSet.noneOf(StandardOpenOption.class);
+        if ((flags & O_CREAT) != 0) {
+            options.add(StandardOpenOption.CREATE);
+        }
+        if ((flags & O_WRONLY) != 0) {
+            options.add(StandardOpenOption.WRITE);
+        } else {
+            options.add(StandardOpenOption.READ);
+        }
+        try {
+            int fd = nextFd.getAndIncrement();
+            files.put(fd, FileChannel.open(Paths.get(pathname), options));
+            if ((flags & O_DIRECT) != 0) {
+                directFds.add(fd);
+            }
+            return fd;
+        } catch (IOException e) {
+            throw new NativeIOException("Failed to open " + pathname + ": " + e.getMessage());
+        }
+    }
+
+    private FileChannel file(int fd) throws NativeIOException {
+        FileChannel file = files.get(fd);
+        if (file == null) {
+            throw new NativeIOException("Bad file descriptor " + fd);
+        }
+        return file;
+    }
+
+    private void checkAligned(int fd, long pointer, long size, long offset) throws NativeIOException {
+        if (directFds.contains(fd) && (pointer % Buffer.ALIGNMENT != 0
+                                       || size % Buffer.ALIGNMENT != 0 || offset % Buffer.ALIGNMENT != 0)) {
+            throw new NativeIOException("Unaligned direct I/O: pointer " + pointer + ", size " + size
+                                        + ", offset " + offset);
+        }
+    }
+
+    /**
+     * Grow the file to the size, the new bytes are zeros.
+     */
+    void extend(int fd, long size) throws NativeIOException {
+        try {
+            if (file(fd).size() < size) {
+                file(fd).write(ByteBuffer.allocate(1), size - 1);
+            }
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int fsync(int fd) throws NativeIOException {
+        try {
+            file(fd).force(true);
+            return 0;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
+        throw new NativeIOException("fallocate is not supported");
+    }
+
+    @Override
+    public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+        checkAligned(fd, pointer, count, offset);
+        byte[] data = new byte[count];
+        PlatformDependent.copyMemory(pointer, data, 0, count);
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                file(fd).write(buf, offset + buf.position());
+            }
+            return count;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public long posix_memalign(int alignment, int size) throws NativeIOException {
+        throw new NativeIOException("posix_memalign is not supported");
+    }
+
+    @Override
+    public void free(long pointer) throws NativeIOException {
+        throw new NativeIOException("free is not supported");
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) throws NativeIOException {
+        try {
+            return whence == SEEK_END ? file(fd).size() + offset : offset;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
+        checkAligned(fd, pointer, size, offset);
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        try {
+            while (buf.hasRemaining()) {
+                if (file(fd).read(buf, offset + buf.position()) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        PlatformDependent.copyMemory(buf.array(), 0, pointer, buf.position());
+        return buf.position();
+    }
+
+    @Override
+    public int close(int fd) throws NativeIOException {
+        FileChannel file = files.remove(fd);
+        directFds.remove(fd);
+        if (file == null) {
+            throw new NativeIOException("Bad file descriptor " + fd);
+        }
+        try {
+            file.close();
+            return 0;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+}
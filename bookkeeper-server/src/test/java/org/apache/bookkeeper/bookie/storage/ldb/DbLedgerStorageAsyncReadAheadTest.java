@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the asynchronous read-ahead of {@link SingleDirectoryDbLedgerStorage}.
+ */
+public class DbLedgerStorageAsyncReadAheadTest {
+
+    private static final int NUM_ENTRIES = 200;
+    private static final int READ_AHEAD_BATCH_SIZE = 50;
+
+    private File tmpDir;
+    private ServerConfiguration conf;
+    private LedgerDirsManager ledgerDirsManager;
+    private SingleDirectoryDbLedgerStorage storage;
+
+    @Before
+    public void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        BookieImpl.getCurrentDirectory(tmpDir).mkdirs();
+
+        conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ASYNC_THREADS, 1);
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private SingleDirectoryDbLedgerStorage newStorage(EntryLogger entryLogger) throws Exception {
+        SingleDirectoryDbLedgerStorage storage = new SingleDirectoryDbLedgerStorage(conf, null, ledgerDirsManager,
+                ledgerDirsManager, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT, null,
+                16 * 1024 * 1024, 16 * 1024 * 1024, READ_AHEAD_BATCH_SIZE,
+                16 * 1024 * 1024, 16 * 1024 * 1024, entryLogger);
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+                storage.addEntry(newEntry(ledgerId, entryId));
+            }
+        }
+        storage.flush();
+        return storage;
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        entry.writeBytes(("entry-" + entryId).getBytes());
+        return entry;
+    }
+
+    private void assertEntry(long ledgerId, long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(ledgerId, entryId);
+        assertEquals(newEntry(ledgerId, entryId), entry);
+        entry.release();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testAsyncReadAhead() throws Exception {
+        storage = newStorage(null);
+        ReadCache readCache = storage.getReadCache();
+        assertEquals(0, readCache.count());
+
+        assertEntry(1, 0);
+        // the entries that follow are read ahead in the background
+        waitFor(() -> readCache.count() == 1 + READ_AHEAD_BATCH_SIZE);
+        for (long entryId = 1; entryId <= READ_AHEAD_BATCH_SIZE; entryId++) {
+            assertTrue(readCache.hasEntry(1, entryId));
+            assertEntry(1, entryId);
+        }
+        assertFalse(readCache.hasEntry(1, READ_AHEAD_BATCH_SIZE + 1));
+        assertEquals(1 + READ_AHEAD_BATCH_SIZE, readCache.count());
+    }
+
+    @Test
+    public void testReadAheadRejectedWhenQueueFull() throws Exception {
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_ASYNC_MAX_PENDING, 1);
+        CountDownLatch readAheadStarted = new CountDownLatch(1);
+        CountDownLatch releaseReadAhead = new CountDownLatch(1);
+        EntryLogger entryLogger = spy(new DefaultEntryLogger(conf, ledgerDirsManager, null,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT));
+        doAnswer(invocation -> {
+            if (Thread.currentThread().getName().startsWith("db-storage-read-ahead")) {
+                readAheadStarted.countDown();
+                releaseReadAhead.await();
+            }
+            return invocation.callRealMethod();
+        }).when(entryLogger).readEntry(anyLong(), anyLong(), anyLong());
+        storage = newStorage(entryLogger);
+        ReadCache readCache = storage.getReadCache();
+
+        // the read-ahead of ledger 1 blocks the only thread, the one of ledger 2 is queued
+        assertEntry(1, 0);
+        assertTrue(readAheadStarted.await(10, TimeUnit.SECONDS));
+        assertEntry(2, 0);
+        // there is no room left for the read-ahead of ledger 3
+        assertEntry(3, 0);
+
+        releaseReadAhead.countDown();
+        waitFor(() -> readCache.hasEntry(1, READ_AHEAD_BATCH_SIZE) && readCache.hasEntry(2, READ_AHEAD_BATCH_SIZE));
+        assertFalse(readCache.hasEntry(3, 1));
+
+        // the rejected read-ahead is not considered in progress, the next miss reads ahead again
+        assertEntry(3, 1);
+        waitFor(() -> readCache.hasEntry(3, 1 + READ_AHEAD_BATCH_SIZE));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test of the configuration of the direct I/O entry logger of {@link DbLedgerStorage}.
+ */
+public class DbLedgerStorageDirectIOConfTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final List<File> tmpDirs = new ArrayList<>();
+
+    @After
+    public void teardown() throws Exception {
+        for (File dir : tmpDirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * A storage recording the direct I/O buffer sizes given to each directory.
+     */
+    private static class BufferSizesDbLedgerStorage extends DbLedgerStorage {
+        final List<Long> writeBufferSizes = new ArrayList<>();
+        final List<Long> readBufferSizes = new ArrayList<>();
+
+        @Override
+        protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                StatsLogger statsLogger, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
+                int readAheadCacheBatchSize, long directIOWriteBufferSize, long directIOReadBufferSize)
+                throws IOException {
+            writeBufferSizes.add(directIOWriteBufferSize);
+            readBufferSizes.add(directIOReadBufferSize);
+            return super.newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager,
+                    statsLogger, gcExecutor, writeCacheSize, readCacheSize, readAheadCacheBatchSize,
+                    directIOWriteBufferSize, directIOReadBufferSize);
+        }
+    }
+
+    @Test
+    public void testBufferSizesSplitAcrossDirectories() throws Exception {
+        String[] ledgerDirNames = new String[4];
+        for (int i = 0; i < ledgerDirNames.length; i++) {
+            File dir = Files.createTempDirectory("bkTest").toFile();
+            BookieImpl.getCurrentDirectory(dir).mkdirs();
+            tmpDirs.add(dir);
+            ledgerDirNames[i] = dir.getAbsolutePath();
+        }
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setLedgerDirNames(ledgerDirNames);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRY_LOGGER_TOTAL_WRITE_BUFFER_SIZE_MB, 64);
+        conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRY_LOGGER_TOTAL_READ_BUFFER_SIZE_MB, 32);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        BufferSizesDbLedgerStorage storage = new BufferSizesDbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+        try {
+            List<Long> expectedWriteBufferSizes = new ArrayList<>();
+            List<Long> expectedReadBufferSizes = new ArrayList<>();
+            for (int i = 0; i < ledgerDirNames.length; i++) {
+                expectedWriteBufferSizes.add(16 * MB);
+                expectedReadBufferSizes.add(8 * MB);
+            }
+            assertEquals(expectedWriteBufferSizes, storage.writeBufferSizes);
+            assertEquals(expectedReadBufferSizes, storage.readBufferSizes);
+        } finally {
+            storage.shutdown();
+        }
+    }
+
+    @Test
+    public void testEntryLogPerLedgerRejected() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerStorageClass(DbLedgerStorage.class.getName());
+        conf.setEntryLogPerLedgerEnabled(true);
+        conf.validate();
+
+        conf.setProperty(DbLedgerStorage.DIRECT_IO_ENTRY_LOGGER, true);
+        try {
+            conf.validate();
+            fail("The direct I/O entry logger should not allow an entry log per ledger");
+        } catch (ConfigurationException ce) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the pipelined write cache flush of {@link SingleDirectoryDbLedgerStorage}.
+ */
+public class DbLedgerStoragePipelinedFlushTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int NUM_ENTRIES = 5000;
+
+    private File tmpDir;
+    private ServerConfiguration conf;
+    private LedgerDirsManager ledgerDirsManager;
+    private SingleDirectoryDbLedgerStorage storage;
+
+    @Before
+    public void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        BookieImpl.getCurrentDirectory(tmpDir).mkdirs();
+
+        conf = new ServerConfiguration();
+        conf.setAllowLoopback(true);
+        conf.setLedgerDirNames(new String[] { tmpDir.getAbsolutePath() });
+        conf.setProperty(DbLedgerStorage.PIPELINED_FLUSH_ENABLED, true);
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private SingleDirectoryDbLedgerStorage newStorage(EntryLogger entryLogger) throws IOException {
+        return new SingleDirectoryDbLedgerStorage(conf, null, ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT, null,
+                16 * 1024 * 1024, 16 * 1024 * 1024, 100,
+                16 * 1024 * 1024, 16 * 1024 * 1024, entryLogger);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        entry.writeBytes(("entry-" + entryId).getBytes());
+        return entry;
+    }
+
+    private void addEntries() throws Exception {
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            storage.addEntry(newEntry(LEDGER_ID, entryId));
+        }
+    }
+
+    @Test
+    public void testPipelinedFlushDisabledByDefault() {
+        assertFalse(DbLedgerStorage.DEFAULT_PIPELINED_FLUSH_ENABLED);
+    }
+
+    @Test
+    public void testFlushCommitsLocationsIndex() throws Exception {
+        storage = newStorage(null);
+        addEntries();
+        storage.flush();
+
+        EntryLocationIndex index = storage.getEntryLocationIndex();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertNotEquals(0L, index.getLocation(LEDGER_ID, entryId));
+
+            ByteBuf entry = storage.getEntry(LEDGER_ID, entryId);
+            assertEquals(newEntry(LEDGER_ID, entryId), entry);
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testLocationsIndexNotCommittedWhenEntryLogSyncFails() throws Exception {
+        EntryLogger entryLogger = spy(new DefaultEntryLogger(conf, ledgerDirsManager, null,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT));
+        IOException syncFailure = new IOException("sync failed");
+        doThrow(syncFailure).when(entryLogger).flush();
+
+        storage = newStorage(entryLogger);
+        addEntries();
+        try {
+            storage.flush();
+            fail("The flush should have failed");
+        } catch (IOException e) {
+            assertSame(syncFailure, e);
+        }
+
+        EntryLocationIndex index = storage.getEntryLocationIndex();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals(0L, index.getLocation(LEDGER_ID, entryId));
+        }
+
+        // The entries are still served from the write cache
+        ByteBuf entry = storage.getEntry(LEDGER_ID, 0);
+        assertEquals(newEntry(LEDGER_ID, 0), entry);
+        entry.release();
+
+        doCallRealMethod().when(entryLogger).flush();
+    }
+}
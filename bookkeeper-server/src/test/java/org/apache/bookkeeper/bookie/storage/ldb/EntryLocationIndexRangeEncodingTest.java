@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the range encoding of {@link EntryLocationIndex}.
+ */
+public class EntryLocationIndexRangeEncodingTest {
+
+    private File tmpDir;
+    private EntryLocationIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("bkTest").toFile();
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty(DbLedgerStorage.LOCATION_INDEX_RANGE_ENCODING, true);
+        index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, tmpDir.getAbsolutePath(),
+                NullStatsLogger.INSTANCE);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        index.close();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static long location(long logId, long offset) {
+        return (logId << 32) | offset;
+    }
+
+    private void addLocations(long ledgerId, long firstEntryId, int count, long logId, long firstOffset)
+            throws Exception {
+        Batch batch = index.newBatch();
+        for (int i = 0; i < count; i++) {
+            index.addLocation(batch, ledgerId, firstEntryId + i, location(logId, firstOffset + i * 100));
+        }
+        batch.flush();
+        batch.close();
+    }
+
+    private void assertLocations(long ledgerId, long firstEntryId, int count, long logId, long firstOffset)
+            throws Exception {
+        for (int i = 0; i < count; i++) {
+            assertEquals(location(logId, firstOffset + i * 100), index.getLocation(ledgerId, firstEntryId + i));
+        }
+    }
+
+    private long recordCount() throws Exception {
+        return index.getLocationsDb().count();
+    }
+
+    @Test
+    public void testRunsOfEntries() throws Exception {
+        addLocations(1, 0, 10, 1, 1000);
+        assertEquals(1, recordCount());
+        assertLocations(1, 0, 10, 1, 1000);
+        assertEquals(0, index.getLocation(1, 10));
+        assertEquals(0, index.getLocation(2, 0));
+        assertEquals(9, index.getLastEntryInLedger(1));
+
+        // the runs stop at the max length
+        addLocations(2, 0, 2 * EntryLocationRange.MAX_RUN_LENGTH + 1, 1, 100000);
+        assertEquals(4, recordCount());
+        assertLocations(2, 0, 2 * EntryLocationRange.MAX_RUN_LENGTH + 1, 1, 100000);
+    }
+
+    @Test
+    public void testRunsSplitOnGapsAndLogChanges() throws Exception {
+        Batch batch = index.newBatch();
+        for (long entryId = 0; entryId < 5; entryId++) {
+            index.addLocation(batch, 1, entryId, location(1, 1000 + entryId * 100));
+        }
+        for (long entryId = 5; entryId < 10; entryId++) {
+            index.addLocation(batch, 1, entryId, location(2, 1000 + entryId * 100));
+        }
+        index.addLocation(batch, 1, 12, location(2, 5000));
+        batch.flush();
+        batch.close();
+
+        assertEquals(3, recordCount());
+        assertLocations(1, 0, 5, 1, 1000);
+        assertLocations(1, 5, 5, 2, 1500);
+        assertEquals(0, index.getLocation(1, 10));
+        assertEquals(0, index.getLocation(1, 11));
+        assertEquals(location(2, 5000), index.getLocation(1, 12));
+        assertEquals(12, index.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void testUnsortedBatch() throws Exception {
+        List<Long> entryIds = new ArrayList<>();
+        for (long entryId = 0; entryId < 100; entryId++) {
+            entryIds.add(entryId);
+        }
+        Collections.shuffle(entryIds, new Random(1));
+
+        Batch batch = index.newBatch();
+        for (long entryId : entryIds) {
+            index.addLocation(batch, 1 + entryId % 2, entryId, location(1, 1000 + entryId * 100));
+        }
+        batch.flush();
+        batch.close();
+
+        for (long entryId = 0; entryId < 100; entryId++) {
+            assertEquals(location(1, 1000 + entryId * 100), index.getLocation(1 + entryId % 2, entryId));
+        }
+    }
+
+    @Test
+    public void testLastAddedLocationWins() throws Exception {
+        Batch batch = index.newBatch();
+        index.addLocation(batch, 1, 0, location(4, 1000));
+        index.addLocation(batch, 1, 1, location(4, 1100));
+        // the entry is written again, at a lower location of another log
+        index.addLocation(batch, 1, 0, location(3, 2000));
+        index.addLocation(batch, 1, 1, location(2, 3000));
+        batch.flush();
+        batch.close();
+
+        assertEquals(location(3, 2000), index.getLocation(1, 0));
+        assertEquals(location(2, 3000), index.getLocation(1, 1));
+        assertEquals(2, recordCount());
+    }
+
+    @Test
+    public void testUpdatedEntriesSplitRecords() throws Exception {
+        addLocations(1, 0, 10, 1, 1000);
+        addLocations(1, 20, 10, 1, 5000);
+        assertEquals(2, recordCount());
+
+        // relocated by compaction, in the middle of the first run
+        index.updateLocations(Arrays.asList(
+                new EntryLocation(1, 3, location(5, 100)),
+                new EntryLocation(1, 4, location(5, 200))));
+        assertEquals(4, recordCount());
+        assertLocations(1, 0, 3, 1, 1000);
+        assertLocations(1, 3, 2, 5, 100);
+        assertLocations(1, 5, 5, 1, 1500);
+        assertLocations(1, 20, 10, 1, 5000);
+
+        // over the end of the first run and the start of the second one
+        addLocations(1, 8, 14, 6, 0);
+        assertLocations(1, 0, 3, 1, 1000);
+        assertLocations(1, 3, 2, 5, 100);
+        assertLocations(1, 5, 3, 1, 1500);
+        assertLocations(1, 8, 14, 6, 0);
+        assertLocations(1, 22, 8, 1, 5200);
+        assertEquals(5, recordCount());
+        assertEquals(29, index.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void testAppendedEntries() throws Exception {
+        addLocations(1, 0, 10, 1, 1000);
+        addLocations(1, 10, 10, 1, 2000);
+        addLocations(2, 0, 10, 1, 3000);
+        // the runs of the previous batches are left untouched
+        assertEquals(3, recordCount());
+        assertLocations(1, 0, 10, 1, 1000);
+        assertLocations(1, 10, 10, 1, 2000);
+        assertLocations(2, 0, 10, 1, 3000);
+        assertEquals(19, index.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void testDeleteLedger() throws Exception {
+        addLocations(1, 0, 10, 1, 1000);
+        addLocations(1, 10, 1, 2, 1000);
+        addLocations(2, 0, 10, 1, 3000);
+
+        index.delete(1);
+        index.removeOffsetFromDeletedLedgers();
+        assertEquals(1, recordCount());
+        assertEquals(0, index.getLocation(1, 0));
+        assertLocations(2, 0, 10, 1, 3000);
+        try {
+            index.getLastEntryInLedger(1);
+            fail("The ledger should be deleted");
+        } catch (Bookie.NoEntryException e) {
+            // expected
+        }
+    }
+}
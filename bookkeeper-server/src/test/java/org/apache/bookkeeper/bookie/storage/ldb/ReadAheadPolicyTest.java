@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ReadAheadPolicy}.
+ */
+public class ReadAheadPolicyTest {
+
+    private static final int BATCH_SIZE = 10;
+    private static final int MAX_BATCH_SIZE = 40;
+
+    private long nowNanos = 0;
+
+    private ReadAheadPolicy newPolicy(boolean adaptive) {
+        DbLedgerStorageStats stats = new DbLedgerStorageStats(NullStatsLogger.INSTANCE,
+                () -> 0L, () -> 0L, () -> 0L, () -> 0L);
+        return new ReadAheadPolicy(adaptive, BATCH_SIZE, MAX_BATCH_SIZE, stats, () -> nowNanos);
+    }
+
+    // a miss on the entry, then a read-ahead of the returned window that completes
+    private static int readWithReadAhead(ReadAheadPolicy policy, long ledgerId, long entryId) {
+        int window = policy.onCacheMiss(ledgerId, entryId);
+        if (window > 0 && policy.startReadAhead(ledgerId, entryId + 1, window)) {
+            policy.onReadAhead(ledgerId, entryId + 1, window, window * 100L);
+        }
+        return window;
+    }
+
+    @Test
+    public void testFixedWindow() {
+        ReadAheadPolicy policy = newPolicy(false);
+        assertEquals(BATCH_SIZE, readWithReadAhead(policy, 1, 0));
+        assertEquals(BATCH_SIZE, readWithReadAhead(policy, 1, 11));
+        assertEquals(BATCH_SIZE, readWithReadAhead(policy, 1, 500));
+    }
+
+    @Test
+    public void testAdaptiveWindowOfSequentialReader() {
+        ReadAheadPolicy policy = newPolicy(true);
+        long entryId = 0;
+        int window = readWithReadAhead(policy, 1, entryId);
+        assertEquals(BATCH_SIZE, window);
+        for (int expected : new int[] { 20, 40, 40 }) {
+            // the reader consumes the whole window, then misses the next entry
+            for (int i = 0; i < window; i++) {
+                policy.onCacheHit(1, ++entryId);
+            }
+            window = readWithReadAhead(policy, 1, ++entryId);
+            assertEquals(expected, window);
+        }
+    }
+
+    @Test
+    public void testAdaptiveWindowOfRandomReader() {
+        ReadAheadPolicy policy = newPolicy(true);
+        assertEquals(BATCH_SIZE, readWithReadAhead(policy, 1, 0));
+        assertEquals(5, readWithReadAhead(policy, 1, 1000));
+        // below the min window, the read-ahead is disabled
+        assertEquals(0, readWithReadAhead(policy, 1, 50));
+        assertEquals(0, readWithReadAhead(policy, 1, 7));
+    }
+
+    @Test
+    public void testOverlappingReadAheadsDeduped() {
+        ReadAheadPolicy policy = newPolicy(false);
+        assertEquals(BATCH_SIZE, policy.onCacheMiss(1, 0));
+        assertTrue(policy.startReadAhead(1, 1, BATCH_SIZE));
+        assertFalse(policy.startReadAhead(1, 5, BATCH_SIZE));
+        // a miss on an entry being read ahead does not read ahead again
+        assertEquals(0, policy.onCacheMiss(1, 3));
+        // other ledgers are not affected
+        assertTrue(policy.startReadAhead(2, 5, BATCH_SIZE));
+
+        policy.onReadAhead(1, 1, BATCH_SIZE, 1000);
+        assertTrue(policy.startReadAhead(1, 5, BATCH_SIZE));
+    }
+
+    @Test
+    public void testIdleLedgersExpire() {
+        ReadAheadPolicy policy = newPolicy(true);
+        for (long ledgerId = 0; ledgerId < 100; ledgerId++) {
+            readWithReadAhead(policy, ledgerId, 0);
+        }
+        assertEquals(100, policy.getLedgerCount());
+
+        // a read-ahead still in progress keeps its ledger
+        assertTrue(policy.startReadAhead(100, 1, BATCH_SIZE));
+
+        nowNanos += TimeUnit.SECONDS.toNanos(30);
+        policy.onCacheHit(0, 1);
+        readWithReadAhead(policy, 1, 20);
+        assertEquals(101, policy.getLedgerCount());
+
+        nowNanos += TimeUnit.SECONDS.toNanos(40);
+        readWithReadAhead(policy, 200, 0);
+        // ledgers 0 and 1 were read since, 100 has a read-ahead in progress
+        assertEquals(4, policy.getLedgerCount());
+
+        // the window of a ledger read again starts over
+        nowNanos += TimeUnit.MINUTES.toNanos(2);
+        assertEquals(BATCH_SIZE, readWithReadAhead(policy, 1, 1000));
+        policy.onReadAhead(100, 1, BATCH_SIZE, 1000);
+        nowNanos += TimeUnit.MINUTES.toNanos(2);
+        readWithReadAhead(policy, 300, 0);
+        assertEquals(1, policy.getLedgerCount());
+    }
+
+    @Test
+    public void testRemoveLedger() {
+        ReadAheadPolicy policy = newPolicy(false);
+        readWithReadAhead(policy, 1, 0);
+        readWithReadAhead(policy, 2, 0);
+        policy.removeLedger(1);
+        assertEquals(1, policy.getLedgerCount());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    private static ByteBuf entry(long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) entryId);
+        }
+        return entry;
+    }
+
+    private static void assertEntry(long entryId, int size, ByteBuf entry) {
+        try {
+            assertEquals(size, entry.readableBytes());
+            for (int i = 0; i < size; i++) {
+                assertEquals((byte) entryId, entry.getByte(i));
+            }
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testPutAndGet() {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 10 * 1024);
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+        assertNull(cache.get(1, 0));
+        assertFalse(cache.hasEntry(1, 0));
+
+        for (long entryId = 0; entryId < 10; entryId++) {
+            cache.put(1, entryId, entry(entryId, 100));
+        }
+        assertEquals(10, cache.count());
+        assertEquals(10 * 128, cache.size());
+        for (long entryId = 0; entryId < 10; entryId++) {
+            assertTrue(cache.hasEntry(1, entryId));
+            assertEntry(entryId, 100, cache.get(1, entryId));
+        }
+        assertNull(cache.get(2, 0));
+        cache.close();
+    }
+
+    @Test
+    public void testOldestSegmentEvicted() {
+        // 2 segments of 1024 bytes
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 2 * 1024, 1024);
+        for (long entryId = 0; entryId < 24; entryId++) {
+            cache.put(1, entryId, entry(entryId, 128));
+        }
+        // the first segment was overwritten by the third one
+        for (long entryId = 0; entryId < 8; entryId++) {
+            assertFalse(cache.hasEntry(1, entryId));
+            assertNull(cache.get(1, entryId));
+        }
+        for (long entryId = 8; entryId < 24; entryId++) {
+            assertEntry(entryId, 128, cache.get(1, entryId));
+        }
+        assertEquals(16, cache.count());
+        cache.close();
+    }
+
+    @Test
+    public void testEntryLargerThanSegmentSkipped() {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 2 * 1024, 1024);
+        cache.put(1, 0, entry(0, 2048));
+        assertFalse(cache.hasEntry(1, 0));
+        assertEquals(0, cache.count());
+        cache.close();
+    }
+
+    @Test
+    public void testShardsRotateIndependently() {
+        // 2 shards of 2 segments of 1024 bytes
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 4 * 1024, 1024, 2);
+        cache.put(1, 0, entry(0, 128));
+
+        // the entries of ledger 2 only rotate the segments of its shard
+        for (long entryId = 0; entryId < 32; entryId++) {
+            cache.put(2, entryId, entry(entryId, 128));
+        }
+        assertEntry(0, 128, cache.get(1, 0));
+        assertFalse(cache.hasEntry(2, 0));
+        assertEntry(31, 128, cache.get(2, 31));
+        assertEquals(17, cache.count());
+        cache.close();
+    }
+
+    @Test
+    public void testConcurrentReadsWhileRotating() throws Exception {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 4 * 1024, 1024);
+        final int numEntries = 20000;
+        AtomicLong lastEntryId = new AtomicLong(-1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (lastEntryId.get() < numEntries - 1) {
+                    long last = lastEntryId.get();
+                    if (last < 0) {
+                        continue;
+                    }
+                    long entryId = Math.max(0, last - ThreadLocalRandom.current().nextInt(32));
+                    ByteBuf entry = cache.get(1, entryId);
+                    // the entry may have been evicted, but never overwritten by another one
+                    if (entry != null) {
+                        assertEntry(entryId, 128, entry);
+                    }
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            cache.put(1, entryId, entry(entryId, 128));
+            lastEntryId.set(entryId);
+            if (entryId % 100 == 0) {
+                Thread.yield();
+            }
+        }
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        cache.close();
+    }
+}
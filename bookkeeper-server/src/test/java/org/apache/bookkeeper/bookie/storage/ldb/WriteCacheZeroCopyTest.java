@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the zero-copy reads of {@link WriteCache}.
+ */
+public class WriteCacheZeroCopyTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int SEGMENTS = 8;
+    private static final int ENTRY_SIZE = 512;
+    private static final int ENTRIES = SEGMENTS * SEGMENT_SIZE / ENTRY_SIZE;
+
+    private WriteCache cache;
+
+    @Before
+    public void setup() {
+        cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, SEGMENTS * SEGMENT_SIZE, SEGMENT_SIZE, true);
+    }
+
+    @After
+    public void teardown() {
+        cache.close();
+    }
+
+    private static ByteBuf newEntry(long entryId, int generation) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        while (entry.isWritable()) {
+            entry.writeByte((byte) (entryId * 31 + generation + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private void fill(int generation) {
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            ByteBuf entry = newEntry(entryId, generation);
+            cache.put(1, entryId, entry);
+            entry.release();
+        }
+    }
+
+    private List<ByteBuf> getAll() {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            ByteBuf entry = cache.get(1, entryId);
+            assertNotNull(entry);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static void assertEntries(List<ByteBuf> entries, int generation) {
+        for (int entryId = 0; entryId < entries.size(); entryId++) {
+            assertEquals(newEntry(entryId, generation), entries.get(entryId));
+        }
+    }
+
+    private static void releaseAll(List<ByteBuf> entries) {
+        entries.forEach(ByteBuf::release);
+    }
+
+    @Test
+    public void testSlicesSurviveClear() {
+        fill(0);
+        List<ByteBuf> slices = getAll();
+        // the entries are slices of the cache segments
+        slices.forEach(slice -> assertNotNull(slice.unwrap()));
+
+        cache.clear();
+        assertNull(cache.get(1, 0));
+        assertEquals(SEGMENTS, cache.getRetiredSegmentsCount());
+
+        // new entries go to new segments
+        fill(1);
+        assertEntries(slices, 0);
+        List<ByteBuf> entries = getAll();
+        assertEntries(entries, 1);
+        releaseAll(entries);
+        releaseAll(slices);
+    }
+
+    @Test
+    public void testUnreferencedSegmentsReused() {
+        fill(0);
+        ByteBuf slice = cache.get(1, 0);
+        cache.clear();
+        assertEquals(1, cache.getRetiredSegmentsCount());
+
+        slice.release();
+        fill(1);
+        releaseAll(getAll());
+        cache.clear();
+        // the retired segment was freed, and no segment is referenced anymore
+        assertEquals(0, cache.getRetiredSegmentsCount());
+    }
+
+    @Test
+    public void testCopiesOnceTooManyRetiredSegments() {
+        fill(0);
+        List<ByteBuf> slices = getAll();
+        cache.clear();
+        assertEquals(SEGMENTS, cache.getRetiredSegmentsCount());
+
+        // past the max retired segments, the entries are copied
+        fill(1);
+        List<ByteBuf> copies = getAll();
+        copies.forEach(copy -> assertNull(copy.unwrap()));
+        assertEntries(copies, 1);
+        cache.clear();
+        assertEquals(SEGMENTS, cache.getRetiredSegmentsCount());
+        assertEntries(copies, 1);
+        assertEntries(slices, 0);
+        releaseAll(copies);
+
+        // slices again once the retired segments are freed
+        releaseAll(slices);
+        cache.clear();
+        assertEquals(0, cache.getRetiredSegmentsCount());
+        fill(2);
+        ByteBuf slice = cache.get(1, 0);
+        assertNotNull(slice.unwrap());
+        assertEquals(newEntry(0, 2), slice);
+        slice.release();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link AdaptiveSpeculativeRequestExecutionPolicy}.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicyTest {
+
+    private static final int FIRST_TIMEOUT = 100;
+    private static final int MAX_TIMEOUT = 400;
+
+    // the tasks scheduled, with their delay in milliseconds
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Queue<Long> delays = new ArrayDeque<>();
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setup() {
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS))).thenAnswer(invocation -> {
+            tasks.add(invocation.getArgument(0));
+            delays.add(invocation.getArgument(1));
+            return null;
+        });
+    }
+
+    private static class Request implements SpeculativeRequestExecutor {
+        long latencyNanos = -1;
+        // the number of speculative requests the request can issue before it completes
+        int maxSpeculativeRequests = 1;
+        int speculativeRequests = 0;
+
+        @Override
+        public ListenableFuture<Boolean> issueSpeculativeRequest() {
+            if (speculativeRequests >= maxSpeculativeRequests) {
+                return Futures.immediateFuture(false);
+            }
+            speculativeRequests++;
+            return Futures.immediateFuture(true);
+        }
+
+        @Override
+        public long getRecentLatencyNanos(double percentile) {
+            return latencyNanos;
+        }
+    }
+
+    private long runNextTask() {
+        long delay = delays.remove();
+        tasks.remove().run();
+        return delay;
+    }
+
+    private long firstTimeout(AdaptiveSpeculativeRequestExecutionPolicy policy, Request request) {
+        policy.initiateSpeculativeRequest(scheduler, request);
+        tasks.clear();
+        long delay = delays.remove();
+        delays.clear();
+        return delay;
+    }
+
+    // initiate a request and run its first speculative request
+    private Request initiateAndRun(AdaptiveSpeculativeRequestExecutionPolicy policy) {
+        Request request = new Request();
+        policy.initiateSpeculativeRequest(scheduler, request);
+        runNextTask();
+        return request;
+    }
+
+    @Test
+    public void testTimeoutFollowsLatency() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT, MAX_TIMEOUT, 2, 95, 0);
+        Request request = new Request();
+
+        // unknown latency
+        assertEquals(FIRST_TIMEOUT, firstTimeout(policy, request));
+        // rounded up to the next millisecond
+        request.latencyNanos = TimeUnit.MICROSECONDS.toNanos(20500);
+        assertEquals(21, firstTimeout(policy, request));
+        request.latencyNanos = 1;
+        assertEquals(1, firstTimeout(policy, request));
+        // bounded by the max timeout
+        request.latencyNanos = TimeUnit.SECONDS.toNanos(10);
+        assertEquals(MAX_TIMEOUT, firstTimeout(policy, request));
+    }
+
+    @Test
+    public void testBackoff() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT, MAX_TIMEOUT, 2, 95, 0);
+        Request request = new Request();
+        request.maxSpeculativeRequests = 3;
+
+        policy.initiateSpeculativeRequest(scheduler, request);
+        assertEquals(FIRST_TIMEOUT, runNextTask());
+        assertEquals(200, runNextTask());
+        assertEquals(MAX_TIMEOUT, runNextTask());
+        assertEquals(MAX_TIMEOUT, runNextTask());
+        // the request completed
+        assertTrue(tasks.isEmpty());
+        assertEquals(3, request.speculativeRequests);
+    }
+
+    @Test
+    public void testBackoffNotBelowLatency() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT, 1000, 1.5f, 95, 0);
+        Request request = new Request();
+        request.latencyNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+        policy.initiateSpeculativeRequest(scheduler, request);
+        assertEquals(10, (long) delays.peek());
+        // the latency went up meanwhile
+        request.latencyNanos = TimeUnit.MILLISECONDS.toNanos(300);
+        runNextTask();
+        assertEquals(300, (long) delays.peek());
+    }
+
+    @Test
+    public void testBudget() {
+        // a speculative request every 2 requests, once the burst is consumed
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT, MAX_TIMEOUT, 2, 95, 0.5);
+
+        int issued = 0;
+        Request request;
+        while ((request = initiateAndRun(policy)).speculativeRequests > 0) {
+            issued++;
+            // the request completes before its next speculative request
+            tasks.clear();
+            delays.clear();
+        }
+        // the burst, and half a speculative request earned by each request
+        assertEquals(199, issued, 1);
+
+        // over the budget, the speculative request is tried again with the next backoff
+        assertEquals(1, tasks.size());
+        assertEquals(200, (long) delays.peek());
+        Runnable retry = tasks.remove();
+        delays.clear();
+        // another request earns enough meanwhile
+        policy.initiateSpeculativeRequest(scheduler, new Request());
+        tasks.clear();
+        delays.clear();
+        retry.run();
+        assertEquals(1, request.speculativeRequests);
+        tasks.clear();
+        delays.clear();
+
+        // then every other request
+        issued = 0;
+        for (int i = 0; i < 10; i++) {
+            issued += initiateAndRun(policy).speculativeRequests;
+            tasks.clear();
+            delays.clear();
+        }
+        assertEquals(5, issued);
+    }
+
+    @Test
+    public void testRetriesOverBudgetStopAtMaxTimeout() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT, MAX_TIMEOUT, 2, 95, 0.01);
+        Request request;
+        while ((request = initiateAndRun(policy)).speculativeRequests > 0) {
+            tasks.clear();
+            delays.clear();
+        }
+
+        assertEquals(200, runNextTask());
+        assertEquals(MAX_TIMEOUT, runNextTask());
+        assertTrue(tasks.isEmpty());
+        assertEquals(0, request.speculativeRequests);
+    }
+
+    @Test
+    public void testCreditsReleasedWhenNoRequestIssued() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+                new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT, MAX_TIMEOUT, 2, 95, 0.01);
+        // the requests complete before their speculative request is issued
+        for (int i = 0; i < 1000; i++) {
+            Request request = new Request();
+            request.maxSpeculativeRequests = 0;
+            policy.initiateSpeculativeRequest(scheduler, request);
+            runNextTask();
+        }
+        assertTrue(tasks.isEmpty());
+
+        // the whole burst is still available
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, initiateAndRun(policy).speculativeRequests);
+            tasks.clear();
+            delays.clear();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.CopyFragmentCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.DataFormats;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the fragment copies of {@link LedgerFragmentReplicator}.
+ */
+public class LedgerFragmentReplicatorCopyFragmentTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] PASSWORD = "password".getBytes();
+    private static final long NUM_ENTRIES = 5;
+
+    private static final BookieId BOOKIE1 = BookieId.parse("bookie1:3181");
+    private static final BookieId BOOKIE2 = BookieId.parse("bookie2:3181");
+    private static final BookieId FAILED = BookieId.parse("bookie3:3181");
+    private static final BookieId TARGET = BookieId.parse("bookie4:3181");
+
+    private ClientConfiguration conf;
+    private BookKeeper bkc;
+    private BookieClient bookieClient;
+    private LedgerHandle lh;
+    private LedgerFragment fragment;
+    private int copyRc = BKException.Code.OK;
+
+    @Before
+    public void setup() throws Exception {
+        conf = new ClientConfiguration();
+        conf.setBookieFragmentCopyEnabled(true);
+        conf.setRereplicationEntryBatchSize(0);
+
+        bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            long firstEntryId = invocation.getArgument(3);
+            long lastEntryId = invocation.getArgument(4);
+            CopyFragmentCallback cb = invocation.getArgument(5);
+            long bytes = copyRc == BKException.Code.OK ? 100L * (lastEntryId - firstEntryId + 1) : 0L;
+            cb.copyFragmentComplete(copyRc, LEDGER_ID, firstEntryId, bytes, invocation.getArgument(6));
+            return null;
+        }).when(bookieClient).copyFragment(any(BookieId.class), eq(LEDGER_ID), any(byte[].class),
+                anyLong(), anyLong(), any(CopyFragmentCallback.class), any());
+        doAnswer(invocation -> {
+            ByteBufList toSend = invocation.getArgument(4);
+            WriteCallback cb = invocation.getArgument(5);
+            toSend.release();
+            cb.writeComplete(BKException.Code.OK, LEDGER_ID, invocation.getArgument(3),
+                    invocation.getArgument(0), invocation.getArgument(6));
+            return null;
+        }).when(bookieClient).addEntry(any(BookieId.class), eq(LEDGER_ID), any(byte[].class), anyLong(),
+                any(ByteBufList.class), any(WriteCallback.class), any(), anyInt(), anyBoolean(), any());
+
+        bkc = mock(BookKeeper.class);
+        when(bkc.getBookieClient()).thenReturn(bookieClient);
+        when(bkc.getConf()).thenReturn(conf);
+
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withDigestType(DigestType.CRC32C).withPassword(PASSWORD)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .newEnsembleEntry(0L, Arrays.asList(BOOKIE1, BOOKIE2, FAILED))
+                .withLastEntryId(NUM_ENTRIES - 1).withLength(100).withClosedState()
+                .build();
+        lh = mock(LedgerHandle.class);
+        when(lh.getId()).thenReturn(LEDGER_ID);
+        when(lh.getLedgerKey()).thenReturn(PASSWORD);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.getLastAddConfirmed()).thenReturn(NUM_ENTRIES - 1);
+        when(lh.getDistributionSchedule()).thenReturn(new RoundRobinDistributionSchedule(3, 2, 3));
+        when(lh.getDigestManager()).thenReturn(DigestManager.instantiate(LEDGER_ID, PASSWORD,
+                DataFormats.LedgerMetadataFormat.DigestType.CRC32C, UnpooledByteBufAllocator.DEFAULT, false));
+        doAnswer(invocation -> {
+            long entryId = invocation.getArgument(0);
+            AsyncCallback.ReadCallback cb = invocation.getArgument(2);
+            LedgerEntry entry = mock(LedgerEntry.class);
+            byte[] data = ("entry-" + entryId).getBytes();
+            when(entry.getEntry()).thenReturn(data);
+            when(entry.getLength()).thenReturn((long) data.length);
+            cb.readComplete(BKException.Code.OK, lh, new Vector<>(Collections.singletonList(entry)).elements(),
+                    invocation.getArgument(3));
+            return null;
+        }).when(lh).asyncReadEntries(anyLong(), anyLong(), any(AsyncCallback.ReadCallback.class), any());
+
+        fragment = new LedgerFragment(lh, 0L, NUM_ENTRIES - 1, Collections.singleton(2));
+    }
+
+    private int replicate() throws Exception {
+        LedgerFragmentReplicator replicator = new LedgerFragmentReplicator(bkc, conf);
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Set<BookieId> targets = new HashSet<>(Collections.singleton(TARGET));
+        replicator.replicate(lh, fragment, (rc, path, ctx) -> result.complete(rc), targets, (ledgerId, entryId) -> {});
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testCopyFragment() throws Exception {
+        assertEquals(BKException.Code.OK, replicate());
+        verify(bookieClient, times(1)).copyFragment(eq(TARGET), eq(LEDGER_ID), any(byte[].class),
+                eq(0L), eq(NUM_ENTRIES - 1), any(CopyFragmentCallback.class), any());
+        // the entries are not relayed through the replicator
+        verify(lh, never()).asyncReadEntries(anyLong(), anyLong(), any(AsyncCallback.ReadCallback.class), any());
+        verify(bookieClient, never()).addEntry(any(BookieId.class), anyLong(), any(byte[].class), anyLong(),
+                any(ByteBufList.class), any(WriteCallback.class), any(), anyInt(), anyBoolean(), any());
+    }
+
+    @Test
+    public void testUnsupportedCopyFallsBackToEntryReplication() throws Exception {
+        copyRc = BKException.Code.IllegalOpException;
+        assertEquals(BKException.Code.OK, replicate());
+        verify(bookieClient, times(1)).copyFragment(eq(TARGET), eq(LEDGER_ID), any(byte[].class),
+                eq(0L), eq(NUM_ENTRIES - 1), any(CopyFragmentCallback.class), any());
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            verify(lh).asyncReadEntries(eq(entryId), eq(entryId), any(AsyncCallback.ReadCallback.class), any());
+            verify(bookieClient).addEntry(eq(TARGET), eq(LEDGER_ID), any(byte[].class), eq(entryId),
+                    any(ByteBufList.class), any(WriteCallback.class), any(), anyInt(), anyBoolean(), any());
+        }
+    }
+
+    @Test
+    public void testFailedCopyFallsBackToEntryReplication() throws Exception {
+        copyRc = BKException.Code.WriteException;
+        assertEquals(BKException.Code.OK, replicate());
+        verify(lh, times((int) NUM_ENTRIES))
+                .asyncReadEntries(anyLong(), anyLong(), any(AsyncCallback.ReadCallback.class), any());
+    }
+
+    @Test
+    public void testCopyDisabled() throws Exception {
+        conf.setBookieFragmentCopyEnabled(false);
+        assertEquals(BKException.Code.OK, replicate());
+        verify(bookieClient, never()).copyFragment(any(BookieId.class), anyLong(), any(byte[].class),
+                anyLong(), anyLong(), any(CopyFragmentCallback.class), any());
+        verify(lh, times((int) NUM_ENTRIES))
+                .asyncReadEntries(anyLong(), anyLong(), any(AsyncCallback.ReadCallback.class), any());
+    }
+}
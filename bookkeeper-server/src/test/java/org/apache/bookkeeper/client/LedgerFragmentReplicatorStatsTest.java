@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.replication.ReplicationStats.REPLICATION_WRITE_RATE;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test of the stats of {@link LedgerFragmentReplicator}.
+ */
+public class LedgerFragmentReplicatorStatsTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWriteRateGaugeUnregisteredOnClose() throws Exception {
+        StatsLogger statsLogger = mock(StatsLogger.class, AdditionalAnswers.delegatesTo(NullStatsLogger.INSTANCE));
+        BookKeeperAdmin admin = new BookKeeperAdmin(mock(BookKeeper.class), statsLogger, new ClientConfiguration());
+
+        ArgumentCaptor<Gauge<Long>> gauge = ArgumentCaptor.forClass(Gauge.class);
+        verify(statsLogger).registerGauge(eq(REPLICATION_WRITE_RATE), gauge.capture());
+        verify(statsLogger, never()).unregisterGauge(eq(REPLICATION_WRITE_RATE), any());
+
+        admin.close();
+        ArgumentCaptor<Gauge<Long>> unregistered = ArgumentCaptor.forClass(Gauge.class);
+        verify(statsLogger).unregisterGauge(eq(REPLICATION_WRITE_RATE), unregistered.capture());
+        assertSame(gauge.getValue(), unregistered.getValue());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test of the range reads of {@link PendingReadOp}.
+ */
+public class PendingReadOpRangeReadTest {
+
+    private static final long LEDGER_ID = 1;
+
+    private final List<BookieId> ensemble = new ArrayList<>();
+    private ClientConfiguration conf;
+    private BookieClient bookieClient;
+
+    @Before
+    public void setup() {
+        conf = new ClientConfiguration()
+                .setRangeReadEnabled(true)
+                .setSpeculativeReadTimeout(0);
+        bookieClient = mock(BookieClient.class);
+    }
+
+    private PendingReadOp newReadOp(int ensembleSize, int writeQuorumSize, long lastEntryId) {
+        ensemble.clear();
+        for (int i = 0; i < ensembleSize; i++) {
+            ensemble.add(BookieId.parse("bookie" + i + ":3181"));
+        }
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withDigestType(DigestType.CRC32C).withPassword(new byte[0])
+                .withEnsembleSize(ensembleSize).withWriteQuorumSize(writeQuorumSize)
+                .withAckQuorumSize(writeQuorumSize)
+                .newEnsembleEntry(0L, ensemble).build();
+        DistributionSchedule schedule =
+                new RoundRobinDistributionSchedule(writeQuorumSize, writeQuorumSize, ensembleSize);
+
+        LedgerHandle lh = mock(LedgerHandle.class);
+        when(lh.getId()).thenReturn(LEDGER_ID);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.getDistributionSchedule()).thenReturn(schedule);
+        when(lh.getWriteSetForReadOperation(anyLong()))
+                .thenAnswer(invocation -> schedule.getWriteSet(invocation.getArgument(0)));
+
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+
+        return new PendingReadOp(lh, clientCtx, 0, lastEntryId, false);
+    }
+
+    private void verifyRangeRead(int bookieIndex, long firstEntryId, int count) {
+        verify(bookieClient).readEntries(eq(ensemble.get(bookieIndex)), anyLong(), eq(firstEntryId), eq(count),
+                anyLong(), any(ReadEntriesCallback.class), any(), anyInt(), anyBoolean());
+    }
+
+    private void verifyEntryRead(int bookieIndex, long entryId) {
+        verify(bookieClient).readEntry(eq(ensemble.get(bookieIndex)), anyLong(), eq(entryId),
+                any(ReadEntryCallback.class), any(), anyInt());
+    }
+
+    @Test
+    public void testRangeReadFromFullEnsemble() {
+        conf.setRangeReadMaxEntries(4);
+        newReadOp(3, 3, 5).initiate();
+
+        verifyRangeRead(0, 0, 4);
+        verifyRangeRead(1, 4, 2);
+        verify(bookieClient, never()).readEntry(any(), anyLong(), anyLong(), any(ReadEntryCallback.class),
+                any(), anyInt());
+    }
+
+    @Test
+    public void testRangeReadFromStripedEnsemble() {
+        // entry e is stored on the bookies e % 3 and (e + 1) % 3
+        newReadOp(3, 2, 5).initiate();
+
+        verifyRangeRead(1, 0, 2);
+        verifyRangeRead(0, 2, 2);
+        verifyRangeRead(2, 4, 2);
+        verify(bookieClient, never()).readEntry(any(), anyLong(), anyLong(), any(ReadEntryCallback.class),
+                any(), anyInt());
+    }
+
+    @Test
+    public void testFailedRangeReadFallsBackToEntryReads() {
+        PendingReadOp op = newReadOp(3, 2, 5);
+        op.initiate();
+
+        ArgumentCaptor<Object> ctx = ArgumentCaptor.forClass(Object.class);
+        verify(bookieClient, times(3)).readEntries(any(), anyLong(), anyLong(), anyInt(), anyLong(),
+                any(ReadEntriesCallback.class), ctx.capture(), anyInt(), anyBoolean());
+
+        // the second range is rejected, its entries are read one by one from their first replica
+        op.readEntriesComplete(BKException.Code.IllegalOpException, LEDGER_ID, 2,
+                Collections.emptyList(), ctx.getAllValues().get(1));
+        verifyEntryRead(2, 2);
+        verifyEntryRead(0, 3);
+        verify(bookieClient, times(2)).readEntry(any(), anyLong(), anyLong(), any(ReadEntryCallback.class),
+                any(), anyInt());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Test;
+
+/**
+ * Unit test of the reordering of the reads by the read latency of the bookies in
+ * {@link RackawareEnsemblePlacementPolicyImpl}.
+ */
+public class ReorderReadSequenceByLatencyTest {
+
+    private final List<BookieId> ensemble = new ArrayList<>();
+    private final Map<BookieId, Long> latencies = new HashMap<>();
+    private final RackawareEnsemblePlacementPolicyImpl policy = new RackawareEnsemblePlacementPolicyImpl();
+
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return 0L;
+        }
+
+        @Override
+        public long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+            return latencies.getOrDefault(bookieSocketAddress, -1L);
+        }
+    };
+
+    private void setLatencies(long... bookieLatencies) {
+        ensemble.clear();
+        latencies.clear();
+        for (int i = 0; i < bookieLatencies.length; i++) {
+            BookieId bookie = BookieId.parse("bookie" + i + ":3181");
+            ensemble.add(bookie);
+            latencies.put(bookie, bookieLatencies[i]);
+        }
+    }
+
+    private static List<Integer> toList(DistributionSchedule.WriteSet writeSet) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < writeSet.size(); i++) {
+            list.add(writeSet.get(i));
+        }
+        return list;
+    }
+
+    private List<Integer> reorder(Integer... writeSet) {
+        DistributionSchedule.WriteSet ws = RoundRobinDistributionSchedule.writeSetFromValues(writeSet);
+        policy.reorderReadSequenceByLatency(ensemble, healthInfo, ws);
+        return toList(ws);
+    }
+
+    @Test
+    public void testOrderedByLatency() {
+        setLatencies(3000, 1000, 2000);
+        assertEquals(Arrays.asList(1, 2, 0), reorder(0, 1, 2));
+    }
+
+    @Test
+    public void testSimilarLatenciesKeepTheirOrder() {
+        // within the 20% margin
+        setLatencies(1100, 1000, 1050);
+        DistributionSchedule.WriteSet ws = RoundRobinDistributionSchedule.writeSetFromValues(0, 1, 2);
+        assertFalse(policy.reorderReadSequenceByLatency(ensemble, healthInfo, ws));
+        assertEquals(Arrays.asList(0, 1, 2), toList(ws));
+    }
+
+    @Test
+    public void testUnknownLatenciesKeepTheirPosition() {
+        setLatencies(3000, -1, 1000, -1, 2000);
+        assertEquals(Arrays.asList(2, 1, 4, 3, 0), reorder(0, 1, 2, 3, 4));
+
+        // a bookie without samples is not moved ahead of the known ones
+        setLatencies(1000, 2000, -1);
+        DistributionSchedule.WriteSet ws = RoundRobinDistributionSchedule.writeSetFromValues(0, 1, 2);
+        assertFalse(policy.reorderReadSequenceByLatency(ensemble, healthInfo, ws));
+        assertEquals(Arrays.asList(0, 1, 2), toList(ws));
+    }
+
+    @Test
+    public void testProbeRateKeepsTheOriginalOrder() {
+        setLatencies(3000, 1000);
+        policy.reorderReadsLatencyProbeRate = 1.0;
+        DistributionSchedule.WriteSet ws = RoundRobinDistributionSchedule.writeSetFromValues(0, 1);
+        assertFalse(policy.reorderReadSequenceByLatency(ensemble, healthInfo, ws));
+        assertEquals(Arrays.asList(0, 1), toList(ws));
+
+        policy.reorderReadsLatencyProbeRate = 0.0;
+        assertTrue(policy.reorderReadSequenceByLatency(ensemble, healthInfo, ws));
+        assertEquals(Arrays.asList(1, 0), toList(ws));
+    }
+}
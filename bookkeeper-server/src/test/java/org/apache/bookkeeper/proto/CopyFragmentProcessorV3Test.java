@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyFragmentRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.CopyFragmentResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link CopyFragmentProcessorV3}.
+ */
+public class CopyFragmentProcessorV3Test {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] MASTER_KEY = "masterKey".getBytes();
+
+    private EmbeddedChannel channel;
+    private Bookie bookie;
+    private FragmentCopier copier;
+    private BookieRequestProcessor requestProcessor;
+
+    @Before
+    public void setup() {
+        channel = new EmbeddedChannel();
+        bookie = mock(Bookie.class);
+        copier = mock(FragmentCopier.class);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getFragmentCopier()).thenReturn(copier);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+    }
+
+    private static Request newRequest(ProtocolVersion version) {
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(version)
+                        .setOperation(OperationType.COPY_FRAGMENT)
+                        .setTxnId(10L))
+                .setCopyFragmentRequest(CopyFragmentRequest.newBuilder()
+                        .setLedgerId(LEDGER_ID)
+                        .setMasterKey(ByteString.copyFrom(MASTER_KEY))
+                        .setFirstEntryId(5L)
+                        .setLastEntryId(9L))
+                .build();
+    }
+
+    private CopyFragmentResponse process(Request request, StatusCode expectedStatus) {
+        new CopyFragmentProcessorV3(request, channel, requestProcessor).safeRun();
+        Response response = channel.readOutbound();
+        assertEquals(expectedStatus, response.getStatus());
+        assertEquals(10L, response.getHeader().getTxnId());
+        CopyFragmentResponse copyFragmentResponse = response.getCopyFragmentResponse();
+        assertEquals(expectedStatus, copyFragmentResponse.getStatus());
+        assertEquals(LEDGER_ID, copyFragmentResponse.getLedgerId());
+        assertEquals(5L, copyFragmentResponse.getFirstEntryId());
+        return copyFragmentResponse;
+    }
+
+    @Test
+    public void testCopyFragment() {
+        when(copier.copyFragment(LEDGER_ID, MASTER_KEY, 5L, 9L)).thenReturn(CompletableFuture.completedFuture(1024L));
+        CopyFragmentResponse response = process(newRequest(ProtocolVersion.VERSION_THREE), StatusCode.EOK);
+        assertEquals(1024L, response.getBytesCopied());
+    }
+
+    @Test
+    public void testCopyFragmentPassesTheMasterKey() {
+        CompletableFuture<Long> copy = new CompletableFuture<>();
+        when(copier.copyFragment(anyLong(), any(byte[].class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            assertArrayEquals(MASTER_KEY, invocation.getArgument(1));
+            return copy;
+        });
+        new CopyFragmentProcessorV3(newRequest(ProtocolVersion.VERSION_THREE), channel, requestProcessor).safeRun();
+        // no response until the entries are copied
+        assertNull(channel.readOutbound());
+        copy.complete(10L);
+        Response response = channel.readOutbound();
+        assertEquals(StatusCode.EOK, response.getStatus());
+    }
+
+    @Test
+    public void testCopyFailure() {
+        when(copier.copyFragment(LEDGER_ID, MASTER_KEY, 5L, 9L))
+                .thenReturn(FutureUtils.exception(new BKException.BKReplicationException()));
+        CopyFragmentResponse response = process(newRequest(ProtocolVersion.VERSION_THREE), StatusCode.EIO);
+        assertEquals(0L, response.getBytesCopied());
+    }
+
+    @Test
+    public void testNoSuchLedger() {
+        when(copier.copyFragment(LEDGER_ID, MASTER_KEY, 5L, 9L))
+                .thenReturn(FutureUtils.exception(new BKException.BKNoSuchLedgerExistsOnMetadataServerException()));
+        process(newRequest(ProtocolVersion.VERSION_THREE), StatusCode.ENOLEDGER);
+    }
+
+    @Test
+    public void testUnauthorized() {
+        when(copier.copyFragment(LEDGER_ID, MASTER_KEY, 5L, 9L))
+                .thenReturn(FutureUtils.exception(new BKException.BKUnauthorizedAccessException()));
+        process(newRequest(ProtocolVersion.VERSION_THREE), StatusCode.EUA);
+    }
+
+    @Test
+    public void testNoFragmentCopier() {
+        when(requestProcessor.getFragmentCopier()).thenReturn(null);
+        process(newRequest(ProtocolVersion.VERSION_THREE), StatusCode.EBADREQ);
+    }
+
+    @Test
+    public void testReadOnlyBookie() {
+        when(bookie.isReadOnly()).thenReturn(true);
+        process(newRequest(ProtocolVersion.VERSION_THREE), StatusCode.EREADONLY);
+        verify(copier, never()).copyFragment(anyLong(), any(byte[].class), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testIncompatibleVersion() {
+        process(newRequest(ProtocolVersion.VERSION_TWO), StatusCode.EBADVERSION);
+        verify(copier, never()).copyFragment(anyLong(), any(byte[].class), anyLong(), anyLong());
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link FlushCoalescingHandler}.
+ */
+public class FlushCoalescingHandlerTest {
+
+    private int flushes = 0;
+    private boolean closeAfterResponse = false;
+    private ChannelFuture response;
+    private EmbeddedChannel channel;
+
+    /**
+     * Counts the flushes that reach the channel. The messages are held until flushed, as the embedded
+     * channel would otherwise run its pending tasks, including the deferred flushes, on each write.
+     */
+    private class FlushCounter extends ChannelOutboundHandlerAdapter {
+        private final List<Object> messages = new ArrayList<>();
+        private final List<ChannelPromise> promises = new ArrayList<>();
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            messages.add(msg);
+            promises.add(promise);
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes++;
+            for (int i = 0; i < messages.size(); i++) {
+                ctx.write(messages.get(i), promises.get(i));
+            }
+            messages.clear();
+            promises.clear();
+            ctx.flush();
+        }
+
+        @Override
+        public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+            messages.forEach(ReferenceCountUtil::release);
+        }
+    }
+
+    /**
+     * Answers each message read with a flushed response, and then closes the channel if asked to.
+     */
+    private class Responder extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            response = ctx.writeAndFlush(msg);
+            if (closeAfterResponse) {
+                ctx.close();
+            }
+        }
+    }
+
+    private void newChannel(int maxPendingMessages, long maxPendingBytes) {
+        channel = new EmbeddedChannel(new FlushCounter(),
+                new FlushCoalescingHandler(maxPendingMessages, maxPendingBytes), new Responder());
+    }
+
+    @After
+    public void teardown() {
+        channel.finishAndReleaseAll();
+    }
+
+    private static ByteBuf message(int size) {
+        return Unpooled.wrappedBuffer(new byte[size]);
+    }
+
+    @Test
+    public void testFlushesCoalescedUntilQueuedTasksRun() {
+        newChannel(100, 1024 * 1024);
+        channel.writeAndFlush(message(10));
+        channel.writeAndFlush(message(10));
+        channel.writeAndFlush(message(10));
+        assertEquals(0, flushes);
+        assertTrue(channel.outboundMessages().isEmpty());
+
+        channel.runPendingTasks();
+        assertEquals(1, flushes);
+        assertEquals(3, channel.outboundMessages().size());
+
+        // nothing is left to flush
+        channel.runPendingTasks();
+        assertEquals(1, flushes);
+    }
+
+    @Test
+    public void testFlushesCoalescedUntilReadComplete() {
+        newChannel(100, 1024 * 1024);
+        // the responses to all the messages of a read go out together
+        channel.writeInbound(message(10), message(10), message(10));
+        assertEquals(1, flushes);
+        assertEquals(3, channel.outboundMessages().size());
+        channel.runPendingTasks();
+        assertEquals(1, flushes);
+    }
+
+    @Test
+    public void testFlushOnMaxPendingMessages() {
+        newChannel(2, 1024 * 1024);
+        channel.writeAndFlush(message(10));
+        assertEquals(0, flushes);
+        channel.writeAndFlush(message(10));
+        assertEquals(1, flushes);
+        assertEquals(2, channel.outboundMessages().size());
+
+        channel.writeAndFlush(message(10));
+        assertEquals(1, flushes);
+        channel.runPendingTasks();
+        assertEquals(2, flushes);
+        assertEquals(3, channel.outboundMessages().size());
+    }
+
+    @Test
+    public void testFlushOnMaxPendingBytes() {
+        newChannel(100, 100);
+        channel.writeAndFlush(message(60));
+        assertEquals(0, flushes);
+        channel.writeAndFlush(message(60));
+        assertEquals(1, flushes);
+        assertEquals(2, channel.outboundMessages().size());
+    }
+
+    @Test
+    public void testFlushOnClose() {
+        newChannel(100, 1024 * 1024);
+        closeAfterResponse = true;
+        // the channel is closed while reading, before the flush at the end of the read
+        channel.writeInbound(message(10));
+        assertFalse(channel.isOpen());
+        assertEquals(1, flushes);
+        // the response is written, not failed by the close
+        assertTrue(response.isSuccess());
+        assertEquals(1, channel.outboundMessages().size());
+    }
+
+    @Test
+    public void testFlushOnUnwritableChannel() {
+        newChannel(100, 1024 * 1024);
+        channel.writeAndFlush(message(10));
+        assertEquals(0, flushes);
+
+        setUnwritable();
+        // the pending messages are flushed for the channel to become writable again
+        assertEquals(1, flushes);
+        assertEquals(1, channel.outboundMessages().size());
+    }
+
+    @Test
+    public void testNoFlushOnUnwritableChannelWithoutPendingFlush() {
+        newChannel(100, 1024 * 1024);
+        channel.write(message(10));
+        setUnwritable();
+        assertEquals(0, flushes);
+        assertTrue(channel.outboundMessages().isEmpty());
+    }
+
+    private void setUnwritable() {
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        assertFalse(channel.isWritable());
+        // the outbound buffer fires the event later, on the event loop
+        channel.pipeline().fireChannelWritabilityChanged();
+    }
+}
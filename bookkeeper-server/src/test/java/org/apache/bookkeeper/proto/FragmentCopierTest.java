@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link FragmentCopier}.
+ */
+public class FragmentCopierTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] PASSWORD = "password".getBytes();
+    private static final long NUM_ENTRIES = 10;
+
+    private static final BookieId SOURCE1 = BookieId.parse("bookie1:3181");
+    private static final BookieId SOURCE2 = BookieId.parse("bookie2:3181");
+    private static final BookieId FAILED = BookieId.parse("bookie3:3181");
+    private static final BookieId TARGET = BookieId.parse("bookie4:3181");
+
+    private final Map<BookieId, Integer> readErrors = new HashMap<>();
+    // the number of entries returned by a range read, when set
+    private int maxEntriesPerRead = Integer.MAX_VALUE;
+    private int addErrorRc = BookieProtocol.EOK;
+    private final List<Long> addedEntries = new ArrayList<>();
+
+    private DigestManager digestManager;
+    private BookieClient bookieClient;
+    private Bookie bookie;
+    private FragmentCopier copier;
+
+    @Before
+    public void setup() throws Exception {
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withDigestType(DigestType.CRC32C).withPassword(PASSWORD)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .newEnsembleEntry(0L, Arrays.asList(SOURCE1, SOURCE2, FAILED))
+                .withLastEntryId(NUM_ENTRIES - 1).withLength(100).withClosedState()
+                .build();
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.readLedgerMetadata(LEDGER_ID))
+                .thenReturn(CompletableFuture.completedFuture(new Versioned<>(metadata, new LongVersion(0))));
+
+        digestManager = DigestManager.instantiate(LEDGER_ID, PASSWORD,
+                DataFormats.LedgerMetadataFormat.DigestType.CRC32C, UnpooledByteBufAllocator.DEFAULT, false);
+
+        bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            BookieId address = invocation.getArgument(0);
+            long firstEntryId = invocation.getArgument(2);
+            int maxCount = invocation.getArgument(3);
+            ReadEntriesCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            Integer rc = readErrors.get(address);
+            if (null != rc) {
+                cb.readEntriesComplete(rc, LEDGER_ID, firstEntryId, null, ctx);
+                return null;
+            }
+            List<ByteBuf> entries = new ArrayList<>();
+            for (int i = 0; i < Math.min(maxCount, maxEntriesPerRead); i++) {
+                entries.add(newEntry(firstEntryId + i));
+            }
+            cb.readEntriesComplete(BKException.Code.OK, LEDGER_ID, firstEntryId, entries, ctx);
+            return null;
+        }).when(bookieClient).readEntries(any(), eq(LEDGER_ID), anyLong(), anyInt(), anyLong(),
+                any(ReadEntriesCallback.class), any(), anyInt(), anyBoolean());
+
+        bookie = mock(Bookie.class);
+        doAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            WriteCallback cb = invocation.getArgument(1);
+            long entryId = entry.getLong(entry.readerIndex() + 8);
+            synchronized (addedEntries) {
+                addedEntries.add(entryId);
+            }
+            entry.release();
+            cb.writeComplete(addErrorRc, LEDGER_ID, entryId, TARGET, invocation.getArgument(2));
+            return null;
+        }).when(bookie).recoveryAddEntry(any(ByteBuf.class), any(WriteCallback.class), any(), any(byte[].class));
+
+        copier = new FragmentCopier(TARGET, bookie, ledgerManager, bookieClient, UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    private ByteBuf newEntry(long entryId) {
+        ByteBuf data = Unpooled.wrappedBuffer(("entry-" + entryId).getBytes());
+        return ByteBufList.coalesce(
+                digestManager.computeDigestAndPackageForSending(entryId, entryId - 1, 0L, data));
+    }
+
+    private long entriesSize() {
+        long size = 0L;
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf entry = newEntry(entryId);
+            size += entry.readableBytes();
+            entry.release();
+        }
+        return size;
+    }
+
+    private long copyAll() throws Exception {
+        return copier.copyFragment(LEDGER_ID, PASSWORD, 0, NUM_ENTRIES - 1).get(10, TimeUnit.SECONDS);
+    }
+
+    private void verifyReads(BookieId address, int times) {
+        verify(bookieClient, times(times)).readEntries(eq(address), eq(LEDGER_ID), anyLong(), anyInt(), anyLong(),
+                any(ReadEntriesCallback.class), any(), anyInt(), anyBoolean());
+    }
+
+    private static void assertCopyFails(CompletableFuture<Long> copy, int rc) throws Exception {
+        try {
+            copy.get(10, TimeUnit.SECONDS);
+            fail("The copy should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException);
+            assertEquals(rc, ((BKException) e.getCause()).getCode());
+        }
+    }
+
+    @Test
+    public void testCopyFragment() throws Exception {
+        assertEquals(entriesSize(), copyAll());
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), addedEntries);
+        // a single range read from the first bookie of the write set
+        verifyReads(SOURCE1, 1);
+        verifyReads(SOURCE2, 0);
+    }
+
+    @Test
+    public void testCopyFragmentWithPartialReads() throws Exception {
+        maxEntriesPerRead = 3;
+        assertEquals(entriesSize(), copyAll());
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), addedEntries);
+        // the rest of the range is read from the same bookie
+        verifyReads(SOURCE1, 4);
+    }
+
+    @Test
+    public void testSourceReadErrorFallsBackToOtherBookie() throws Exception {
+        readErrors.put(SOURCE1, BKException.Code.ReadException);
+        assertEquals(entriesSize(), copyAll());
+        assertEquals(NUM_ENTRIES, addedEntries.size());
+        verifyReads(SOURCE1, 1);
+        // the next bookie of the write set serves the whole range
+        verifyReads(SOURCE2, 1);
+        verifyReads(FAILED, 0);
+    }
+
+    @Test
+    public void testAllSourcesFailing() throws Exception {
+        readErrors.put(SOURCE1, BKException.Code.ReadException);
+        readErrors.put(SOURCE2, BKException.Code.NoSuchEntryException);
+        readErrors.put(FAILED, BKException.Code.BookieHandleNotAvailableException);
+        assertCopyFails(copier.copyFragment(LEDGER_ID, PASSWORD, 0, NUM_ENTRIES - 1),
+                BKException.Code.ReplicationException);
+        assertTrue(addedEntries.isEmpty());
+    }
+
+    @Test
+    public void testDestinationWriteError() throws Exception {
+        addErrorRc = BookieProtocol.EIO;
+        assertCopyFails(copier.copyFragment(LEDGER_ID, PASSWORD, 0, NUM_ENTRIES - 1),
+                BKException.Code.WriteException);
+    }
+
+    @Test
+    public void testDestinationAddRejected() throws Exception {
+        doAnswer(invocation -> {
+            ((ByteBuf) invocation.getArgument(0)).release();
+            throw new IllegalStateException("rejected");
+        }).when(bookie).recoveryAddEntry(any(ByteBuf.class), any(WriteCallback.class), any(), any(byte[].class));
+        assertCopyFails(copier.copyFragment(LEDGER_ID, PASSWORD, 0, NUM_ENTRIES - 1),
+                BKException.Code.WriteException);
+    }
+}
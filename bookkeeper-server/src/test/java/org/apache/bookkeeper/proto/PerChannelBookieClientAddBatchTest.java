@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the batching of the adds of {@link PerChannelBookieClient} into range adds.
+ */
+public class PerChannelBookieClientAddBatchTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] MASTER_KEY = new byte[0];
+    private static final int MAX_ENTRIES = 3;
+
+    private OrderedExecutor executor;
+    private EmbeddedChannel channel;
+    private PerChannelBookieClient client;
+
+    @Before
+    public void setup() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        // the batches are only sent once full, unless a test says otherwise
+        conf.setAddBatchingWindowMicros(TimeUnit.SECONDS.toMicros(60));
+        conf.setAddBatchingMaxEntries(MAX_ENTRIES);
+        executor = OrderedExecutor.newBuilder().numThreads(1).name("test-executor").build();
+        client = new PerChannelBookieClient(conf, executor, null, BookieId.parse("127.0.0.1:3181"),
+                NullStatsLogger.INSTANCE, null, null, null, null);
+        channel = new EmbeddedChannel();
+        client.channel = channel;
+    }
+
+    @After
+    public void teardown() throws Exception {
+        channel.finishAndReleaseAll();
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Integer> addEntry(long entryId) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        ByteBufList toSend = ByteBufList.get(Unpooled.wrappedBuffer(("entry-" + entryId).getBytes()));
+        client.addEntry(LEDGER_ID, MASTER_KEY, entryId, toSend,
+                (rc, ledgerId, eid, addr, ctx) -> result.complete(rc), null,
+                BookieProtocol.FLAG_NONE, false, EnumSet.noneOf(WriteFlag.class));
+        toSend.release();
+        return result;
+    }
+
+    private List<CompletableFuture<Integer>> addEntries(int numEntries) {
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            results.add(addEntry(entryId));
+        }
+        return results;
+    }
+
+    private static Response.Builder newResponse(Request request, StatusCode status) {
+        return Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(request.getHeader().getOperation())
+                        .setTxnId(request.getHeader().getTxnId()))
+                .setStatus(status);
+    }
+
+    private static int result(CompletableFuture<Integer> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testFullBatchIsSentAsRangeAdd() throws Exception {
+        List<CompletableFuture<Integer>> results = addEntries(MAX_ENTRIES);
+
+        Request request = channel.readOutbound();
+        assertEquals(OperationType.RANGE_ADD_ENTRY, request.getHeader().getOperation());
+        assertEquals(MAX_ENTRIES, request.getRangeAddRequest().getEntryIdCount());
+        assertNull(channel.readOutbound());
+
+        RangeAddResponse.Builder rangeAddResponse = RangeAddResponse.newBuilder()
+                .setStatus(StatusCode.EOK)
+                .setLedgerId(LEDGER_ID);
+        for (long entryId = 0; entryId < MAX_ENTRIES; entryId++) {
+            rangeAddResponse.addEntryId(entryId).addEntryStatus(StatusCode.EOK);
+        }
+        client.channelRead(null, newResponse(request, StatusCode.EOK).setRangeAddResponse(rangeAddResponse).build());
+        for (CompletableFuture<Integer> result : results) {
+            assertEquals(BKException.Code.OK, result(result));
+        }
+    }
+
+    @Test
+    public void testPerEntryStatuses() throws Exception {
+        List<CompletableFuture<Integer>> results = addEntries(MAX_ENTRIES);
+        Request request = channel.readOutbound();
+
+        RangeAddResponse rangeAddResponse = RangeAddResponse.newBuilder()
+                .setStatus(StatusCode.EFENCED)
+                .setLedgerId(LEDGER_ID)
+                .addEntryId(0).addEntryStatus(StatusCode.EOK)
+                .addEntryId(1).addEntryStatus(StatusCode.EFENCED)
+                .addEntryId(2).addEntryStatus(StatusCode.EIO)
+                .build();
+        client.channelRead(null, newResponse(request, StatusCode.EOK).setRangeAddResponse(rangeAddResponse).build());
+        assertEquals(BKException.Code.OK, result(results.get(0)));
+        assertEquals(BKException.Code.LedgerFencedException, result(results.get(1)));
+        assertEquals(BKException.Code.WriteException, result(results.get(2)));
+    }
+
+    @Test
+    public void testFallbackToSingleAddsOnBadRequest() throws Exception {
+        List<CompletableFuture<Integer>> results = addEntries(MAX_ENTRIES);
+        Request request = channel.readOutbound();
+        assertEquals(OperationType.RANGE_ADD_ENTRY, request.getHeader().getOperation());
+
+        // an old bookie does not know the range adds
+        client.channelRead(null, newResponse(request, StatusCode.EBADREQ).build());
+        List<Request> adds = new ArrayList<>();
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            Request add = null;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (add == null && System.nanoTime() < deadline) {
+                add = channel.readOutbound();
+                if (add == null) {
+                    Thread.sleep(10);
+                }
+            }
+            assertEquals(OperationType.ADD_ENTRY, add.getHeader().getOperation());
+            assertEquals(i, add.getAddRequest().getEntryId());
+            adds.add(add);
+        }
+
+        // the next adds are not batched anymore
+        CompletableFuture<Integer> next = addEntry(MAX_ENTRIES);
+        Request nextAdd = channel.readOutbound();
+        assertEquals(OperationType.ADD_ENTRY, nextAdd.getHeader().getOperation());
+        adds.add(nextAdd);
+
+        for (Request add : adds) {
+            client.channelRead(null, newResponse(add, StatusCode.EOK)
+                    .setAddResponse(BookkeeperProtocol.AddResponse.newBuilder()
+                            .setStatus(StatusCode.EOK)
+                            .setLedgerId(LEDGER_ID)
+                            .setEntryId(add.getAddRequest().getEntryId()))
+                    .build());
+        }
+        for (CompletableFuture<Integer> result : results) {
+            assertEquals(BKException.Code.OK, result(result));
+        }
+        assertEquals(BKException.Code.OK, result(next));
+    }
+
+    @Test
+    public void testOpenBatchFailedOnDisconnect() throws Exception {
+        CompletableFuture<Integer> result = addEntry(0);
+        assertNull(channel.readOutbound());
+
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        client.channelInactive(ctx);
+        assertEquals(BKException.Code.BookieHandleNotAvailableException, result(result));
+    }
+
+    @Test
+    public void testOpenBatchFailedOnClose() throws Exception {
+        CompletableFuture<Integer> result = addEntry(0);
+        assertNull(channel.readOutbound());
+
+        client.close(false);
+        assertEquals(BKException.Code.BookieHandleNotAvailableException, result(result));
+    }
+}
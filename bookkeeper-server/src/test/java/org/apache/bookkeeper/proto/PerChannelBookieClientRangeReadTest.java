@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the range reads of {@link PerChannelBookieClient}.
+ */
+public class PerChannelBookieClientRangeReadTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private OrderedExecutor executor;
+    private EmbeddedChannel channel;
+    private PerChannelBookieClient client;
+
+    @Before
+    public void setup() throws Exception {
+        executor = OrderedExecutor.newBuilder().numThreads(1).name("test-executor").build();
+        client = new PerChannelBookieClient(new ClientConfiguration(), executor, null,
+                BookieId.parse("127.0.0.1:3181"), NullStatsLogger.INSTANCE, null, null, null, null);
+        channel = new EmbeddedChannel();
+        client.channel = channel;
+    }
+
+    @After
+    public void teardown() throws Exception {
+        channel.finishAndReleaseAll();
+        executor.shutdown();
+    }
+
+    private static class Result {
+        final CompletableFuture<Integer> rc = new CompletableFuture<>();
+        List<ByteBuf> entries;
+
+        int rc() throws Exception {
+            return rc.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private Result readEntries(long firstEntryId, int maxCount) {
+        Result result = new Result();
+        client.readEntries(LEDGER_ID, firstEntryId, maxCount, 1024 * 1024,
+                (rc, ledgerId, eid, entries, ctx) -> {
+                    result.entries = entries;
+                    result.rc.complete(rc);
+                }, null, BookieProtocol.FLAG_NONE, false);
+        return result;
+    }
+
+    private static Response.Builder newResponse(Request request, StatusCode status) {
+        return Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(request.getHeader().getOperation())
+                        .setTxnId(request.getHeader().getTxnId()))
+                .setStatus(status);
+    }
+
+    private static RangeReadResponse.Builder newRangeReadResponse(StatusCode status, long firstEntryId) {
+        return RangeReadResponse.newBuilder()
+                .setStatus(status)
+                .setLedgerId(LEDGER_ID)
+                .setFirstEntryId(firstEntryId);
+    }
+
+    @Test
+    public void testRangeRead() throws Exception {
+        Result result = readEntries(5, 3);
+        Request request = channel.readOutbound();
+        assertEquals(OperationType.RANGE_READ_ENTRY, request.getHeader().getOperation());
+        assertEquals(5, request.getRangeReadRequest().getFirstEntryId());
+        assertEquals(3, request.getRangeReadRequest().getMaxCount());
+
+        client.channelRead(null, newResponse(request, StatusCode.EOK)
+                .setRangeReadResponse(newRangeReadResponse(StatusCode.EOK, 5)
+                        .addBody(ByteString.copyFromUtf8("entry-5"))
+                        .addBody(ByteString.copyFromUtf8("entry-6")))
+                .build());
+        assertEquals(BKException.Code.OK, result.rc());
+        assertEquals(2, result.entries.size());
+        result.entries.forEach(ByteBuf::release);
+    }
+
+    @Test
+    public void testRejectedRangeReadsAreRemembered() throws Exception {
+        Result result = readEntries(0, 10);
+        Request request = channel.readOutbound();
+        // the answer of a bookie that does not know the operation
+        client.channelRead(null, newResponse(request, StatusCode.EBADREQ).build());
+        assertEquals(BKException.Code.IllegalOpException, result.rc());
+
+        // the next range reads fail without asking the bookie
+        result = readEntries(10, 10);
+        assertEquals(BKException.Code.IllegalOpException, result.rc());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testOtherErrorsAreNotRemembered() throws Exception {
+        Result result = readEntries(0, 10);
+        Request request = channel.readOutbound();
+        client.channelRead(null, newResponse(request, StatusCode.EOK)
+                .setRangeReadResponse(newRangeReadResponse(StatusCode.ENOENTRY, 0))
+                .build());
+        assertEquals(BKException.Code.NoSuchEntryException, result.rc());
+
+        readEntries(10, 10);
+        assertNotNull(channel.readOutbound());
+    }
+}
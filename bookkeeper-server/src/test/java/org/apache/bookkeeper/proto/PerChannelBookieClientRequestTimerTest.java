@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the request timeouts of {@link PerChannelBookieClient} scheduled on a timer.
+ */
+public class PerChannelBookieClientRequestTimerTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private OrderedExecutor executor;
+    private EmbeddedChannel channel;
+    private Timer timer;
+    // the tasks scheduled on the timer, and their timeouts
+    private final List<TimerTask> tasks = new ArrayList<>();
+    private final List<Timeout> timeouts = new ArrayList<>();
+    private PerChannelBookieClient client;
+
+    @Before
+    public void setup() throws Exception {
+        timer = mock(Timer.class);
+        when(timer.newTimeout(any(TimerTask.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            Timeout timeout = mock(Timeout.class);
+            tasks.add(invocation.getArgument(0));
+            timeouts.add(timeout);
+            return timeout;
+        });
+
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setReadEntryTimeout(7);
+        conf.setGetBookieInfoTimeout(3);
+        executor = OrderedExecutor.newBuilder().numThreads(1).name("test-executor").build();
+        client = new PerChannelBookieClient(conf, executor, null, null, BookieId.parse("127.0.0.1:3181"),
+                NullStatsLogger.INSTANCE, null, null, null, null, null, timer);
+        channel = new EmbeddedChannel();
+        client.channel = channel;
+    }
+
+    @After
+    public void teardown() throws Exception {
+        channel.finishAndReleaseAll();
+        executor.shutdown();
+    }
+
+    private CompletableFuture<Integer> readEntry(long entryId, AtomicInteger callbacks) {
+        CompletableFuture<Integer> rc = new CompletableFuture<>();
+        client.readEntry(LEDGER_ID, entryId, (code, ledgerId, eid, buffer, ctx) -> {
+            callbacks.incrementAndGet();
+            rc.complete(code);
+        }, null, BookieProtocol.FLAG_NONE, null, false);
+        return rc;
+    }
+
+    private void expire(int i) throws Exception {
+        tasks.get(i).run(timeouts.get(i));
+    }
+
+    // wait for the callbacks already queued on the executor
+    private void drainExecutor() throws Exception {
+        executor.submitOrdered(LEDGER_ID, () -> null).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testRequestTimesOut() throws Exception {
+        AtomicInteger callbacks = new AtomicInteger();
+        CompletableFuture<Integer> rc = readEntry(0, callbacks);
+        verify(timer).newTimeout(any(TimerTask.class), eq(TimeUnit.SECONDS.toNanos(7)), eq(TimeUnit.NANOSECONDS));
+
+        expire(0);
+        assertEquals(BKException.Code.TimeoutException, (int) rc.get(10, TimeUnit.SECONDS));
+
+        // a duplicate expiry does not complete the request again
+        expire(0);
+        drainExecutor();
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test
+    public void testResponseCancelsTimeout() throws Exception {
+        AtomicInteger callbacks = new AtomicInteger();
+        CompletableFuture<Integer> rc = readEntry(0, callbacks);
+        Request request = channel.readOutbound();
+
+        client.channelRead(null, Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(request.getHeader().getOperation())
+                        .setTxnId(request.getHeader().getTxnId()))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(ReadResponse.newBuilder()
+                        .setStatus(StatusCode.ENOENTRY)
+                        .setLedgerId(LEDGER_ID)
+                        .setEntryId(0))
+                .build());
+        assertEquals(BKException.Code.NoSuchEntryException, (int) rc.get(10, TimeUnit.SECONDS));
+        verify(timeouts.get(0)).cancel();
+
+        // the task of a timeout cancelled too late is ignored
+        expire(0);
+        drainExecutor();
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test
+    public void testOnlyExpiredRequestTimesOut() throws Exception {
+        AtomicInteger callbacks = new AtomicInteger();
+        CompletableFuture<Integer> first = readEntry(0, callbacks);
+        CompletableFuture<Integer> second = readEntry(1, callbacks);
+
+        expire(1);
+        assertEquals(BKException.Code.TimeoutException, (int) second.get(10, TimeUnit.SECONDS));
+        drainExecutor();
+        assertEquals(1, callbacks.get());
+        verify(timeouts.get(0), never()).cancel();
+
+        // the pending request is still failed when the channel goes away, which cancels its timeout
+        client.errorOutOutstandingEntries(BKException.Code.BookieHandleNotAvailableException);
+        assertEquals(BKException.Code.BookieHandleNotAvailableException, (int) first.get(10, TimeUnit.SECONDS));
+        verify(timeouts.get(0)).cancel();
+    }
+
+    @Test
+    public void testTimeoutOfOperation() throws Exception {
+        CompletableFuture<Integer> rc = new CompletableFuture<>();
+        client.getBookieInfo(0, (code, info, ctx) -> rc.complete(code), null);
+        verify(timer).newTimeout(any(TimerTask.class), eq(TimeUnit.SECONDS.toNanos(3)), eq(TimeUnit.NANOSECONDS));
+
+        expire(0);
+        assertEquals(BKException.Code.TimeoutException, (int) rc.get(10, TimeUnit.SECONDS));
+    }
+}
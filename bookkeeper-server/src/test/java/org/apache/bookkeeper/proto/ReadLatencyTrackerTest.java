@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ReadLatencyTracker}.
+ */
+public class ReadLatencyTrackerTest {
+
+    @Test
+    public void testNoSamples() {
+        ReadLatencyTracker tracker = new ReadLatencyTracker();
+        assertEquals(-1L, tracker.getAverageNanos());
+        assertEquals(-1L, tracker.getRecentPercentileNanos(99.0));
+    }
+
+    @Test
+    public void testPercentilesOfRecentSamples() {
+        ReadLatencyTracker tracker = new ReadLatencyTracker();
+        tracker.record(100);
+        assertEquals(100L, tracker.getAverageNanos());
+        assertEquals(100L, tracker.getRecentPercentileNanos(50.0));
+
+        for (long latency = 1; latency <= 100; latency++) {
+            tracker.record(latency);
+        }
+        // only the 64 most recent samples, 37 to 100, are kept
+        assertEquals(37L, tracker.getRecentPercentileNanos(0.0));
+        assertEquals(68L, tracker.getRecentPercentileNanos(50.0));
+        assertEquals(100L, tracker.getRecentPercentileNanos(100.0));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        ReadLatencyTracker tracker = new ReadLatencyTracker();
+        int numThreads = 4;
+        CyclicBarrier barrier = new CyclicBarrier(numThreads + 1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int i = 0; i < 10000; i++) {
+                        tracker.record(1000 + i % 100);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        barrier.await();
+        for (int i = 0; i < 1000; i++) {
+            long p99 = tracker.getRecentPercentileNanos(99.0);
+            assertTrue(p99 == -1L || (p99 >= 1000 && p99 < 1100));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long average = tracker.getAverageNanos();
+        assertTrue(average >= 1000 && average < 1100);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_CLIENT_QUEUED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+
+/**
+ * Unit test of {@link RequestAdmissionController}.
+ */
+public class RequestAdmissionControllerTest {
+
+    private StatsLogger clientStatsLogger;
+    private RequestAdmissionController controller;
+    private final List<String> processed = new ArrayList<>();
+    private final List<String> rejected = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        StatsLogger statsLogger = mock(StatsLogger.class, AdditionalAnswers.delegatesTo(NullStatsLogger.INSTANCE));
+        clientStatsLogger = mock(StatsLogger.class, AdditionalAnswers.delegatesTo(NullStatsLogger.INSTANCE));
+        when(statsLogger.scopeLabel(anyString(), anyString())).thenReturn(clientStatsLogger);
+        RequestStats requestStats = new RequestStats(statsLogger);
+        controller = new RequestAdmissionController("add", 2, 3, Collections.emptyMap(),
+                requestStats.getAddAdmissionStats());
+    }
+
+    private void admit(EmbeddedChannel channel, String request) {
+        controller.admit(channel, () -> processed.add(request), () -> rejected.add(request));
+    }
+
+    @Test
+    public void testQueueAndRejectBeyondLimits() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        admit(channel, "r1");
+        admit(channel, "r2");
+        assertEquals(2, processed.size());
+        assertTrue(channel.config().isAutoRead());
+
+        // queued, the channel stops reading
+        for (int i = 3; i <= 5; i++) {
+            admit(channel, "r" + i);
+        }
+        assertEquals(2, processed.size());
+        assertFalse(channel.config().isAutoRead());
+
+        // the channel has too many queued requests
+        admit(channel, "r6");
+        assertEquals(Collections.singletonList("r6"), rejected);
+        controller.release();
+
+        // a completed request admits the next queued one, on the event loop of the channel
+        controller.release();
+        channel.runPendingTasks();
+        assertEquals(3, processed.size());
+        assertEquals("r3", processed.get(2));
+
+        controller.release();
+        controller.release();
+        channel.runPendingTasks();
+        assertEquals(5, processed.size());
+        assertTrue(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testRequestsOfAChannelKeepTheirOrder() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        admit(channel, "r1");
+        admit(channel, "r2");
+        admit(channel, "r3");
+
+        // r3 is admitted, but only runs later on the event loop
+        controller.release();
+        assertEquals(2, processed.size());
+
+        // a slot is free and nothing is queued, but r4 still runs after r3
+        controller.release();
+        admit(channel, "r4");
+        assertEquals(2, processed.size());
+
+        channel.runPendingTasks();
+        assertEquals(4, processed.size());
+        assertEquals("r3", processed.get(2));
+        assertEquals("r4", processed.get(3));
+
+        // back to running inline
+        controller.release();
+        controller.release();
+        admit(channel, "r5");
+        assertEquals(5, processed.size());
+        channel.finishAndReleaseAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testClientRemovedOnceItsLastChannelIsClosed() {
+        EmbeddedChannel channel1 = new EmbeddedChannel();
+        EmbeddedChannel channel2 = new EmbeddedChannel();
+        admit(channel1, "r1");
+        admit(channel2, "r2");
+        admit(channel2, "r3");
+        verify(clientStatsLogger).registerGauge(anyString(), any(Gauge.class));
+
+        channel1.close();
+        verify(clientStatsLogger, never()).unregisterGauge(anyString(), any(Gauge.class));
+
+        // the last channel is closed, but the client still has a queued request
+        channel2.close();
+        verify(clientStatsLogger, never()).unregisterGauge(anyString(), any(Gauge.class));
+
+        controller.release();
+        verify(clientStatsLogger).unregisterGauge(eq(ADD_ENTRY_CLIENT_QUEUED), any(Gauge.class));
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.LedgerMetadataBuilder;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.replication.ReplicationException.BKAuditException;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link BookieLedgerIndex}.
+ */
+public class BookieLedgerIndexTest {
+
+    private static final long ZK_OP_TIMEOUT_MS = 200;
+
+    private final Map<Long, Versioned<LedgerMetadata>> metadatas = new HashMap<>();
+    private final Map<Long, Integer> reads = new HashMap<>();
+    private final List<Runnable> pendingReads = new ArrayList<>();
+    private LedgerManager ledgerManager;
+    private long version = 0;
+    // whether the metadata reads complete right away
+    private boolean completeReads = true;
+    private boolean failReads = false;
+
+    @Before
+    public void setup() {
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> {
+            Iterator<LedgerRange> ranges = Lists.newArrayList(new LedgerRange(metadatas.keySet())).iterator();
+            return new LedgerRangeIterator() {
+                @Override
+                public boolean hasNext() {
+                    return ranges.hasNext();
+                }
+
+                @Override
+                public LedgerRange next() {
+                    return ranges.next();
+                }
+            };
+        });
+        when(ledgerManager.readLedgerMetadata(anyLong())).thenAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(0);
+            reads.merge(ledgerId, 1, Integer::sum);
+            CompletableFuture<Versioned<LedgerMetadata>> future = new CompletableFuture<>();
+            Runnable read = () -> {
+                Versioned<LedgerMetadata> metadata = metadatas.get(ledgerId);
+                if (failReads) {
+                    future.completeExceptionally(new BKException.ZKException());
+                } else if (null == metadata) {
+                    future.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+                } else {
+                    future.complete(metadata);
+                }
+            };
+            if (completeReads) {
+                read.run();
+            } else {
+                pendingReads.add(read);
+            }
+            return future;
+        });
+    }
+
+    private static List<BookieId> ensemble(String... bookies) {
+        List<BookieId> ensemble = Lists.newArrayList();
+        for (String bookie : bookies) {
+            ensemble.add(BookieId.parse(bookie));
+        }
+        return ensemble;
+    }
+
+    private void putLedger(long ledgerId, List<BookieId> ensemble) {
+        putLedger(ledgerId, ensemble, false);
+    }
+
+    private void putLedger(long ledgerId, List<BookieId> ensemble, boolean closed) {
+        LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withDigestType(DigestType.CRC32C).withPassword(new byte[0])
+                .withEnsembleSize(ensemble.size()).withWriteQuorumSize(ensemble.size())
+                .withAckQuorumSize(ensemble.size())
+                .newEnsembleEntry(0L, ensemble);
+        if (closed) {
+            builder.withClosedState().withLastEntryId(10L).withLength(100L);
+        }
+        metadatas.put(ledgerId, new Versioned<>(builder.build(), new LongVersion(version++)));
+    }
+
+    private void completePendingReads() {
+        List<Runnable> toComplete = new ArrayList<>(pendingReads);
+        pendingReads.clear();
+        toComplete.forEach(Runnable::run);
+    }
+
+    @Test
+    public void testRefreshIndexesNewLedgers() throws Exception {
+        putLedger(1, ensemble("bookie1:3181", "bookie2:3181"));
+        putLedger(2, ensemble("bookie2:3181", "bookie3:3181"));
+
+        BookieLedgerIndex index = new BookieLedgerIndex(ledgerManager, ZK_OP_TIMEOUT_MS);
+        index.refresh();
+        assertEquals(Sets.newHashSet("bookie1:3181", "bookie2:3181", "bookie3:3181"), index.getBookies());
+        assertEquals(Sets.newHashSet(1L), index.getLedgers("bookie1:3181"));
+        assertEquals(Sets.newHashSet(1L, 2L), index.getLedgers("bookie2:3181"));
+        assertEquals(Sets.newHashSet(2L), index.getLedgers("bookie3:3181"));
+
+        putLedger(3, ensemble("bookie4:3181"));
+        index.refresh();
+        assertEquals(Sets.newHashSet(3L), index.getLedgers("bookie4:3181"));
+        index.close();
+
+        // no metadata watch is kept on the ledgers
+        verify(ledgerManager, never()).registerLedgerMetadataListener(anyLong(), any(LedgerMetadataListener.class));
+    }
+
+    @Test
+    public void testOpenLedgerChangesAreApplied() throws Exception {
+        putLedger(1, ensemble("bookie1:3181", "bookie2:3181"));
+        putLedger(2, ensemble("bookie2:3181"));
+
+        BookieLedgerIndex index = new BookieLedgerIndex(ledgerManager, ZK_OP_TIMEOUT_MS);
+        index.refresh();
+
+        // ensemble change, then close
+        putLedger(1, ensemble("bookie1:3181", "bookie3:3181"), true);
+        index.refresh();
+        assertEquals(Sets.newHashSet(1L), index.getLedgers("bookie3:3181"));
+        assertEquals(Sets.newHashSet(2L), index.getLedgers("bookie2:3181"));
+        assertEquals(2, (int) reads.get(1L));
+
+        // the closed ledger is no longer read
+        index.refresh();
+        assertEquals(2, (int) reads.get(1L));
+        assertEquals(3, (int) reads.get(2L));
+        index.close();
+    }
+
+    @Test
+    public void testClosedLedgersOfLostBookiesAreReRead() throws Exception {
+        putLedger(1, ensemble("bookie1:3181", "bookie2:3181"), true);
+        putLedger(2, ensemble("bookie2:3181", "bookie3:3181"), true);
+
+        BookieLedgerIndex index = new BookieLedgerIndex(ledgerManager, ZK_OP_TIMEOUT_MS);
+        index.refresh();
+
+        // bookie1 is lost, and its fragments are re-replicated to bookie4
+        putLedger(1, ensemble("bookie4:3181", "bookie2:3181"), true);
+        index.refresh();
+        assertEquals(Sets.newHashSet(1L), index.getLedgers("bookie1:3181"));
+
+        index.refreshLedgers(Collections.singleton("bookie1:3181"));
+        assertEquals(Sets.newHashSet("bookie2:3181", "bookie3:3181", "bookie4:3181"), index.getBookies());
+        assertEquals(Sets.newHashSet(1L), index.getLedgers("bookie4:3181"));
+        assertEquals(2, (int) reads.get(1L));
+        // the ledgers not stored on the lost bookie are not read again
+        assertEquals(1, (int) reads.get(2L));
+        index.close();
+    }
+
+    @Test
+    public void testDeletedLedgersAreDropped() throws Exception {
+        putLedger(1, ensemble("bookie1:3181"));
+        putLedger(2, ensemble("bookie2:3181"));
+        putLedger(3, ensemble("bookie3:3181"));
+
+        BookieLedgerIndex index = new BookieLedgerIndex(ledgerManager, ZK_OP_TIMEOUT_MS);
+        index.refresh();
+
+        // no longer listed
+        metadatas.remove(2L);
+        index.refresh();
+        assertEquals(Sets.newHashSet("bookie1:3181", "bookie3:3181"), index.getBookies());
+
+        // deleted between the listing and the metadata read
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> {
+            Iterator<LedgerRange> ranges = Lists.newArrayList(
+                    new LedgerRange(Sets.newHashSet(1L, 3L))).iterator();
+            return new LedgerRangeIterator() {
+                @Override
+                public boolean hasNext() {
+                    return ranges.hasNext();
+                }
+
+                @Override
+                public LedgerRange next() {
+                    return ranges.next();
+                }
+            };
+        });
+        metadatas.remove(3L);
+        index.refresh();
+        assertEquals(Sets.newHashSet("bookie1:3181"), index.getBookies());
+        assertTrue(index.getLedgers("bookie3:3181").isEmpty());
+        index.close();
+    }
+
+    @Test
+    public void testRefreshFailsOnMetadataReadError() throws Exception {
+        putLedger(1, ensemble("bookie1:3181"));
+        failReads = true;
+
+        BookieLedgerIndex index = new BookieLedgerIndex(ledgerManager, ZK_OP_TIMEOUT_MS);
+        try {
+            index.refresh();
+            fail("The refresh should fail");
+        } catch (BKAuditException bke) {
+            // expected
+        }
+
+        // the ledger is read again by the next refresh
+        failReads = false;
+        index.refresh();
+        assertEquals(Sets.newHashSet(1L), index.getLedgers("bookie1:3181"));
+        index.close();
+    }
+
+    @Test
+    public void testRefreshTimesOutOnMissingMetadata() throws Exception {
+        putLedger(1, ensemble("bookie1:3181"));
+        putLedger(2, ensemble("bookie2:3181"));
+        completeReads = false;
+
+        BookieLedgerIndex index = new BookieLedgerIndex(ledgerManager, ZK_OP_TIMEOUT_MS);
+        try {
+            index.refresh();
+            fail("The refresh should time out");
+        } catch (BKAuditException bke) {
+            // expected
+        }
+
+        // the metadata comes in late, and is indexed
+        completePendingReads();
+        assertEquals(Sets.newHashSet("bookie1:3181", "bookie2:3181"), index.getBookies());
+        completeReads = true;
+        index.refresh();
+        assertEquals(Sets.newHashSet("bookie1:3181", "bookie2:3181"), index.getBookies());
+        index.close();
+    }
+
+    @Test
+    public void testRefreshTimesOutWithTooManyPendingReads() throws Exception {
+        List<BookieId> ensemble = ensemble("bookie1:3181");
+        for (long ledgerId = 0; ledgerId <= 1000; ledgerId++) {
+            putLedger(ledgerId, ensemble);
+        }
+        completeReads = false;
+
+        BookieLedgerIndex index = new BookieLedgerIndex(ledgerManager, ZK_OP_TIMEOUT_MS);
+        try {
+            index.refresh();
+            fail("The refresh should time out");
+        } catch (BKAuditException bke) {
+            // expected
+        }
+        assertEquals(1000, pendingReads.size());
+        index.close();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.replication;
+
+import static org.apache.bookkeeper.replication.ReplicationStats.NUM_LEDGERS_REPLICATING;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Sets;
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BooleanSupplier;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.BookKeeperClientStats;
+import org.apache.bookkeeper.client.ClientContext;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManagerFactory;
+import org.apache.bookkeeper.meta.LedgerUnderreplicationManager;
+import org.apache.bookkeeper.replication.ReplicationException.UnavailableException;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test of the concurrent rereplication of the ledgers by {@link ReplicationWorker}.
+ *
+ * <p>The rereplication of a ledger stays in the read of its metadata until the test completes it.
+ */
+public class ReplicationWorkerConcurrencyTest {
+
+    private static final int CONCURRENCY = 3;
+    private static final long TIMEOUT_MS = 30000;
+
+    private final BlockingQueue<Long> underreplicated = new LinkedBlockingQueue<>();
+    private final Set<Long> locked = ConcurrentHashMap.newKeySet();
+    private final Set<Long> replicated = ConcurrentHashMap.newKeySet();
+    private final Map<Long, CompletableFuture<Versioned<LedgerMetadata>>> metadataReads = new ConcurrentHashMap<>();
+    private StatsLogger statsLogger;
+    private ReplicationWorker worker;
+
+    @Before
+    public void setup() throws Exception {
+        LedgerUnderreplicationManager underreplicationManager = mock(LedgerUnderreplicationManager.class);
+        when(underreplicationManager.getLedgerToRereplicate()).thenAnswer(invocation -> {
+            try {
+                long ledgerId = underreplicated.take();
+                assertTrue(locked.add(ledgerId));
+                return ledgerId;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new UnavailableException("Interrupted while waiting for a ledger", ie);
+            }
+        });
+        doAnswer(invocation -> {
+            locked.remove((long) invocation.getArgument(0));
+            return null;
+        }).when(underreplicationManager).releaseUnderreplicatedLedger(anyLong());
+        doAnswer(invocation -> {
+            replicated.add(invocation.getArgument(0));
+            return null;
+        }).when(underreplicationManager).markLedgerReplicated(anyLong());
+
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.readLedgerMetadata(anyLong())).thenAnswer(invocation ->
+                metadataReads.computeIfAbsent(invocation.getArgument(0), ledgerId -> new CompletableFuture<>()));
+
+        LedgerManagerFactory ledgerManagerFactory = mock(LedgerManagerFactory.class);
+        when(ledgerManagerFactory.newLedgerUnderreplicationManager()).thenReturn(underreplicationManager);
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        ClientConfiguration clientConf = new ClientConfiguration();
+
+        // the client is invoked concurrently from the slots, so it is not stubbed lazily
+        BookKeeper bkc = mock(BookKeeper.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "getLedgerManagerFactory":
+                    return ledgerManagerFactory;
+                case "getLedgerManager":
+                    return ledgerManager;
+                case "getClientCtx":
+                    return clientCtx;
+                case "getConf":
+                    return clientConf;
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+            }
+        });
+        // the ledger open reads the recovery digest type from the configuration field of the client
+        Field conf = BookKeeper.class.getDeclaredField("conf");
+        conf.setAccessible(true);
+        conf.set(bkc, clientConf);
+
+        ServerConfiguration serverConf = new ServerConfiguration();
+        serverConf.setRwRereplicateConcurrency(CONCURRENCY);
+        serverConf.setRwRereplicateBackoffMs(10);
+        statsLogger = mock(StatsLogger.class, AdditionalAnswers.delegatesTo(NullStatsLogger.INSTANCE));
+        worker = new ReplicationWorker(serverConf, bkc, false, statsLogger);
+    }
+
+    @After
+    public void teardown() {
+        if (null != worker) {
+            worker.shutdown();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Gauge<Integer> numLedgersReplicatingGauge() {
+        ArgumentCaptor<Gauge<Integer>> gauge = ArgumentCaptor.forClass(Gauge.class);
+        verify(statsLogger).registerGauge(eq(NUM_LEDGERS_REPLICATING), gauge.capture());
+        return gauge.getValue();
+    }
+
+    private void completeRead(long ledgerId, BKException exception) {
+        metadataReads.get(ledgerId).completeExceptionally(exception);
+    }
+
+    @Test
+    public void testLedgersRereplicatedConcurrently() throws Exception {
+        Gauge<Integer> replicating = numLedgersReplicatingGauge();
+        for (long ledgerId = 1; ledgerId <= CONCURRENCY + 1; ledgerId++) {
+            underreplicated.add(ledgerId);
+        }
+        worker.start();
+
+        // a ledger per slot, the next ledger waits for a free slot
+        waitFor(() -> metadataReads.size() == CONCURRENCY, "the rereplication of a ledger per slot");
+        assertEquals(Sets.newHashSet(1L, 2L, 3L), locked);
+        assertEquals(CONCURRENCY, (int) replicating.getSample());
+        Thread.sleep(100);
+        assertEquals(CONCURRENCY, metadataReads.size());
+        assertEquals(1, underreplicated.size());
+
+        // success: the deleted ledger is marked replicated, and its lock released
+        completeRead(1L, new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+        waitFor(() -> metadataReads.containsKey(4L), "the next ledger to take the free slot");
+        assertEquals(Sets.newHashSet(1L), replicated);
+        assertFalse(locked.contains(1L));
+
+        // failure: the lock is released for another worker to retry
+        completeRead(2L, new BKException.ZKException());
+        waitFor(() -> !locked.contains(2L), "the lock release of the failed ledger");
+        assertEquals(Sets.newHashSet(1L), replicated);
+
+        completeRead(3L, new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+        completeRead(4L, new BKException.ZKException());
+        waitFor(() -> locked.isEmpty() && replicating.getSample() == 0, "all the slots to be free");
+        assertEquals(Sets.newHashSet(1L, 3L), replicated);
+        assertTrue(worker.isRunning());
+    }
+
+    @Test
+    public void testShutdownWhileSlotsBusy() throws Exception {
+        Gauge<Integer> replicating = numLedgersReplicatingGauge();
+        for (long ledgerId = 1; ledgerId <= CONCURRENCY + 1; ledgerId++) {
+            underreplicated.add(ledgerId);
+        }
+        worker.start();
+        waitFor(() -> metadataReads.size() == CONCURRENCY, "the rereplication of a ledger per slot");
+
+        worker.shutdown();
+        assertFalse(worker.isRunning());
+        // the ledgers being rereplicated are interrupted, and release their locks and slots
+        assertTrue(locked.isEmpty());
+        assertEquals(0, (int) replicating.getSample());
+        assertTrue(replicated.isEmpty());
+        // the ledger waiting for a slot is left to the other workers
+        assertEquals(new HashSet<>(underreplicated), Sets.newHashSet(4L));
+    }
+}
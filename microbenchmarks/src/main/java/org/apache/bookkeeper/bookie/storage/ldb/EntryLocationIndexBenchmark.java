@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the per-entry and the range encoded layouts of the {@link EntryLocationIndex}.
+ *
+ * <p>Each flush simulates a checkpoint of the write cache, where the entries of several ledgers were
+ * interleaved in the same entry log. The number of records and the size of the index on disk are
+ * printed at the end of each trial.
+ *
+ * <p>The benchmark needs to be started from the root of the distribution, where the RocksDB
+ * configuration files are found in {@code conf/}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class EntryLocationIndexBenchmark {
+
+    private static final int ENTRY_SIZE = 1024;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Thread)
+    public static class TestState {
+
+        @Param({"false", "true"})
+        boolean rangeEncoding;
+
+        @Param({"10", "1000"})
+        int ledgers;
+
+        @Param({"100"})
+        int entriesPerLedger;
+
+        File dir;
+        EntryLocationIndex index;
+
+        long entryLogId = 0;
+        long offset = 0;
+        long nextEntryId = 0;
+        long[] locations;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            dir = Files.createTempDirectory("entry-location-index").toFile();
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setProperty(DbLedgerStorage.LOCATION_INDEX_RANGE_ENCODING, rangeEncoding);
+            index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, dir.getAbsolutePath(),
+                    NullStatsLogger.INSTANCE);
+            locations = new long[ledgers * entriesPerLedger];
+
+            // Have some entries to lookup
+            for (int i = 0; i < 10; i++) {
+                flush();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            long records = index.getLocationsDb().count();
+            index.close();
+
+            long diskSize;
+            try (Stream<Path> files = Files.walk(dir.toPath())) {
+                diskSize = files.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+            }
+            System.out.printf("%nrangeEncoding=%s ledgers=%d entries=%d -- records: %d -- disk size: %d bytes%n",
+                    rangeEncoding, ledgers, ledgers * nextEntryId, records, diskSize);
+
+            try (Stream<Path> files = Files.walk(dir.toPath())) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+
+        void flush() throws IOException {
+            // Entries are appended to the entry log as they arrive, interleaving the ledgers
+            for (int e = 0; e < entriesPerLedger; e++) {
+                for (int l = 0; l < ledgers; l++) {
+                    locations[l * entriesPerLedger + e] = (entryLogId << 32) | (offset + 4);
+                    offset += ENTRY_SIZE;
+                }
+            }
+
+            // The write cache is flushed sorted by ledger and entry
+            Batch batch = index.newBatch();
+            for (int l = 0; l < ledgers; l++) {
+                for (int e = 0; e < entriesPerLedger; e++) {
+                    index.addLocation(batch, l, nextEntryId + e, locations[l * entriesPerLedger + e]);
+                }
+            }
+            batch.flush();
+            batch.close();
+
+            nextEntryId += entriesPerLedger;
+            if (offset > Integer.MAX_VALUE / 2) {
+                ++entryLogId;
+                offset = 0;
+            }
+        }
+    }
+
+    @Benchmark
+    public void flush(TestState s) throws Exception {
+        s.flush();
+    }
+
+    @Benchmark
+    public long getLocation(TestState s) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return s.index.getLocation(random.nextInt(s.ledgers), random.nextLong(s.nextEntryId));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the {@link ReadCache} lookups with 1 to 64 concurrent readers.
+ *
+ * <p>The readers look up random entries of the ledgers written in the cache, while a small
+ * fraction of the operations keep adding new entries so that the segments get rotated.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+public class ReadCacheBenchmark {
+
+    private static final int ENTRY_SIZE = 1024;
+    private static final int ENTRIES_PER_LEDGER = 1000;
+    private static final long CACHE_SIZE = 256L * 1024 * 1024;
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({"1", "16"})
+        int shards;
+
+        @Param({"100"})
+        int ledgers;
+
+        // percentage of the operations adding an entry to the cache
+        @Param({"1"})
+        int writePercent;
+
+        ReadCache cache;
+        ByteBuf entry;
+
+        @Setup
+        public void setup() {
+            cache = new ReadCache(PooledByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE, shards);
+            entry = Unpooled.directBuffer(ENTRY_SIZE, ENTRY_SIZE);
+            entry.writerIndex(ENTRY_SIZE);
+            for (long ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                for (long entryId = 0; entryId < ENTRIES_PER_LEDGER; entryId++) {
+                    cache.put(ledgerId, entryId, entry);
+                }
+            }
+        }
+
+        @TearDown
+        public void teardown() {
+            cache.close();
+            entry.release();
+        }
+    }
+
+    private static boolean readOrWrite(TestState s) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long ledgerId = random.nextInt(s.ledgers);
+        long entryId = random.nextInt(ENTRIES_PER_LEDGER);
+        if (random.nextInt(100) < s.writePercent) {
+            s.cache.put(ledgerId, entryId, s.entry);
+            return true;
+        }
+        ByteBuf res = s.cache.get(ledgerId, entryId);
+        if (res == null) {
+            return false;
+        }
+        res.release();
+        return true;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean readers01(TestState s) {
+        return readOrWrite(s);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean readers04(TestState s) {
+        return readOrWrite(s);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean readers16(TestState s) {
+        return readOrWrite(s);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean readers64(TestState s) {
+        return readOrWrite(s);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the two ways {@link PerChannelBookieClient} can time out pending requests.
+ *
+ * <p>Each invocation completes the oldest outstanding request and issues a new one, keeping
+ * the number of outstanding requests constant:
+ * <ul>
+ * <li>{@code scan}: the timeout monitor scans all the outstanding requests once every
+ * {@link #REQUESTS_PER_MONITOR_RUN} requests, so its amortized cost grows with the number of
+ * outstanding requests.</li>
+ * <li>{@code wheel}: every request schedules its timeout on a hashed wheel timer and cancels it
+ * on completion, so its cost does not depend on the number of outstanding requests.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class RequestTimeoutBenchmark {
+
+    static final int REQUESTS_PER_MONITOR_RUN = 1000;
+
+    // long enough for no request to expire during the benchmark
+    private static final long TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    @Param({"1000", "10000", "100000"})
+    int outstanding;
+
+    @Param({"scan", "wheel"})
+    String mode;
+
+    private static final class PendingRequest {
+        final long startTime;
+        Timeout timeout;
+
+        PendingRequest(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+
+    private final BiPredicate<Long, PendingRequest> timeoutCheck =
+            (key, request) -> System.nanoTime() - request.startTime >= TIMEOUT_NANOS;
+
+    private ConcurrentOpenHashMap<Long, PendingRequest> pendingRequests;
+    private ArrayDeque<Long> issueOrder;
+    private HashedWheelTimer timer;
+    private boolean useTimer;
+    private long nextTxnId;
+    private int requestsSinceMonitorRun;
+
+    @Setup
+    public void setup() {
+        useTimer = "wheel".equals(mode);
+        pendingRequests = ConcurrentOpenHashMap.<Long, PendingRequest>newBuilder()
+                .expectedItems(outstanding)
+                .build();
+        issueOrder = new ArrayDeque<>(outstanding);
+        // same defaults as pcbcTimeoutTimerTickDurationMs and pcbcTimeoutTimerNumTicks
+        timer = new HashedWheelTimer(100, TimeUnit.MILLISECONDS, 1024);
+        for (int i = 0; i < outstanding; i++) {
+            issue();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        timer.stop();
+    }
+
+    private void issue() {
+        Long txnId = nextTxnId++;
+        PendingRequest request = new PendingRequest(System.nanoTime());
+        pendingRequests.put(txnId, request);
+        if (useTimer) {
+            request.timeout = timer.newTimeout(t -> pendingRequests.remove(txnId, request),
+                    TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+        }
+        issueOrder.addLast(txnId);
+    }
+
+    private void complete() {
+        PendingRequest request = pendingRequests.remove(issueOrder.pollFirst());
+        if (request.timeout != null) {
+            request.timeout.cancel();
+        }
+    }
+
+    @Benchmark
+    public int completeAndIssue() {
+        complete();
+        issue();
+        if (!useTimer && ++requestsSinceMonitorRun == REQUESTS_PER_MONITOR_RUN) {
+            requestsSinceMonitorRun = 0;
+            return pendingRequests.removeIf(timeoutCheck);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.distributedlog.io;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the compression codecs of the enveloped entries, against the entry size.
+ *
+ * <p>The entries are made of small json-like records sharing a structure. The compress benchmark reports the
+ * uncompressed and compressed bytes per second as secondary results, their ratio is the compression ratio.
+ * To run:
+ * build project from command line.
+ * execute ./run.sh CompressionCodecBenchmark
+ */
+public class CompressionCodecBenchmark {
+
+    /**
+     * Codec.
+     */
+    public enum Codec {
+        LZ4,
+        SNAPPY,
+        ZSTD,
+        ZSTD_DICT
+    }
+
+    static byte[] randomRecords(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 128);
+        while (sb.length() < size) {
+            sb.append("{\"id\":").append(random.nextInt(1000000))
+                .append(",\"user\":\"user-").append(random.nextInt(10000))
+                .append("\",\"event\":\"").append(random.nextBoolean() ? "click" : "view")
+                .append("\",\"ts\":").append(1600000000000L + random.nextInt(1000000))
+                .append("}\n");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * MyState.
+     */
+    @State(Scope.Thread)
+    public static class MyState {
+
+        @Param
+        public Codec codec;
+        @Param({"1024", "4096", "16384", "65536", "262144"})
+        public int entrySize;
+
+        private CompressionCodec compressionCodec;
+        private ByteBuf uncompressed;
+        private ByteBuf compressed;
+
+        @Setup(Level.Trial)
+        public void doSetup() throws Exception {
+            Random random = new Random(entrySize);
+            switch (codec) {
+                case LZ4:
+                    compressionCodec = CompressionUtils.getCompressionCodec(CompressionCodec.Type.LZ4);
+                    break;
+                case SNAPPY:
+                    compressionCodec = CompressionUtils.getCompressionCodec(CompressionCodec.Type.SNAPPY);
+                    break;
+                case ZSTD:
+                    compressionCodec = CompressionUtils.getCompressionCodec(CompressionCodec.Type.ZSTD);
+                    break;
+                case ZSTD_DICT:
+                    ZstdDictTrainer trainer = new ZstdDictTrainer(4 * 1024 * 1024, 64 * 1024);
+                    for (int i = 0; i < 4096; i++) {
+                        trainer.addSample(randomRecords(random, 1024));
+                    }
+                    compressionCodec = ZstdCompressionCodec.of(ZstdCompressionCodec.DEFAULT_LEVEL,
+                        trainer.trainSamples());
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown codec " + codec);
+            }
+
+            uncompressed = PooledByteBufAllocator.DEFAULT.directBuffer(entrySize, entrySize);
+            uncompressed.writeBytes(randomRecords(random, entrySize));
+            compressed = compressionCodec.compress(uncompressed, 0);
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            uncompressed.release();
+            compressed.release();
+        }
+    }
+
+    /**
+     * Bytes processed by the compress benchmark.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        public long uncompressedBytes;
+        public long compressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            uncompressedBytes = 0;
+            compressedBytes = 0;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(1)
+    @Fork(value = 1, warmups = 1)
+    public void compress(MyState state, Bytes bytes) {
+        ByteBuf compressed = state.compressionCodec.compress(state.uncompressed, 0);
+        bytes.uncompressedBytes += state.entrySize;
+        bytes.compressedBytes += compressed.readableBytes();
+        compressed.release();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(1)
+    @Fork(value = 1, warmups = 1)
+    public void decompress(MyState state) {
+        state.compressionCodec.decompress(state.compressed, state.entrySize).release();
+    }
+}
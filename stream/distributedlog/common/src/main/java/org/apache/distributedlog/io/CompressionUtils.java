@@ -17,14 +17,27 @@
  */
 package org.apache.distributedlog.io;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Utils for compression related operations.
  */
 public class CompressionUtils {
 
     public static final String LZ4 = "lz4";
+    public static final String ZSTD = "zstd";
+    public static final String SNAPPY = "snappy";
     public static final String NONE = "none";
 
+    // dictionaries loaded from files
+    private static final ConcurrentMap<String, byte[]> dictionaries = new ConcurrentHashMap<>();
+
     /**
      * Get a cached compression codec instance for the specified type.
      * @param type compression codec type
@@ -33,11 +46,61 @@ public class CompressionUtils {
     public static CompressionCodec getCompressionCodec(CompressionCodec.Type type) {
         if (type == CompressionCodec.Type.LZ4) {
             return LZ4CompressionCodec.of();
+        } else if (type == CompressionCodec.Type.ZSTD) {
+            return ZstdCompressionCodec.of();
+        } else if (type == CompressionCodec.Type.SNAPPY) {
+            return SnappyCompressionCodec.of();
         }
         // No Compression
         return IdentityCompressionCodec.of();
     }
 
+    /**
+     * Get a cached compression codec instance for the specified type, compression level and dictionary.
+     *
+     * <p>The level and the dictionary only apply to {@link CompressionCodec.Type#ZSTD}.
+     *
+     * @param type compression codec type
+     * @param level compression level
+     * @param dictionaryFile file of the dictionary to compress with, or empty for no dictionary
+     * @return compression codec instance
+     * @throws IOException if the dictionary can not be loaded
+     */
+    public static CompressionCodec getCompressionCodec(CompressionCodec.Type type,
+                                                       int level,
+                                                       String dictionaryFile) throws IOException {
+        if (type != CompressionCodec.Type.ZSTD) {
+            return getCompressionCodec(type);
+        }
+        byte[] dictionary = null;
+        if (null != dictionaryFile && !dictionaryFile.isEmpty()) {
+            dictionary = loadDictionary(dictionaryFile);
+        }
+        return ZstdCompressionCodec.of(level, dictionary);
+    }
+
+    /**
+     * Load a zstd dictionary, trained by {@code zstd --train}, from a file.
+     *
+     * <p>Once loaded, the entries compressed with the dictionary can be decompressed.
+     *
+     * @param dictionaryFile file of the dictionary
+     * @return the dictionary
+     * @throws IOException if the dictionary can not be loaded
+     */
+    public static byte[] loadDictionary(String dictionaryFile) throws IOException {
+        byte[] dictionary = dictionaries.get(dictionaryFile);
+        if (null == dictionary) {
+            dictionary = Files.readAllBytes(Paths.get(dictionaryFile));
+            ZstdCompressionCodec.registerDictionary(dictionary);
+            byte[] existing = dictionaries.putIfAbsent(dictionaryFile, dictionary);
+            if (null != existing) {
+                dictionary = existing;
+            }
+        }
+        return dictionary;
+    }
+
     /**
      * Compression type value from string.
      * @param compressionString compression codec presentation in string
@@ -46,10 +109,29 @@ public class CompressionUtils {
     public static CompressionCodec.Type stringToType(String compressionString) {
         if (compressionString.equals(LZ4)) {
             return CompressionCodec.Type.LZ4;
+        } else if (compressionString.equals(ZSTD)) {
+            return CompressionCodec.Type.ZSTD;
+        } else if (compressionString.equals(SNAPPY)) {
+            return CompressionCodec.Type.SNAPPY;
         } else if (compressionString.equals(NONE)) {
             return CompressionCodec.Type.NONE;
         } else {
             return CompressionCodec.Type.UNKNOWN;
         }
     }
+
+    /**
+     * Get the readable bytes of a buffer in a single direct buffer, as required by the native codecs.
+     *
+     * @return a direct buffer to release once used
+     */
+    static ByteBuf toDirectBuffer(ByteBuf buf) {
+        if (buf.isDirect() && buf.nioBufferCount() == 1) {
+            return buf.retainedSlice();
+        }
+        int len = buf.readableBytes();
+        ByteBuf direct = PooledByteBufAllocator.DEFAULT.directBuffer(len, len);
+        direct.writeBytes(buf, buf.readerIndex(), len);
+        return direct;
+    }
 }
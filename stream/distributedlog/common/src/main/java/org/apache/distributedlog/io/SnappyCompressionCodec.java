@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.distributedlog.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import org.xerial.snappy.Snappy;
+
+/**
+ * An implementation of {@link CompressionCodec} using snappy, for a lower cpu cost than lz4 at a similar ratio.
+ */
+public class SnappyCompressionCodec implements CompressionCodec {
+
+    public static SnappyCompressionCodec of() {
+        return INSTANCE;
+    }
+
+    private static final SnappyCompressionCodec INSTANCE = new SnappyCompressionCodec();
+
+    @Override
+    public ByteBuf compress(ByteBuf uncompressed, int headerLen) {
+        checkNotNull(uncompressed);
+        checkArgument(uncompressed.readableBytes() > 0);
+
+        int uncompressedLen = uncompressed.readableBytes();
+        int maxLen = Snappy.maxCompressedLength(uncompressedLen);
+
+        ByteBuf source = CompressionUtils.toDirectBuffer(uncompressed);
+        ByteBuf compressed = PooledByteBufAllocator.DEFAULT.directBuffer(
+                maxLen + headerLen, maxLen + headerLen);
+        try {
+            ByteBuffer uncompressedNio = source.nioBuffer(source.readerIndex(), uncompressedLen);
+            ByteBuffer compressedNio = compressed.nioBuffer(headerLen, maxLen);
+
+            int compressedLen = Snappy.compress(uncompressedNio, compressedNio);
+            compressed.writerIndex(compressedLen + headerLen);
+            return compressed;
+        } catch (IOException e) {
+            compressed.release();
+            throw new UncheckedIOException("Failed to compress", e);
+        } catch (RuntimeException e) {
+            compressed.release();
+            throw e;
+        } finally {
+            source.release();
+        }
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBuf compressed, int decompressedSize) {
+        checkNotNull(compressed);
+        checkArgument(compressed.readableBytes() >= 0);
+        checkArgument(decompressedSize >= 0);
+
+        ByteBuf source = CompressionUtils.toDirectBuffer(compressed);
+        ByteBuf uncompressed = PooledByteBufAllocator.DEFAULT.directBuffer(decompressedSize, decompressedSize);
+        try {
+            ByteBuffer compressedNio = source.nioBuffer(source.readerIndex(), source.readableBytes());
+            ByteBuffer uncompressedNio = uncompressed.nioBuffer(0, decompressedSize);
+
+            int decompressedLen = Snappy.uncompress(compressedNio, uncompressedNio);
+            if (decompressedLen != decompressedSize) {
+                throw new IOException("Decompressed " + decompressedLen + " bytes, expected " + decompressedSize);
+            }
+            uncompressed.writerIndex(decompressedSize);
+            return uncompressed;
+        } catch (IOException e) {
+            uncompressed.release();
+            throw new UncheckedIOException("Failed to decompress", e);
+        } catch (RuntimeException e) {
+            uncompressed.release();
+            throw e;
+        } finally {
+            source.release();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.distributedlog.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An implementation of {@link CompressionCodec} using zstd.
+ *
+ * <p>Data can be compressed with a dictionary trained on samples of the data, which pays off for the small
+ * entries that share a structure. A compressed frame records the id of its dictionary, and is decompressed
+ * with the dictionary of that id, which must be registered by {@link #registerDictionary(byte[])}.
+ */
+public class ZstdCompressionCodec implements CompressionCodec {
+
+    public static final int DEFAULT_LEVEL = 3;
+
+    public static ZstdCompressionCodec of() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get a cached codec that compresses at the given level, with the given dictionary if not null.
+     */
+    public static ZstdCompressionCodec of(int level, byte[] dictionary) {
+        if (null == dictionary) {
+            return level == DEFAULT_LEVEL ? INSTANCE : codecs.computeIfAbsent(level + ":0",
+                key -> new ZstdCompressionCodec(level, null));
+        }
+        long dictId = registerDictionary(dictionary);
+        return codecs.computeIfAbsent(level + ":" + dictId,
+            key -> new ZstdCompressionCodec(level, new ZstdDictCompress(dictionary, level)));
+    }
+
+    /**
+     * Register a dictionary for decompression.
+     *
+     * @return the id of the dictionary
+     */
+    public static long registerDictionary(byte[] dictionary) {
+        long dictId = Zstd.getDictIdFromDict(dictionary);
+        checkArgument(dictId != 0, "Not a zstd dictionary");
+        decompressDictionaries.computeIfAbsent(dictId, id -> new ZstdDictDecompress(dictionary));
+        return dictId;
+    }
+
+    private static final ZstdCompressionCodec INSTANCE = new ZstdCompressionCodec(DEFAULT_LEVEL, null);
+    private static final ConcurrentMap<String, ZstdCompressionCodec> codecs = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Long, ZstdDictDecompress> decompressDictionaries = new ConcurrentHashMap<>();
+
+    private final int level;
+    private final ZstdDictCompress compressDictionary;
+
+    private ZstdCompressionCodec(int level, ZstdDictCompress compressDictionary) {
+        this.level = level;
+        this.compressDictionary = compressDictionary;
+    }
+
+    @Override
+    public ByteBuf compress(ByteBuf uncompressed, int headerLen) {
+        checkNotNull(uncompressed);
+        checkArgument(uncompressed.readableBytes() > 0);
+
+        int uncompressedLen = uncompressed.readableBytes();
+        int maxLen = (int) Zstd.compressBound(uncompressedLen);
+
+        ByteBuf source = CompressionUtils.toDirectBuffer(uncompressed);
+        ByteBuf compressed = PooledByteBufAllocator.DEFAULT.directBuffer(
+                maxLen + headerLen, maxLen + headerLen);
+        try {
+            ByteBuffer uncompressedNio = source.nioBuffer(source.readerIndex(), uncompressedLen);
+            ByteBuffer compressedNio = compressed.nioBuffer(headerLen, maxLen);
+
+            long compressedLen;
+            if (null == compressDictionary) {
+                compressedLen = Zstd.compressDirectByteBuffer(
+                        compressedNio, compressedNio.position(), maxLen,
+                        uncompressedNio, uncompressedNio.position(), uncompressedLen,
+                        level);
+            } else {
+                compressedLen = Zstd.compressDirectByteBufferFastDict(
+                        compressedNio, compressedNio.position(), maxLen,
+                        uncompressedNio, uncompressedNio.position(), uncompressedLen,
+                        compressDictionary);
+            }
+            if (Zstd.isError(compressedLen)) {
+                throw new IllegalStateException("Failed to compress : " + Zstd.getErrorName(compressedLen));
+            }
+            compressed.writerIndex((int) compressedLen + headerLen);
+            return compressed;
+        } catch (RuntimeException e) {
+            compressed.release();
+            throw e;
+        } finally {
+            source.release();
+        }
+    }
+
+    @Override
+    public ByteBuf decompress(ByteBuf compressed, int decompressedSize) {
+        checkNotNull(compressed);
+        checkArgument(compressed.readableBytes() >= 0);
+        checkArgument(decompressedSize >= 0);
+
+        ByteBuf source = CompressionUtils.toDirectBuffer(compressed);
+        ByteBuf uncompressed = PooledByteBufAllocator.DEFAULT.directBuffer(decompressedSize, decompressedSize);
+        try {
+            ByteBuffer compressedNio = source.nioBuffer(source.readerIndex(), source.readableBytes());
+            ByteBuffer uncompressedNio = uncompressed.nioBuffer(0, decompressedSize);
+
+            long dictId = Zstd.getDictIdFromFrameBuffer(compressedNio);
+            long decompressedLen;
+            if (dictId == 0) {
+                decompressedLen = Zstd.decompressDirectByteBuffer(
+                        uncompressedNio, uncompressedNio.position(), decompressedSize,
+                        compressedNio, compressedNio.position(), compressedNio.remaining());
+            } else {
+                ZstdDictDecompress dictionary = decompressDictionaries.get(dictId);
+                if (null == dictionary) {
+                    throw new IllegalStateException("No zstd dictionary registered with id " + dictId);
+                }
+                decompressedLen = Zstd.decompressDirectByteBufferFastDict(
+                        uncompressedNio, uncompressedNio.position(), decompressedSize,
+                        compressedNio, compressedNio.position(), compressedNio.remaining(),
+                        dictionary);
+            }
+            if (Zstd.isError(decompressedLen)) {
+                throw new IllegalStateException("Failed to decompress : " + Zstd.getErrorName(decompressedLen));
+            }
+            if (decompressedLen != decompressedSize) {
+                throw new IllegalStateException("Decompressed " + decompressedLen + " bytes, expected "
+                        + decompressedSize);
+            }
+            uncompressed.writerIndex(decompressedSize);
+            return uncompressed;
+        } catch (RuntimeException e) {
+            uncompressed.release();
+            throw e;
+        } finally {
+            source.release();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.distributedlog.io;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Data and helpers shared by the compression tests.
+ */
+final class CompressionTestUtils {
+
+    private CompressionTestUtils() {}
+
+    /**
+     * Small json-like records sharing a structure, as compressed by dictionaries.
+     */
+    static byte[] records(Random random, int size) {
+        StringBuilder sb = new StringBuilder(size + 128);
+        while (sb.length() < size) {
+            sb.append("{\"id\":").append(random.nextInt(1000000))
+                .append(",\"user\":\"user-").append(random.nextInt(10000))
+                .append("\",\"event\":\"").append(random.nextBoolean() ? "click" : "view")
+                .append("\",\"ts\":").append(1600000000000L + random.nextInt(1000000))
+                .append("}\n");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] trainDictionary(Random random) {
+        ZstdDictTrainer trainer = new ZstdDictTrainer(1024 * 1024, 16 * 1024);
+        for (int i = 0; i < 2048; i++) {
+            trainer.addSample(records(random, 256));
+        }
+        return trainer.trainSamples();
+    }
+
+    /**
+     * Compress the data with a header, then decompress it and check the data is unchanged.
+     *
+     * @return the compressed size, without the header
+     */
+    static int assertRoundTrip(CompressionCodec codec, ByteBuf uncompressed, int headerLen) {
+        int uncompressedLen = uncompressed.readableBytes();
+        ByteBuf compressed = codec.compress(uncompressed, headerLen);
+        try {
+            // the data is left untouched
+            assertEquals(uncompressedLen, uncompressed.readableBytes());
+            compressed.skipBytes(headerLen);
+            int compressedLen = compressed.readableBytes();
+            ByteBuf decompressed = codec.decompress(compressed, uncompressedLen);
+            try {
+                assertEquals(ByteBufUtil.hexDump(uncompressed), ByteBufUtil.hexDump(decompressed));
+            } finally {
+                decompressed.release();
+            }
+            return compressedLen;
+        } finally {
+            compressed.release();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.distributedlog.io;
+
+import static org.apache.distributedlog.io.CompressionTestUtils.assertRoundTrip;
+import static org.apache.distributedlog.io.CompressionTestUtils.records;
+import static org.apache.distributedlog.io.CompressionTestUtils.trainDictionary;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test Case for {@link CompressionUtils}.
+ */
+public class TestCompressionUtils {
+
+    private final Random random = new Random(1234);
+    private File dictionaryFile;
+
+    @Before
+    public void setup() throws Exception {
+        dictionaryFile = File.createTempFile("zstd", ".dict");
+    }
+
+    @After
+    public void teardown() {
+        dictionaryFile.delete();
+    }
+
+    @Test
+    public void testLoadDictionary() throws Exception {
+        byte[] dictionary = trainDictionary(random);
+        Files.write(dictionaryFile.toPath(), dictionary);
+
+        byte[] loaded = CompressionUtils.loadDictionary(dictionaryFile.getAbsolutePath());
+        assertArrayEquals(dictionary, loaded);
+        // the dictionary is loaded once
+        assertSame(loaded, CompressionUtils.loadDictionary(dictionaryFile.getAbsolutePath()));
+
+        CompressionCodec codec = CompressionUtils.getCompressionCodec(
+                CompressionCodec.Type.ZSTD, 5, dictionaryFile.getAbsolutePath());
+        assertSame(ZstdCompressionCodec.of(5, dictionary), codec);
+
+        ByteBuf data = Unpooled.wrappedBuffer(records(random, 512));
+        assertRoundTrip(codec, data, 16);
+        // the dictionary was registered for decompression when loaded
+        ByteBuf compressed = codec.compress(data, 0);
+        CompressionUtils.getCompressionCodec(CompressionCodec.Type.ZSTD)
+                .decompress(compressed, data.readableBytes()).release();
+        compressed.release();
+    }
+
+    @Test
+    public void testLoadInvalidDictionary() throws Exception {
+        Files.write(dictionaryFile.toPath(), records(random, 1024));
+        try {
+            CompressionUtils.loadDictionary(dictionaryFile.getAbsolutePath());
+            fail("Loading a non zstd dictionary should fail");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // the invalid dictionary is not cached, a fixed file is loaded
+        byte[] dictionary = trainDictionary(random);
+        Files.write(dictionaryFile.toPath(), dictionary);
+        assertArrayEquals(dictionary, CompressionUtils.loadDictionary(dictionaryFile.getAbsolutePath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadMissingDictionary() throws Exception {
+        CompressionUtils.loadDictionary(new File(dictionaryFile.getParentFile(), "missing.dict").getAbsolutePath());
+    }
+
+    @Test
+    public void testGetCompressionCodec() throws Exception {
+        assertSame(ZstdCompressionCodec.of(), CompressionUtils.getCompressionCodec(CompressionCodec.Type.ZSTD));
+        assertSame(ZstdCompressionCodec.of(9, null),
+                CompressionUtils.getCompressionCodec(CompressionCodec.Type.ZSTD, 9, ""));
+        // the level and the dictionary only apply to zstd
+        assertSame(SnappyCompressionCodec.of(),
+                CompressionUtils.getCompressionCodec(CompressionCodec.Type.SNAPPY, 9, "missing.dict"));
+        assertSame(LZ4CompressionCodec.of(),
+                CompressionUtils.getCompressionCodec(CompressionCodec.Type.LZ4, 9, null));
+    }
+
+    @Test
+    public void testStringToType() {
+        assertEquals(CompressionCodec.Type.ZSTD, CompressionUtils.stringToType(CompressionUtils.ZSTD));
+        assertEquals(CompressionCodec.Type.SNAPPY, CompressionUtils.stringToType(CompressionUtils.SNAPPY));
+        assertEquals(CompressionCodec.Type.LZ4, CompressionUtils.stringToType(CompressionUtils.LZ4));
+        assertEquals(CompressionCodec.Type.NONE, CompressionUtils.stringToType(CompressionUtils.NONE));
+        assertEquals(CompressionCodec.Type.UNKNOWN, CompressionUtils.stringToType("gzip"));
+        assertEquals(CompressionCodec.Type.ZSTD, CompressionCodec.Type.of(CompressionCodec.Type.ZSTD.code()));
+        assertEquals(CompressionCodec.Type.SNAPPY, CompressionCodec.Type.of(CompressionCodec.Type.SNAPPY.code()));
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.distributedlog.io;
+
+import static org.apache.distributedlog.io.CompressionTestUtils.assertRoundTrip;
+import static org.apache.distributedlog.io.CompressionTestUtils.records;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Test Case for {@link SnappyCompressionCodec}.
+ */
+public class TestSnappyCompressionCodec {
+
+    private final Random random = new Random(1234);
+
+    @Test
+    public void testRoundTrip() {
+        ByteBuf heap = Unpooled.wrappedBuffer(records(random, 4096));
+        int compressedLen = assertRoundTrip(SnappyCompressionCodec.of(), heap, 0);
+        assertTrue(compressedLen < heap.readableBytes());
+        assertRoundTrip(SnappyCompressionCodec.of(), heap, 16);
+
+        ByteBuf direct = Unpooled.directBuffer(4096);
+        direct.writeBytes(records(random, 4096));
+        assertRoundTrip(SnappyCompressionCodec.of(), direct, 16);
+        direct.release();
+
+        CompositeByteBuf composite = Unpooled.compositeBuffer();
+        composite.addComponent(true, Unpooled.wrappedBuffer(records(random, 1000)));
+        composite.addComponent(true, Unpooled.wrappedBuffer(records(random, 3000)));
+        assertRoundTrip(SnappyCompressionCodec.of(), composite, 16);
+        composite.release();
+    }
+
+    @Test
+    public void testIncompressibleData() {
+        byte[] data = new byte[4096];
+        random.nextBytes(data);
+        assertRoundTrip(SnappyCompressionCodec.of(), Unpooled.wrappedBuffer(data), 16);
+    }
+
+    @Test
+    public void testUnexpectedDecompressedSize() {
+        ByteBuf data = Unpooled.wrappedBuffer(records(random, 1024));
+        ByteBuf compressed = SnappyCompressionCodec.of().compress(data, 0);
+        try {
+            SnappyCompressionCodec.of().decompress(compressed, 2048);
+            fail("Decompressing to a different size should fail");
+        } catch (UncheckedIOException e) {
+            // expected
+        } finally {
+            compressed.release();
+        }
+    }
+
+    @Test
+    public void testBufferReleasedOnFailure() {
+        ByteBuf data = Unpooled.wrappedBuffer(records(random, 1024));
+        ByteBuf compressed = SnappyCompressionCodec.of().compress(data, 0);
+        int numFailures = 10000;
+        long usedDirectMemory = 0;
+        for (int i = 0; i <= numFailures; i++) {
+            try {
+                SnappyCompressionCodec.of().decompress(compressed, 1000);
+                fail("Decompressing to a smaller size should fail");
+            } catch (RuntimeException e) {
+                // expected
+            }
+            if (i == 0) {
+                usedDirectMemory = PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory();
+            }
+        }
+        compressed.release();
+        // the buffers of the failed decompressions are reused instead of leaked
+        assertTrue(PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory() - usedDirectMemory
+                < numFailures * 1000L / 2);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.distributedlog.io;
+
+import static org.apache.distributedlog.io.CompressionTestUtils.assertRoundTrip;
+import static org.apache.distributedlog.io.CompressionTestUtils.records;
+import static org.apache.distributedlog.io.CompressionTestUtils.trainDictionary;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Test Case for {@link ZstdCompressionCodec}.
+ */
+public class TestZstdCompressionCodec {
+
+    private final Random random = new Random(1234);
+
+    @Test
+    public void testRoundTrip() {
+        ByteBuf heap = Unpooled.wrappedBuffer(records(random, 4096));
+        assertRoundTrip(ZstdCompressionCodec.of(), heap, 0);
+        assertRoundTrip(ZstdCompressionCodec.of(), heap, 16);
+
+        ByteBuf direct = Unpooled.directBuffer(4096);
+        direct.writeBytes(records(random, 4096));
+        assertRoundTrip(ZstdCompressionCodec.of(), direct, 16);
+        direct.release();
+
+        CompositeByteBuf composite = Unpooled.compositeBuffer();
+        composite.addComponent(true, Unpooled.wrappedBuffer(records(random, 1000)));
+        composite.addComponent(true, Unpooled.wrappedBuffer(records(random, 3000)));
+        assertRoundTrip(ZstdCompressionCodec.of(), composite, 16);
+        composite.release();
+    }
+
+    @Test
+    public void testLevels() {
+        assertSame(ZstdCompressionCodec.of(), ZstdCompressionCodec.of(ZstdCompressionCodec.DEFAULT_LEVEL, null));
+        assertSame(ZstdCompressionCodec.of(19, null), ZstdCompressionCodec.of(19, null));
+
+        ByteBuf data = Unpooled.wrappedBuffer(records(random, 65536));
+        int fastLen = assertRoundTrip(ZstdCompressionCodec.of(1, null), data, 0);
+        int strongLen = assertRoundTrip(ZstdCompressionCodec.of(19, null), data, 0);
+        assertTrue(strongLen < fastLen);
+        assertTrue(fastLen < data.readableBytes());
+    }
+
+    @Test
+    public void testDictionary() {
+        byte[] dictionary = trainDictionary(random);
+        ZstdCompressionCodec codec = ZstdCompressionCodec.of(ZstdCompressionCodec.DEFAULT_LEVEL, dictionary);
+        assertSame(codec, ZstdCompressionCodec.of(ZstdCompressionCodec.DEFAULT_LEVEL, dictionary));
+
+        // small entries compress better with the dictionary
+        ByteBuf data = Unpooled.wrappedBuffer(records(random, 512));
+        int dictionaryLen = assertRoundTrip(codec, data, 16);
+        int plainLen = assertRoundTrip(ZstdCompressionCodec.of(), data, 16);
+        assertTrue(dictionaryLen < plainLen);
+
+        // the frames record the dictionary, so any codec decompresses them
+        ByteBuf compressed = codec.compress(data, 0);
+        ZstdCompressionCodec.of().decompress(compressed, data.readableBytes()).release();
+        compressed.release();
+    }
+
+    @Test
+    public void testUnknownDictionary() {
+        byte[] dictionary = trainDictionary(new Random(5678));
+        byte[] data = records(random, 512);
+        // compressed without registering the dictionary
+        byte[] compressed = Zstd.compress(data, new ZstdDictCompress(dictionary, ZstdCompressionCodec.DEFAULT_LEVEL));
+
+        try {
+            ZstdCompressionCodec.of().decompress(Unpooled.wrappedBuffer(compressed), data.length);
+            fail("Decompressing without the dictionary should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        ZstdCompressionCodec.registerDictionary(dictionary);
+        ZstdCompressionCodec.of().decompress(Unpooled.wrappedBuffer(compressed), data.length).release();
+    }
+
+    @Test
+    public void testNotADictionary() {
+        try {
+            ZstdCompressionCodec.registerDictionary(records(random, 1024));
+            fail("Registering a non zstd dictionary should fail");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnexpectedDecompressedSize() {
+        ByteBuf data = Unpooled.wrappedBuffer(records(random, 1024));
+        ByteBuf compressed = ZstdCompressionCodec.of().compress(data, 0);
+        try {
+            ZstdCompressionCodec.of().decompress(compressed, 1000);
+            fail("Decompressing to a smaller size should fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            ZstdCompressionCodec.of().decompress(compressed, 2048);
+            fail("Decompressing to a larger size should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            compressed.release();
+        }
+    }
+}
@@ -427,6 +427,7 @@ class BKAsyncLogReader implements AsyncLogReader, SafeRunnable, AsyncNotificatio
                     readHandler,
                     bkDistributedLogManager.getReaderEntryStore(),
                     bkDistributedLogManager.getScheduler(),
+                    bkDistributedLogManager.getReadAheadBudget(),
                     Ticker.systemTicker(),
                     bkDistributedLogManager.alertStatsLogger);
             readHandler.checkLogStreamExists().whenComplete(new FutureEventListener<Void>() {
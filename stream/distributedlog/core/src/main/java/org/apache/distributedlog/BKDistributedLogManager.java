@@ -130,6 +130,7 @@ class BKDistributedLogManager implements DistributedLogManager {
     // read handler for listener.
     private BKLogReadHandler readHandlerForListener = null;
     private final PendingReaders pendingReaders;
+    private final ReadAheadMemoryBudget readAheadBudget;
 
     // resource to close
     private final Optional<AsyncCloseable> resourcesCloseable;
@@ -148,6 +149,7 @@ class BKDistributedLogManager implements DistributedLogManager {
      * @param regionId region id that would be encrypted as part of log segment metadata
      *                 to indicate which region that the log segment will be created
      * @param writeLimiter write limiter
+     * @param readAheadBudget memory budget of the readahead caches
      * @param featureProvider provider to offer features
      * @param statsLogger stats logger to receive stats
      * @param perLogStatsLogger stats logger to receive per log stats
@@ -163,6 +165,7 @@ class BKDistributedLogManager implements DistributedLogManager {
                             String clientId,
                             Integer regionId,
                             PermitLimiter writeLimiter,
+                            ReadAheadMemoryBudget readAheadBudget,
                             FeatureProvider featureProvider,
                             AsyncFailureInjector failureInjector,
                             StatsLogger statsLogger,
@@ -182,6 +185,7 @@ class BKDistributedLogManager implements DistributedLogManager {
         this.clientId = clientId;
         this.streamIdentifier = conf.getUnpartitionedStreamName();
         this.writeLimiter = writeLimiter;
+        this.readAheadBudget = readAheadBudget;
         // Feature Provider
         this.featureProvider = featureProvider;
         // Failure Injector
@@ -213,6 +217,10 @@ class BKDistributedLogManager implements DistributedLogManager {
         return scheduler;
     }
 
+    ReadAheadMemoryBudget getReadAheadBudget() {
+        return readAheadBudget;
+    }
+
     AsyncFailureInjector getFailureInjector() {
         return failureInjector;
     }
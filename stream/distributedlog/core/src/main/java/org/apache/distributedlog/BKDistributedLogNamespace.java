@@ -43,6 +43,7 @@ import org.apache.distributedlog.exceptions.AlreadyClosedException;
 import org.apache.distributedlog.exceptions.InvalidStreamNameException;
 import org.apache.distributedlog.exceptions.LogNotFoundException;
 import org.apache.distributedlog.injector.AsyncFailureInjector;
+import org.apache.distributedlog.io.CompressionUtils;
 import org.apache.distributedlog.logsegment.LogSegmentMetadataCache;
 import org.apache.distributedlog.namespace.NamespaceDriver;
 import org.apache.distributedlog.util.ConfUtils;
@@ -75,6 +76,8 @@ import org.slf4j.LoggerFactory;
  * See {@link OrderedScheduler}.
  * <li> `scope`/writeLimiter/* : stats about the global write limiter used by this namespace.
  * See {@link PermitLimiter}.
+ * <li> `scope`/readahead/* : stats about the readahead memory budget shared by the readers of this namespace.
+ * See {@link ReadAheadMemoryBudget}.
  * </ul>
  *
  * <h4>DistributedLogManager</h4>
@@ -92,6 +95,7 @@ public class BKDistributedLogNamespace implements Namespace {
     // resources
     private final OrderedScheduler scheduler;
     private final PermitLimiter writeLimiter;
+    private final ReadAheadMemoryBudget readAheadBudget;
     private final AsyncFailureInjector failureInjector;
     // log segment metadata store
     private final LogSegmentMetadataCache logSegmentMetadataCache;
@@ -129,6 +133,9 @@ public class BKDistributedLogNamespace implements Namespace {
 
         // create a log segment metadata cache
         this.logSegmentMetadataCache = new LogSegmentMetadataCache(conf, Ticker.systemTicker());
+        // create the memory budget of the readahead caches
+        this.readAheadBudget = new ReadAheadMemoryBudget(
+                conf.getReadAheadMaxBytes(), statsLogger.scope("readahead"), perLogStatsLogger);
     }
 
     @Override
@@ -286,6 +293,10 @@ public class BKDistributedLogNamespace implements Namespace {
         DistributedLogConfiguration mergedConfiguration = new DistributedLogConfiguration();
         mergedConfiguration.addConfiguration(conf);
         mergedConfiguration.loadStreamConf(logConfiguration);
+        // the dictionary to decompress the entries compressed with it
+        if (!mergedConfiguration.getCompressionDictionaryFile().isEmpty()) {
+            CompressionUtils.loadDictionary(mergedConfiguration.getCompressionDictionaryFile());
+        }
         // If dynamic config was not provided, default to a static view of the global configuration.
         DynamicDistributedLogConfiguration dynConf = null;
         if (dynamicLogConfiguration.isPresent()) {
@@ -305,6 +316,7 @@ public class BKDistributedLogNamespace implements Namespace {
                 clientId,                           /* Client Id */
                 regionId,                           /* Region Id */
                 writeLimiter,                       /* Write Limiter */
+                readAheadBudget,                    /* ReadAhead Memory Budget */
                 featureProvider.scope("dl"),        /* Feature Provider */
                 failureInjector,                    /* Failure Injector */
                 statsLogger,                        /* Stats Logger */
@@ -336,6 +348,8 @@ public class BKDistributedLogNamespace implements Namespace {
         }
         // close the write limiter
         this.writeLimiter.close();
+        // close the readahead memory budget
+        this.readAheadBudget.close();
         // shutdown the driver
         Utils.close(driver);
         // Shutdown the schedulers
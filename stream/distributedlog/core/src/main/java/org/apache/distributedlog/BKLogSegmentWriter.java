@@ -166,6 +166,7 @@ class BKLogSegmentWriter implements LogSegmentWriter, AddCallback, Runnable, Siz
     private final int transmissionThreshold;
     protected final LogSegmentEntryWriter entryWriter;
     private final CompressionCodec.Type compressionType;
+    private final CompressionCodec compressionCodec;
     private final ReentrantLock transmitLock = new ReentrantLock();
     private static final AtomicIntegerFieldUpdater<BKLogSegmentWriter> transmitResultUpdater =
         AtomicIntegerFieldUpdater.newUpdater(BKLogSegmentWriter.class, "transmitResult");
@@ -339,13 +340,16 @@ class BKLogSegmentWriter implements LogSegmentWriter, AddCallback, Runnable, Siz
             this.transmissionThreshold = configuredTransmissionThreshold;
         }
         this.compressionType = CompressionUtils.stringToType(conf.getCompressionType());
+        this.compressionCodec = CompressionUtils.getCompressionCodec(
+                compressionType, conf.getCompressionLevel(), conf.getCompressionDictionaryFile());
 
         this.logSegmentSequenceNumber = logSegmentSequenceNumber;
         this.recordSetWriter = Entry.newEntry(
                 streamName,
                 Math.max(transmissionThreshold, 1024),
                 envelopeBeforeTransmit(),
-                compressionType);
+                compressionType,
+                compressionCodec);
         this.packetPrevious = null;
         this.startTxId = startTxId;
         this.lastTxId = startTxId;
@@ -505,7 +509,8 @@ class BKLogSegmentWriter implements LogSegmentWriter, AddCallback, Runnable, Siz
                 streamName,
                 Math.max(transmissionThreshold, getAverageTransmitSize()),
                 envelopeBeforeTransmit(),
-                compressionType);
+                compressionType,
+                compressionCodec);
     }
 
     private boolean envelopeBeforeTransmit() {
@@ -97,6 +97,7 @@ class BKSyncLogReader implements LogReader, AsyncNotification {
                     readHandler,
                     bkdlm.getReaderEntryStore(),
                     bkdlm.getScheduler(),
+                    bkdlm.getReadAheadBudget(),
                     Ticker.systemTicker(),
                     bkdlm.alertStatsLogger);
         readHandler.registerListener(readAheadReader);
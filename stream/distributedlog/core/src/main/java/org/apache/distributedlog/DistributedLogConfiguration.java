@@ -233,10 +233,16 @@ public class DistributedLogConfiguration extends CompositeConfiguration {
      *  ---------------------     ------------------------------------
      *          NONE               none
      *          LZ4                lz4
+     *          ZSTD               zstd
+     *          SNAPPY             snappy
      *          UNKNOWN            any other instance of String.class
      */
     public static final String BKDL_COMPRESSION_TYPE = "compressionType";
     public static final String BKDL_COMPRESSION_TYPE_DEFAULT = "none";
+    public static final String BKDL_COMPRESSION_LEVEL = "compressionLevel";
+    public static final int BKDL_COMPRESSION_LEVEL_DEFAULT = 3;
+    public static final String BKDL_COMPRESSION_DICTIONARY_FILE = "compressionDictionaryFile";
+    public static final String BKDL_COMPRESSION_DICTIONARY_FILE_DEFAULT = "";
     public static final String BKDL_FAILFAST_ON_STREAM_NOT_READY = "failFastOnStreamNotReady";
     public static final boolean BKDL_FAILFAST_ON_STREAM_NOT_READY_DEFAULT = false;
     public static final String BKDL_DISABLE_ROLLING_ON_LOG_SEGMENT_ERROR = "disableRollingOnLogSegmentError";
@@ -340,6 +346,8 @@ public class DistributedLogConfiguration extends CompositeConfiguration {
     public static final String BKDL_READAHEAD_MAX_RECORDS = "readAheadMaxRecords";
     public static final String BKDL_READAHEAD_MAX_RECORDS_OLD = "ReadAheadMaxEntries";
     public static final int BKDL_READAHEAD_MAX_RECORDS_DEFAULT = 10;
+    public static final String BKDL_READAHEAD_MAX_BYTES = "readAheadMaxBytes";
+    public static final long BKDL_READAHEAD_MAX_BYTES_DEFAULT = -1L;
     public static final String BKDL_READAHEAD_BATCHSIZE = "readAheadBatchSize";
     public static final String BKDL_READAHEAD_BATCHSIZE_OLD = "ReadAheadBatchSize";
     public static final int BKDL_READAHEAD_BATCHSIZE_DEFAULT = 2;
@@ -487,7 +495,10 @@ public class DistributedLogConfiguration extends CompositeConfiguration {
         BKDL_READER_IDLE_ERROR_THRESHOLD_MILLIS,
         BKDL_READER_IDLE_WARN_THRESHOLD_MILLIS,
         BKDL_PERIODIC_FLUSH_FREQUENCY_MILLISECONDS,
-        BKDL_ENABLE_IMMEDIATE_FLUSH
+        BKDL_ENABLE_IMMEDIATE_FLUSH,
+        BKDL_COMPRESSION_TYPE,
+        BKDL_COMPRESSION_LEVEL,
+        BKDL_COMPRESSION_DICTIONARY_FILE
     );
 
     /**
@@ -1827,6 +1838,54 @@ public class DistributedLogConfiguration extends CompositeConfiguration {
         return this;
     }
 
+    /**
+     * The compression level, used by the zstd compression type.
+     *
+     * <p>The higher levels compress better, at a higher cpu cost. The default level is 3.
+     *
+     * @return compression level
+     */
+    public int getCompressionLevel() {
+        return getInt(BKDL_COMPRESSION_LEVEL, BKDL_COMPRESSION_LEVEL_DEFAULT);
+    }
+
+    /**
+     * Set the compression level, used by the zstd compression type.
+     *
+     * @param compressionLevel compression level
+     * @return distributedlog configuration
+     * @see #getCompressionLevel()
+     */
+    public DistributedLogConfiguration setCompressionLevel(int compressionLevel) {
+        setProperty(BKDL_COMPRESSION_LEVEL, compressionLevel);
+        return this;
+    }
+
+    /**
+     * The file of the dictionary to compress with, used by the zstd compression type. The dictionary is
+     * trained by {@code zstd --train} on samples of the records of the log.
+     *
+     * <p>The readers of a log compressed with a dictionary must be configured with the same dictionary.
+     * By default no dictionary is used.
+     *
+     * @return compression dictionary file
+     */
+    public String getCompressionDictionaryFile() {
+        return getString(BKDL_COMPRESSION_DICTIONARY_FILE, BKDL_COMPRESSION_DICTIONARY_FILE_DEFAULT);
+    }
+
+    /**
+     * Set the file of the dictionary to compress with, used by the zstd compression type.
+     *
+     * @param compressionDictionaryFile compression dictionary file
+     * @return distributedlog configuration
+     * @see #getCompressionDictionaryFile()
+     */
+    public DistributedLogConfiguration setCompressionDictionaryFile(String compressionDictionaryFile) {
+        setProperty(BKDL_COMPRESSION_DICTIONARY_FILE, compressionDictionaryFile);
+        return this;
+    }
+
     /**
      * Whether to fail immediately if the stream is not ready rather than queueing the request.
      *
@@ -2704,6 +2763,33 @@ public class DistributedLogConfiguration extends CompositeConfiguration {
         return this;
     }
 
+    /**
+     * Get the max bytes cached by the readahead caches of all the readers of a namespace.
+     *
+     * <p>Half of the budget is split evenly across the readers, the other half is borrowed
+     * by the readers consuming their cache, so that they read ahead further. The number of
+     * records cached by a reader is still limited by {@link #getReadAheadMaxRecords()}.
+     *
+     * <p>The default value is -1. A non-positive value doesn't limit the bytes cached.
+     *
+     * @return max bytes cached by the readahead caches of a namespace.
+     */
+    public long getReadAheadMaxBytes() {
+        return getLong(BKDL_READAHEAD_MAX_BYTES, BKDL_READAHEAD_MAX_BYTES_DEFAULT);
+    }
+
+    /**
+     * Set the max bytes cached by the readahead caches of all the readers of a namespace.
+     *
+     * @param readAheadMaxBytes max bytes cached by the readahead caches.
+     * @return distributed log configuration
+     * @see #getReadAheadMaxBytes()
+     */
+    public DistributedLogConfiguration setReadAheadMaxBytes(long readAheadMaxBytes) {
+        setProperty(BKDL_READAHEAD_MAX_BYTES, readAheadMaxBytes);
+        return this;
+    }
+
     /**
      * Get number of entries read as a batch by readahead worker.
      *
@@ -26,6 +26,7 @@ import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.distributedlog.exceptions.LogRecordTooLongException;
 import org.apache.distributedlog.exceptions.WriteException;
 import org.apache.distributedlog.io.CompressionCodec;
+import org.apache.distributedlog.io.CompressionUtils;
 
 /**
  * A set of {@link LogRecord}s.
@@ -50,11 +51,41 @@ public class Entry {
             int initialBufferSize,
             boolean envelopeBeforeTransmit,
             CompressionCodec.Type codec) {
+        return newEntry(
+                logName,
+                initialBufferSize,
+                envelopeBeforeTransmit,
+                codec,
+                CompressionUtils.getCompressionCodec(codec));
+    }
+
+    /**
+     * Create a new log record set, compressed by the given compressor.
+     *
+     * @param logName
+     *          name of the log
+     * @param initialBufferSize
+     *          initial buffer size
+     * @param envelopeBeforeTransmit
+     *          if envelope the buffer before transmit
+     * @param codec
+     *          compression codec
+     * @param compressor
+     *          compressor of the codec, e.g. configured with a compression level or a dictionary
+     * @return writer to build a log record set.
+     */
+    public static Writer newEntry(
+            String logName,
+            int initialBufferSize,
+            boolean envelopeBeforeTransmit,
+            CompressionCodec.Type codec,
+            CompressionCodec compressor) {
         return new EnvelopedEntryWriter(
                 logName,
                 initialBufferSize,
                 envelopeBeforeTransmit,
-                codec);
+                codec,
+                compressor);
     }
 
     public static Builder newBuilder() {
@@ -194,6 +225,13 @@ public class Entry {
          */
         long getEntryId();
 
+        /**
+         * Return the size of the entry held by the reader, in bytes.
+         *
+         * @return the size of the entry held by the reader.
+         */
+        int getSizeInBytes();
+
         /**
          * Read next log record from this record set.
          *
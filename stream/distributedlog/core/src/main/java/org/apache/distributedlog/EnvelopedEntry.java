@@ -52,8 +52,8 @@ import org.apache.distributedlog.io.CompressionUtils;
  *      ----------------
  *      00      : No Compression
  *      01      : LZ4 Compression
- *      10      : Unused
- *      11      : Unused
+ *      10      : ZSTD Compression
+ *      11      : Snappy Compression
  */
 class EnvelopedEntry {
 
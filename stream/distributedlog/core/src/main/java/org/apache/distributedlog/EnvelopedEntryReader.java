@@ -32,6 +32,7 @@ class EnvelopedEntryReader implements Entry.Reader, RecordStream {
     private final long logSegmentSeqNo;
     private final long entryId;
     private final ByteBuf src;
+    private final int sizeInBytes;
     private final LogRecord.Reader reader;
 
     // slot id
@@ -55,6 +56,7 @@ class EnvelopedEntryReader implements Entry.Reader, RecordStream {
         } else {
             this.src = in;
         }
+        this.sizeInBytes = src.readableBytes();
         this.reader = new LogRecord.Reader(
                 this,
                 src,
@@ -93,6 +95,11 @@ class EnvelopedEntryReader implements Entry.Reader, RecordStream {
         return entryId;
     }
 
+    @Override
+    public int getSizeInBytes() {
+        return sizeInBytes;
+    }
+
     @Override
     public LogRecordWithDLSN nextRecord() throws IOException {
         checkLastException();
@@ -40,7 +40,6 @@ import org.apache.distributedlog.exceptions.LogRecordTooLongException;
 import org.apache.distributedlog.exceptions.WriteException;
 import org.apache.distributedlog.io.CompressionCodec;
 import org.apache.distributedlog.io.CompressionCodec.Type;
-import org.apache.distributedlog.io.CompressionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,6 +69,7 @@ class EnvelopedEntryWriter implements Writer {
     private final List<WriteRequest> writeRequests;
     private final boolean envelopeBeforeTransmit;
     private final CompressionCodec.Type codec;
+    private final CompressionCodec compressor;
     private final int flags;
     private int count = 0;
     private boolean hasUserData = false;
@@ -78,7 +78,8 @@ class EnvelopedEntryWriter implements Writer {
     EnvelopedEntryWriter(String logName,
                          int initialBufferSize,
                          boolean envelopeBeforeTransmit,
-                         CompressionCodec.Type codec) {
+                         CompressionCodec.Type codec,
+                         CompressionCodec compressor) {
         this.logName = logName;
         this.buffer = PooledByteBufAllocator.DEFAULT.buffer(
                 Math.min(Math.max(initialBufferSize * 6 / 5, HEADER_LENGTH), MAX_LOGRECORDSET_SIZE),
@@ -87,6 +88,7 @@ class EnvelopedEntryWriter implements Writer {
         this.writeRequests = new LinkedList<WriteRequest>();
         this.envelopeBeforeTransmit = envelopeBeforeTransmit;
         this.codec = codec;
+        this.compressor = compressor;
         this.flags = codec.code() & COMPRESSION_CODEC_MASK;
         if (envelopeBeforeTransmit) {
             this.buffer.writerIndex(HEADER_LENGTH);
@@ -188,8 +190,6 @@ class EnvelopedEntryWriter implements Writer {
         }
 
         // compression
-        CompressionCodec compressor =
-                CompressionUtils.getCompressionCodec(codec);
         ByteBuf uncompressedBuf = buffer.slice(dataOffset, dataLen);
         ByteBuf compressedBuf = compressor.compress(uncompressedBuf, HEADER_LENGTH);
         // update version
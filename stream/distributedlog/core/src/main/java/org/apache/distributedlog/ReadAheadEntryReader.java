@@ -259,6 +259,7 @@ class ReadAheadEntryReader implements
     // Cache
     //
     private final LinkedBlockingQueue<Entry.Reader> entryQueue;
+    private final ReadAheadMemoryBudget.ReaderUsage cacheUsage;
 
     //
     // State of the reader
@@ -298,6 +299,7 @@ class ReadAheadEntryReader implements
                                 BKLogReadHandler readHandler,
                                 LogSegmentEntryStore entryStore,
                                 OrderedScheduler scheduler,
+                                ReadAheadMemoryBudget readAheadBudget,
                                 Ticker ticker,
                                 AlertStatsLogger alertStatsLogger) {
         this.streamName = streamName;
@@ -320,6 +322,7 @@ class ReadAheadEntryReader implements
         this.segmentReadersToClose = new LinkedList<SegmentReader>();
         // create the readahead entry queue
         this.entryQueue = new LinkedBlockingQueue<Entry.Reader>();
+        this.cacheUsage = readAheadBudget.newReader(streamName);
 
         // start the idle reader detection
         lastEntryAddedTime = Stopwatch.createStarted(ticker);
@@ -479,6 +482,7 @@ class ReadAheadEntryReader implements
             logger.debug("[{}][state:{}] Closing read ahead", streamName, state);
         }
         state = State.CLOSED;
+        cacheUsage.close();
 
         List<CompletableFuture<Void>> closeFutures = Lists.newArrayListWithExpectedSize(
                 segmentReaders.size() + segmentReadersToClose.size() + 1);
@@ -590,6 +594,11 @@ class ReadAheadEntryReader implements
         }
 
         lastEntryAddedTime.reset().start();
+        long numBytes = 0L;
+        for (Entry.Reader entry : entries) {
+            numBytes += entry.getSizeInBytes();
+        }
+        cacheUsage.reserve(numBytes);
         entryQueue.addAll(entries);
         if (!entries.isEmpty()) {
             Entry.Reader lastEntry = entries.get(entries.size() - 1);
@@ -627,12 +636,16 @@ class ReadAheadEntryReader implements
             throw lastException.get();
         }
         Entry.Reader entry;
+        cacheUsage.markPolled();
         try {
             entry = entryQueue.poll(waitTime, waitTimeUnit);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new DLInterruptedException("Interrupted on waiting next readahead entry : ", e);
         }
+        if (null != entry) {
+            cacheUsage.release(entry.getSizeInBytes());
+        }
         try {
             return entry;
         } finally {
@@ -653,12 +666,22 @@ class ReadAheadEntryReader implements
     }
 
     /**
-     * Return if the cache is full.
+     * Return number of bytes of the cached entries.
+     *
+     * @return number of bytes of the cached entries.
+     */
+    public long getNumCachedBytes() {
+        return cacheUsage.getCachedBytes();
+    }
+
+    /**
+     * Return if the cache is full, either it holds the max number of entries or the reader is
+     * over its share of the readahead memory budget.
      *
      * @return true if the cache is full, otherwise false.
      */
     public boolean isCacheFull() {
-        return getNumCachedEntries() >= maxCachedEntries;
+        return getNumCachedEntries() >= maxCachedEntries || !cacheUsage.canReadAhead();
     }
 
     @VisibleForTesting
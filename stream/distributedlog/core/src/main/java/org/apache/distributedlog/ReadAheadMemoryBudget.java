@@ -0,0 +1,281 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.distributedlog;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * Memory budget, in bytes, of the readahead caches of all the readers of a namespace.
+ *
+ * <p>Half of the budget is split evenly across the readers: a reader can always read ahead until
+ * its cache holds its share. The other half is a pool that only the readers consuming their cache
+ * can borrow from, so that they read ahead further than the readers that are not consumed. A reader
+ * returns the bytes it borrowed first, as its cache is consumed.
+ *
+ * <p>The readahead of a reader is paused once it is over its share and can't borrow what is over it,
+ * so the caches may exceed the budget by up to one readahead batch per reader. A non-positive budget
+ * doesn't limit the readahead, but the bytes cached are still tracked.
+ *
+ * <h3>Metrics</h3>
+ * <ul>
+ * <li> `scope`/cached_bytes : the bytes cached by all the readers.
+ * <li> `scope`/borrowed_bytes : the bytes borrowed from the shared pool.
+ * <li> `scope`/readers : the number of readers.
+ * <li> `per_log_scope`/stream_`name`/readahead/cached_bytes : the bytes cached by the readers of a stream.
+ * </ul>
+ */
+class ReadAheadMemoryBudget {
+
+    // a reader that polled its cache within this window is consuming it
+    private static final long CONSUMING_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long maxBytes;
+    private final long sharedBytes;
+    // bytes borrowed from the shared pool, never over sharedBytes
+    private final AtomicLong sharedPoolUsage = new AtomicLong(0L);
+    private final AtomicLong cachedBytes = new AtomicLong(0L);
+    private final AtomicInteger numReaders = new AtomicInteger(0);
+    private final ConcurrentHashMap<String, StreamUsage> streams = new ConcurrentHashMap<>();
+
+    // Stats
+    private final StatsLogger statsLogger;
+    private final StatsLogger perLogStatsLogger;
+    private final Gauge<Number> cachedBytesGauge;
+    private final Gauge<Number> borrowedBytesGauge;
+    private final Gauge<Number> numReadersGauge;
+
+    ReadAheadMemoryBudget(long maxBytes, StatsLogger statsLogger, StatsLogger perLogStatsLogger) {
+        this.maxBytes = maxBytes;
+        this.sharedBytes = maxBytes / 2;
+        this.statsLogger = statsLogger;
+        this.perLogStatsLogger = perLogStatsLogger;
+        this.cachedBytesGauge = newGauge(cachedBytes);
+        this.borrowedBytesGauge = new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return sharedPoolUsage.get();
+            }
+        };
+        this.numReadersGauge = newGauge(numReaders);
+        statsLogger.registerGauge("cached_bytes", cachedBytesGauge);
+        statsLogger.registerGauge("borrowed_bytes", borrowedBytesGauge);
+        statsLogger.registerGauge("readers", numReadersGauge);
+    }
+
+    private static Gauge<Number> newGauge(Number value) {
+        return new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Register a reader of the stream.
+     *
+     * @param streamName name of the stream read by the reader
+     * @return the usage of the budget by the reader, to close once the reader is closed
+     */
+    ReaderUsage newReader(String streamName) {
+        StreamUsage stream = streams.compute(streamName, (name, usage) -> {
+            if (null == usage) {
+                usage = new StreamUsage(perLogStatsLogger.scopeLabel("stream", name).scope("readahead"));
+                usage.statsLogger.registerGauge("cached_bytes", usage.gauge);
+            }
+            usage.numReaders++;
+            return usage;
+        });
+        numReaders.incrementAndGet();
+        return new ReaderUsage(streamName, stream);
+    }
+
+    private void releaseStream(String streamName) {
+        streams.computeIfPresent(streamName, (name, usage) -> {
+            if (--usage.numReaders > 0) {
+                return usage;
+            }
+            usage.statsLogger.unregisterGauge("cached_bytes", usage.gauge);
+            return null;
+        });
+    }
+
+    long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    long getBorrowedBytes() {
+        return sharedPoolUsage.get();
+    }
+
+    void close() {
+        statsLogger.unregisterGauge("cached_bytes", cachedBytesGauge);
+        statsLogger.unregisterGauge("borrowed_bytes", borrowedBytesGauge);
+        statsLogger.unregisterGauge("readers", numReadersGauge);
+    }
+
+    private static class StreamUsage {
+        final StatsLogger statsLogger;
+        final AtomicLong cachedBytes = new AtomicLong(0L);
+        final Gauge<Number> gauge = newGauge(cachedBytes);
+        // guarded by the streams map
+        int numReaders = 0;
+
+        StreamUsage(StatsLogger statsLogger) {
+            this.statsLogger = statsLogger;
+        }
+    }
+
+    /**
+     * The usage of the budget by the readahead cache of a reader.
+     */
+    class ReaderUsage {
+        private final String streamName;
+        private final StreamUsage stream;
+        private volatile long lastPollNanos = MathUtils.nowInNano();
+        // guarded by this
+        private long cachedBytes = 0L;
+        private long borrowedBytes = 0L;
+        private boolean closed = false;
+
+        private ReaderUsage(String streamName, StreamUsage stream) {
+            this.streamName = streamName;
+            this.stream = stream;
+        }
+
+        private long getShare() {
+            return (maxBytes - sharedBytes) / Math.max(1, numReaders.get());
+        }
+
+        /**
+         * Return if the reader may read more entries ahead.
+         *
+         * <p>The bytes of the reader that are over its share and were not borrowed from the shared
+         * pool have to be borrowed before it reads further ahead.
+         *
+         * @return true if the reader is within its share or borrowed what is over it.
+         */
+        synchronized boolean canReadAhead() {
+            if (maxBytes <= 0) {
+                return true;
+            }
+            long overShare = cachedBytes - borrowedBytes - getShare();
+            if (overShare < 0) {
+                return true;
+            }
+            if (MathUtils.elapsedNanos(lastPollNanos) >= CONSUMING_WINDOW_NANOS) {
+                return false;
+            }
+            if (overShare == 0) {
+                return sharedPoolUsage.get() < sharedBytes;
+            }
+            return tryBorrow(overShare);
+        }
+
+        /**
+         * Record that the reader polled its cache.
+         */
+        void markPolled() {
+            lastPollNanos = MathUtils.nowInNano();
+        }
+
+        synchronized long getCachedBytes() {
+            return cachedBytes;
+        }
+
+        /**
+         * Account the bytes of the entries added to the cache, borrowing what is over the share of
+         * the reader from the shared pool. Only the bytes actually reserved from the pool are counted
+         * as borrowed; the rest stays over the share of the reader and pauses its readahead.
+         */
+        synchronized void reserve(long bytes) {
+            if (closed) {
+                return;
+            }
+            cachedBytes += bytes;
+            stream.cachedBytes.addAndGet(bytes);
+            ReadAheadMemoryBudget.this.cachedBytes.addAndGet(bytes);
+            if (maxBytes > 0) {
+                long overShare = cachedBytes - borrowedBytes - getShare();
+                if (overShare > 0) {
+                    tryBorrow(overShare);
+                }
+            }
+        }
+
+        private boolean tryBorrow(long bytes) {
+            while (true) {
+                long usage = sharedPoolUsage.get();
+                if (usage + bytes > sharedBytes) {
+                    return false;
+                }
+                if (sharedPoolUsage.compareAndSet(usage, usage + bytes)) {
+                    borrowedBytes += bytes;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Release the bytes of the entries removed from the cache, returning the borrowed bytes first.
+         */
+        synchronized void release(long bytes) {
+            if (closed) {
+                return;
+            }
+            bytes = Math.min(bytes, cachedBytes);
+            cachedBytes -= bytes;
+            stream.cachedBytes.addAndGet(-bytes);
+            ReadAheadMemoryBudget.this.cachedBytes.addAndGet(-bytes);
+            long returned = Math.min(bytes, borrowedBytes);
+            if (returned > 0) {
+                borrowedBytes -= returned;
+                sharedPoolUsage.addAndGet(-returned);
+            }
+        }
+
+        /**
+         * Release all the bytes of the reader and unregister it from the budget.
+         */
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            release(cachedBytes);
+            closed = true;
+            numReaders.decrementAndGet();
+            releaseStream(streamName);
+        }
+    }
+}
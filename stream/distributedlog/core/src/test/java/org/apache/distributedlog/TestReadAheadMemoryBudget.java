@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.distributedlog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.distributedlog.ReadAheadMemoryBudget.ReaderUsage;
+import org.junit.Test;
+
+/**
+ * Test Case for {@link ReadAheadMemoryBudget}.
+ */
+public class TestReadAheadMemoryBudget {
+
+    private static final long MAX_BYTES = 1000L;
+    private static final long BATCH_BYTES = 60L;
+
+    private static ReadAheadMemoryBudget newBudget(long maxBytes) {
+        return new ReadAheadMemoryBudget(maxBytes, NullStatsLogger.INSTANCE, NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void testReaderWithinShare() {
+        ReadAheadMemoryBudget budget = newBudget(MAX_BYTES);
+        ReaderUsage reader = budget.newReader("stream");
+
+        // a single reader owns half of the budget
+        reader.reserve(MAX_BYTES / 2 - 1);
+        assertTrue(reader.canReadAhead());
+        assertEquals(MAX_BYTES / 2 - 1, budget.getCachedBytes());
+        reader.close();
+        assertEquals(0L, budget.getCachedBytes());
+    }
+
+    @Test
+    public void testReadersTogetherExceedingBudget() {
+        ReadAheadMemoryBudget budget = newBudget(MAX_BYTES);
+        List<ReaderUsage> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(budget.newReader("stream-" + i));
+        }
+
+        // all the readers are consumed and read ahead in turn, for as long as they are allowed to
+        boolean readAhead = true;
+        for (int round = 0; readAhead && round < 1000; round++) {
+            readAhead = false;
+            for (ReaderUsage reader : readers) {
+                reader.markPolled();
+                if (reader.canReadAhead()) {
+                    reader.reserve(BATCH_BYTES);
+                    readAhead = true;
+                }
+            }
+        }
+
+        assertFalse("The readers should be paused", readAhead);
+        assertTrue(budget.getBorrowedBytes() <= MAX_BYTES / 2);
+        assertTrue("The caches hold " + budget.getCachedBytes() + " bytes",
+            budget.getCachedBytes() <= MAX_BYTES + readers.size() * BATCH_BYTES);
+        for (ReaderUsage reader : readers) {
+            assertFalse(reader.canReadAhead());
+        }
+
+        // consuming the cache of a reader lets it read ahead again
+        ReaderUsage reader = readers.get(0);
+        reader.release(reader.getCachedBytes());
+        assertTrue(reader.canReadAhead());
+
+        readers.forEach(ReaderUsage::close);
+        assertEquals(0L, budget.getCachedBytes());
+    }
+
+    @Test
+    public void testFailedBorrowPausesReader() {
+        ReadAheadMemoryBudget budget = newBudget(MAX_BYTES);
+        ReaderUsage reader1 = budget.newReader("stream-1");
+        ReaderUsage reader2 = budget.newReader("stream-2");
+        long share = MAX_BYTES / 2 / 2;
+        long sharedBytes = MAX_BYTES / 2;
+
+        // the first reader borrows all the shared pool but one byte
+        reader1.reserve(share + sharedBytes - 1);
+        assertTrue(reader1.canReadAhead());
+
+        // the second reader goes over its share, and can't borrow what is over it
+        reader2.reserve(share + BATCH_BYTES);
+        assertFalse(reader2.canReadAhead());
+        assertEquals(sharedBytes - 1, budget.getBorrowedBytes());
+
+        // the first reader returns what it borrowed as its cache is consumed
+        reader1.release(BATCH_BYTES);
+        assertTrue(reader2.canReadAhead());
+
+        reader1.close();
+        reader2.close();
+        assertEquals(0L, budget.getCachedBytes());
+    }
+
+    @Test
+    public void testUnlimitedBudget() {
+        ReadAheadMemoryBudget budget = newBudget(0L);
+        ReaderUsage reader = budget.newReader("stream");
+        reader.reserve(Long.MAX_VALUE / 2);
+        assertTrue(reader.canReadAhead());
+        assertEquals(Long.MAX_VALUE / 2, budget.getCachedBytes());
+        reader.close();
+    }
+}
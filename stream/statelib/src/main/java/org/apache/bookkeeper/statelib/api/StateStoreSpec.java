@@ -65,4 +65,9 @@ public class StateStoreSpec {
 
     @Default
     private int ttlSeconds = 0;
+
+    @Default
+    // Group commit the journal commands into log record sets. The journals written with record sets
+    // can't be replayed by the versions that don't support them.
+    private boolean journalRecordSetsEnable = false;
 }
@@ -24,13 +24,17 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.buffer.ByteBuf;
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -46,6 +50,7 @@ import org.apache.bookkeeper.statelib.api.exceptions.StateStoreRuntimeException;
 import org.apache.bookkeeper.statelib.impl.Constants;
 import org.apache.distributedlog.DLSN;
 import org.apache.distributedlog.LogRecord;
+import org.apache.distributedlog.LogRecordSet;
 import org.apache.distributedlog.LogRecordWithDLSN;
 import org.apache.distributedlog.api.AsyncLogReader;
 import org.apache.distributedlog.api.AsyncLogWriter;
@@ -54,14 +59,31 @@ import org.apache.distributedlog.api.namespace.Namespace;
 import org.apache.distributedlog.bk.LedgerMetadata;
 import org.apache.distributedlog.exceptions.LogEmptyException;
 import org.apache.distributedlog.exceptions.LogNotFoundException;
+import org.apache.distributedlog.io.CompressionCodec;
 import org.apache.distributedlog.util.Utils;
 
 /**
  * An abstract implementation of {@link AsyncStateStore} with journal.
+ *
+ * <p>Each command is appended to the journal as a {@link LogRecord} whose transaction id is its revision.
+ * When {@link StateStoreSpec#isJournalRecordSetsEnable()} is set, the commands are group committed instead:
+ * the commands written while a write to the journal is pending are appended as a single {@link LogRecordSet},
+ * whose transaction id is the revision of its first command. The journals written with record sets can't be
+ * replayed by the versions that don't support them.
+ *
+ * <p>The journal is replayed, and purged, from {@link #MAX_RECORD_SET_COMMANDS} revisions before a revision,
+ * whatever the setting, so that a journal written with record sets is still replayed once they are disabled.
  */
 @Slf4j
 public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends StateStore> implements AsyncStateStore {
 
+    // the max number of commands in a record set. the journal is replayed from this many revisions before the
+    // last revision of the local store, so that the record set that contains it is read from its start.
+    // it can't be lowered without breaking the replay of the existing journals.
+    static final int MAX_RECORD_SET_COMMANDS = 512;
+    // the max size of the commands in a record set
+    static final int MAX_RECORD_SET_BYTES = 256 * 1024;
+
     // local state store instance
     @Getter
     protected final LocalStateStoreT localStore;
@@ -83,6 +105,10 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
     private AsyncLogWriter writer;
     private long nextRevision;
     private CommandProcessor<LocalStateStoreT> commandProcessor;
+    // the commands waiting to be written to the journal
+    private List<ByteBuf> pendingCommands = new ArrayList<>();
+    private List<CompletableFuture<DLSN>> pendingCommandFutures = new ArrayList<>();
+    private int pendingCommandBytes = 0;
 
     // checkpoint
     private ScheduledFuture<?> checkpointTask;
@@ -111,7 +137,9 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
     }
 
     public void purgeOlderThan(long txId) throws IOException {
-        logManager.purgeLogsOlderThan(txId);
+        // keep the log segment of the record set that contains the revision, which might be the last record
+        // of an older log segment
+        logManager.purgeLogsOlderThan(getReplayStartTxId(txId));
     }
     public CompletableFuture<Boolean> truncateJournal(DLSN dlsn) {
         return getWriter().truncate(dlsn);
@@ -127,7 +155,7 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
             "No log stream is specified for state store %s", spec.getName());
     }
 
-    private synchronized void markInitialized(AsyncLogReader reader) {
+    private synchronized void markInitialized(AsyncLogReader reader, CommandRevisions revisions) {
         isInitialized = true;
         // schedule periodical checkpoint
         if (null != checkpointInterval) {
@@ -139,7 +167,7 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
                 TimeUnit.MILLISECONDS);
         }
         if (spec.isReadonly()) {
-            replayLoop(reader);
+            replayLoop(reader, revisions);
         } else {
             reader.asyncClose();
         }
@@ -235,46 +263,45 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
         LedgerMetadata metadata = new LedgerMetadata();
         metadata.setApplication(Constants.LEDGER_METADATA_APPLICATION_STREAM_STORAGE);
         metadata.setComponent("state-store");
-        return logManager.openAsyncLogWriter(metadata).thenComposeAsync(w -> {
-            synchronized (this) {
-                writer = w;
-                nextRevision = writer.getLastTxId();
-                if (nextRevision < 0) {
-                    nextRevision = 0L;
+        return logManager.openAsyncLogWriter(metadata)
+            .thenComposeAsync(w -> getLastRevision(w.getLastTxId()).thenApply(lastRevision -> {
+                synchronized (this) {
+                    writer = w;
+                    nextRevision = lastRevision;
+                    log.info("Initialized the journal writer for mvcc store {} : last revision = {}",
+                        name(), nextRevision);
                 }
-                log.info("Initialized the journal writer for mvcc store {} : last revision = {}",
-                    name(), nextRevision);
-            }
-            return writeCommandBuf(newCatchupMarker());
-        }, writeIOScheduler);
+                return w;
+            }), writeIOScheduler)
+            .thenComposeAsync(w -> writeCommandBuf(newCatchupMarker()), writeIOScheduler);
     }
 
     private CompletableFuture<DLSN> writeCatchUpMarker() {
         LedgerMetadata metadata = new LedgerMetadata();
         metadata.setApplication(Constants.LEDGER_METADATA_APPLICATION_STREAM_STORAGE);
         metadata.setComponent("state-store");
-        return logManager.openAsyncLogWriter(metadata).thenComposeAsync(w -> {
-            synchronized (this) {
-                writer = w;
-                nextRevision = writer.getLastTxId();
-                if (nextRevision < 0) {
-                    nextRevision = 0L;
+        return logManager.openAsyncLogWriter(metadata)
+            .thenComposeAsync(w -> getLastRevision(w.getLastTxId()).thenApply(lastRevision -> {
+                synchronized (this) {
+                    writer = w;
+                    nextRevision = lastRevision;
+                    log.info("Initialized the journal writer for writing catchup marker to mvcc store {} :"
+                        + " last revision = {}", name(), nextRevision);
                 }
-                log.info("Initialized the journal writer for writing catchup marker to mvcc store {} :"
-                    + " last revision = {}", name(), nextRevision);
-            }
-            return writeCommandBuf(newCatchupMarker());
-        }).thenCompose(dlsn -> {
-            AsyncLogWriter w;
-            synchronized (this) {
-                w = writer;
-            }
-            if (null == w) {
-                return FutureUtils.value(dlsn);
-            } else {
-                return w.asyncClose().thenApply(ignored -> dlsn);
-            }
-        });
+                return w;
+            }))
+            .thenCompose(w -> writeCommandBuf(newCatchupMarker()))
+            .thenCompose(dlsn -> {
+                AsyncLogWriter w;
+                synchronized (this) {
+                    w = writer;
+                }
+                if (null == w) {
+                    return FutureUtils.value(dlsn);
+                } else {
+                    return w.asyncClose().thenApply(ignored -> dlsn);
+                }
+            });
     }
 
     private CompletableFuture<DLSN> getLastDLSN(StateStoreSpec spec) {
@@ -312,7 +339,7 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
 
     private CompletableFuture<Void> replayJournal(DLSN endDLSN) {
         long lastRevision = localStore.getLastRevision();
-        return logManager.openAsyncLogReader(lastRevision)
+        return logManager.openAsyncLogReader(getReplayStartTxId(lastRevision))
             .thenComposeAsync(r -> {
                 CompletableFuture<Void> replayFuture = FutureUtils.createFuture();
                 replayFuture.exceptionally(
@@ -322,7 +349,7 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
                     });
 
                 log.info("Successfully open the journal reader for mvcc store {} : end dlsn = {}", name(), endDLSN);
-                replayJournal(r, endDLSN, replayFuture, lastRevision);
+                replayJournal(r, endDLSN, replayFuture, new CommandRevisions(lastRevision));
                 return replayFuture;
             }, writeIOScheduler);
     }
@@ -330,7 +357,7 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
     private void replayJournal(AsyncLogReader reader,
                                DLSN endDLSN,
                                CompletableFuture<Void> future,
-                               long startingTxId) {
+                               CommandRevisions revisions) {
         synchronized (this) {
             if (null != closeFuture) {
                 FutureUtils.completeExceptionally(future, new StateStoreClosedException(name()));
@@ -338,40 +365,13 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
             }
         }
 
-        reader.readNext().whenComplete(
-            (record, exc) -> {
-                if (exc != null) {
-                    FutureUtils.completeExceptionally(future, exc.getCause());
-                    return;
-                }
-                if (startingTxId != -1 && startingTxId != record.getTransactionId()) {
-                    String msg = String.format(
-                        "replayJournal failed: Invalid starting transaction %d expecting %d for stream %s",
-                        record.getTransactionId(), startingTxId, name);
-                    log.error(msg);
-                    FutureUtils.completeExceptionally(future, new InvalidStateStoreException(msg));
-                    return;
-                }
-            }
-        ).whenComplete(newRecordHandler(reader, endDLSN, future));
-    }
-
-    private void replayJournal(AsyncLogReader reader,
-                               DLSN endDLSN,
-                               CompletableFuture<Void> future) {
-        synchronized (this) {
-            if (null != closeFuture) {
-                FutureUtils.completeExceptionally(future, new StateStoreClosedException(name()));
-                return;
-            }
-        }
-
-        reader.readNext().whenComplete(newRecordHandler(reader, endDLSN, future));
+        reader.readNext().whenComplete(newRecordHandler(reader, endDLSN, future, revisions));
     }
 
     private FutureEventListener<LogRecordWithDLSN> newRecordHandler(AsyncLogReader reader,
                                                                     DLSN endDLSN,
-                                                                    CompletableFuture<Void> future) {
+                                                                    CompletableFuture<Void> future,
+                                                                    CommandRevisions revisions) {
         return new FutureEventListener<LogRecordWithDLSN>() {
             @Override
             public void onSuccess(LogRecordWithDLSN record) {
@@ -380,15 +380,11 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
                         record, record.getDlsn(), name());
                 }
                 try {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Applying command transaction {} - record {} @ {} to mvcc store {}",
-                            record.getTransactionId(), record, record.getDlsn(), name());
-                    }
-                    commandProcessor.applyCommand(record.getTransactionId(), record.getPayloadBuf(), localStore);
+                    DLSN lastDLSN = applyCommands(record, revisions);
 
-                    if (record.getDlsn().compareTo(endDLSN) >= 0) {
+                    if (lastDLSN.compareTo(endDLSN) >= 0) {
                         log.info("Finished replaying journal for state store {}", name());
-                        markInitialized(reader);
+                        markInitialized(reader, revisions);
                         FutureUtils.complete(future, null);
                         return;
                     }
@@ -398,7 +394,7 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
                             record.getDlsn(), name());
                     }
                     // read next record
-                    replayJournal(reader, endDLSN, future);
+                    replayJournal(reader, endDLSN, future, revisions);
                 } catch (Exception e) {
                     log.error("Exception is thrown when applying command record {} @ {} to mvcc store {}",
                         record, record.getDlsn(), name());
@@ -413,7 +409,7 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
         };
     }
 
-    private void replayLoop(AsyncLogReader reader) {
+    private void replayLoop(AsyncLogReader reader, CommandRevisions revisions) {
         synchronized (this) {
             if (null != closeFuture) {
                 reader.asyncClose();
@@ -429,10 +425,10 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
                         record, record.getDlsn(), name());
                 }
                 try {
-                    commandProcessor.applyCommand(record.getTransactionId(), record.getPayloadBuf(), localStore);
+                    applyCommands(record, revisions);
                     // read next record
-                    replayLoop(reader);
-                } catch (StateStoreRuntimeException e) {
+                    replayLoop(reader, revisions);
+                } catch (StateStoreRuntimeException | IOException e) {
                     log.error("Fail to reply command record {}", record, e);
                     // TODO: handle state store exception
                 }
@@ -445,6 +441,156 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
         });
     }
 
+    /**
+     * Apply the commands of a journal record to the local store.
+     *
+     * @return the dlsn of the last command of the record.
+     */
+    private DLSN applyCommands(LogRecordWithDLSN record, CommandRevisions revisions) throws IOException {
+        return forEachCommand(record, revisions, (revision, command) -> {
+            if (!revisions.checkStartRevision(revision)) {
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Applying command transaction {} - record {} @ {} to mvcc store {}",
+                    revision, command, command.getDlsn(), name());
+            }
+            commandProcessor.applyCommand(revision, command.getPayloadBuf(), localStore);
+        });
+    }
+
+    /**
+     * Process the commands of a journal record, which is either a single command or a record set of commands.
+     *
+     * <p>A record set is read as a single record, or as one record per command when the reader deserializes
+     * record sets.
+     *
+     * @return the dlsn of the last command of the record.
+     */
+    private DLSN forEachCommand(LogRecordWithDLSN record,
+                                CommandRevisions revisions,
+                                BiConsumer<Long, LogRecordWithDLSN> consumer) throws IOException {
+        if (!record.isRecordSet()) {
+            consumer.accept(revisions.next(record.getTransactionId()), record);
+            return record.getDlsn();
+        }
+        LogRecordSet.Reader reader = LogRecordSet.of(record);
+        try {
+            DLSN lastDLSN = record.getDlsn();
+            LogRecordWithDLSN command;
+            while (null != (command = reader.nextRecord())) {
+                consumer.accept(revisions.next(record.getTransactionId()), command);
+                lastDLSN = command.getDlsn();
+            }
+            return lastDLSN;
+        } finally {
+            reader.release();
+        }
+    }
+
+    /**
+     * Get the last revision of the journal, whose last record has the given transaction id.
+     */
+    private CompletableFuture<Long> getLastRevision(long lastTxId) {
+        if (lastTxId < 0) {
+            return FutureUtils.value(0L);
+        }
+        // the last record might be a record set, whose transaction id is the revision of its first command. the
+        // last dlsn is the dlsn of the record set, or of its last command when the record sets are deserialized.
+        return logManager.getLastDLSNAsync().thenCompose(lastDLSN ->
+            logManager.openAsyncLogReader(lastTxId).thenCompose(reader -> {
+                CompletableFuture<Long> future = FutureUtils.createFuture();
+                readLastRevision(reader, lastDLSN, new CommandRevisions(-1L), future);
+                return FutureUtils.ensure(future, () -> reader.asyncClose());
+            }));
+    }
+
+    private void readLastRevision(AsyncLogReader reader,
+                                  DLSN lastDLSN,
+                                  CommandRevisions revisions,
+                                  CompletableFuture<Long> future) {
+        reader.readNext().whenComplete(new FutureEventListener<LogRecordWithDLSN>() {
+            @Override
+            public void onSuccess(LogRecordWithDLSN record) {
+                try {
+                    if (forEachCommand(record, revisions, (revision, command) -> {}).compareTo(lastDLSN) >= 0) {
+                        FutureUtils.complete(future, revisions.getLastRevision());
+                    } else {
+                        readLastRevision(reader, lastDLSN, revisions, future);
+                    }
+                } catch (IOException e) {
+                    FutureUtils.completeExceptionally(future, e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                FutureUtils.completeExceptionally(future, cause);
+            }
+        });
+    }
+
+    private static long getReplayStartTxId(long revision) {
+        if (revision <= 0) {
+            return revision;
+        }
+        return Math.max(0L, revision - MAX_RECORD_SET_COMMANDS + 1);
+    }
+
+    /**
+     * Assigns the revisions of the commands read from the journal.
+     *
+     * <p>The commands of a record set share the transaction id of the set, which is the revision of its first
+     * command, and the commands of a plain record have distinct transaction ids.
+     */
+    private class CommandRevisions {
+        // the revision of the first command to apply, -1 to apply all the commands
+        private final long startRevision;
+        private boolean started;
+        private long txId = -1L;
+        private long numCommands = 0L;
+
+        CommandRevisions(long startRevision) {
+            this.startRevision = startRevision;
+            this.started = startRevision == -1L;
+        }
+
+        long next(long recordTxId) {
+            if (recordTxId == txId) {
+                return txId + numCommands++;
+            }
+            txId = recordTxId;
+            numCommands = 1L;
+            return recordTxId;
+        }
+
+        long getLastRevision() {
+            return txId + numCommands - 1;
+        }
+
+        /**
+         * Check whether the command of the given revision is applied. The commands before the last revision
+         * of the local store are skipped, and the journal must contain the last revision of the local store.
+         */
+        boolean checkStartRevision(long revision) {
+            if (started) {
+                return true;
+            }
+            if (revision < startRevision) {
+                return false;
+            }
+            if (revision != startRevision) {
+                String msg = String.format(
+                    "replayJournal failed: Invalid starting transaction %d expecting %d for stream %s",
+                    revision, startRevision, name);
+                log.error(msg);
+                throw new InvalidStateStoreException(msg);
+            }
+            started = true;
+            return true;
+        }
+    }
+
     @Override
     public CompletableFuture<Void> closeAsync() {
         CompletableFuture<Void> future;
@@ -464,6 +610,9 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
         // wait until last checkpoint task completed
         writeIOScheduler.submit(() -> {
             log.info("closing async state store {}", name);
+            if (null != getWriter()) {
+                flushCommands();
+            }
             FutureUtils.ensure(
                 // close the log streams
                 Utils.closeSequence(
@@ -545,18 +694,90 @@ public abstract class AbstractStateStoreWithJournal<LocalStateStoreT extends Sta
     }
 
     protected synchronized CompletableFuture<DLSN> writeCommandBuf(ByteBuf cmdBuf) {
-        long txId = ++nextRevision;
-        return FutureUtils.ensure(
-            writer.write(new LogRecord(txId, cmdBuf.nioBuffer())),
-            () -> cmdBuf.release());
+        if (!spec.isJournalRecordSetsEnable()) {
+            long txId = ++nextRevision;
+            return FutureUtils.ensure(
+                writer.write(new LogRecord(txId, cmdBuf.nioBuffer())),
+                () -> cmdBuf.release());
+        }
+        if (!pendingCommands.isEmpty() && pendingCommandBytes + cmdBuf.readableBytes() > MAX_RECORD_SET_BYTES) {
+            flushCommands();
+        }
+        ++nextRevision;
+        CompletableFuture<DLSN> future = FutureUtils.createFuture();
+        pendingCommands.add(cmdBuf);
+        pendingCommandFutures.add(future);
+        pendingCommandBytes += cmdBuf.readableBytes();
+        if (pendingCommands.size() >= MAX_RECORD_SET_COMMANDS) {
+            flushCommands();
+        } else if (pendingCommands.size() == 1) {
+            // the commands written until the flush runs are committed together
+            try {
+                writeIOScheduler.execute(this::flushCommands);
+            } catch (RejectedExecutionException e) {
+                flushCommands();
+            }
+        }
+        return future;
     }
 
     protected synchronized CompletableFuture<Long> writeCommandBufReturnTxId(ByteBuf cmdBuf) {
-        long txId = ++nextRevision;
-        return FutureUtils.ensure(
-            writer.write(new LogRecord(txId, cmdBuf.nioBuffer()))
-                .thenApply(dlsn -> txId),
-            () -> cmdBuf.release());
+        long txId = nextRevision + 1;
+        return writeCommandBuf(cmdBuf).thenApply(dlsn -> txId);
+    }
+
+    /**
+     * Write the pending commands to the journal, in the order of their revisions.
+     */
+    private synchronized void flushCommands() {
+        if (pendingCommands.isEmpty()) {
+            return;
+        }
+        List<ByteBuf> commands = pendingCommands;
+        List<CompletableFuture<DLSN>> futures = pendingCommandFutures;
+        int numBytes = pendingCommandBytes;
+        pendingCommands = new ArrayList<>();
+        pendingCommandFutures = new ArrayList<>();
+        pendingCommandBytes = 0;
+
+        long firstRevision = nextRevision - commands.size() + 1;
+        if (commands.size() == 1) {
+            ByteBuf cmdBuf = commands.get(0);
+            FutureUtils.proxyTo(
+                FutureUtils.ensure(
+                    writer.write(new LogRecord(firstRevision, cmdBuf.nioBuffer())),
+                    () -> cmdBuf.release()),
+                futures.get(0));
+            return;
+        }
+
+        LogRecordSet.Writer recordSet = LogRecordSet.newWriter(
+            LogRecordSet.HEADER_LEN + numBytes + commands.size() * Integer.BYTES,
+            CompressionCodec.Type.NONE);
+        try {
+            for (int i = 0; i < commands.size(); i++) {
+                recordSet.writeRecord(commands.get(i).nioBuffer(), futures.get(i));
+            }
+        } catch (IOException e) {
+            log.error("Fail to add commands to the record set of state store {}", name(), e);
+            recordSet.abortTransmit(e);
+            futures.forEach(future -> future.completeExceptionally(e));
+            return;
+        } finally {
+            commands.forEach(ByteBuf::release);
+        }
+
+        ByteBuf recordSetBuf = recordSet.getBuffer();
+        LogRecord record = new LogRecord(firstRevision, recordSetBuf);
+        record.setRecordSet();
+        writer.write(record).whenComplete((dlsn, cause) -> {
+            recordSetBuf.release();
+            if (null == cause) {
+                recordSet.completeTransmit(dlsn.getLogSegmentSequenceNo(), dlsn.getEntryId(), dlsn.getSlotId());
+            } else {
+                recordSet.abortTransmit(cause);
+            }
+        });
     }
 
     //
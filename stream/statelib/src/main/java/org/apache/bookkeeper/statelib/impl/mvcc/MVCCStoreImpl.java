@@ -30,10 +30,14 @@ import com.google.protobuf.TextFormat;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.api.kv.impl.op.OpFactoryImpl;
@@ -80,30 +84,92 @@ import org.apache.bookkeeper.statelib.impl.rocksdb.RocksUtils;
 import org.apache.bookkeeper.stream.proto.kv.store.ValueType;
 import org.apache.commons.lang.mutable.MutableLong;
 import org.apache.commons.lang3.tuple.Pair;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Snapshot;
 import org.rocksdb.WriteBatch;
 
 /**
  * MVCC Store Implementation.
  *
- * <p>The current implementation executes write operations in one single io thread.
- * It can be improved later to leverage the revision numbers to achieve mvcc.
+ * <p>The reads take no lock on the keys. A range read iterates a rocksdb snapshot, so that it
+ * sees a consistent view of the store while writes go on.
+ *
+ * <p>The writes on a single key, and the txns that only touch single keys, lock the stripes of
+ * the keys they touch, so that writes on different keys run concurrently. The deletes of key
+ * ranges, and the txns that contain range ops or delete key ranges, are exclusive with all the
+ * other operations, so that a txn stays isolated from the writes on the keys it reads.
  */
 @Slf4j
 class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V> {
 
     private static final Comparator<byte[]> COMPARATOR = UnsignedBytes.lexicographicalComparator();
+    private static final int NUM_KEY_LOCKS = 64;
 
     private final ResultFactory<K, V> resultFactory;
     private final KeyValueFactory<K, V> recordFactory;
     private final OpFactory<K, V> opFactory;
     private final Coder<MVCCRecord> recordCoder = MVCCRecordCoder.of();
+    // all the operations hold the read lock, except the deletes of key ranges and close
+    private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+    private final ReentrantLock[] keyLocks = new ReentrantLock[NUM_KEY_LOCKS];
 
     MVCCStoreImpl() {
         this.resultFactory = new ResultFactory<>();
         this.recordFactory = new KeyValueFactory<>();
         this.opFactory = new OpFactoryImpl<>();
+        for (int i = 0; i < NUM_KEY_LOCKS; i++) {
+            keyLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public void close() {
+        storeLock.writeLock().lock();
+        try {
+            super.close();
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    private static int keyLockIndex(byte[] rawKey) {
+        return Arrays.hashCode(rawKey) & (NUM_KEY_LOCKS - 1);
+    }
+
+    /**
+     * Lock the stripes of the given keys, in the order of the stripes to avoid deadlocks.
+     *
+     * @return the locks to release once the operation is done
+     */
+    private Lock[] lockKeys(List<byte[]> rawKeys) {
+        int[] indexes = rawKeys.stream().mapToInt(MVCCStoreImpl::keyLockIndex).distinct().sorted().toArray();
+        Lock[] locks = new Lock[indexes.length + 1];
+        locks[0] = storeLock.readLock();
+        for (int i = 0; i < indexes.length; i++) {
+            locks[i + 1] = keyLocks[indexes[i]];
+        }
+        for (Lock lock : locks) {
+            lock.lock();
+        }
+        return locks;
+    }
+
+    private Lock[] lockKey(K key) {
+        return lockKeys(Collections.singletonList(keyCoder.encode(key)));
+    }
+
+    private Lock[] lockStore() {
+        Lock lock = storeLock.writeLock();
+        lock.lock();
+        return new Lock[] { lock };
+    }
+
+    private static void unlock(Lock[] locks) {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
     }
 
     @Override
@@ -117,17 +183,17 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
     }
 
     @Override
-    public synchronized V putIfAbsent(K key, V value) {
+    public V putIfAbsent(K key, V value) {
         throw new UnsupportedOperationException("Please use #put(PutOp op) instead");
     }
 
     @Override
-    public synchronized KVMulti<K, V> multi() {
+    public KVMulti<K, V> multi() {
         throw new UnsupportedOperationException("Please use #txn(TxnOp op) instead");
     }
 
     @Override
-    public synchronized V delete(K key) {
+    public V delete(K key) {
         throw new UnsupportedOperationException("Please use #delete(DeleteOp op) instead");
     }
 
@@ -205,7 +271,7 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
     }
 
     @Override
-    public synchronized V get(K key) {
+    public V get(K key) {
         try (RangeOp<K, V> op = opFactory.newRange(
             key,
             opFactory.optionFactory().newRangeOption()
@@ -226,7 +292,7 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
     }
 
     @Override
-    public synchronized KVIterator<K, V> range(K from, K to) {
+    public KVIterator<K, V> range(K from, K to) {
         checkStoreOpen();
 
         RangeResultIterator iter = new RangeResultIterator(from, to);
@@ -340,6 +406,15 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         }
     }
 
+    /**
+     * Write the batch along with the last revision. The concurrent writes on different keys
+     * commit one at a time, so the last revision is written in order.
+     */
+    private synchronized void commitBatch(WriteBatch batch, long revision) {
+        updateLastRevision(batch, revision);
+        executeBatch(batch);
+    }
+
     /**
      * TODO: the increment operation can be optimized using rocksdb merge operator.
      */
@@ -358,23 +433,27 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         }
     }
 
-    synchronized IncrementResult<K, V> processIncrement(long revision, IncrementOp<K, V> op) {
-        checkStoreOpen();
-
-        WriteBatch batch = new WriteBatch();
-        IncrementResult<K, V> result = null;
+    IncrementResult<K, V> processIncrement(long revision, IncrementOp<K, V> op) {
+        Lock[] locks = lockKey(op.key());
         try {
-            result = increment(revision, batch, op);
-            updateLastRevision(batch, revision);
-            executeBatch(batch);
-            return result;
-        } catch (StateStoreRuntimeException e) {
-            if (null != result) {
-                result.close();
+            checkStoreOpen();
+
+            WriteBatch batch = new WriteBatch();
+            IncrementResult<K, V> result = null;
+            try {
+                result = increment(revision, batch, op);
+                commitBatch(batch, revision);
+                return result;
+            } catch (StateStoreRuntimeException e) {
+                if (null != result) {
+                    result.close();
+                }
+                throw e;
+            } finally {
+                RocksUtils.close(batch);
             }
-            throw e;
         } finally {
-            RocksUtils.close(batch);
+            unlock(locks);
         }
     }
 
@@ -458,23 +537,27 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         }
     }
 
-    synchronized PutResult<K, V> processPut(long revision, PutOp<K, V> op) {
-        checkStoreOpen();
-
-        WriteBatch batch = new WriteBatch();
-        PutResult<K, V> result = null;
+    PutResult<K, V> processPut(long revision, PutOp<K, V> op) {
+        Lock[] locks = lockKey(op.key());
         try {
-            result = put(revision, batch, op);
-            updateLastRevision(batch, revision);
-            executeBatch(batch);
-            return result;
-        } catch (StateStoreRuntimeException e) {
-            if (null != result) {
-                result.close();
+            checkStoreOpen();
+
+            WriteBatch batch = new WriteBatch();
+            PutResult<K, V> result = null;
+            try {
+                result = put(revision, batch, op);
+                commitBatch(batch, revision);
+                return result;
+            } catch (StateStoreRuntimeException e) {
+                if (null != result) {
+                    result.close();
+                }
+                throw e;
+            } finally {
+                RocksUtils.close(batch);
             }
-            throw e;
         } finally {
-            RocksUtils.close(batch);
+            unlock(locks);
         }
     }
 
@@ -573,26 +656,34 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         }
     }
 
-    synchronized DeleteResult<K, V> processDelete(long revision, DeleteOp<K, V> op) {
-        checkStoreOpen();
-
-        WriteBatch batch = new WriteBatch();
-        DeleteResult<K, V> result = null;
+    DeleteResult<K, V> processDelete(long revision, DeleteOp<K, V> op) {
+        Lock[] locks = isRangeDelete(op) ? lockStore() : lockKey(op.key());
         try {
-            result = delete(revision, batch, op, true);
-            updateLastRevision(batch, revision);
-            executeBatch(batch);
-            return result;
-        } catch (StateStoreRuntimeException e) {
-            if (null != result) {
-                result.close();
+            checkStoreOpen();
+
+            WriteBatch batch = new WriteBatch();
+            DeleteResult<K, V> result = null;
+            try {
+                result = delete(revision, batch, op, true);
+                commitBatch(batch, revision);
+                return result;
+            } catch (StateStoreRuntimeException e) {
+                if (null != result) {
+                    result.close();
+                }
+                throw e;
+            } finally {
+                RocksUtils.close(batch);
             }
-            throw e;
         } finally {
-            RocksUtils.close(batch);
+            unlock(locks);
         }
     }
 
+    private static <K, V> boolean isRangeDelete(DeleteOp<K, V> op) {
+        return null == op.key() || null != op.option().endKey();
+    }
+
     DeleteResult<K, V> delete(long revision, WriteBatch batch, DeleteOp<K, V> op, boolean allowBlind) {
         // parameters
         final K key = op.key();
@@ -648,7 +739,7 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
             if (null == endKey) {
                 batch.delete(key);
             } else {
-                Pair<byte[], byte[]> realRange = getRealRange(key, endKey);
+                Pair<byte[], byte[]> realRange = getRealRange(key, endKey, null);
                 endKey = realRange.getRight();
                 ++endKey[endKey.length - 1];
                 batch.deleteRange(realRange.getLeft(), endKey);
@@ -683,7 +774,7 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
                 }
             }
         } else {
-            Pair<byte[], byte[]> realRange = getRealRange(rawKey, rawEndKey);
+            Pair<byte[], byte[]> realRange = getRealRange(rawKey, rawEndKey, null);
             rawKey = realRange.getLeft();
             rawEndKey = realRange.getRight();
 
@@ -695,7 +786,8 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
                 numKvs,
                 null,
                 -1,
-                countOnly);
+                countOnly,
+                null);
 
             deleteBlind(batch, rawKey, rawEndKey);
         }
@@ -707,7 +799,7 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
     //
 
     @Override
-    public synchronized TxnResult<K, V> txn(long revision, TxnOp<K, V> op) {
+    public TxnResult<K, V> txn(long revision, TxnOp<K, V> op) {
         try {
             return processTxn(revision, op);
         } catch (MVCCStoreException e) {
@@ -721,8 +813,47 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         }
     }
 
-    synchronized TxnResult<K, V> processTxn(long revision, TxnOp<K, V> op) {
-        checkStoreOpen();
+    TxnResult<K, V> processTxn(long revision, TxnOp<K, V> op) {
+        Lock[] locks = lockTxn(op);
+        try {
+            checkStoreOpen();
+            return processTxnLocked(revision, op);
+        } finally {
+            unlock(locks);
+        }
+    }
+
+    /**
+     * Lock the keys compared or written by the txn, or the whole store if it contains a range op
+     * or deletes a key range.
+     */
+    private Lock[] lockTxn(TxnOp<K, V> op) {
+        List<byte[]> rawKeys = Lists.newArrayList();
+        for (CompareOp<K, V> compare : op.compareOps()) {
+            rawKeys.add(keyCoder.encode(compare.key()));
+        }
+        for (List<Op<K, V>> operations : Arrays.asList(op.successOps(), op.failureOps())) {
+            if (null == operations) {
+                continue;
+            }
+            for (Op<K, V> o : operations) {
+                if (o instanceof PutOp) {
+                    rawKeys.add(keyCoder.encode(((PutOp<K, V>) o).key()));
+                } else if (o instanceof DeleteOp) {
+                    DeleteOp<K, V> deleteOp = (DeleteOp<K, V>) o;
+                    if (isRangeDelete(deleteOp)) {
+                        return lockStore();
+                    }
+                    rawKeys.add(keyCoder.encode(deleteOp.key()));
+                } else if (o instanceof RangeOp) {
+                    return lockStore();
+                }
+            }
+        }
+        return lockKeys(rawKeys);
+    }
+
+    private TxnResult<K, V> processTxnLocked(long revision, TxnOp<K, V> op) {
 
         // 1. process the compares
         boolean success = processCompares(op);
@@ -745,8 +876,7 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
             for (Op<K, V> o : operations) {
                 results.add(executeOp(revision, batch, o));
             }
-            updateLastRevision(batch, revision);
-            executeBatch(batch);
+            commitBatch(batch, revision);
 
             // 4. repare the result
             TxnResultImpl<K, V> txnResult = resultFactory.newTxnResult(revision);
@@ -877,8 +1007,9 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
                                   MutableLong numKvs,
                                   RangeOption<K> rangeOption,
                                   long limit,
-                                  boolean countOnly) {
-        try (RocksIterator iter = db.newIterator(dataCfHandle)) {
+                                  boolean countOnly,
+                                  @Nullable ReadOptions readOpts) {
+        try (RocksIterator iter = newDataIterator(readOpts)) {
             iter.seek(rawKey);
             boolean eor = false;
             while (iter.isValid() && (limit < 0 || resultKeys.size() < limit)) {
@@ -905,6 +1036,10 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         }
     }
 
+    private RocksIterator newDataIterator(@Nullable ReadOptions readOpts) {
+        return null == readOpts ? db.newIterator(dataCfHandle) : db.newIterator(dataCfHandle, readOpts);
+    }
+
     private void processRecord(byte[] key,
                                MVCCRecord record,
                                List<byte[]> resultKeys,
@@ -964,8 +1099,17 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         }
     }
 
-    synchronized RangeResult<K, V> processRange(RangeOp<K, V> rangeOp) {
-        checkStoreOpen();
+    RangeResult<K, V> processRange(RangeOp<K, V> rangeOp) {
+        storeLock.readLock().lock();
+        try {
+            checkStoreOpen();
+            return processRangeLocked(rangeOp);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    private RangeResult<K, V> processRangeLocked(RangeOp<K, V> rangeOp) {
 
         // parameters
         final K key = rangeOp.key();
@@ -1002,16 +1146,18 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         } else {
             rawEndKey = keyCoder.encode(endKey);
         }
-        Pair<byte[], byte[]> realRange = getRealRange(rawKey, rawEndKey);
-        rawKey = realRange.getLeft();
-        rawEndKey = realRange.getRight();
 
-        // range lookup
+        // range lookup, on a snapshot so that the writes going on are not seen midway
         List<byte[]> keys = Lists.newArrayList();
         List<MVCCRecord> records = Lists.newArrayList();
         MutableLong numKvs = new MutableLong(0L);
 
+        Snapshot snapshot = db.getSnapshot();
+        ReadOptions readOpts = new ReadOptions().setSnapshot(snapshot);
         try {
+            Pair<byte[], byte[]> realRange = getRealRange(rawKey, rawEndKey, readOpts);
+            rawKey = realRange.getLeft();
+            rawEndKey = realRange.getRight();
 
             boolean hasMore = getKeyRecords(
                 rawKey,
@@ -1021,7 +1167,8 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
                 numKvs,
                 rangeOp.option(),
                 rangeOp.option().limit(),
-                false);
+                false,
+                readOpts);
 
             List<KeyValue<K, V>> kvs = toKvs(keys, records);
 
@@ -1031,6 +1178,8 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
             result.more(hasMore);
         } finally {
             records.forEach(MVCCRecord::recycle);
+            RocksUtils.close(readOpts);
+            db.releaseSnapshot(snapshot);
         }
         return result;
     }
@@ -1050,11 +1199,11 @@ class MVCCStoreImpl<K, V> extends RocksdbKVStore<K, V> implements MVCCStore<K, V
         return kvs;
     }
 
-    private Pair<byte[], byte[]> getRealRange(byte[] rawKey, byte[] rawEndKey) {
+    private Pair<byte[], byte[]> getRealRange(byte[] rawKey, byte[] rawEndKey, @Nullable ReadOptions readOpts) {
         boolean isNullStartKey = Constants.isNullStartKey(rawKey);
         boolean isNullEndKey = Constants.isNullEndKey(rawEndKey);
         if (isNullStartKey || isNullEndKey) {
-            try (RocksIterator iter = db.newIterator(dataCfHandle)) {
+            try (RocksIterator iter = newDataIterator(readOpts)) {
                 if (isNullStartKey) {
                     iter.seekToFirst();
                     if (!iter.isValid()) {
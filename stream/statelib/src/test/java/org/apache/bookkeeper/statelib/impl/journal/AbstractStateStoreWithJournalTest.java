@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.statelib.impl.journal;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.statelib.api.StateStore;
+import org.apache.bookkeeper.statelib.api.StateStoreSpec;
+import org.apache.distributedlog.DLSN;
+import org.apache.distributedlog.LogRecord;
+import org.apache.distributedlog.LogRecordSet;
+import org.apache.distributedlog.LogRecordWithDLSN;
+import org.apache.distributedlog.api.AsyncLogReader;
+import org.apache.distributedlog.api.AsyncLogWriter;
+import org.apache.distributedlog.api.DistributedLogManager;
+import org.apache.distributedlog.api.namespace.Namespace;
+import org.apache.distributedlog.bk.LedgerMetadata;
+import org.apache.distributedlog.exceptions.LogEmptyException;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test of the journal of {@link AbstractStateStoreWithJournal}.
+ */
+public class AbstractStateStoreWithJournalTest {
+
+    private static final String CATCHUP_MARKER = "";
+
+    private final InMemoryJournal journal = new InMemoryJournal();
+    private final List<TestStore> stores = new ArrayList<>();
+
+    @After
+    public void teardown() throws Exception {
+        for (TestStore store : stores) {
+            FutureUtils.result(store.closeAsync());
+        }
+    }
+
+    private TestStore openStore(boolean recordSets, long checkpointRevision) throws Exception {
+        // the local store is restored from a checkpoint of the commands up to the given revision,
+        // -1 for an empty local store
+        TestLocalStore localStore = new TestLocalStore(checkpointRevision);
+        TestStore store = new TestStore(localStore, journal.namespace);
+        stores.add(store);
+        FutureUtils.result(store.init(StateStoreSpec.builder()
+            .name("test-store")
+            .stream("test-stream")
+            .journalRecordSetsEnable(recordSets)
+            .build()));
+        return store;
+    }
+
+    private static List<Long> writeBatch(TestStore store, String... commands) throws Exception {
+        // the commands written from the write io scheduler are committed together
+        List<CompletableFuture<Long>> futures = FutureUtils.result(store.executeWriteIO(() -> {
+            List<CompletableFuture<Long>> writes = new ArrayList<>();
+            for (String command : commands) {
+                writes.add(store.write(command));
+            }
+            return writes;
+        }));
+        return FutureUtils.result(FutureUtils.collect(futures));
+    }
+
+    private static String[] commands(String prefix, int num) {
+        String[] commands = new String[num];
+        for (int i = 0; i < num; i++) {
+            commands[i] = prefix + "-" + i;
+        }
+        return commands;
+    }
+
+    private static Map<Long, String> expectedCommands(List<Long> revisions, String[] commands) {
+        Map<Long, String> expected = new TreeMap<>();
+        for (int i = 0; i < commands.length; i++) {
+            expected.put(revisions.get(i), commands[i]);
+        }
+        return expected;
+    }
+
+    @Test
+    public void testRecordSetsDisabledByDefault() throws Exception {
+        assertFalse(StateStoreSpec.builder().build().isJournalRecordSetsEnable());
+
+        TestStore store = openStore(false, -1L);
+        String[] commands = commands("cmd", 10);
+        List<Long> revisions = writeBatch(store, commands);
+
+        // the marker is written at revision 1, each command is a plain record with its revision as txid
+        for (int i = 0; i < commands.length; i++) {
+            assertEquals(2L + i, (long) revisions.get(i));
+        }
+        for (LogRecord record : journal.records()) {
+            assertFalse(record.isRecordSet());
+        }
+        assertEquals(1 + commands.length, journal.records().size());
+    }
+
+    @Test
+    public void testGroupCommitIntoRecordSets() throws Exception {
+        TestStore store = openStore(true, -1L);
+        String[] commands = commands("cmd", 10);
+        List<Long> revisions = writeBatch(store, commands);
+
+        for (int i = 0; i < commands.length; i++) {
+            assertEquals(2L + i, (long) revisions.get(i));
+        }
+        List<LogRecordWithDLSN> records = journal.records();
+        assertEquals(2, records.size());
+        assertFalse(records.get(0).isRecordSet());
+        assertTrue(records.get(1).isRecordSet());
+        assertEquals(2L, records.get(1).getTransactionId());
+        assertEquals(commands.length, LogRecordSet.numRecords(records.get(1)));
+    }
+
+    @Test
+    public void testReplayAcrossRecordSetBoundary() throws Exception {
+        testReplayAcrossRecordSetBoundary(false);
+    }
+
+    @Test
+    public void testReplayAcrossRecordSetBoundaryWithDeserializedRecordSets() throws Exception {
+        testReplayAcrossRecordSetBoundary(true);
+    }
+
+    private void testReplayAcrossRecordSetBoundary(boolean deserializeRecordSets) throws Exception {
+        journal.deserializeRecordSets = deserializeRecordSets;
+
+        TestStore store = openStore(true, -1L);
+        String[] batch1 = commands("batch1", 10);
+        String[] batch2 = commands("batch2", 10);
+        String[] batch3 = commands("batch3", 10);
+        List<Long> revisions1 = writeBatch(store, batch1);
+        List<Long> revisions2 = writeBatch(store, batch2);
+        List<Long> revisions3 = writeBatch(store, batch3);
+        long lastRevision = revisions3.get(batch3.length - 1);
+
+        // restart from a checkpoint taken in the middle of the second record set
+        long checkpointRevision = revisions2.get(4);
+        TestStore restarted = openStore(true, checkpointRevision);
+
+        Map<Long, String> expected = new TreeMap<>();
+        expected.putAll(expectedCommands(revisions2, batch2));
+        expected.putAll(expectedCommands(revisions3, batch3));
+        expected.keySet().removeIf(revision -> revision < checkpointRevision);
+        assertEquals(expected, restarted.localStore.commands);
+        assertEquals(checkpointRevision, (long) restarted.localStore.appliedRevisions.get(0));
+        assertSequential(restarted.localStore.appliedRevisions);
+        // the catchup marker of the restarted store is written after the last revision of the journal
+        assertEquals(lastRevision + 1, restarted.localStore.getLastRevision());
+
+        // restart from scratch
+        TestStore replayed = openStore(true, -1L);
+        expected.putAll(expectedCommands(revisions1, batch1));
+        expected.putAll(expectedCommands(revisions2, batch2));
+        assertEquals(expected, replayed.localStore.commands);
+        assertSequential(replayed.localStore.appliedRevisions);
+
+        // the revisions carry on after the record sets
+        long revision = writeBatch(replayed, "next").get(0);
+        assertEquals(lastRevision + 3, revision);
+    }
+
+    @Test
+    public void testRecordSetsReplayedOnceDisabled() throws Exception {
+        TestStore store = openStore(true, -1L);
+        String[] batch = commands("batch", 10);
+        List<Long> revisions = writeBatch(store, batch);
+
+        long checkpointRevision = revisions.get(5);
+        TestStore restarted = openStore(false, checkpointRevision);
+        Map<Long, String> expected = expectedCommands(revisions, batch);
+        expected.keySet().removeIf(revision -> revision < checkpointRevision);
+        assertEquals(expected, restarted.localStore.commands);
+    }
+
+    @Test
+    public void testRecoverAfterPartialFlush() throws Exception {
+        TestStore store = openStore(true, -1L);
+        String[] batch1 = commands("batch1", 10);
+        List<Long> revisions1 = writeBatch(store, batch1);
+
+        // the journal fails before the second record set is written
+        journal.failWrites = true;
+        try {
+            writeBatch(store, commands("batch2", 10));
+            fail("The record set should not be written");
+        } catch (IOException e) {
+            // expected
+        }
+        journal.failWrites = false;
+
+        TestStore restarted = openStore(true, -1L);
+        assertEquals(expectedCommands(revisions1, batch1), restarted.localStore.commands);
+        long lastRevision = revisions1.get(batch1.length - 1);
+        assertEquals(lastRevision + 1, restarted.localStore.getLastRevision());
+
+        String[] batch3 = commands("batch3", 10);
+        List<Long> revisions3 = writeBatch(restarted, batch3);
+        assertEquals(lastRevision + 2, (long) revisions3.get(0));
+
+        TestStore replayed = openStore(true, -1L);
+        Map<Long, String> expected = expectedCommands(revisions1, batch1);
+        expected.putAll(expectedCommands(revisions3, batch3));
+        assertEquals(expected, replayed.localStore.commands);
+        assertSequential(replayed.localStore.appliedRevisions);
+    }
+
+    @Test
+    public void testPurgeAndRestart() throws Exception {
+        // one log segment per record
+        journal.recordsPerSegment = 1;
+
+        TestStore store = openStore(true, -1L);
+        int batchSize = AbstractStateStoreWithJournal.MAX_RECORD_SET_COMMANDS - 12;
+        writeBatch(store, commands("batch1", batchSize));
+        writeBatch(store, commands("batch2", batchSize));
+        String[] batch3 = commands("batch3", batchSize);
+        List<Long> revisions3 = writeBatch(store, batch3);
+        String[] batch4 = commands("batch4", batchSize);
+        List<Long> revisions4 = writeBatch(store, batch4);
+
+        // purge up to a revision in the middle of the third record set, whose log segment ends before it
+        long checkpointRevision = revisions3.get(batchSize / 2);
+        store.purgeOlderThan(checkpointRevision);
+        assertEquals(revisions3.get(0), (Long) journal.records().get(0).getTransactionId());
+
+        TestStore restarted = openStore(true, checkpointRevision);
+        Map<Long, String> expected = expectedCommands(revisions3, batch3);
+        expected.putAll(expectedCommands(revisions4, batch4));
+        expected.keySet().removeIf(revision -> revision < checkpointRevision);
+        assertEquals(expected, restarted.localStore.commands);
+        assertEquals(checkpointRevision, (long) restarted.localStore.appliedRevisions.get(0));
+        assertSequential(restarted.localStore.appliedRevisions);
+    }
+
+    private static void assertSequential(List<Long> revisions) {
+        for (int i = 1; i < revisions.size(); i++) {
+            assertEquals(revisions.get(i - 1) + 1, (long) revisions.get(i));
+        }
+    }
+
+    /**
+     * Local store that records the commands applied to it.
+     */
+    private static class TestLocalStore implements StateStore {
+
+        private final Map<Long, String> commands = new TreeMap<>();
+        private final List<Long> appliedRevisions = new ArrayList<>();
+        private long lastRevision;
+
+        TestLocalStore(long lastRevision) {
+            this.lastRevision = lastRevision;
+        }
+
+        void apply(long revision, String command) {
+            appliedRevisions.add(revision);
+            if (!CATCHUP_MARKER.equals(command)) {
+                commands.put(revision, command);
+            }
+            lastRevision = Math.max(lastRevision, revision);
+        }
+
+        @Override
+        public String name() {
+            return "test-local-store";
+        }
+
+        @Override
+        public void init(StateStoreSpec spec) {
+        }
+
+        @Override
+        public long getLastRevision() {
+            return lastRevision;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class TestStore extends AbstractStateStoreWithJournal<TestLocalStore> {
+
+        TestStore(TestLocalStore localStore, Namespace namespace) {
+            super(() -> localStore, () -> namespace);
+        }
+
+        CompletableFuture<Long> write(String command) {
+            return writeCommandBufReturnTxId(Unpooled.copiedBuffer(command, UTF_8));
+        }
+
+        @Override
+        protected ByteBuf newCatchupMarker() {
+            return Unpooled.copiedBuffer(CATCHUP_MARKER, UTF_8);
+        }
+
+        @Override
+        protected CommandProcessor<TestLocalStore> newCommandProcessor() {
+            return (txid, cmdBuf, store) -> store.apply(txid, cmdBuf.toString(UTF_8));
+        }
+    }
+
+    /**
+     * A log stream kept in memory, split into log segments of a fixed number of records.
+     */
+    private static class InMemoryJournal {
+
+        private final List<List<LogRecordWithDLSN>> segments = new ArrayList<>();
+        private long nextSegmentSequenceNo = 1L;
+        private final Namespace namespace = mock(Namespace.class);
+        private volatile int recordsPerSegment = 100;
+        private volatile boolean deserializeRecordSets = false;
+        private volatile boolean failWrites = false;
+
+        InMemoryJournal() {
+            try {
+                when(namespace.openLog(anyString())).thenAnswer(invocation -> newLogManager());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        synchronized List<LogRecordWithDLSN> records() {
+            List<LogRecordWithDLSN> records = new ArrayList<>();
+            segments.forEach(records::addAll);
+            return records;
+        }
+
+        private synchronized DLSN append(LogRecord record) {
+            List<LogRecordWithDLSN> segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (null == segment || segment.size() >= recordsPerSegment) {
+                segment = new ArrayList<>();
+                segments.add(segment);
+                ++nextSegmentSequenceNo;
+            }
+            DLSN dlsn = new DLSN(nextSegmentSequenceNo - 1, segment.size(), 0L);
+            segment.add(copy(dlsn, record));
+            return dlsn;
+        }
+
+        private static LogRecordWithDLSN copy(DLSN dlsn, LogRecord record) {
+            LogRecordWithDLSN copy = new LogRecordWithDLSN(
+                dlsn, record.getTransactionId(), Unpooled.copiedBuffer(record.getPayloadBuf()), 0L);
+            if (record.isRecordSet()) {
+                copy.setRecordSet();
+            }
+            return copy;
+        }
+
+        private synchronized long getLastTxId() {
+            List<LogRecordWithDLSN> records = records();
+            return records.isEmpty() ? -1L : records.get(records.size() - 1).getTransactionId();
+        }
+
+        private synchronized CompletableFuture<DLSN> getLastDLSN() {
+            List<LogRecordWithDLSN> records = records();
+            if (records.isEmpty()) {
+                return FutureUtils.exception(new LogEmptyException("empty log"));
+            }
+            LogRecordWithDLSN last = records.get(records.size() - 1);
+            if (deserializeRecordSets && last.isRecordSet()) {
+                // the last record is the last command of the record set
+                try {
+                    DLSN dlsn = last.getDlsn();
+                    return FutureUtils.value(new DLSN(dlsn.getLogSegmentSequenceNo(), dlsn.getEntryId(),
+                        dlsn.getSlotId() + LogRecordSet.numRecords(last) - 1));
+                } catch (IOException e) {
+                    return FutureUtils.exception(e);
+                }
+            }
+            return FutureUtils.value(last.getDlsn());
+        }
+
+        private synchronized void purge(long minTxIdToKeep) {
+            segments.removeIf(segment -> segment.get(segment.size() - 1).getTransactionId() < minTxIdToKeep);
+        }
+
+        private DistributedLogManager newLogManager() throws Exception {
+            DistributedLogManager logManager = mock(DistributedLogManager.class);
+            when(logManager.openAsyncLogWriter(any(LedgerMetadata.class)))
+                .thenAnswer(invocation -> FutureUtils.value(newWriter()));
+            when(logManager.openAsyncLogReader(anyLong()))
+                .thenAnswer(invocation -> FutureUtils.value(newReader(invocation.getArgument(0))));
+            when(logManager.getLastDLSNAsync()).thenAnswer(invocation -> getLastDLSN());
+            when(logManager.getLastDLSN()).thenAnswer(invocation -> FutureUtils.result(getLastDLSN()));
+            when(logManager.asyncClose()).thenReturn(FutureUtils.Void());
+            doAnswer(invocation -> {
+                purge(invocation.getArgument(0));
+                return null;
+            }).when(logManager).purgeLogsOlderThan(anyLong());
+            return logManager;
+        }
+
+        private AsyncLogWriter newWriter() {
+            AsyncLogWriter writer = mock(AsyncLogWriter.class);
+            when(writer.getLastTxId()).thenAnswer(invocation -> getLastTxId());
+            when(writer.write(any(LogRecord.class))).thenAnswer(invocation -> {
+                if (failWrites) {
+                    return FutureUtils.exception(new IOException("journal failure"));
+                }
+                return FutureUtils.value(append(invocation.getArgument(0)));
+            });
+            when(writer.asyncClose()).thenReturn(FutureUtils.Void());
+            return writer;
+        }
+
+        private AsyncLogReader newReader(long fromTxId) {
+            List<LogRecordWithDLSN> records = new ArrayList<>();
+            for (LogRecordWithDLSN stored : records()) {
+                if (stored.getTransactionId() < fromTxId) {
+                    continue;
+                }
+                // the records read are released by the store
+                LogRecordWithDLSN record = copy(stored.getDlsn(), stored);
+                if (deserializeRecordSets && record.isRecordSet()) {
+                    try {
+                        LogRecordSet.Reader reader = LogRecordSet.of(record);
+                        LogRecordWithDLSN command;
+                        while (null != (command = reader.nextRecord())) {
+                            records.add(command);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                } else {
+                    records.add(record);
+                }
+            }
+
+            AsyncLogReader reader = mock(AsyncLogReader.class);
+            int[] position = { 0 };
+            when(reader.readNext()).thenAnswer(invocation -> {
+                if (position[0] >= records.size()) {
+                    // no new records are written to the journal while the tests replay it
+                    return new CompletableFuture<>();
+                }
+                return FutureUtils.value(records.get(position[0]++));
+            });
+            when(reader.asyncClose()).thenReturn(FutureUtils.Void());
+            return reader;
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.statelib.impl.mvcc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.api.kv.op.CompareResult;
+import org.apache.bookkeeper.api.kv.op.Op;
+import org.apache.bookkeeper.api.kv.op.OpFactory;
+import org.apache.bookkeeper.api.kv.op.TxnOp;
+import org.apache.bookkeeper.api.kv.options.Options;
+import org.apache.bookkeeper.api.kv.result.Code;
+import org.apache.bookkeeper.api.kv.result.DeleteResult;
+import org.apache.bookkeeper.api.kv.result.IncrementResult;
+import org.apache.bookkeeper.api.kv.result.KeyValue;
+import org.apache.bookkeeper.api.kv.result.PutResult;
+import org.apache.bookkeeper.api.kv.result.RangeResult;
+import org.apache.bookkeeper.api.kv.result.TxnResult;
+import org.apache.bookkeeper.common.coder.Coder;
+import org.apache.bookkeeper.common.coder.StringUtf8Coder;
+import org.apache.bookkeeper.statelib.api.StateStoreSpec;
+import org.apache.bookkeeper.statelib.api.exceptions.MVCCStoreException;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the locking of {@link MVCCStoreImpl}.
+ */
+public class MVCCStoreImplTest {
+
+    private static final String BLOCKING_VALUE = "blocking";
+    private static final int NUM_THREADS = 4;
+
+    /**
+     * Encodes and decodes {@link #BLOCKING_VALUE} only once released, when blocking is enabled.
+     */
+    private static class BlockingCoder implements Coder<String> {
+
+        private final Coder<String> coder = StringUtf8Coder.of();
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private volatile boolean blockEncode = false;
+        private volatile boolean blockDecode = false;
+
+        private void block(boolean enabled, String value) {
+            if (enabled && BLOCKING_VALUE.equals(value)) {
+                blocked.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void encode(String value, ByteBuf destBuf) {
+            block(blockEncode, value);
+            coder.encode(value, destBuf);
+        }
+
+        @Override
+        public int getSerializedSize(String value) {
+            return coder.getSerializedSize(value);
+        }
+
+        @Override
+        public String decode(ByteBuf data) {
+            String value = coder.decode(data);
+            block(blockDecode, value);
+            return value;
+        }
+    }
+
+    private final BlockingCoder valCoder = new BlockingCoder();
+    private final AtomicLong revisions = new AtomicLong(0L);
+    private File localDir;
+    private ExecutorService executor;
+    private MVCCStoreImpl<String, String> store;
+    private OpFactory<String, String> opFactory;
+
+    @Before
+    public void setup() throws Exception {
+        localDir = Files.createTempDirectory("mvcc-store").toFile();
+        executor = Executors.newCachedThreadPool();
+        store = new MVCCStoreImpl<>();
+        store.init(StateStoreSpec.builder()
+            .name("test-store")
+            .stream("test-stream")
+            .keyCoder(StringUtf8Coder.of())
+            .valCoder(valCoder)
+            .localStateStoreDir(localDir)
+            .build());
+        opFactory = store.getOpFactory();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        valCoder.released.countDown();
+        executor.shutdownNow();
+        store.close();
+        FileUtils.deleteDirectory(localDir);
+    }
+
+    private long nextRevision() {
+        return revisions.incrementAndGet();
+    }
+
+    private Code put(String key, String value) {
+        try (PutResult<String, String> result = store.put(nextRevision(),
+                opFactory.newPut(key, value, Options.blindPut()))) {
+            return result.code();
+        }
+    }
+
+    private Code increment(String key, long amount) {
+        try (IncrementResult<String, String> result = store.increment(nextRevision(),
+                opFactory.newIncrement(key, amount, Options.blindIncrement()))) {
+            return result.code();
+        }
+    }
+
+    /**
+     * Put the value if the key has the expected value.
+     *
+     * @return the code of the put, or null if the compare failed
+     */
+    private Code compareAndPut(String key, String expected, String value) {
+        TxnOp<String, String> txn = opFactory.newTxn()
+            .If(opFactory.compareValue(CompareResult.EQUAL, key, expected))
+            .Then(opFactory.newPut(key, value, Options.blindPut()))
+            .build();
+        try (TxnResult<String, String> result = store.txn(nextRevision(), txn)) {
+            assertEquals(Code.OK, result.code());
+            return result.isSuccess() ? result.results().get(0).code() : null;
+        }
+    }
+
+    private List<KeyValue<String, String>> range(String from, String to) {
+        try (RangeResult<String, String> result = store.range(opFactory.newRange(from,
+                opFactory.optionFactory().newRangeOption().endKey(to).build()))) {
+            assertEquals(Code.OK, result.code());
+            return result.getKvsAndClear();
+        }
+    }
+
+    private void runConcurrently(Runnable task) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < NUM_THREADS; i++) {
+            futures.add(executor.submit(task));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testConcurrentWritesOnSameKey() throws Exception {
+        assertEquals(Code.OK, put("cas", "0"));
+        AtomicLong increments = new AtomicLong(0L);
+        AtomicLong swaps = new AtomicLong(0L);
+
+        runConcurrently(() -> {
+            for (int i = 0; i < 200; i++) {
+                // the writes may be applied out of the order of their revisions, and be rejected then
+                Code code = increment("counter", 1L);
+                if (Code.OK == code) {
+                    increments.incrementAndGet();
+                } else {
+                    assertEquals(Code.SMALLER_REVISION, code);
+                }
+
+                String value = store.get("cas");
+                code = compareAndPut("cas", value, String.valueOf(Long.parseLong(value) + 1));
+                if (Code.OK == code) {
+                    swaps.incrementAndGet();
+                } else if (null != code) {
+                    assertEquals(Code.SMALLER_REVISION, code);
+                }
+            }
+        });
+
+        // no write is lost
+        assertTrue(increments.get() > 0);
+        assertEquals(increments.get(), (long) store.getNumber("counter"));
+        assertTrue(swaps.get() > 0);
+        assertEquals(String.valueOf(swaps.get()), store.get("cas"));
+    }
+
+    @Test
+    public void testConcurrentWritesOnDifferentKeys() throws Exception {
+        AtomicLong threadIds = new AtomicLong(0L);
+        runConcurrently(() -> {
+            long threadId = threadIds.getAndIncrement();
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Code.OK, put("key-" + threadId + "-" + i, "value-" + i));
+                assertEquals(Code.OK, increment("counter-" + threadId, 1L));
+                assertEquals(Code.OK, compareAndPut("txn-" + threadId, 0 == i ? null : "value-" + (i - 1),
+                        "value-" + i));
+            }
+        });
+
+        for (int threadId = 0; threadId < NUM_THREADS; threadId++) {
+            assertEquals(100, range("key-" + threadId + "-", "key-" + threadId + "-~").size());
+            assertEquals(100L, (long) store.getNumber("counter-" + threadId));
+            assertEquals("value-99", store.get("txn-" + threadId));
+        }
+    }
+
+    @Test
+    public void testWritesOnOtherKeysNotBlockedByTxn() throws Exception {
+        // the txn blocks while encoding its value, holding the lock of its key
+        valCoder.blockEncode = true;
+        Future<Code> txn = executor.submit(() -> compareAndPut("a", null, BLOCKING_VALUE));
+        assertTrue(valCoder.blocked.await(10, TimeUnit.SECONDS));
+
+        assertEquals(Code.OK, executor.submit(() -> put("b", "value")).get(10, TimeUnit.SECONDS));
+        assertEquals(Code.OK, executor.submit(() -> increment("c", 1L)).get(10, TimeUnit.SECONDS));
+
+        valCoder.released.countDown();
+        assertEquals(Code.OK, txn.get(10, TimeUnit.SECONDS));
+        assertEquals(BLOCKING_VALUE, store.get("a"));
+    }
+
+    @Test
+    public void testTxnWithRangeIsolatedFromWrites() throws Exception {
+        assertEquals(Code.OK, put("a", BLOCKING_VALUE));
+        assertEquals(Code.OK, put("b", "0"));
+
+        // the txn reads the range of keys while it compares none of them
+        valCoder.blockDecode = true;
+        Future<Code> txn = executor.submit(() -> {
+            try (TxnResult<String, String> result = store.txn(nextRevision(), opFactory.newTxn()
+                    .If()
+                    .Then(opFactory.newRange("a", opFactory.optionFactory().newRangeOption().endKey("z").build()))
+                    .build())) {
+                return result.code();
+            }
+        });
+        assertTrue(valCoder.blocked.await(10, TimeUnit.SECONDS));
+
+        // the writes on the keys of the range wait for the txn
+        Future<Code> put = executor.submit(() -> put("b", "1"));
+        Thread.sleep(100);
+        assertFalse(put.isDone());
+
+        valCoder.released.countDown();
+        assertEquals(Code.OK, txn.get(10, TimeUnit.SECONDS));
+        assertEquals(Code.OK, put.get(10, TimeUnit.SECONDS));
+        assertEquals("1", store.get("b"));
+    }
+
+    @Test
+    public void testDeleteRangeRacingWithPuts() throws Exception {
+        final int numKeys = 1000;
+        CountDownLatch putsDone = new CountDownLatch(1);
+        Future<?> puts = executor.submit(() -> {
+            try {
+                for (int i = 0; i < numKeys; i++) {
+                    store.put(String.format("d-%04d", i), "value-" + i, nextRevision());
+                }
+            } finally {
+                putsDone.countDown();
+            }
+        });
+        Future<?> deletes = executor.submit(() -> {
+            while (!putsDone.await(1, TimeUnit.MILLISECONDS)) {
+                store.deleteRange("d-0000", "d-9999", nextRevision());
+            }
+            return null;
+        });
+        puts.get(60, TimeUnit.SECONDS);
+        deletes.get(60, TimeUnit.SECONDS);
+
+        // the keys put after the last delete of the range are left, and only them
+        List<KeyValue<String, String>> kvs = range("d-0000", "d-9999");
+        int first = numKeys - kvs.size();
+        for (int i = 0; i < kvs.size(); i++) {
+            assertEquals(String.format("d-%04d", first + i), kvs.get(i).key());
+            assertEquals("value-" + (first + i), kvs.get(i).value());
+        }
+        kvs.forEach(KeyValue::close);
+    }
+
+    @Test
+    public void testRangeReadConsistentWhileWriting() throws Exception {
+        final int numKeys = 10;
+        CountDownLatch writesDone = new CountDownLatch(1);
+        Future<?> writes = executor.submit(() -> {
+            try {
+                // each txn sets all the keys to the same value
+                for (int v = 0; v < 300; v++) {
+                    Op[] puts = new Op[numKeys];
+                    for (int i = 0; i < numKeys; i++) {
+                        puts[i] = opFactory.newPut("r-" + i, "value-" + v, Options.blindPut());
+                    }
+                    try (TxnResult<String, String> result = store.txn(nextRevision(),
+                            opFactory.newTxn().If().Then(puts).build())) {
+                        assertEquals(Code.OK, result.code());
+                    }
+                }
+            } finally {
+                writesDone.countDown();
+            }
+        });
+
+        int numReads = 0;
+        while (writesDone.getCount() > 0 || numReads == 0) {
+            List<KeyValue<String, String>> kvs = range("r-0", "r-9");
+            if (!kvs.isEmpty()) {
+                assertEquals(numKeys, kvs.size());
+                for (KeyValue<String, String> kv : kvs) {
+                    assertEquals(kvs.get(0).value(), kv.value());
+                }
+            }
+            kvs.forEach(KeyValue::close);
+            numReads++;
+        }
+        writes.get(60, TimeUnit.SECONDS);
+        assertEquals("value-299", store.get("r-9"));
+    }
+
+    @Test
+    public void testOpsAfterClose() throws Exception {
+        assertEquals(Code.OK, put("key", "value"));
+        store.close();
+
+        assertEquals(Code.INTERNAL_ERROR, put("key", "value"));
+        assertEquals(Code.INTERNAL_ERROR, increment("counter", 1L));
+        try (TxnResult<String, String> result = store.txn(nextRevision(), opFactory.newTxn()
+                .If()
+                .Then(opFactory.newPut("key", "value", Options.blindPut()))
+                .build())) {
+            assertEquals(Code.INTERNAL_ERROR, result.code());
+        }
+        try (DeleteResult<String, String> result = store.delete(nextRevision(),
+                opFactory.newDelete("key", Options.delete()))) {
+            assertEquals(Code.INTERNAL_ERROR, result.code());
+        }
+        try (RangeResult<String, String> result = store.range(opFactory.newRange("key", Options.get()))) {
+            assertEquals(Code.INTERNAL_ERROR, result.code());
+        }
+        try {
+            store.get("key");
+            fail("Should fail to get from a closed store");
+        } catch (MVCCStoreException e) {
+            assertEquals(Code.INTERNAL_ERROR, e.getCode());
+        }
+    }
+
+    @Test
+    public void testCloseWhileWriting() throws Exception {
+        CountDownLatch writing = new CountDownLatch(NUM_THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < NUM_THREADS; t++) {
+            final int threadId = t;
+            futures.add(executor.submit(() -> {
+                writing.countDown();
+                // the writes either complete before the store is closed, or fail
+                Code code = Code.OK;
+                for (int i = 0; Code.OK == code; i++) {
+                    code = put("key-" + threadId, "value-" + i);
+                }
+                assertEquals(Code.INTERNAL_ERROR, code);
+            }));
+        }
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        store.close();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -39,6 +39,8 @@ public class StorageConfiguration extends ComponentConfiguration {
 
     private static final String CHECKPOINT_RESTORE_IDLE_LIMIT_MS = "checkpoint.restore.idle.limit.ms";
 
+    private static final String JOURNAL_RECORD_SETS_ENABLE = "journal.record.sets.enable";
+
     public StorageConfiguration(CompositeConfiguration conf) {
         super(conf, COMPONENT_PREFIX);
     }
@@ -112,4 +114,21 @@ public class StorageConfiguration extends ComponentConfiguration {
     public long getCheckpointRestoreIdleLimitMs() {
         return getLong(CHECKPOINT_RESTORE_IDLE_LIMIT_MS, TimeUnit.MINUTES.toMillis(5));
     }
+
+    public StorageConfiguration setJournalRecordSetsEnable(boolean enable) {
+        setProperty(JOURNAL_RECORD_SETS_ENABLE, enable);
+        return this;
+    }
+
+    /**
+     * Whether the state stores group commit their commands into log record sets. The default value is false.
+     *
+     * <p>Enabling it is a one-way upgrade: the journals written with record sets can't be replayed by the
+     * versions that don't support them.
+     *
+     * @return true if the commands are group committed into log record sets.
+     */
+    public boolean getJournalRecordSetsEnable() {
+        return getBoolean(JOURNAL_RECORD_SETS_ENABLE, false);
+    }
 }
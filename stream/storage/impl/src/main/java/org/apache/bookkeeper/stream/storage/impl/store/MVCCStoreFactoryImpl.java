@@ -99,10 +99,6 @@ public class MVCCStoreFactoryImpl implements MVCCStoreFactory {
         return writeIOScheduler.chooseThread(streamId);
     }
 
-    private ScheduledExecutorService chooseReadIOExecutor(long streamId) {
-        return readIOScheduler.chooseThread(streamId);
-    }
-
     private ScheduledExecutorService chooseCheckpointIOExecutor(long streamId) {
         return checkpointScheduler.chooseThread(streamId);
     }
@@ -205,7 +201,8 @@ public class MVCCStoreFactoryImpl implements MVCCStoreFactory {
             .localStateStoreDir(rangeStorePath.toFile())
             .stream(streamName(scId, streamId, rangeId))
             .writeIOScheduler(chooseWriteIOExecutor(streamId))
-            .readIOScheduler(chooseReadIOExecutor(streamId))
+            // the reads take no lock in the store, so they run on any of the read threads
+            .readIOScheduler(readIOScheduler)
             .checkpointStore(checkpointStore)
             .checkpointDuration(Duration.ofMinutes(15))
             .checkpointIOScheduler(chooseCheckpointIOExecutor(streamId))
@@ -216,6 +213,7 @@ public class MVCCStoreFactoryImpl implements MVCCStoreFactory {
             .checkpointRestoreIdleLimit(
                 Duration.ofMillis(storageConf.getCheckpointRestoreIdleLimitMs()))
             .ttlSeconds(ttlSeconds)
+            .journalRecordSetsEnable(storageConf.getJournalRecordSetsEnable())
             .build();
 
 
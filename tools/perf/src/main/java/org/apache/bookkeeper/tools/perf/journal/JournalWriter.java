@@ -288,7 +288,8 @@ public class JournalWriter implements Runnable {
                 final double writeRateForThisThread = flags.writeRate / (double) flags.numTestThreads;
                 final long maxOutstandingBytesForThisThread =
                     flags.maxOutstandingMB * 1024 * 1024 / flags.numTestThreads;
-                final int numLedgersForThisThread = flags.numLedgers / flags.numTestThreads;
+                // with more threads than ledgers, each thread still writes to a ledger of its own
+                final int numLedgersForThisThread = Math.max(1, flags.numLedgers / flags.numTestThreads);
                 executor.submit(() -> {
                     try {
                         write(
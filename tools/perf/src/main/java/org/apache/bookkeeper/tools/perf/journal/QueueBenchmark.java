@@ -0,0 +1,181 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.tools.perf.journal;
+
+import com.beust.jcommander.Parameter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
+import org.apache.bookkeeper.tools.framework.CliFlags;
+import org.apache.bookkeeper.tools.perf.utils.PaddingDecimalFormat;
+
+/**
+ * A perf benchmark of the journal queue, with many add threads enqueuing entries and a single
+ * journal thread draining them.
+ */
+@Slf4j
+public class QueueBenchmark implements Runnable {
+
+    /**
+     * Flags for the queue command.
+     */
+    public static class Flags extends CliFlags {
+
+        @Parameter(
+            names = {
+                "-t", "--num-producer-threads"
+            },
+            description = "Numbers of producer threads to benchmark, separated by comma"
+        )
+        public List<Integer> numProducerThreads = Arrays.asList(8, 16, 32, 64);
+
+        @Parameter(
+            names = {
+                "-n", "--num-entries"
+            },
+            description = "Number of entries to add per run"
+        )
+        public long numEntries = 10_000_000;
+
+        @Parameter(
+            names = {
+                "-q", "--journal-queue-size"
+            },
+            description = "Journal queue size"
+        )
+        public int journalQueueSize = 10000;
+
+        @Parameter(
+            names = {
+                "-qt", "--queue-type"
+            },
+            description = "Queue to benchmark: mpsc, mpsc-busy-wait or array"
+        )
+        public String queueType = "mpsc";
+
+        @Parameter(
+            names = {
+                "-r", "--num-runs"
+            },
+            description = "Number of runs for each number of producer threads, the first one is a warm-up"
+        )
+        public int numRuns = 3;
+
+    }
+
+    private static final Object ENTRY = new Object();
+    private static final DecimalFormat throughputFormat = new PaddingDecimalFormat("0.0", 12);
+
+    private final Flags flags;
+
+    QueueBenchmark(Flags flags) {
+        this.flags = flags;
+    }
+
+    @Override
+    public void run() {
+        try {
+            execute();
+        } catch (Exception e) {
+            log.error("Encountered exception at running journal queue benchmark", e);
+        }
+    }
+
+    void execute() throws Exception {
+        ObjectMapper m = new ObjectMapper();
+        ObjectWriter w = m.writerWithDefaultPrettyPrinter();
+        log.info("Starting journal queue benchmark with config : {}", w.writeValueAsString(flags));
+
+        for (int numProducers : flags.numProducerThreads) {
+            double bestRate = 0;
+            for (int run = 0; run < flags.numRuns; run++) {
+                double rate = runOnce(numProducers);
+                if (run > 0 || flags.numRuns == 1) {
+                    bestRate = Math.max(bestRate, rate);
+                }
+            }
+            log.info("Queue {} --- producer threads: {} --- adds/s: {}",
+                flags.queueType, numProducers, throughputFormat.format(bestRate));
+        }
+    }
+
+    private BlockingQueue<Object> newQueue() {
+        switch (flags.queueType) {
+            case "mpsc":
+                return new BlockingMpscQueue<>(flags.journalQueueSize, false);
+            case "mpsc-busy-wait":
+                return new BlockingMpscQueue<>(flags.journalQueueSize, true);
+            case "array":
+                return new ArrayBlockingQueue<>(flags.journalQueueSize);
+            default:
+                throw new IllegalArgumentException("Unknown queue type " + flags.queueType);
+        }
+    }
+
+    private double runOnce(int numProducers) throws Exception {
+        BlockingQueue<Object> queue = newQueue();
+        long entriesPerProducer = flags.numEntries / numProducers;
+        long totalEntries = entriesPerProducer * numProducers;
+        CountDownLatch startLatch = new CountDownLatch(1);
+
+        List<Thread> producers = new ArrayList<>(numProducers);
+        for (int i = 0; i < numProducers; i++) {
+            Thread producer = new Thread(() -> {
+                try {
+                    startLatch.await();
+                    for (long j = 0; j < entriesPerProducer; j++) {
+                        queue.put(ENTRY);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "journal-queue-producer-" + i);
+            producer.start();
+            producers.add(producer);
+        }
+
+        long startTime = System.nanoTime();
+        startLatch.countDown();
+        long consumed = 0;
+        if (queue instanceof BlockingMpscQueue) {
+            // drain in batches, as the journal thread does
+            BlockingMpscQueue<Object> mpscQueue = (BlockingMpscQueue<Object>) queue;
+            Object[] batch = new Object[flags.journalQueueSize];
+            while (consumed < totalEntries) {
+                consumed += mpscQueue.takeAll(batch);
+            }
+        } else {
+            while (consumed < totalEntries) {
+                queue.take();
+                consumed++;
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        return totalEntries * 1e9 / elapsedNanos;
+    }
+
+}
@@ -126,6 +126,20 @@ public class PerfClient implements Runnable {
         )
         public int prefixSize = 0;
 
+        @Parameter(
+            names = {
+                "-nhk", "--num-hot-keys"
+            },
+            description = "Number of the keys read by the readhot benchmark")
+        public int numHotKeys = 100;
+
+        @Parameter(
+            names = {
+                "-nt", "--num-threads"
+            },
+            description = "Number of the threads issuing requests in the read benchmarks")
+        public int numThreads = 1;
+
         @Parameter(
             names = {
                 "-no", "--num-ops"
@@ -315,6 +329,25 @@ public class PerfClient implements Runnable {
                                 semaphore
                             ));
                             break;
+                        case "readrandom":
+                        case "readhot":
+                            long readKeyRange = "readhot".equals(benchmark)
+                                ? Math.min(flags.numHotKeys, flags.numKeys) : flags.numKeys;
+                            int numReadThreads = Math.max(1, flags.numThreads);
+                            for (int i = 0; i < numReadThreads; i++) {
+                                tasks.add(new ReadRandomTask(
+                                    table,
+                                    currentTaskId++,
+                                    randSeed,
+                                    Math.max(flags.numOps, flags.numKeys) / numReadThreads,
+                                    readKeyRange,
+                                    flags,
+                                    generator,
+                                    limiter,
+                                    semaphore
+                                ));
+                            }
+                            break;
                         default:
                             System.err.println("Unknown benchmark: " + benchmark);
                             break;